@@ -0,0 +1,105 @@
+package com.matsuri.pricecache.codec;
+
+import com.matsuri.pricecache.domain.Bar;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import static com.matsuri.pricecache.codec.MessageHeaderEncoder.BYTE_ORDER;
+
+/**
+ * Binary message of a closed mid price bar, in the message schema of {@link PriceEncoder}.
+ * <p>
+ * Fixed block (little endian):
+ * <pre>
+ *   0  intervalNanos   int64   bar length in nanoseconds
+ *   8  startNanos      int64   bar start, nanoseconds since epoch, UTC
+ *  16  openMantissa    int64   prices scaled by 10^scale
+ *  24  highMantissa    int64
+ *  32  lowMantissa     int64
+ *  40  closeMantissa   int64
+ *  48  tickCount       int32
+ *  52  scale           uint8
+ * </pre>
+ * followed by the variable length fields instrumentId and vendorId, encoded as in {@link PriceEncoder}.
+ */
+public final class BarCodec {
+
+    public static final int TEMPLATE_ID = 6;
+    static final int BLOCK_LENGTH = 53;
+
+    private static final int BLOCK_OFFSET = MessageHeaderEncoder.ENCODED_LENGTH;
+    private static final int VAR_DATA_OFFSET = BLOCK_OFFSET + BLOCK_LENGTH;
+
+    private BarCodec() {
+    }
+
+    /**
+     * @return total message length including the header.
+     */
+    public static int encodedLength(Bar bar) {
+        return VAR_DATA_OFFSET + PriceEncoder.varStringLength(bar.getInstrumentId())
+                + PriceEncoder.varStringLength(bar.getVendorId());
+    }
+
+    /**
+     * @return total number of bytes written.
+     */
+    public static int encode(Bar bar, MutableDirectBuffer buffer, int offset) {
+        buffer.putShort(offset, (short) BLOCK_LENGTH, BYTE_ORDER);
+        buffer.putShort(offset + 2, (short) TEMPLATE_ID, BYTE_ORDER);
+        buffer.putShort(offset + 4, (short) PriceEncoder.SCHEMA_ID, BYTE_ORDER);
+        buffer.putShort(offset + 6, (short) PriceEncoder.SCHEMA_VERSION, BYTE_ORDER);
+        buffer.putLong(offset + BLOCK_OFFSET, bar.intervalNanos(), BYTE_ORDER);
+        buffer.putLong(offset + BLOCK_OFFSET + 8, bar.startNanos(), BYTE_ORDER);
+        buffer.putLong(offset + BLOCK_OFFSET + 16, bar.openMantissa(), BYTE_ORDER);
+        buffer.putLong(offset + BLOCK_OFFSET + 24, bar.highMantissa(), BYTE_ORDER);
+        buffer.putLong(offset + BLOCK_OFFSET + 32, bar.lowMantissa(), BYTE_ORDER);
+        buffer.putLong(offset + BLOCK_OFFSET + 40, bar.closeMantissa(), BYTE_ORDER);
+        buffer.putInt(offset + BLOCK_OFFSET + 48, bar.getTickCount(), BYTE_ORDER);
+        buffer.putByte(offset + BLOCK_OFFSET + 52, (byte) bar.scale());
+        int limit = PriceEncoder.putVarString(buffer, offset + VAR_DATA_OFFSET, bar.getInstrumentId());
+        limit = PriceEncoder.putVarString(buffer, limit, bar.getVendorId());
+        return limit - offset;
+    }
+
+    /**
+     * @return true if the buffer holds a complete bar message at the given offset.
+     */
+    public static boolean isBarMessage(DirectBuffer buffer, int offset, int length) {
+        if (length < VAR_DATA_OFFSET
+                || (buffer.getShort(offset + 2, BYTE_ORDER) & 0xFFFF) != TEMPLATE_ID
+                || (buffer.getShort(offset + 4, BYTE_ORDER) & 0xFFFF) != PriceEncoder.SCHEMA_ID) {
+            return false;
+        }
+        int limit = offset + VAR_DATA_OFFSET;
+        for (int i = 0; i < 2; i++) {
+            if (limit >= offset + length) {
+                return false;
+            }
+            limit += PriceEncoder.VAR_DATA_HEADER_LENGTH + (buffer.getByte(limit) & 0xFF);
+        }
+        return limit <= offset + length;
+    }
+
+    /**
+     * Decodes a message checked with {@link #isBarMessage}.
+     */
+    public static Bar decode(DirectBuffer buffer, int offset) {
+        int vendorIndex = offset + VAR_DATA_OFFSET + PriceEncoder.VAR_DATA_HEADER_LENGTH
+                + (buffer.getByte(offset + VAR_DATA_OFFSET) & 0xFF);
+        return new Bar(varString(buffer, offset + VAR_DATA_OFFSET), varString(buffer, vendorIndex),
+                buffer.getLong(offset + BLOCK_OFFSET, BYTE_ORDER),
+                buffer.getLong(offset + BLOCK_OFFSET + 8, BYTE_ORDER),
+                buffer.getLong(offset + BLOCK_OFFSET + 16, BYTE_ORDER),
+                buffer.getLong(offset + BLOCK_OFFSET + 24, BYTE_ORDER),
+                buffer.getLong(offset + BLOCK_OFFSET + 32, BYTE_ORDER),
+                buffer.getLong(offset + BLOCK_OFFSET + 40, BYTE_ORDER),
+                buffer.getByte(offset + BLOCK_OFFSET + 52) & 0xFF,
+                buffer.getInt(offset + BLOCK_OFFSET + 48, BYTE_ORDER));
+    }
+
+    private static String varString(DirectBuffer buffer, int index) {
+        return buffer.getStringWithoutLengthUtf8(index + PriceEncoder.VAR_DATA_HEADER_LENGTH,
+                buffer.getByte(index) & 0xFF);
+    }
+}
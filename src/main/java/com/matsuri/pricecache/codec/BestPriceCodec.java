@@ -0,0 +1,149 @@
+package com.matsuri.pricecache.codec;
+
+import com.matsuri.pricecache.domain.BestPrice;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import static com.matsuri.pricecache.codec.MessageHeaderEncoder.BYTE_ORDER;
+
+/**
+ * Binary message of a consolidated best bid/offer change, in the message schema of {@link PriceEncoder}.
+ * <p>
+ * Fixed block (little endian):
+ * <pre>
+ *   0  bidMantissa     int64   best bid scaled by 10^bidScale
+ *   8  askMantissa     int64   best ask scaled by 10^askScale
+ *  16  timestampNanos  int64   time of the later of the two quotes, nanoseconds since epoch, UTC
+ *  24  bidScale        uint8
+ *  25  askScale        uint8
+ * </pre>
+ * followed by the variable length fields instrumentId, bidVendorId and askVendorId, encoded as in
+ * {@link PriceEncoder}. An instrument left without quotes is sent with zero prices and empty vendor ids, see
+ * {@link #encodeCleared}.
+ */
+public final class BestPriceCodec {
+
+    public static final int TEMPLATE_ID = 5;
+    static final int BLOCK_LENGTH = 26;
+
+    private static final int BLOCK_OFFSET = MessageHeaderEncoder.ENCODED_LENGTH;
+    private static final int VAR_DATA_OFFSET = BLOCK_OFFSET + BLOCK_LENGTH;
+
+    private BestPriceCodec() {
+    }
+
+    /**
+     * @return total message length including the header.
+     */
+    public static int encodedLength(BestPrice bestPrice) {
+        return VAR_DATA_OFFSET + PriceEncoder.varStringLength(bestPrice.getInstrumentId())
+                + PriceEncoder.varStringLength(bestPrice.getBidVendorId())
+                + PriceEncoder.varStringLength(bestPrice.getAskVendorId());
+    }
+
+    /**
+     * @return total number of bytes written.
+     */
+    public static int encode(BestPrice bestPrice, MutableDirectBuffer buffer, int offset) {
+        applyHeader(buffer, offset);
+        buffer.putLong(offset + BLOCK_OFFSET, bestPrice.bid().bidMantissa(), BYTE_ORDER);
+        buffer.putLong(offset + BLOCK_OFFSET + 8, bestPrice.ask().askMantissa(), BYTE_ORDER);
+        buffer.putLong(offset + BLOCK_OFFSET + 16, bestPrice.timestampNanos(), BYTE_ORDER);
+        buffer.putByte(offset + BLOCK_OFFSET + 24, (byte) bestPrice.bid().scale());
+        buffer.putByte(offset + BLOCK_OFFSET + 25, (byte) bestPrice.ask().scale());
+        int limit = PriceEncoder.putVarString(buffer, offset + VAR_DATA_OFFSET, bestPrice.getInstrumentId());
+        limit = PriceEncoder.putVarString(buffer, limit, bestPrice.getBidVendorId());
+        limit = PriceEncoder.putVarString(buffer, limit, bestPrice.getAskVendorId());
+        return limit - offset;
+    }
+
+    /**
+     * Encodes that the instrument has no best bid/offer any more.
+     *
+     * @return total number of bytes written.
+     */
+    public static int encodeCleared(String instrumentId, MutableDirectBuffer buffer, int offset) {
+        applyHeader(buffer, offset);
+        buffer.setMemory(offset + BLOCK_OFFSET, BLOCK_LENGTH, (byte) 0);
+        int limit = PriceEncoder.putVarString(buffer, offset + VAR_DATA_OFFSET, instrumentId);
+        limit = PriceEncoder.putVarString(buffer, limit, "");
+        limit = PriceEncoder.putVarString(buffer, limit, "");
+        return limit - offset;
+    }
+
+    /**
+     * @return true if the message says the instrument has no quotes left.
+     */
+    public static boolean isCleared(DirectBuffer buffer, int offset) {
+        int bidVendorIndex = offset + VAR_DATA_OFFSET + PriceEncoder.VAR_DATA_HEADER_LENGTH
+                + (buffer.getByte(offset + VAR_DATA_OFFSET) & 0xFF);
+        return (buffer.getByte(bidVendorIndex) & 0xFF) == 0;
+    }
+
+    /**
+     * @return true if the buffer holds a complete best bid/offer message at the given offset.
+     */
+    public static boolean isBestPriceMessage(DirectBuffer buffer, int offset, int length) {
+        if (length < VAR_DATA_OFFSET
+                || (buffer.getShort(offset + 2, BYTE_ORDER) & 0xFFFF) != TEMPLATE_ID
+                || (buffer.getShort(offset + 4, BYTE_ORDER) & 0xFFFF) != PriceEncoder.SCHEMA_ID) {
+            return false;
+        }
+        int limit = offset + VAR_DATA_OFFSET;
+        for (int i = 0; i < 3; i++) {
+            if (limit >= offset + length) {
+                return false;
+            }
+            limit += PriceEncoder.VAR_DATA_HEADER_LENGTH + (buffer.getByte(limit) & 0xFF);
+        }
+        return limit <= offset + length;
+    }
+
+    public static long bidMantissa(DirectBuffer buffer, int offset) {
+        return buffer.getLong(offset + BLOCK_OFFSET, BYTE_ORDER);
+    }
+
+    public static long askMantissa(DirectBuffer buffer, int offset) {
+        return buffer.getLong(offset + BLOCK_OFFSET + 8, BYTE_ORDER);
+    }
+
+    public static long timestampNanos(DirectBuffer buffer, int offset) {
+        return buffer.getLong(offset + BLOCK_OFFSET + 16, BYTE_ORDER);
+    }
+
+    public static int bidScale(DirectBuffer buffer, int offset) {
+        return buffer.getByte(offset + BLOCK_OFFSET + 24) & 0xFF;
+    }
+
+    public static int askScale(DirectBuffer buffer, int offset) {
+        return buffer.getByte(offset + BLOCK_OFFSET + 25) & 0xFF;
+    }
+
+    public static String instrumentId(DirectBuffer buffer, int offset) {
+        return varString(buffer, offset, 0);
+    }
+
+    public static String bidVendorId(DirectBuffer buffer, int offset) {
+        return varString(buffer, offset, 1);
+    }
+
+    public static String askVendorId(DirectBuffer buffer, int offset) {
+        return varString(buffer, offset, 2);
+    }
+
+    private static void applyHeader(MutableDirectBuffer buffer, int offset) {
+        buffer.putShort(offset, (short) BLOCK_LENGTH, BYTE_ORDER);
+        buffer.putShort(offset + 2, (short) TEMPLATE_ID, BYTE_ORDER);
+        buffer.putShort(offset + 4, (short) PriceEncoder.SCHEMA_ID, BYTE_ORDER);
+        buffer.putShort(offset + 6, (short) PriceEncoder.SCHEMA_VERSION, BYTE_ORDER);
+    }
+
+    private static String varString(DirectBuffer buffer, int offset, int field) {
+        int index = offset + VAR_DATA_OFFSET;
+        for (int i = 0; i < field; i++) {
+            index += PriceEncoder.VAR_DATA_HEADER_LENGTH + (buffer.getByte(index) & 0xFF);
+        }
+        return buffer.getStringWithoutLengthUtf8(index + PriceEncoder.VAR_DATA_HEADER_LENGTH,
+                buffer.getByte(index) & 0xFF);
+    }
+}
@@ -0,0 +1,42 @@
+package com.matsuri.pricecache.codec;
+
+import org.agrona.DirectBuffer;
+
+import static com.matsuri.pricecache.codec.MessageHeaderEncoder.BYTE_ORDER;
+
+/**
+ * Flyweight decoder for the binary message header, see {@link MessageHeaderEncoder} for the layout.
+ */
+public class MessageHeaderDecoder {
+
+    public static final int ENCODED_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH;
+
+    private DirectBuffer buffer;
+    private int offset;
+
+    public MessageHeaderDecoder wrap(DirectBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int encodedLength() {
+        return ENCODED_LENGTH;
+    }
+
+    public int blockLength() {
+        return buffer.getShort(offset, BYTE_ORDER) & 0xFFFF;
+    }
+
+    public int templateId() {
+        return buffer.getShort(offset + 2, BYTE_ORDER) & 0xFFFF;
+    }
+
+    public int schemaId() {
+        return buffer.getShort(offset + 4, BYTE_ORDER) & 0xFFFF;
+    }
+
+    public int version() {
+        return buffer.getShort(offset + 6, BYTE_ORDER) & 0xFFFF;
+    }
+}
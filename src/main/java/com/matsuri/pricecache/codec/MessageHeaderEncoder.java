@@ -0,0 +1,48 @@
+package com.matsuri.pricecache.codec;
+
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.ByteOrder;
+
+/**
+ * Flyweight encoder for the fixed 8 byte header preceding every binary message.
+ * Layout (little endian): blockLength uint16, templateId uint16, schemaId uint16, version uint16.
+ */
+public class MessageHeaderEncoder {
+
+    public static final int ENCODED_LENGTH = 8;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private MutableDirectBuffer buffer;
+    private int offset;
+
+    public MessageHeaderEncoder wrap(MutableDirectBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public int encodedLength() {
+        return ENCODED_LENGTH;
+    }
+
+    public MessageHeaderEncoder blockLength(int value) {
+        buffer.putShort(offset, (short) value, BYTE_ORDER);
+        return this;
+    }
+
+    public MessageHeaderEncoder templateId(int value) {
+        buffer.putShort(offset + 2, (short) value, BYTE_ORDER);
+        return this;
+    }
+
+    public MessageHeaderEncoder schemaId(int value) {
+        buffer.putShort(offset + 4, (short) value, BYTE_ORDER);
+        return this;
+    }
+
+    public MessageHeaderEncoder version(int value) {
+        buffer.putShort(offset + 6, (short) value, BYTE_ORDER);
+        return this;
+    }
+}
@@ -0,0 +1,102 @@
+package com.matsuri.pricecache.codec;
+
+import com.matsuri.pricecache.domain.CurrencyCodes;
+import com.matsuri.pricecache.domain.Price;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * Converts between {@link Price} and its binary message representation.
+ * Holds reusable flyweights so instances are not thread safe, use one per thread.
+ */
+public class PriceCodec {
+
+    private final MessageHeaderEncoder headerEncoder = new MessageHeaderEncoder();
+    private final MessageHeaderDecoder headerDecoder = new MessageHeaderDecoder();
+    private final PriceEncoder priceEncoder = new PriceEncoder();
+    private final PriceDecoder priceDecoder = new PriceDecoder();
+
+    /**
+     * @return total message length including the header.
+     */
+    public static int encodedLength(Price price) {
+        return MessageHeaderEncoder.ENCODED_LENGTH + PriceEncoder.BLOCK_LENGTH
+                + PriceEncoder.varStringLength(price.getInstrumentId())
+                + PriceEncoder.varStringLength(price.getVendorId())
+                + PriceEncoder.varStringLength(price.getCurrency());
+    }
+
+    /**
+     * Encodes the price with its header at the given offset.
+     *
+     * @return total number of bytes written.
+     */
+    public int encode(Price price, MutableDirectBuffer buffer, int offset) {
+        priceEncoder.wrapAndApplyHeader(buffer, offset, headerEncoder)
+                .bidMantissa(price.bidMantissa())
+                .askMantissa(price.askMantissa())
+                .timestampNanos(price.timestampNanos())
+                .scale(price.scale())
+                .instrumentId(price.getInstrumentId())
+                .vendorId(price.getVendorId())
+                .currency(price.getCurrency());
+        return MessageHeaderEncoder.ENCODED_LENGTH + priceEncoder.encodedLength();
+    }
+
+    /**
+     * @return true if the buffer holds a binary price message at the given offset.
+     */
+    public boolean isPriceMessage(DirectBuffer buffer, int offset, int length) {
+        if (length < MessageHeaderDecoder.ENCODED_LENGTH) {
+            return false;
+        }
+        headerDecoder.wrap(buffer, offset);
+        return headerDecoder.schemaId() == PriceEncoder.SCHEMA_ID && headerDecoder.templateId() == PriceEncoder.TEMPLATE_ID;
+    }
+
+    public Price decode(DirectBuffer buffer, int offset) {
+        PriceDecoder decoder = priceDecoder.wrapAndCheckHeader(buffer, offset, headerDecoder);
+        long bidMantissa = decoder.bidMantissa();
+        long askMantissa = decoder.askMantissa();
+        int scale = decoder.scale();
+        long timestampNanos = decoder.timestampNanos();
+        String instrumentId = decoder.instrumentId();
+        String vendorId = decoder.vendorId();
+        short currencyCode = CurrencyCodes.codeOf(decoder.currency());
+        return new Price(instrumentId, vendorId, bidMantissa, askMantissa, scale, timestampNanos, currencyCode);
+    }
+
+    /**
+     * Decodes a message received from outside, checking it fits the given length, with its strings looked up in
+     * the cache so known symbols do not allocate.
+     *
+     * @throws IllegalStateException if the buffer does not hold a complete price message.
+     * @throws IllegalArgumentException if the decoded price is invalid.
+     */
+    public Price decode(DirectBuffer buffer, int offset, int length, StringCache strings) {
+        if (!isPriceMessage(buffer, offset, length) || headerDecoder.blockLength() < PriceEncoder.BLOCK_LENGTH
+                || MessageHeaderDecoder.ENCODED_LENGTH + headerDecoder.blockLength() > length) {
+            throw new IllegalStateException("Not a complete price message");
+        }
+        PriceDecoder decoder = priceDecoder.wrapAndCheckHeader(buffer, offset, headerDecoder);
+        int end = offset + length;
+        long bidMantissa = decoder.bidMantissa();
+        long askMantissa = decoder.askMantissa();
+        int scale = decoder.scale();
+        long timestampNanos = decoder.timestampNanos();
+        checkVarField(buffer, decoder.limit(), end);
+        String instrumentId = decoder.instrumentId(strings);
+        checkVarField(buffer, decoder.limit(), end);
+        String vendorId = decoder.vendorId(strings);
+        checkVarField(buffer, decoder.limit(), end);
+        short currencyCode = CurrencyCodes.codeOf(decoder.currency(strings));
+        return new Price(instrumentId, vendorId, bidMantissa, askMantissa, scale, timestampNanos, currencyCode);
+    }
+
+    private static void checkVarField(DirectBuffer buffer, int fieldOffset, int end) {
+        if (fieldOffset + PriceEncoder.VAR_DATA_HEADER_LENGTH > end
+                || fieldOffset + PriceEncoder.VAR_DATA_HEADER_LENGTH + (buffer.getByte(fieldOffset) & 0xFF) > end) {
+            throw new IllegalStateException("Truncated price message");
+        }
+    }
+}
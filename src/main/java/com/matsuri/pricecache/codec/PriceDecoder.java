@@ -0,0 +1,142 @@
+package com.matsuri.pricecache.codec;
+
+import org.agrona.DirectBuffer;
+
+import static com.matsuri.pricecache.codec.MessageHeaderEncoder.BYTE_ORDER;
+
+/**
+ * Flyweight decoder for the binary price message, see {@link PriceEncoder} for the layout.
+ * Fixed fields can be read in any order, variable length fields must be read (or skipped) in schema order.
+ */
+public class PriceDecoder {
+
+    private DirectBuffer buffer;
+    private int offset;
+    private int actingBlockLength;
+    private int actingVersion;
+    private int limit;
+
+    public PriceDecoder wrap(DirectBuffer buffer, int offset, int actingBlockLength, int actingVersion) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.actingBlockLength = actingBlockLength;
+        this.actingVersion = actingVersion;
+        this.limit = offset + actingBlockLength;
+        return this;
+    }
+
+    /**
+     * Wraps the message at the given offset after validating its header.
+     *
+     * @throws IllegalStateException if the header does not describe a price message of a supported schema.
+     */
+    public PriceDecoder wrapAndCheckHeader(DirectBuffer buffer, int offset, MessageHeaderDecoder headerDecoder) {
+        headerDecoder.wrap(buffer, offset);
+        if (headerDecoder.schemaId() != PriceEncoder.SCHEMA_ID || headerDecoder.templateId() != PriceEncoder.TEMPLATE_ID) {
+            throw new IllegalStateException("Not a price message, schemaId=" + headerDecoder.schemaId()
+                    + " templateId=" + headerDecoder.templateId());
+        }
+        return wrap(buffer, offset + MessageHeaderDecoder.ENCODED_LENGTH,
+                headerDecoder.blockLength(), headerDecoder.version());
+    }
+
+    public int actingBlockLength() {
+        return actingBlockLength;
+    }
+
+    public int actingVersion() {
+        return actingVersion;
+    }
+
+    /**
+     * @return number of bytes consumed so far from the start of the fixed block.
+     */
+    public int encodedLength() {
+        return limit - offset;
+    }
+
+    /**
+     * @return buffer offset of the next variable length field.
+     */
+    public int limit() {
+        return limit;
+    }
+
+    public long bidMantissa() {
+        return buffer.getLong(offset, BYTE_ORDER);
+    }
+
+    public long askMantissa() {
+        return buffer.getLong(offset + 8, BYTE_ORDER);
+    }
+
+    public long timestampNanos() {
+        return buffer.getLong(offset + 16, BYTE_ORDER);
+    }
+
+    public int scale() {
+        return buffer.getByte(offset + 24) & 0xFF;
+    }
+
+    public int instrumentIdLength() {
+        return varLength();
+    }
+
+    public String instrumentId() {
+        return getVarString();
+    }
+
+    public String instrumentId(StringCache cache) {
+        return getVarString(cache);
+    }
+
+    public int vendorIdLength() {
+        return varLength();
+    }
+
+    public String vendorId() {
+        return getVarString();
+    }
+
+    public String vendorId(StringCache cache) {
+        return getVarString(cache);
+    }
+
+    public int currencyLength() {
+        return varLength();
+    }
+
+    public String currency() {
+        return getVarString();
+    }
+
+    public String currency(StringCache cache) {
+        return getVarString(cache);
+    }
+
+    /**
+     * Advances past the next variable length field without decoding it.
+     */
+    public PriceDecoder skipVarField() {
+        limit += PriceEncoder.VAR_DATA_HEADER_LENGTH + varLength();
+        return this;
+    }
+
+    private int varLength() {
+        return buffer.getByte(limit) & 0xFF;
+    }
+
+    private String getVarString() {
+        int length = varLength();
+        String value = buffer.getStringWithoutLengthUtf8(limit + PriceEncoder.VAR_DATA_HEADER_LENGTH, length);
+        limit += PriceEncoder.VAR_DATA_HEADER_LENGTH + length;
+        return value;
+    }
+
+    private String getVarString(StringCache cache) {
+        int length = varLength();
+        String value = cache.get(buffer, limit + PriceEncoder.VAR_DATA_HEADER_LENGTH, length);
+        limit += PriceEncoder.VAR_DATA_HEADER_LENGTH + length;
+        return value;
+    }
+}
@@ -0,0 +1,138 @@
+package com.matsuri.pricecache.codec;
+
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.matsuri.pricecache.codec.MessageHeaderEncoder.BYTE_ORDER;
+
+/**
+ * Flyweight encoder for the binary price message, modelled on SBE generated code.
+ * <p>
+ * Fixed block (little endian):
+ * <pre>
+ *   0  bidMantissa     int64   bid price scaled by 10^scale
+ *   8  askMantissa     int64   ask price scaled by 10^scale
+ *  16  timestampNanos  int64   nanoseconds since epoch, UTC
+ *  24  scale           uint8   number of decimal places of both mantissas
+ * </pre>
+ * followed by the variable length fields instrumentId, vendorId and currency, each an uint8 length
+ * followed by UTF-8 bytes. Variable length fields must be written in that order after the fixed block.
+ */
+public class PriceEncoder {
+
+    public static final int SCHEMA_ID = 1;
+    public static final int SCHEMA_VERSION = 1;
+    public static final int TEMPLATE_ID = 1;
+    public static final int BLOCK_LENGTH = 25;
+    public static final int MAX_VAR_DATA_LENGTH = 255;
+    static final int VAR_DATA_HEADER_LENGTH = 1;
+
+    private MutableDirectBuffer buffer;
+    private int offset;
+    private int limit;
+
+    public PriceEncoder wrap(MutableDirectBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.limit = offset + BLOCK_LENGTH;
+        return this;
+    }
+
+    public PriceEncoder wrapAndApplyHeader(MutableDirectBuffer buffer, int offset, MessageHeaderEncoder headerEncoder) {
+        headerEncoder.wrap(buffer, offset)
+                .blockLength(BLOCK_LENGTH)
+                .templateId(TEMPLATE_ID)
+                .schemaId(SCHEMA_ID)
+                .version(SCHEMA_VERSION);
+        return wrap(buffer, offset + MessageHeaderEncoder.ENCODED_LENGTH);
+    }
+
+    /**
+     * @return number of bytes written from the start of the fixed block, excluding the message header.
+     */
+    public int encodedLength() {
+        return limit - offset;
+    }
+
+    public PriceEncoder bidMantissa(long value) {
+        buffer.putLong(offset, value, BYTE_ORDER);
+        return this;
+    }
+
+    public PriceEncoder askMantissa(long value) {
+        buffer.putLong(offset + 8, value, BYTE_ORDER);
+        return this;
+    }
+
+    public PriceEncoder timestampNanos(long value) {
+        buffer.putLong(offset + 16, value, BYTE_ORDER);
+        return this;
+    }
+
+    public PriceEncoder scale(int value) {
+        buffer.putByte(offset + 24, (byte) value);
+        return this;
+    }
+
+    public PriceEncoder instrumentId(String value) {
+        limit = putVarString(limit, value);
+        return this;
+    }
+
+    public PriceEncoder vendorId(String value) {
+        limit = putVarString(limit, value);
+        return this;
+    }
+
+    public PriceEncoder currency(String value) {
+        limit = putVarString(limit, value);
+        return this;
+    }
+
+    /**
+     * @return the number of bytes a string occupies as a variable length field, including its length prefix.
+     */
+    public static int varStringLength(String value) {
+        return VAR_DATA_HEADER_LENGTH + utf8Length(value);
+    }
+
+    private int putVarString(int index, String value) {
+        return putVarString(buffer, index, value);
+    }
+
+    /**
+     * @return the index after the field.
+     */
+    static int putVarString(MutableDirectBuffer buffer, int index, String value) {
+        int length = utf8Length(value);
+        if (length > MAX_VAR_DATA_LENGTH) {
+            throw new IllegalArgumentException("Value exceeds " + MAX_VAR_DATA_LENGTH + " bytes: " + value);
+        }
+        buffer.putByte(index, (byte) length);
+        if (length == value.length()) {
+            buffer.putStringWithoutLengthAscii(index + VAR_DATA_HEADER_LENGTH, value);
+        } else {
+            buffer.putBytes(index + VAR_DATA_HEADER_LENGTH, value.getBytes(StandardCharsets.UTF_8));
+        }
+        return index + VAR_DATA_HEADER_LENGTH + length;
+    }
+
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0, size = value.length(); i < size; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
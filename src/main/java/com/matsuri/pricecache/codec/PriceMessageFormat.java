@@ -0,0 +1,11 @@
+package com.matsuri.pricecache.codec;
+
+/**
+ * Wire format used for price messages distributed over Aeron.
+ */
+public enum PriceMessageFormat {
+    /** Fixed layout binary encoding, see {@link PriceEncoder}. */
+    BINARY,
+    /** UTF-8 JSON, kept as a fallback for consumers that cannot decode the binary format. */
+    JSON
+}
@@ -0,0 +1,124 @@
+package com.matsuri.pricecache.codec;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import static com.matsuri.pricecache.codec.MessageHeaderEncoder.BYTE_ORDER;
+
+/**
+ * Binary control messages of the late-joiner snapshot protocol, in the message schema of {@link PriceEncoder}.
+ * <p>
+ * A consumer sends a request with a correlation id and the live partition it follows on the request stream. The
+ * cache answers on the snapshot stream with a begin message, one price message per stored price of the partition
+ * and an end message, all carrying the correlation id so consumers can ignore snapshots requested by others. Fixed
+ * blocks (little endian):
+ * <pre>
+ *   request  0 correlationId  int64
+ *            8 partition      int32  index of the live partition, its stream id less the first stream id
+ *   begin    0 correlationId  int64
+ *            8 livePosition   int64  position of the live price stream the snapshot is consistent with
+ *           16 sequence       int64  change sequence of the repository when the snapshot started
+ *   end      0 correlationId  int64
+ *            8 count          int64  number of price messages sent
+ * </pre>
+ * Prices published on the live stream up to {@code livePosition} are in the snapshot, or a newer price for the
+ * same key is. Prices published after {@code livePosition} may be in the snapshot as well, having been queued for
+ * the live stream while the snapshot was taken. A consumer applies the snapshot, then the live messages ending
+ * after {@code livePosition} whose timestamp is newer than the snapshot's price for the key.
+ */
+public final class SnapshotCodec {
+
+    public static final int REQUEST_TEMPLATE_ID = 2;
+    public static final int BEGIN_TEMPLATE_ID = 3;
+    public static final int END_TEMPLATE_ID = 4;
+    public static final int NOT_A_SNAPSHOT_MESSAGE = -1;
+
+    static final int REQUEST_BLOCK_LENGTH = 12;
+    static final int BEGIN_BLOCK_LENGTH = 24;
+    static final int END_BLOCK_LENGTH = 16;
+
+    private static final int CORRELATION_ID_OFFSET = MessageHeaderEncoder.ENCODED_LENGTH;
+    private static final int SECOND_FIELD_OFFSET = CORRELATION_ID_OFFSET + 8;
+    private static final int THIRD_FIELD_OFFSET = CORRELATION_ID_OFFSET + 16;
+
+    private SnapshotCodec() {
+    }
+
+    /**
+     * @return total number of bytes written.
+     */
+    public static int encodeRequest(MutableDirectBuffer buffer, int offset, long correlationId, int partition) {
+        applyHeader(buffer, offset, REQUEST_BLOCK_LENGTH, REQUEST_TEMPLATE_ID);
+        buffer.putLong(offset + CORRELATION_ID_OFFSET, correlationId, BYTE_ORDER);
+        buffer.putInt(offset + SECOND_FIELD_OFFSET, partition, BYTE_ORDER);
+        return MessageHeaderEncoder.ENCODED_LENGTH + REQUEST_BLOCK_LENGTH;
+    }
+
+    public static int encodeBegin(MutableDirectBuffer buffer, int offset, long correlationId, long livePosition,
+                                  long sequence) {
+        applyHeader(buffer, offset, BEGIN_BLOCK_LENGTH, BEGIN_TEMPLATE_ID);
+        buffer.putLong(offset + CORRELATION_ID_OFFSET, correlationId, BYTE_ORDER);
+        buffer.putLong(offset + SECOND_FIELD_OFFSET, livePosition, BYTE_ORDER);
+        buffer.putLong(offset + THIRD_FIELD_OFFSET, sequence, BYTE_ORDER);
+        return MessageHeaderEncoder.ENCODED_LENGTH + BEGIN_BLOCK_LENGTH;
+    }
+
+    public static int encodeEnd(MutableDirectBuffer buffer, int offset, long correlationId, long count) {
+        applyHeader(buffer, offset, END_BLOCK_LENGTH, END_TEMPLATE_ID);
+        buffer.putLong(offset + CORRELATION_ID_OFFSET, correlationId, BYTE_ORDER);
+        buffer.putLong(offset + SECOND_FIELD_OFFSET, count, BYTE_ORDER);
+        return MessageHeaderEncoder.ENCODED_LENGTH + END_BLOCK_LENGTH;
+    }
+
+    /**
+     * @return the template id of a complete snapshot control message, or {@link #NOT_A_SNAPSHOT_MESSAGE}.
+     */
+    public static int templateId(DirectBuffer buffer, int offset, int length) {
+        if (length < MessageHeaderDecoder.ENCODED_LENGTH
+                || (buffer.getShort(offset + 4, BYTE_ORDER) & 0xFFFF) != PriceEncoder.SCHEMA_ID) {
+            return NOT_A_SNAPSHOT_MESSAGE;
+        }
+        int templateId = buffer.getShort(offset + 2, BYTE_ORDER) & 0xFFFF;
+        int blockLength = switch (templateId) {
+            case REQUEST_TEMPLATE_ID -> REQUEST_BLOCK_LENGTH;
+            case BEGIN_TEMPLATE_ID -> BEGIN_BLOCK_LENGTH;
+            case END_TEMPLATE_ID -> END_BLOCK_LENGTH;
+            default -> -1;
+        };
+        if (blockLength < 0 || length < MessageHeaderDecoder.ENCODED_LENGTH + blockLength) {
+            return NOT_A_SNAPSHOT_MESSAGE;
+        }
+        return templateId;
+    }
+
+    public static long correlationId(DirectBuffer buffer, int offset) {
+        return buffer.getLong(offset + CORRELATION_ID_OFFSET, BYTE_ORDER);
+    }
+
+    /** Request message only. */
+    public static int partition(DirectBuffer buffer, int offset) {
+        return buffer.getInt(offset + SECOND_FIELD_OFFSET, BYTE_ORDER);
+    }
+
+    /** Begin message only. */
+    public static long livePosition(DirectBuffer buffer, int offset) {
+        return buffer.getLong(offset + SECOND_FIELD_OFFSET, BYTE_ORDER);
+    }
+
+    /** Begin message only. */
+    public static long sequence(DirectBuffer buffer, int offset) {
+        return buffer.getLong(offset + THIRD_FIELD_OFFSET, BYTE_ORDER);
+    }
+
+    /** End message only. */
+    public static long count(DirectBuffer buffer, int offset) {
+        return buffer.getLong(offset + SECOND_FIELD_OFFSET, BYTE_ORDER);
+    }
+
+    private static void applyHeader(MutableDirectBuffer buffer, int offset, int blockLength, int templateId) {
+        buffer.putShort(offset, (short) blockLength, BYTE_ORDER);
+        buffer.putShort(offset + 2, (short) templateId, BYTE_ORDER);
+        buffer.putShort(offset + 4, (short) PriceEncoder.SCHEMA_ID, BYTE_ORDER);
+        buffer.putShort(offset + 6, (short) PriceEncoder.SCHEMA_VERSION, BYTE_ORDER);
+    }
+}
@@ -0,0 +1,58 @@
+package com.matsuri.pricecache.codec;
+
+import org.agrona.DirectBuffer;
+import org.agrona.collections.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Direct mapped cache of UTF-8 strings read from buffers, keyed by their bytes, so decoding a recently seen
+ * symbol does not allocate. A slot holds the last string whose bytes hashed to it, a collision simply replaces it.
+ * Not thread safe, use one per decoding thread.
+ */
+public class StringCache {
+
+    private final byte[][] bytes;
+    private final String[] strings;
+    private final int mask;
+
+    public StringCache(int capacity) {
+        int slots = Math.max(16, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+        bytes = new byte[slots][];
+        strings = new String[slots];
+        mask = slots - 1;
+    }
+
+    /**
+     * @return the string encoded in the given range, the cached instance if the bytes match it.
+     */
+    public String get(DirectBuffer buffer, int offset, int length) {
+        int hash = length;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.getByte(offset + i);
+        }
+        int slot = Hashing.hash(hash, mask);
+        byte[] cached = bytes[slot];
+        if (cached != null && matches(cached, buffer, offset, length)) {
+            return strings[slot];
+        }
+        byte[] copy = new byte[length];
+        buffer.getBytes(offset, copy);
+        String value = new String(copy, StandardCharsets.UTF_8);
+        bytes[slot] = copy;
+        strings[slot] = value;
+        return value;
+    }
+
+    private static boolean matches(byte[] cached, DirectBuffer buffer, int offset, int length) {
+        if (cached.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cached[i] != buffer.getByte(offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
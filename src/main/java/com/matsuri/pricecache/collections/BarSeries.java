@@ -0,0 +1,256 @@
+package com.matsuri.pricecache.collections;
+
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.domain.Price;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mid price bars of one instrument/vendor over one interval, aggregated tick by tick. The open bar and a window of
+ * the last {@code capacity} closed bars are held in primitive arrays allocated up front, only a closing bar
+ * creates a {@link Bar}.
+ * <p>
+ * Bars are aligned to multiples of the interval since the epoch and follow the tick timestamps: a tick of a later
+ * interval closes the open bar, {@link #closeIfEnded} closes it once the interval is over without one. Ticks of an
+ * interval already closed are ignored. A bar keeps its mids at the scale of its finest tick plus one digit, up to
+ * {@link Price#MAX_SCALE}, so the mid of two mantissas is exact: a finer tick rescales the open bar, whatever order
+ * the ticks of mixed scales arrive in. Writers are serialized by a seqlock, readers copy optimistically.
+ */
+public class BarSeries {
+
+    private static final long NO_BAR = Long.MIN_VALUE;
+    private static final long[] POWERS_OF_TEN = new long[Price.MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final String instrumentId;
+    private final String vendorId;
+    private final long intervalNanos;
+    private final int capacity;
+    private final long[] starts;
+    private final long[] opens;
+    private final long[] highs;
+    private final long[] lows;
+    private final long[] closes;
+    private final int[] tickCounts;
+    private final int[] scales;
+    private final AtomicLong version = new AtomicLong();
+    // written under the seqlock
+    private long closedCount;
+    private long lastClosedStart = NO_BAR;
+    private long openStart = NO_BAR;
+    private long open;
+    private long high;
+    private long low;
+    private long close;
+    private int openTicks;
+    private int openScale;
+
+    public BarSeries(String instrumentId, String vendorId, long intervalNanos, int capacity) {
+        if (intervalNanos <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Bar interval and capacity must be positive");
+        }
+        this.instrumentId = instrumentId;
+        this.vendorId = vendorId;
+        this.intervalNanos = intervalNanos;
+        this.capacity = capacity;
+        starts = new long[capacity];
+        opens = new long[capacity];
+        highs = new long[capacity];
+        lows = new long[capacity];
+        closes = new long[capacity];
+        tickCounts = new int[capacity];
+        scales = new int[capacity];
+    }
+
+    public long intervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * Adds the tick's mid price to its bar.
+     *
+     * @return the bar the tick closed, null if it closed none.
+     */
+    public Bar onTick(Price price) {
+        long start = Math.floorDiv(price.timestampNanos(), intervalNanos) * intervalNanos;
+        long lockedVersion = lock();
+        Bar closed = null;
+        try {
+            if (start <= lastClosedStart || (openStart != NO_BAR && start < openStart)) {
+                return null; // late for a closed bar
+            }
+            int tickScale = Math.min(price.scale() + 1, Price.MAX_SCALE);
+            if (start != openStart) {
+                long mid = mid(price.bidMantissa(), price.askMantissa(), price.scale(), tickScale);
+                if (mid < 0) {
+                    return null; // out of range
+                }
+                closed = closeOpenBar();
+                openStart = start;
+                openScale = tickScale;
+                open = high = low = close = mid;
+                openTicks = 1;
+            } else {
+                if (tickScale > openScale && !rescaleOpenBar(tickScale)) {
+                    return null; // the bar's mids do not fit at the tick's scale
+                }
+                long mid = mid(price.bidMantissa(), price.askMantissa(), price.scale(), openScale);
+                if (mid < 0) {
+                    return null;
+                }
+                high = Math.max(high, mid);
+                low = Math.min(low, mid);
+                close = mid;
+                openTicks++;
+            }
+        } finally {
+            version.setRelease(lockedVersion + 2);
+        }
+        return closed;
+    }
+
+    /**
+     * Closes the open bar if its interval ended at or before the given time.
+     *
+     * @return the closed bar, null if none was closed.
+     */
+    public Bar closeIfEnded(long nowNanos) {
+        if (openStart == NO_BAR || openStart > nowNanos - intervalNanos) {
+            return null; // racy pre-check, rechecked under the lock
+        }
+        long lockedVersion = lock();
+        try {
+            return openStart != NO_BAR && openStart <= nowNanos - intervalNanos ? closeOpenBar() : null;
+        } finally {
+            version.setRelease(lockedVersion + 2);
+        }
+    }
+
+    /**
+     * @return the retained closed bars starting within {@code [fromNanos, toNanos]}, oldest first.
+     */
+    public List<Bar> find(long fromNanos, long toNanos) {
+        long[] foundStarts = new long[capacity];
+        long[] foundOpens = new long[capacity];
+        long[] foundHighs = new long[capacity];
+        long[] foundLows = new long[capacity];
+        long[] foundCloses = new long[capacity];
+        int[] foundTicks = new int[capacity];
+        int[] foundScales = new int[capacity];
+        int found;
+        while (true) {
+            long currentVersion = version.getAcquire();
+            if ((currentVersion & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long count = closedCount;
+            found = 0;
+            for (long bar = Math.max(0, count - capacity); bar < count; bar++) {
+                int index = (int) (bar % capacity);
+                long start = starts[index];
+                if (start >= fromNanos && start <= toNanos) {
+                    foundStarts[found] = start;
+                    foundOpens[found] = opens[index];
+                    foundHighs[found] = highs[index];
+                    foundLows[found] = lows[index];
+                    foundCloses[found] = closes[index];
+                    foundTicks[found] = tickCounts[index];
+                    foundScales[found] = scales[index];
+                    found++;
+                }
+            }
+            // keep the data loads above from floating below the validating version load
+            VarHandle.acquireFence();
+            if (version.get() == currentVersion) {
+                break;
+            }
+        }
+        List<Bar> bars = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            bars.add(new Bar(instrumentId, vendorId, intervalNanos, foundStarts[i], foundOpens[i], foundHighs[i],
+                    foundLows[i], foundCloses[i], foundScales[i], foundTicks[i]));
+        }
+        return bars;
+    }
+
+    private Bar closeOpenBar() {
+        if (openStart == NO_BAR) {
+            return null;
+        }
+        int index = (int) (closedCount % capacity);
+        starts[index] = openStart;
+        opens[index] = open;
+        highs[index] = high;
+        lows[index] = low;
+        closes[index] = close;
+        tickCounts[index] = openTicks;
+        scales[index] = openScale;
+        closedCount++;
+        lastClosedStart = openStart;
+        openStart = NO_BAR;
+        return new Bar(instrumentId, vendorId, intervalNanos, lastClosedStart, open, high, low, close, openScale,
+                openTicks);
+    }
+
+    /**
+     * Brings the open bar's mids to the finer scale.
+     *
+     * @return false, leaving the bar unchanged, if they do not fit.
+     */
+    private boolean rescaleOpenBar(int targetScale) {
+        long power = POWERS_OF_TEN[targetScale - openScale];
+        // the mids are not negative, so the high bounds them all
+        if (Math.multiplyHigh(high, power) != 0 || high * power < 0) {
+            return false;
+        }
+        open *= power;
+        high *= power;
+        low *= power;
+        close *= power;
+        openScale = targetScale;
+        return true;
+    }
+
+    /**
+     * @return the mid of bid and ask as a mantissa of the target scale, -1 if it does not fit.
+     */
+    static long mid(long bid, long ask, int priceScale, int targetScale) {
+        long sum = bid + ask;
+        if (sum < 0) {
+            return -1;
+        }
+        if (targetScale > priceScale) {
+            // sum / 2 at priceScale is sum * 5 at priceScale + 1
+            long power = POWERS_OF_TEN[targetScale - priceScale - 1] * 5;
+            return Math.multiplyHigh(sum, power) != 0 || sum * power < 0 ? -1 : sum * power;
+        }
+        return sum / 2 / POWERS_OF_TEN[priceScale - targetScale];
+    }
+
+    /**
+     * Takes the write side of the seqlock.
+     *
+     * @return the even version before locking.
+     */
+    private long lock() {
+        while (true) {
+            long current = version.get();
+            if ((current & 1) == 0 && version.compareAndSet(current, current + 1)) {
+                // keep the stores that follow from becoming visible before the odd version
+                VarHandle.storeStoreFence();
+                return current;
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.matsuri.pricecache.collections;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Bounded log of changed {@code long} keys stamped with a global, monotonically increasing sequence number.
+ * <p>
+ * A ring of the last {@code capacity} changes: appending is lock free and never blocks, so old entries are simply
+ * overwritten and readers asking for them are told to resync. Readers only see the contiguous prefix of published
+ * entries, a change whose sequence was taken but not yet published ends the read, so no change is ever skipped.
+ */
+public class ChangeLog {
+
+    /** Returned by {@link #read} when changes after the requested sequence are no longer held. */
+    public static final long RESYNC_REQUIRED = -1L;
+
+    private static final long INVALID = -1L;
+
+    private final int mask;
+    private final AtomicLongArray keys;
+    private final AtomicLongArray sequences;
+    private final AtomicLong sequence = new AtomicLong();
+    // changes before this sequence have been dropped by reset
+    private volatile long floor;
+
+    public ChangeLog(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two: " + capacity);
+        }
+        mask = capacity - 1;
+        keys = new AtomicLongArray(capacity);
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, INVALID);
+        }
+    }
+
+    /**
+     * @return the sequence number stamped on the change.
+     */
+    public long append(long key) {
+        long stamped = sequence.incrementAndGet();
+        int index = (int) (stamped & mask);
+        // invalidate first so a reader can not pair the old sequence with the new key
+        sequences.set(index, INVALID);
+        keys.setRelease(index, key);
+        sequences.setRelease(index, stamped);
+        return stamped;
+    }
+
+    /**
+     * @return the highest sequence number stamped so far, zero if none.
+     */
+    public long lastSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Hands the keys changed after the given sequence to the consumer in sequence order, at most {@code limit}.
+     *
+     * @return the sequence of the last key handed over, {@code since} if there was none, or
+     * {@link #RESYNC_REQUIRED} if changes after {@code since} have been dropped or {@code since} is unknown.
+     */
+    public long read(long since, int limit, LongConsumer consumer) {
+        long last = sequence.get();
+        if (since < floor || since > last || last - since > mask + 1) {
+            return RESYNC_REQUIRED;
+        }
+        long next = since + 1;
+        for (int count = 0; count < limit; count++, next++) {
+            int index = (int) (next & mask);
+            long stamped = sequences.getAcquire(index);
+            if (stamped == INVALID || stamped < next) {
+                if (sequence.get() - next > mask) {
+                    return RESYNC_REQUIRED; // being overwritten by a later lap
+                }
+                break; // not published yet
+            }
+            long key = keys.getAcquire(index);
+            if (stamped != next || sequences.getAcquire(index) != next) {
+                return RESYNC_REQUIRED; // overwritten while reading
+            }
+            consumer.accept(key);
+        }
+        return next - 1;
+    }
+
+    /**
+     * Drops all held changes, readers of any earlier sequence are told to resync. Takes a sequence number of its
+     * own so readers that were up to date resync as well.
+     */
+    public void reset() {
+        floor = sequence.incrementAndGet();
+    }
+}
@@ -0,0 +1,207 @@
+package com.matsuri.pricecache.collections;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Bucketed time index of {@code long} keys, ordered by timestamp so expired keys are found in time proportional
+ * to their number instead of scanning the whole store.
+ * <p>
+ * Keys are added with the timestamp of their value into fixed width buckets. An entry may be stale, the owner
+ * decides in {@link ExpiryHandler#expire} whether the key really expired and otherwise hands back its current
+ * timestamp to be indexed again. Owners therefore only need to add a key when it appears or its timestamp moves
+ * backwards, an entry at an earlier timestamp keeps covering later updates.
+ * <p>
+ * The index remembers the earliest bucket each key has an entry in and ignores adds to that bucket or a later one,
+ * so timestamps jittering backwards, or entries handed back by the owner, do not pile up duplicate entries.
+ * <p>
+ * {@link #add} is thread safe, {@link #expire} runs one caller at a time.
+ */
+public class ExpiryIndex {
+
+    /** Returned by {@link ExpiryHandler#expire} when the key is gone and needs no entry. */
+    public static final long REMOVED = Long.MIN_VALUE;
+
+    private static final int DEADLINE_CHECK_INTERVAL = 32;
+
+    private final long bucketWidthNanos;
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+    // earliest bucket holding an entry of the key
+    private final ConcurrentHashMap<Long, Long> indexedBuckets = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    public interface ExpiryHandler {
+        /**
+         * Removes the key if its current value is older than the cutoff.
+         *
+         * @return {@link #REMOVED} if the key is no longer present, otherwise the timestamp of its current value.
+         */
+        long expire(long key, long cutoffNanos);
+    }
+
+    /**
+     * Key/timestamp pairs of one time slice. A drained bucket is closed so late adders move to a new one.
+     */
+    private static final class Bucket {
+        long[] entries = new long[16];
+        int size;
+        boolean closed;
+
+        synchronized boolean add(long key, long timestampNanos) {
+            if (closed) {
+                return false;
+            }
+            if (size + 2 > entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[size++] = key;
+            entries[size++] = timestampNanos;
+            return true;
+        }
+
+        synchronized long[] close() {
+            closed = true;
+            return Arrays.copyOf(entries, size);
+        }
+
+        /**
+         * Takes out the entries older than the cutoff and keeps the rest.
+         */
+        synchronized long[] removeOlderThan(long cutoffNanos) {
+            long[] expired = new long[size];
+            int expiredSize = 0;
+            int kept = 0;
+            for (int i = 0; i < size; i += 2) {
+                if (entries[i + 1] < cutoffNanos) {
+                    expired[expiredSize++] = entries[i];
+                    expired[expiredSize++] = entries[i + 1];
+                } else {
+                    entries[kept++] = entries[i];
+                    entries[kept++] = entries[i + 1];
+                }
+            }
+            size = kept;
+            return Arrays.copyOf(expired, expiredSize);
+        }
+    }
+
+    public ExpiryIndex(long bucketWidthNanos) {
+        if (bucketWidthNanos <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        this.bucketWidthNanos = bucketWidthNanos;
+    }
+
+    public void add(long key, long timestampNanos) {
+        Long bucketIndex = Math.floorDiv(timestampNanos, bucketWidthNanos);
+        Long indexed = indexedBuckets.get(key);
+        while (true) {
+            if (indexed != null && indexed <= bucketIndex) {
+                return; // the existing entry covers the key
+            }
+            if (indexed == null ? indexedBuckets.putIfAbsent(key, bucketIndex) == null
+                    : indexedBuckets.replace(key, indexed, bucketIndex)) {
+                break;
+            }
+            indexed = indexedBuckets.get(key);
+        }
+        addEntry(key, timestampNanos, bucketIndex);
+    }
+
+    private void addEntry(long key, long timestampNanos, Long bucketIndex) {
+        while (true) {
+            Bucket bucket = buckets.computeIfAbsent(bucketIndex, index -> new Bucket());
+            if (bucket.add(key, timestampNanos)) {
+                return;
+            }
+            // closed by a concurrent expire, make room for a fresh bucket
+            buckets.remove(bucketIndex, bucket);
+        }
+    }
+
+    /**
+     * Hands every key with an entry older than the cutoff to the handler, oldest buckets first, until done or the
+     * time budget is used up. Unprocessed entries are kept for the next call.
+     *
+     * @return true if no entries older than the cutoff are left.
+     */
+    public synchronized boolean expire(long cutoffNanos, long budgetNanos, ExpiryHandler handler) {
+        long start = System.nanoTime();
+        int processed = 0;
+        long cutoffBucket = Math.floorDiv(cutoffNanos, bucketWidthNanos);
+        while (true) {
+            Map.Entry<Long, Bucket> first = buckets.firstEntry();
+            if (first == null || first.getKey() > cutoffBucket) {
+                return true;
+            }
+            Bucket bucket = first.getValue();
+            long[] entries;
+            if (first.getKey() < cutoffBucket) {
+                entries = bucket.close();
+                buckets.remove(first.getKey(), bucket);
+            } else {
+                entries = bucket.removeOlderThan(cutoffNanos);
+            }
+            processed = process(entries, cutoffNanos, start, budgetNanos, processed, handler);
+            if (processed < 0) {
+                return false;
+            }
+            if (first.getKey() == cutoffBucket) {
+                return true;
+            }
+        }
+    }
+
+    public void clear() {
+        buckets.clear();
+        indexedBuckets.clear();
+    }
+
+    /**
+     * @return number of entries, including stale ones. Not constant time.
+     */
+    public int size() {
+        int size = 0;
+        for (Bucket bucket : buckets.values()) {
+            synchronized (bucket) {
+                size += bucket.size / 2;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Forgets the bucket of a taken out entry, if it is the one the key is indexed under rather than a stale
+     * duplicate, so the next add of the key creates an entry again.
+     */
+    private void forget(long key, long entryTimestampNanos) {
+        indexedBuckets.remove(key, Math.floorDiv(entryTimestampNanos, bucketWidthNanos));
+    }
+
+    /**
+     * @return the number of entries processed so far, or -1 if the budget ran out.
+     */
+    private int process(long[] entries, long cutoffNanos, long start, long budgetNanos, int processed,
+                        ExpiryHandler handler) {
+        for (int i = 0; i < entries.length; i += 2) {
+            if (processed > 0 && processed % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() - start >= budgetNanos) {
+                for (int j = i; j < entries.length; j += 2) {
+                    forget(entries[j], entries[j + 1]);
+                    add(entries[j], entries[j + 1]);
+                }
+                return -1;
+            }
+            processed++;
+            long key = entries[i];
+            // forgotten before the handler removes the key, so an add racing with the removal is not skipped
+            forget(key, entries[i + 1]);
+            long currentTimestamp = handler.expire(key, cutoffNanos);
+            if (currentTimestamp != REMOVED) {
+                add(key, currentTimestamp);
+            }
+        }
+        return processed;
+    }
+}
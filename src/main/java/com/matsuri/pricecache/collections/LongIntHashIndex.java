@@ -0,0 +1,111 @@
+package com.matsuri.pricecache.collections;
+
+import org.agrona.collections.Hashing;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Open addressing index from non-negative {@code long} keys to {@code int} values, backed by primitive arrays
+ * with linear probing.
+ * <p>
+ * Single writer, many readers: {@link #putIfAbsent} must be externally synchronized while {@link #get} is lock
+ * free and allocation free. Entries are never removed or remapped, a value is published before its key and a
+ * resize publishes a complete new table, so readers never observe a half written entry.
+ */
+public class LongIntHashIndex {
+
+    public static final int MISSING = -1;
+
+    private static final long EMPTY_KEY = -1L;
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private volatile Table table;
+    private int size;
+
+    private static final class Table {
+        final long[] keys;
+        final int[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+            Arrays.fill(keys, EMPTY_KEY);
+        }
+    }
+
+    public LongIntHashIndex(int initialCapacity) {
+        table = new Table(Math.max(16, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1));
+    }
+
+    /**
+     * @return the value mapped to the key or {@link #MISSING}.
+     */
+    public int get(long key) {
+        Table current = table;
+        long[] keys = current.keys;
+        int index = Hashing.hash(key, current.mask);
+        while (true) {
+            long candidate = (long) KEYS.getAcquire(keys, index);
+            if (candidate == key) {
+                return current.values[index];
+            }
+            if (candidate == EMPTY_KEY) {
+                return MISSING;
+            }
+            index = (index + 1) & current.mask;
+        }
+    }
+
+    /**
+     * Writer only.
+     *
+     * @return the existing value of the key, or {@link #MISSING} if the value was added.
+     */
+    public int putIfAbsent(long key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key: " + key);
+        }
+        int existing = get(key);
+        if (existing != MISSING) {
+            return existing;
+        }
+        Table current = table;
+        if ((size + 1) * 2 > current.keys.length) {
+            current = resize(current);
+        }
+        insert(current, key, value);
+        size++;
+        return MISSING;
+    }
+
+    /**
+     * @return number of keys, writer only.
+     */
+    public int size() {
+        return size;
+    }
+
+    private Table resize(Table current) {
+        Table resized = new Table(current.keys.length * 2);
+        for (int i = 0; i < current.keys.length; i++) {
+            if (current.keys[i] != EMPTY_KEY) {
+                insert(resized, current.keys[i], current.values[i]);
+            }
+        }
+        table = resized;
+        return resized;
+    }
+
+    private static void insert(Table table, long key, int value) {
+        int index = Hashing.hash(key, table.mask);
+        while (table.keys[index] != EMPTY_KEY) {
+            index = (index + 1) & table.mask;
+        }
+        table.values[index] = value;
+        KEYS.setRelease(table.keys, index, key);
+    }
+}
@@ -0,0 +1,173 @@
+package com.matsuri.pricecache.collections;
+
+import com.matsuri.pricecache.domain.Price;
+import org.agrona.collections.Int2IntHashMap;
+import org.agrona.collections.IntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of the latest quote per vendor of one instrument, best bid or best ask at the top. An index from
+ * vendor symbol to heap slot lets a new quote replace the vendor's previous one in place, so updates and removals
+ * take {@code O(log vendors)} instead of a rescan.
+ * <p>
+ * Bids and asks of different scales are compared by value. Not thread safe.
+ */
+public class PriceHeap {
+
+    public enum Side { BID, ASK }
+
+    private static final int MISSING = -1;
+    private static final long[] POWERS_OF_TEN = new long[Price.MAX_SCALE + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Side side;
+    private final Int2IntHashMap slots = new Int2IntHashMap(MISSING);
+    private Price[] heap = new Price[8];
+    private int size;
+
+    public PriceHeap(Side side) {
+        this.side = side;
+    }
+
+    /**
+     * Adds the quote or replaces the previous quote of its vendor.
+     */
+    public void put(Price price) {
+        int slot = slots.get(price.vendorSymbol());
+        if (slot == MISSING) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            slot = size++;
+            place(price, slot);
+            siftUp(slot);
+        } else {
+            Price previous = heap[slot];
+            place(price, slot);
+            if (better(price, previous)) {
+                siftUp(slot);
+            } else {
+                siftDown(slot);
+            }
+        }
+    }
+
+    /**
+     * @return true if the vendor had a quote.
+     */
+    public boolean remove(int vendorSymbol) {
+        int slot = slots.remove(vendorSymbol);
+        if (slot == MISSING) {
+            return false;
+        }
+        Price last = heap[--size];
+        heap[size] = null;
+        if (slot < size) {
+            place(last, slot);
+            siftDown(slot);
+            siftUp(slot);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the quotes timestamped before the cutoff.
+     *
+     * @return the number of quotes removed.
+     */
+    public int removeOlderThan(long cutoffNanos) {
+        IntArrayList expired = null;
+        for (int i = 0; i < size; i++) {
+            if (heap[i].timestampNanos() < cutoffNanos) {
+                if (expired == null) {
+                    expired = new IntArrayList();
+                }
+                expired.addInt(heap[i].vendorSymbol());
+            }
+        }
+        if (expired == null) {
+            return 0;
+        }
+        for (int i = 0; i < expired.size(); i++) {
+            remove(expired.getInt(i));
+        }
+        return expired.size();
+    }
+
+    /**
+     * @return the best quote, null if empty.
+     */
+    public Price top() {
+        return size == 0 ? null : heap[0];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void siftUp(int slot) {
+        Price price = heap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!better(price, heap[parent])) {
+                break;
+            }
+            place(heap[parent], slot);
+            slot = parent;
+        }
+        place(price, slot);
+    }
+
+    private void siftDown(int slot) {
+        Price price = heap[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            if (child + 1 < size && better(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!better(heap[child], price)) {
+                break;
+            }
+            place(heap[child], slot);
+            slot = child;
+        }
+        place(price, slot);
+    }
+
+    private void place(Price price, int slot) {
+        heap[slot] = price;
+        slots.put(price.vendorSymbol(), slot);
+    }
+
+    private boolean better(Price a, Price b) {
+        return side == Side.BID
+                ? compare(a.bidMantissa(), a.scale(), b.bidMantissa(), b.scale()) > 0
+                : compare(a.askMantissa(), a.scale(), b.askMantissa(), b.scale()) < 0;
+    }
+
+    /**
+     * Compares two non-negative decimals given as mantissa and scale.
+     */
+    static int compare(long mantissa1, int scale1, long mantissa2, int scale2) {
+        if (scale1 == scale2) {
+            return Long.compare(mantissa1, mantissa2);
+        }
+        if (scale1 < scale2) {
+            return -compare(mantissa2, scale2, mantissa1, scale1);
+        }
+        // bring the second to the larger scale, a product beyond long is larger than any mantissa
+        long power = POWERS_OF_TEN[scale1 - scale2];
+        if (Math.multiplyHigh(mantissa2, power) != 0 || mantissa2 * power < 0) {
+            return -1;
+        }
+        return Long.compare(mantissa1, mantissa2 * power);
+    }
+}
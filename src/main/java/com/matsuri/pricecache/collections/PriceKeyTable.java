@@ -0,0 +1,245 @@
+package com.matsuri.pricecache.collections;
+
+import com.matsuri.pricecache.domain.PriceKey;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Concurrent table of values addressed by dense instrument and vendor symbol ids, see
+ * {@link com.matsuri.pricecache.domain.SymbolTable}.
+ * <p>
+ * Every instrument/vendor pair owns one {@link AtomicReference} slot. Finding, reading and updating a slot is
+ * lock free and allocation free. Creating the slot of a new pair takes a lock and copies the affected row and
+ * vendor column, which happens once per key. Slots are never moved, so a writer can never lose an update to a
+ * concurrent resize.
+ */
+public class PriceKeyTable<V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Object lock = new Object();
+    private volatile Row<V>[] rows = newRows(INITIAL_CAPACITY);
+    private volatile int[][] vendorColumns = new int[INITIAL_CAPACITY][];
+
+    private static final class Row<V> {
+        volatile AtomicReference<V>[] slots = newSlots(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return the slot of the pair or null if none has been created.
+     */
+    public AtomicReference<V> slot(int instrumentSymbol, int vendorSymbol) {
+        Row<V>[] currentRows = rows;
+        if (instrumentSymbol < 0 || instrumentSymbol >= currentRows.length || vendorSymbol < 0) {
+            return null;
+        }
+        Row<V> row = currentRows[instrumentSymbol];
+        if (row == null) {
+            return null;
+        }
+        AtomicReference<V>[] slots = row.slots;
+        return vendorSymbol < slots.length ? slots[vendorSymbol] : null;
+    }
+
+    public AtomicReference<V> slot(long key) {
+        return slot(PriceKey.instrumentSymbol(key), PriceKey.vendorSymbol(key));
+    }
+
+    public V get(int instrumentSymbol, int vendorSymbol) {
+        AtomicReference<V> slot = slot(instrumentSymbol, vendorSymbol);
+        return slot != null ? slot.get() : null;
+    }
+
+    public AtomicReference<V> getOrCreateSlot(int instrumentSymbol, int vendorSymbol) {
+        AtomicReference<V> slot = slot(instrumentSymbol, vendorSymbol);
+        return slot != null ? slot : createSlot(instrumentSymbol, vendorSymbol);
+    }
+
+    /**
+     * Visits every slot, including empty ones, in instrument then vendor symbol order.
+     */
+    public void forEachSlot(Consumer<AtomicReference<V>> consumer) {
+        for (Row<V> row : rows) {
+            if (row != null) {
+                for (AtomicReference<V> slot : row.slots) {
+                    if (slot != null) {
+                        consumer.accept(slot);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every present value in instrument then vendor symbol order.
+     */
+    public void forEach(Consumer<? super V> consumer) {
+        forEachSlot(slot -> accept(slot, consumer));
+    }
+
+    /**
+     * Visits the present values of one instrument in vendor symbol order.
+     */
+    public void forEachInInstrument(int instrumentSymbol, Consumer<? super V> consumer) {
+        Row<V>[] currentRows = rows;
+        if (instrumentSymbol < 0 || instrumentSymbol >= currentRows.length || currentRows[instrumentSymbol] == null) {
+            return;
+        }
+        for (AtomicReference<V> slot : currentRows[instrumentSymbol].slots) {
+            accept(slot, consumer);
+        }
+    }
+
+    /**
+     * Visits the present values of one vendor in instrument symbol order.
+     */
+    public void forEachInVendor(int vendorSymbol, Consumer<? super V> consumer) {
+        int[][] columns = vendorColumns;
+        if (vendorSymbol < 0 || vendorSymbol >= columns.length || columns[vendorSymbol] == null) {
+            return;
+        }
+        for (int instrumentSymbol : columns[vendorSymbol]) {
+            accept(slot(instrumentSymbol, vendorSymbol), consumer);
+        }
+    }
+
+    /**
+     * Visits the present values with a key after the given one in key order, i.e. instrument then vendor symbol
+     * order, until the visitor returns false.
+     */
+    public void forEachAfter(long afterKey, Predicate<? super V> visitor) {
+        Row<V>[] currentRows = rows;
+        int fromInstrument = afterKey < 0 ? 0 : PriceKey.instrumentSymbol(afterKey);
+        for (int instrument = fromInstrument; instrument < currentRows.length; instrument++) {
+            Row<V> row = currentRows[instrument];
+            if (row == null) {
+                continue;
+            }
+            AtomicReference<V>[] slots = row.slots;
+            int fromVendor = afterKey >= 0 && instrument == fromInstrument ? PriceKey.vendorSymbol(afterKey) + 1 : 0;
+            for (int vendor = fromVendor; vendor < slots.length; vendor++) {
+                if (!visit(slots[vendor], visitor)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits the present values of one instrument after the given vendor in vendor symbol order, until the visitor
+     * returns false.
+     */
+    public void forEachInInstrumentAfter(int instrumentSymbol, int afterVendorSymbol, Predicate<? super V> visitor) {
+        Row<V>[] currentRows = rows;
+        if (instrumentSymbol < 0 || instrumentSymbol >= currentRows.length || currentRows[instrumentSymbol] == null) {
+            return;
+        }
+        AtomicReference<V>[] slots = currentRows[instrumentSymbol].slots;
+        for (int vendor = Math.max(0, afterVendorSymbol + 1); vendor < slots.length; vendor++) {
+            if (!visit(slots[vendor], visitor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Visits the present values of one vendor after the given instrument in instrument symbol order, until the
+     * visitor returns false.
+     */
+    public void forEachInVendorAfter(int vendorSymbol, int afterInstrumentSymbol, Predicate<? super V> visitor) {
+        int[][] columns = vendorColumns;
+        if (vendorSymbol < 0 || vendorSymbol >= columns.length || columns[vendorSymbol] == null) {
+            return;
+        }
+        int[] column = columns[vendorSymbol];
+        int from = Arrays.binarySearch(column, afterInstrumentSymbol);
+        for (int i = from >= 0 ? from + 1 : -(from + 1); i < column.length; i++) {
+            if (!visit(slot(column[i], vendorSymbol), visitor)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops all slots. Not atomic with respect to concurrent writers.
+     */
+    public void clear() {
+        synchronized (lock) {
+            rows = newRows(INITIAL_CAPACITY);
+            vendorColumns = new int[INITIAL_CAPACITY][];
+        }
+    }
+
+    private static <V> void accept(AtomicReference<V> slot, Consumer<? super V> consumer) {
+        V value = slot != null ? slot.get() : null;
+        if (value != null) {
+            consumer.accept(value);
+        }
+    }
+
+    private static <V> boolean visit(AtomicReference<V> slot, Predicate<? super V> visitor) {
+        V value = slot != null ? slot.get() : null;
+        return value == null || visitor.test(value);
+    }
+
+    private AtomicReference<V> createSlot(int instrumentSymbol, int vendorSymbol) {
+        if (instrumentSymbol < 0 || vendorSymbol < 0) {
+            throw new IllegalArgumentException("Negative symbol id");
+        }
+        synchronized (lock) {
+            Row<V>[] currentRows = rows;
+            Row<V> row = instrumentSymbol < currentRows.length ? currentRows[instrumentSymbol] : null;
+            if (row == null) {
+                // copy on write so readers only ever see fully constructed rows through the volatile field
+                Row<V>[] updatedRows = Arrays.copyOf(currentRows, Math.max(currentRows.length, capacityFor(instrumentSymbol)));
+                row = new Row<>();
+                updatedRows[instrumentSymbol] = row;
+                rows = updatedRows;
+            }
+
+            AtomicReference<V>[] slots = row.slots;
+            if (vendorSymbol < slots.length && slots[vendorSymbol] != null) {
+                return slots[vendorSymbol];
+            }
+            slots = Arrays.copyOf(slots, Math.max(slots.length, capacityFor(vendorSymbol)));
+            AtomicReference<V> slot = new AtomicReference<>();
+            slots[vendorSymbol] = slot;
+            row.slots = slots;
+
+            addToVendorColumn(vendorSymbol, instrumentSymbol);
+            return slot;
+        }
+    }
+
+    private void addToVendorColumn(int vendorSymbol, int instrumentSymbol) {
+        int[][] columns = Arrays.copyOf(vendorColumns, Math.max(vendorColumns.length, capacityFor(vendorSymbol)));
+        int[] column = columns[vendorSymbol];
+        if (column == null) {
+            column = new int[0];
+        }
+        int insertAt = -(Arrays.binarySearch(column, instrumentSymbol) + 1);
+        int[] updated = new int[column.length + 1];
+        System.arraycopy(column, 0, updated, 0, insertAt);
+        updated[insertAt] = instrumentSymbol;
+        System.arraycopy(column, insertAt, updated, insertAt + 1, column.length - insertAt);
+        columns[vendorSymbol] = updated;
+        vendorColumns = columns;
+    }
+
+    private static int capacityFor(int index) {
+        return Integer.highestOneBit(index) << 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> Row<V>[] newRows(int capacity) {
+        return (Row<V>[]) new Row<?>[capacity];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> AtomicReference<V>[] newSlots(int capacity) {
+        return (AtomicReference<V>[]) new AtomicReference<?>[capacity];
+    }
+}
@@ -0,0 +1,153 @@
+package com.matsuri.pricecache.collections;
+
+import com.matsuri.pricecache.domain.Price;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The last {@code capacity} ticks of every instrument/vendor key, oldest overwritten first.
+ * <p>
+ * Each key owns a ring of primitive parallel arrays allocated with its first tick, so memory per key is fixed
+ * and recording a tick neither allocates nor creates a {@link Price}. Writers of a key are serialized by the
+ * ring's seqlock, readers copy the matching ticks optimistically and retry if a writer overtook them.
+ */
+public class TickHistory {
+
+    private final int capacity;
+    private final PriceKeyTable<Ring> rings = new PriceKeyTable<>();
+
+    private static final class Ring {
+        final String instrumentId;
+        final String vendorId;
+        final long[] bids;
+        final long[] asks;
+        final long[] timestamps;
+        final byte[] scales;
+        final short[] currencies;
+        final AtomicLong version = new AtomicLong();
+        long count; // ticks ever recorded, written under the seqlock
+
+        Ring(Price price, int capacity) {
+            instrumentId = price.getInstrumentId();
+            vendorId = price.getVendorId();
+            bids = new long[capacity];
+            asks = new long[capacity];
+            timestamps = new long[capacity];
+            scales = new byte[capacity];
+            currencies = new short[capacity];
+        }
+    }
+
+    /**
+     * @param capacity ticks retained per key, zero disables the history.
+     */
+    public TickHistory(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("History capacity cannot be negative: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public void record(Price price) {
+        if (capacity == 0) {
+            return;
+        }
+        Ring ring = ringOf(price);
+        long version = lock(ring.version);
+        int index = (int) (ring.count % capacity);
+        ring.bids[index] = price.bidMantissa();
+        ring.asks[index] = price.askMantissa();
+        ring.timestamps[index] = price.timestampNanos();
+        ring.scales[index] = (byte) price.scale();
+        ring.currencies[index] = price.currencyCode();
+        ring.count++;
+        ring.version.setRelease(version + 2);
+    }
+
+    /**
+     * @return the retained ticks of the key timestamped within {@code [fromNanos, toNanos]}, in arrival order.
+     */
+    public List<Price> find(int instrumentSymbol, int vendorSymbol, long fromNanos, long toNanos) {
+        Ring ring = rings.get(instrumentSymbol, vendorSymbol);
+        if (ring == null) {
+            return List.of();
+        }
+        long[] bids = new long[capacity];
+        long[] asks = new long[capacity];
+        long[] timestamps = new long[capacity];
+        int[] scales = new int[capacity];
+        short[] currencies = new short[capacity];
+        int found;
+        while (true) {
+            long version = ring.version.getAcquire();
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            long count = ring.count;
+            found = 0;
+            for (long tick = Math.max(0, count - capacity); tick < count; tick++) {
+                int index = (int) (tick % capacity);
+                long timestamp = ring.timestamps[index];
+                if (timestamp >= fromNanos && timestamp <= toNanos) {
+                    bids[found] = ring.bids[index];
+                    asks[found] = ring.asks[index];
+                    timestamps[found] = timestamp;
+                    scales[found] = ring.scales[index];
+                    currencies[found] = ring.currencies[index];
+                    found++;
+                }
+            }
+            // keep the data loads above from floating below the validating version load
+            VarHandle.acquireFence();
+            if (ring.version.get() == version) {
+                break;
+            }
+        }
+        List<Price> ticks = new ArrayList<>(found);
+        for (int i = 0; i < found; i++) {
+            ticks.add(new Price(ring.instrumentId, ring.vendorId, bids[i], asks[i], scales[i], timestamps[i],
+                    currencies[i]));
+        }
+        return ticks;
+    }
+
+    public void clear() {
+        rings.clear();
+    }
+
+    private Ring ringOf(Price price) {
+        AtomicReference<Ring> slot = rings.getOrCreateSlot(price.instrumentSymbol(), price.vendorSymbol());
+        Ring ring = slot.get();
+        if (ring == null) {
+            Ring created = new Ring(price, capacity);
+            ring = slot.compareAndSet(null, created) ? created : slot.get();
+        }
+        return ring;
+    }
+
+    /**
+     * Takes the write side of the ring's seqlock.
+     *
+     * @return the even version the ring had before locking.
+     */
+    private static long lock(AtomicLong version) {
+        while (true) {
+            long current = version.get();
+            if ((current & 1) == 0 && version.compareAndSet(current, current + 1)) {
+                // keep the stores that follow from becoming visible before the odd version
+                VarHandle.storeStoreFence();
+                return current;
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.matsuri.pricecache.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a batch publication: the number of published prices and the errors of the rejected items.
+ */
+public class BatchPublishResponse {
+
+    private int published;
+    private final List<ItemError> errors = new ArrayList<>();
+
+    public static class ItemError {
+        private final int index;
+        private final List<String> messages;
+
+        public ItemError(int index, List<String> messages) {
+            this.index = index;
+            this.messages = messages;
+        }
+
+        /** Zero based position of the item in the batch. */
+        public int getIndex() { return index; }
+        public List<String> getMessages() { return messages; }
+    }
+
+    public void addError(int index, List<String> messages) {
+        errors.add(new ItemError(index, messages));
+    }
+
+    public int getPublished() { return published; }
+    public void setPublished(int published) { this.published = published; }
+
+    public int getRejected() { return errors.size(); }
+
+    public List<ItemError> getErrors() { return errors; }
+}
@@ -0,0 +1,41 @@
+package com.matsuri.pricecache.controller;
+
+import com.matsuri.pricecache.repository.PricePage;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Opaque continuation token wrapping a repository page cursor. Tokens stay valid for the lifetime of the
+ * service process.
+ */
+final class PageToken {
+
+    private PageToken() {
+    }
+
+    static String encode(long cursor) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(ByteBuffer.allocate(Long.BYTES).putLong(cursor).array());
+    }
+
+    /**
+     * @return the cursor of the token, {@link PricePage#START} for no token.
+     * @throws ResponseStatusException with 400 if the token is malformed.
+     */
+    static long decode(String token) {
+        if (token == null || token.isEmpty()) {
+            return PricePage.START;
+        }
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(token);
+            if (bytes.length == Long.BYTES) {
+                return ByteBuffer.wrap(bytes).getLong();
+            }
+        } catch (IllegalArgumentException e) {
+            // reported below
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+    }
+}
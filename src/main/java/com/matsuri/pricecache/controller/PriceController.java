@@ -1,18 +1,48 @@
 
 package com.matsuri.pricecache.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.domain.BestPrice;
 import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.PriceChanges;
+import com.matsuri.pricecache.repository.PricePage;
 import com.matsuri.pricecache.service.PriceCacheService;
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * REST API controller for price cache operations.
@@ -23,20 +53,94 @@ import java.util.Optional;
 public class PriceController {
     
     private final PriceCacheService priceCacheService;
+    private final Validator validator;
+    private final ObjectReader priceRequestReader;
+    // no flush per price, the servlet output buffer decides when to send
+    private final ObjectWriter priceWriter;
+
+    @Value("${api.batch.maxSize:10000}")
+    private int maxBatchSize = 10000;
+
+    @Value("${api.page.maxSize:1000}")
+    private int maxPageSize = 1000;
 
     @Autowired
-    public PriceController(PriceCacheService priceCacheService) {
+    public PriceController(PriceCacheService priceCacheService, Validator validator, ObjectMapper objectMapper) {
         this.priceCacheService = priceCacheService;
+        this.validator = validator;
+        this.priceRequestReader = objectMapper.readerFor(PriceRequest.class);
+        this.priceWriter = objectMapper.writerFor(Price.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
     }
 
     @PostMapping
     @Operation(summary = "Price publication")
     public ResponseEntity<String> publishPrice(@Valid @RequestBody PriceRequest request) {
-        Price price = request.toPrice();
+        Price price;
+        try {
+            price = request.toPrice();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
         priceCacheService.publishPrice(price);
         return ResponseEntity.status(HttpStatus.CREATED).body("Price published successfully");
     }
 
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(summary = "Price publication in bulk",
+            description = "Publishes the valid items and reports the rejected ones by index. "
+                    + "201 when all items were published, 200 when some were rejected, 400 when all were rejected.")
+    public ResponseEntity<BatchPublishResponse> publishPrices(InputStream body) throws IOException {
+        BatchPublishResponse response = new BatchPublishResponse();
+        List<Price> prices = new ArrayList<>();
+        // read item by item, so the batch limit also bounds what is held of an oversized body
+        try (JsonParser parser = priceRequestReader.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.VALUE_NULL) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Request body is required");
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch must be a JSON array of prices");
+            }
+            int index = 0;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Batch array is not terminated");
+                }
+                checkBatchSize(index + 1);
+                PriceRequest request = token == JsonToken.VALUE_NULL ? null : priceRequestReader.readValue(parser);
+                addIfValid(request, index++, prices, response);
+            }
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed batch: " + e.getOriginalMessage());
+        }
+        return publish(prices, response);
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Price publication in bulk, one JSON price per line")
+    public ResponseEntity<BatchPublishResponse> publishPricesNdjson(Reader body) throws IOException {
+        BatchPublishResponse response = new BatchPublishResponse();
+        List<Price> prices = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(body);
+        int index = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            checkBatchSize(index + 1);
+            try {
+                addIfValid(priceRequestReader.readValue(line), index, prices, response);
+            } catch (JsonProcessingException e) {
+                response.addError(index, List.of("Malformed price: " + e.getOriginalMessage()));
+            }
+            index++;
+        }
+        return publish(prices, response);
+    }
+
     @Operation(summary = "Price retrieval")
     @GetMapping(value = "/{instrumentId}/{vendorId}", produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<Price> getPrice(@PathVariable String instrumentId, 
@@ -46,25 +150,124 @@ public class PriceController {
                    .orElse(ResponseEntity.notFound().build());
     }
 
+    @Operation(summary = "Recent ticks of an instrument from a vendor",
+            description = "The last ticks kept per instrument/vendor (repository.history.ticksPerKey), optionally "
+                    + "limited to an inclusive time range, oldest first.")
+    @GetMapping(value = "/{instrumentId}/{vendorId}/history", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Price>> getPriceHistory(
+            @PathVariable String instrumentId, @PathVariable String vendorId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be after to");
+        }
+        try {
+            return ResponseEntity.ok(priceCacheService.getPriceHistory(instrumentId, vendorId, from, to));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    @Operation(summary = "Open/high/low/close bars of the mid price of an instrument from a vendor",
+            description = "Closed bars of one of the configured intervals (bars.intervals, e.g. 1s or 1m), "
+                    + "optionally limited to an inclusive range of bar start times, oldest first.")
+    @GetMapping(value = "/{instrumentId}/{vendorId}/bars", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<Bar>> getBars(
+            @PathVariable String instrumentId, @PathVariable String vendorId, @RequestParam String interval,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from must not be after to");
+        }
+        try {
+            Duration barInterval = DurationStyle.detectAndParse(interval);
+            return ResponseEntity.ok(priceCacheService.getBars(instrumentId, vendorId, barInterval, from, to));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // Bulk queries stream their results while walking the repository, as a JSON array or as NDJSON (one price
+    // per line) depending on the Accept header
+
     @Operation(summary = "Get all prices by vendor")
-    @GetMapping(value= "/vendor/{vendorId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Price>> getPricesByVendor(@PathVariable String vendorId) {
-        List<Price> prices = priceCacheService.getPricesByVendor(vendorId);
-        return ResponseEntity.ok(prices);
+    @GetMapping(value = "/vendor/{vendorId}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getPricesByVendor(@PathVariable String vendorId) {
+        return streamArray(consumer -> priceCacheService.forEachPriceByVendor(vendorId, consumer));
+    }
+
+    @GetMapping(value = "/vendor/{vendorId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getPricesByVendorNdjson(@PathVariable String vendorId) {
+        return streamLines(consumer -> priceCacheService.forEachPriceByVendor(vendorId, consumer));
     }
 
     @Operation(summary = "Price retrieval by instrument")
     @GetMapping(value = "/instrument/{instrumentId}", produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Price>> getPricesByInstrument(@PathVariable String instrumentId) {
-        List<Price> prices = priceCacheService.getPricesByInstrument(instrumentId);
-        return ResponseEntity.ok(prices);
+    public ResponseEntity<StreamingResponseBody> getPricesByInstrument(@PathVariable String instrumentId) {
+        return streamArray(consumer -> priceCacheService.forEachPriceByInstrument(instrumentId, consumer));
+    }
+
+    @GetMapping(value = "/instrument/{instrumentId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getPricesByInstrumentNdjson(@PathVariable String instrumentId) {
+        return streamLines(consumer -> priceCacheService.forEachPriceByInstrument(instrumentId, consumer));
+    }
+
+    @Operation(summary = "Consolidated best bid/offer of an instrument across vendors")
+    @GetMapping(value = "/instrument/{instrumentId}/best", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BestPrice> getBestPrice(@PathVariable String instrumentId) {
+        return priceCacheService.getBestPrice(instrumentId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @Operation(summary = "Price retrieval in bulk")
     @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<List<Price>> getAllPrices() {
-        List<Price> prices = priceCacheService.getAllPrices();
-        return ResponseEntity.ok(prices);
+    public ResponseEntity<StreamingResponseBody> getAllPrices() {
+        return streamArray(priceCacheService::forEachPrice);
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAllPricesNdjson() {
+        return streamLines(priceCacheService::forEachPrice);
+    }
+
+    // Cursor based paging, pass the nextCursor of a page to get the following one
+
+    @Operation(summary = "Price retrieval in pages")
+    @GetMapping(value = "/page", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PricePageResponse> getPricesPage(@RequestParam(required = false) String cursor,
+                                                           @RequestParam(defaultValue = "100") int limit) {
+        PricePage page = priceCacheService.getPricesPage(PageToken.decode(cursor), pageLimit(limit));
+        return ResponseEntity.ok(PricePageResponse.of(page));
+    }
+
+    @Operation(summary = "Get prices by vendor in pages")
+    @GetMapping(value = "/vendor/{vendorId}/page", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PricePageResponse> getPricesByVendorPage(@PathVariable String vendorId,
+                                                                   @RequestParam(required = false) String cursor,
+                                                                   @RequestParam(defaultValue = "100") int limit) {
+        PricePage page = priceCacheService.getPricesByVendorPage(vendorId, PageToken.decode(cursor), pageLimit(limit));
+        return ResponseEntity.ok(PricePageResponse.of(page));
+    }
+
+    @Operation(summary = "Price retrieval by instrument in pages")
+    @GetMapping(value = "/instrument/{instrumentId}/page", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PricePageResponse> getPricesByInstrumentPage(@PathVariable String instrumentId,
+                                                                       @RequestParam(required = false) String cursor,
+                                                                       @RequestParam(defaultValue = "100") int limit) {
+        PricePage page = priceCacheService.getPricesByInstrumentPage(instrumentId, PageToken.decode(cursor),
+                pageLimit(limit));
+        return ResponseEntity.ok(PricePageResponse.of(page));
+    }
+
+    @Operation(summary = "Prices changed since a sequence number",
+            description = "Returns the current price of every key updated and the ids of keys removed after the "
+                    + "sequence, continue with the returned sequence. If resyncRequired is set the changes are no "
+                    + "longer held: reload all prices and continue from the returned sequence.")
+    @GetMapping(value = "/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PriceChanges> getChangesSince(@RequestParam long since,
+                                                        @RequestParam(defaultValue = "1000") int limit) {
+        return ResponseEntity.ok(priceCacheService.getChangesSince(since, pageLimit(limit)));
     }
 
     @Operation(summary = "Clean-up data repository")
@@ -80,4 +283,82 @@ public class PriceController {
         int count = priceCacheService.getPriceCount();
         return ResponseEntity.ok(count);
     }
+
+    private ResponseEntity<StreamingResponseBody> streamArray(Consumer<Consumer<? super Price>> source) {
+        StreamingResponseBody body = out -> {
+            try (SequenceWriter sequence = priceWriter.writeValuesAsArray(out)) {
+                source.accept(price -> write(sequence, price));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamLines(Consumer<Consumer<? super Price>> source) {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = priceWriter.createGenerator(out)) {
+                generator.setRootValueSeparator(null); // lines are terminated explicitly
+                source.accept(price -> writeLine(generator, price));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private static void write(SequenceWriter sequence, Price price) {
+        try {
+            sequence.write(price);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeLine(JsonGenerator generator, Price price) {
+        try {
+            priceWriter.writeValue(generator, price);
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int pageLimit(int limit) {
+        if (limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Page limit must be positive");
+        }
+        return Math.min(limit, maxPageSize);
+    }
+
+    private void checkBatchSize(int size) {
+        if (size > maxBatchSize) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Batch exceeds " + maxBatchSize + " prices");
+        }
+    }
+
+    private void addIfValid(PriceRequest request, int index, List<Price> prices, BatchPublishResponse response) {
+        if (request == null) {
+            response.addError(index, List.of("Price cannot be null"));
+            return;
+        }
+        Set<ConstraintViolation<PriceRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            response.addError(index, violations.stream().map(ConstraintViolation::getMessage).sorted().toList());
+            return;
+        }
+        try {
+            prices.add(request.toPrice());
+        } catch (IllegalArgumentException e) {
+            response.addError(index, List.of(e.getMessage()));
+        }
+    }
+
+    private ResponseEntity<BatchPublishResponse> publish(List<Price> prices, BatchPublishResponse response) {
+        priceCacheService.publishPrices(prices);
+        response.setPublished(prices.size());
+        HttpStatus status = response.getRejected() == 0 ? HttpStatus.CREATED
+                : prices.isEmpty() ? HttpStatus.BAD_REQUEST : HttpStatus.OK;
+        return ResponseEntity.status(status).body(response);
+    }
 }
@@ -0,0 +1,27 @@
+package com.matsuri.pricecache.controller;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.PricePage;
+
+import java.util.List;
+
+/**
+ * One page of prices and the cursor of the next page, null on the last page.
+ */
+public class PricePageResponse {
+
+    private final List<Price> prices;
+    private final String nextCursor;
+
+    public PricePageResponse(List<Price> prices, String nextCursor) {
+        this.prices = prices;
+        this.nextCursor = nextCursor;
+    }
+
+    static PricePageResponse of(PricePage page) {
+        return new PricePageResponse(page.getPrices(), page.hasMore() ? PageToken.encode(page.getCursor()) : null);
+    }
+
+    public List<Price> getPrices() { return prices; }
+    public String getNextCursor() { return nextCursor; }
+}
@@ -0,0 +1,71 @@
+package com.matsuri.pricecache.controller;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.PriceFilter;
+import com.matsuri.pricecache.service.PriceSink;
+import com.matsuri.pricecache.service.impl.PriceStreamService;
+import com.matsuri.pricecache.service.impl.PriceSubscription;
+import io.swagger.v3.oas.annotations.Operation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Pushes price updates to HTTP clients as Server-Sent Events.
+ */
+@RestController
+@RequestMapping("/api/prices")
+public class PriceStreamController {
+
+    private final PriceStreamService priceStreamService;
+
+    // the client reconnects once the stream times out, EventSource does so by itself
+    @Value("${stream.timeoutMillis:1800000}")
+    private long timeoutMillis = 1800000;
+
+    public PriceStreamController(PriceStreamService priceStreamService) {
+        this.priceStreamService = priceStreamService;
+    }
+
+    @Operation(summary = "Price updates as Server-Sent Events",
+            description = "One 'price' event per update published after subscribing, optionally limited to some "
+                    + "instruments, vendors or currencies; each parameter takes several comma separated values. "
+                    + "Updates of a key the client has not received yet are conflated to the latest, a client "
+                    + "falling behind by more than stream.client.maxPendingKeys keys is disconnected.")
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPrices(@RequestParam(required = false) Set<String> instrumentId,
+                                   @RequestParam(required = false) Set<String> vendorId,
+                                   @RequestParam(required = false) Set<String> currency) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        PriceFilter filter = new PriceFilter(orEmpty(instrumentId), orEmpty(vendorId), orEmpty(currency));
+        PriceSubscription subscription = priceStreamService.subscribe(filter, new SseSink(emitter));
+        emitter.onCompletion(subscription::close);
+        emitter.onTimeout(subscription::close);
+        emitter.onError(e -> subscription.close());
+        return emitter;
+    }
+
+    private static Set<String> orEmpty(Set<String> values) {
+        return values != null ? values : Set.of();
+    }
+
+    private record SseSink(SseEmitter emitter) implements PriceSink {
+
+        @Override
+        public void send(Price price) throws IOException {
+            emitter.send(SseEmitter.event().name("price").data(price, MediaType.APPLICATION_JSON));
+        }
+
+        @Override
+        public void close(String reason) {
+            emitter.complete();
+        }
+    }
+}
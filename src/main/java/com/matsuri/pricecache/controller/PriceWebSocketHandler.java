@@ -0,0 +1,181 @@
+package com.matsuri.pricecache.controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.PriceSink;
+import com.matsuri.pricecache.service.impl.PriceGatewaySession;
+import com.matsuri.pricecache.service.impl.PriceSubscriptionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * WebSocket price gateway on {@code /api/prices/ws}: one connection per client, which subscribes to and
+ * unsubscribes from instrument/vendor keys as it goes.
+ * <p>
+ * Client messages are {@code {"action":"subscribe","instrumentId":"AAPL","vendorId":"BLOOMBERG"}} or
+ * {@code "unsubscribe"}, without a vendor for every vendor of the instrument; each is answered with a
+ * {@code subscribed}, {@code unsubscribed} or {@code error} message. Prices arrive as
+ * {@code {"type":"price","price":{...}}}, at most {@code maxUpdatesPerSecond} per key, a query parameter of the
+ * connection defaulting to {@code websocket.maxUpdatesPerSecond}.
+ */
+@Component
+public class PriceWebSocketHandler extends TextWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriceWebSocketHandler.class);
+    private static final String CONNECTION = "priceGatewayConnection";
+    private static final String ALL_VENDORS = "*";
+    private static final int MAX_CLOSE_REASON = 60;
+
+    private final PriceSubscriptionRegistry registry;
+    private final ObjectReader requestReader;
+    private final ObjectWriter messageWriter;
+
+    @Value("${websocket.maxUpdatesPerSecond:4}")
+    private int defaultMaxUpdatesPerSecond = 4;
+
+    public PriceWebSocketHandler(PriceSubscriptionRegistry registry, ObjectMapper objectMapper) {
+        this.registry = registry;
+        this.requestReader = objectMapper.readerFor(SubscriptionRequest.class);
+        this.messageWriter = objectMapper.writer();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws IOException {
+        int maxUpdatesPerSecond;
+        try {
+            maxUpdatesPerSecond = maxUpdatesPerSecond(session);
+        } catch (IllegalArgumentException e) {
+            session.close(CloseStatus.BAD_DATA.withReason("Invalid maxUpdatesPerSecond"));
+            return;
+        }
+        WebSocketSink sink = new WebSocketSink(session);
+        session.getAttributes().put(CONNECTION, new Connection(registry.open(sink, maxUpdatesPerSecond), sink));
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        Connection connection = (Connection) session.getAttributes().get(CONNECTION);
+        if (connection == null) {
+            return;
+        }
+        SubscriptionRequest request;
+        try {
+            request = requestReader.readValue(message.getPayload());
+        } catch (JsonProcessingException e) {
+            connection.sink().reply(Reply.error("Malformed message: " + e.getOriginalMessage()));
+            return;
+        }
+        if (request.instrumentId() == null || request.instrumentId().isBlank()) {
+            connection.sink().reply(Reply.error("instrumentId is required"));
+            return;
+        }
+        String vendorId = request.vendorId() == null || ALL_VENDORS.equals(request.vendorId()) ? null
+                : request.vendorId();
+        try {
+            if ("subscribe".equals(request.action())) {
+                registry.subscribe(connection.gatewaySession(), request.instrumentId(), vendorId);
+                connection.sink().reply(new Reply("subscribed", request.instrumentId(), vendorId, null));
+            } else if ("unsubscribe".equals(request.action())) {
+                registry.unsubscribe(connection.gatewaySession(), request.instrumentId(), vendorId);
+                connection.sink().reply(new Reply("unsubscribed", request.instrumentId(), vendorId, null));
+            } else {
+                connection.sink().reply(Reply.error("Unknown action: " + request.action()));
+            }
+        } catch (IllegalArgumentException e) {
+            connection.sink().reply(Reply.error(e.getMessage()));
+        }
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Connection connection = (Connection) session.getAttributes().remove(CONNECTION);
+        if (connection != null) {
+            registry.close(connection.gatewaySession());
+        }
+    }
+
+    private int maxUpdatesPerSecond(WebSocketSession session) {
+        String value = session.getUri() == null ? null : UriComponentsBuilder.fromUri(session.getUri()).build()
+                .getQueryParams().getFirst("maxUpdatesPerSecond");
+        if (value == null) {
+            return defaultMaxUpdatesPerSecond;
+        }
+        int maxUpdatesPerSecond = Integer.parseInt(value);
+        if (maxUpdatesPerSecond < 0) {
+            throw new IllegalArgumentException("Updates per second must not be negative: " + maxUpdatesPerSecond);
+        }
+        return maxUpdatesPerSecond;
+    }
+
+    record SubscriptionRequest(String action, String instrumentId, String vendorId) {
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    record Reply(String type, String instrumentId, String vendorId, String message) {
+
+        static Reply error(String message) {
+            return new Reply("error", null, null, message);
+        }
+    }
+
+    record PriceMessage(String type, Price price) {
+    }
+
+    private record Connection(PriceGatewaySession gatewaySession, WebSocketSink sink) {
+    }
+
+    private final class WebSocketSink implements PriceSink {
+
+        private final WebSocketSession session;
+        // prices and replies are sent from different threads; a lock rather than a monitor, so a send blocked on
+        // a slow client does not pin the virtual thread
+        private final ReentrantLock sendLock = new ReentrantLock();
+
+        private WebSocketSink(WebSocketSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public void send(Price price) throws IOException {
+            sendText(messageWriter.writeValueAsString(new PriceMessage("price", price)));
+        }
+
+        @Override
+        public void close(String reason) {
+            try {
+                // close frames carry at most 123 bytes of UTF-8 encoded reason
+                String closeReason = reason.length() > MAX_CLOSE_REASON ? reason.substring(0, MAX_CLOSE_REASON) : reason;
+                session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason(closeReason));
+            } catch (IOException e) {
+                logger.debug("Closing WebSocket session {} failed", session.getId(), e);
+            }
+        }
+
+        void reply(Reply reply) throws IOException {
+            sendText(messageWriter.writeValueAsString(reply));
+        }
+
+        private void sendText(String text) throws IOException {
+            sendLock.lock();
+            try {
+                session.sendMessage(new TextMessage(text));
+            } finally {
+                sendLock.unlock();
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 
 package com.matsuri.pricecache.demo;
 
+import com.matsuri.pricecache.codec.PriceCodec;
 import io.aeron.Subscription;
 import io.aeron.logbuffer.Header;
 import org.agrona.DirectBuffer;
@@ -10,6 +11,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public class AeronReceiveAgent implements Agent {
     private final Subscription subscription;
+    private final PriceCodec priceCodec = new PriceCodec();
     private final AtomicInteger messageCount = new AtomicInteger(0);
 
     public AeronReceiveAgent(final Subscription subscription) {
@@ -23,9 +25,11 @@ public class AeronReceiveAgent implements Agent {
     }
 
     private void handler(final DirectBuffer buffer, final int offset, final int length, final Header header) {
-        final String jsonValue = buffer.getStringWithoutLengthUtf8(offset, length);
+        final String value = priceCodec.isPriceMessage(buffer, offset, length)
+                ? priceCodec.decode(buffer, offset).toString()
+                : buffer.getStringWithoutLengthUtf8(offset, length); // JSON fallback format
         messageCount.incrementAndGet();
-        System.out.println("Received message no. " + messageCount.get() + " : " + jsonValue);
+        System.out.println("Received message no. " + messageCount.get() + " : " + value);
     }
 
     @Override
@@ -38,4 +42,4 @@ public class AeronReceiveAgent implements Agent {
     public String roleName() {
         return "receiver";
     }
-}
\ No newline at end of file
+}
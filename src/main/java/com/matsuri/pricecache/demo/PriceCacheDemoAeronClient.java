@@ -4,9 +4,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.matsuri.pricecache.controller.PriceRequest;
 import io.aeron.Aeron;
+import io.aeron.Publication;
 import io.aeron.Subscription;
 import io.aeron.driver.MediaDriver;
 import io.aeron.driver.ThreadingMode;
+import org.agrona.concurrent.Agent;
 import org.agrona.concurrent.AgentRunner;
 import org.agrona.concurrent.BusySpinIdleStrategy;
 import org.agrona.concurrent.IdleStrategy;
@@ -17,16 +19,24 @@ import org.springframework.web.client.RestTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
  * Demo of Aeron connectivity. See README.md for running instruction.
+ * With {@code --late-join} the client builds its book from a snapshot merged with the live stream.
  */
 public class PriceCacheDemoAeronClient {
 
     private static final String BASE_URL = "http://localhost:8080/api/prices";
     private static final String AERON_URL = "aeron:udp?endpoint=localhost:40123";
     private static final int AERON_STREAM = 1001;
+    // the first live partition, all prices unless aeron.partitions.count is raised
+    private static final int AERON_PARTITION = 0;
+    private static final String SNAPSHOT_REQUEST_URL = "aeron:udp?endpoint=localhost:40125";
+    private static final int SNAPSHOT_REQUEST_STREAM = 1002;
+    private static final String SNAPSHOT_URL = "aeron:udp?endpoint=localhost:40126";
+    private static final int SNAPSHOT_STREAM = 1003;
 
     private static final String[] INSTRUMENTS = {"AAPL", "GOOGL", "MSFT", "TSLA", "AMZN"};
     private static final String[] VENDORS = {"BLOOMBERG", "REUTERS", "MARKIT", "ICE", "CME"};
@@ -35,11 +45,13 @@ public class PriceCacheDemoAeronClient {
     private final RestTemplate restTemplate;
     private final ObjectMapper objectMapper;
     private final Random random;
+    private final boolean lateJoin;
     private AgentRunner receiveAgentRunner;
     private Aeron aeron;
     private MediaDriver mediaDriver;
 
-    public PriceCacheDemoAeronClient() {
+    public PriceCacheDemoAeronClient(boolean lateJoin) {
+        this.lateJoin = lateJoin;
         this.restTemplate = new RestTemplate();
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
@@ -76,10 +88,17 @@ public class PriceCacheDemoAeronClient {
 
         final Subscription subscription = aeron.addSubscription(AERON_URL, AERON_STREAM);
 
-        final AeronReceiveAgent aeronReceiveAgent = new AeronReceiveAgent(subscription);
+        final Agent receiveAgent;
+        if (lateJoin) {
+            final Subscription snapshots = aeron.addSubscription(SNAPSHOT_URL, SNAPSHOT_STREAM);
+            final Publication requests = aeron.addPublication(SNAPSHOT_REQUEST_URL, SNAPSHOT_REQUEST_STREAM);
+            receiveAgent = new SnapshotMergeAgent(subscription, snapshots, requests, AERON_PARTITION);
+        } else {
+            receiveAgent = new AeronReceiveAgent(subscription);
+        }
 
         receiveAgentRunner = new AgentRunner(idleStrategyReceive,
-                Throwable::printStackTrace, null, aeronReceiveAgent);
+                Throwable::printStackTrace, null, receiveAgent);
         System.out.println("starting");
         //start the runners
         AgentRunner.startOnThread(receiveAgentRunner);
@@ -140,6 +159,6 @@ public class PriceCacheDemoAeronClient {
     }
 
     public static void main(String[] args) {
-        new PriceCacheDemoAeronClient().startDemo();
+        new PriceCacheDemoAeronClient(Arrays.asList(args).contains("--late-join")).startDemo();
     }
 }
\ No newline at end of file
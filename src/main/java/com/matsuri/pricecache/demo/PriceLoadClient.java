@@ -0,0 +1,124 @@
+package com.matsuri.pricecache.demo;
+
+import org.agrona.collections.LongArrayList;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed loop load of price publications: every client, a virtual thread here, posts a price and waits for the
+ * answer before posting the next one. Prints the throughput and the latency percentiles of the measured period.
+ * <p>
+ * Run it against the service started once with {@code spring.threads.virtual.enabled=false} and once with
+ * {@code true} to compare the two request execution modes; use more clients than
+ * {@code server.tomcat.threads.max} and a blocking publish path, e.g. {@code journal.syncPolicy=GROUP_COMMIT},
+ * for the difference to show.
+ * <p>
+ * Arguments: base URL (http://localhost:8080), clients (1000), measured seconds (30), warm-up seconds (10).
+ */
+public class PriceLoadClient {
+
+    private static final String[] VENDORS = {"BLOOMBERG", "REUTERS", "MARKIT", "ICE", "CME"};
+    private static final int INSTRUMENTS = 500;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final URI uri;
+    private final AtomicLong errors = new AtomicLong();
+
+    public PriceLoadClient(String baseUrl) {
+        this.uri = URI.create(baseUrl + "/api/prices");
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int warmUpSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        new PriceLoadClient(baseUrl).run(clients, Duration.ofSeconds(warmUpSeconds), Duration.ofSeconds(seconds));
+    }
+
+    public void run(int clients, Duration warmUp, Duration measured) throws InterruptedException {
+        System.out.println("Publishing to " + uri + " from " + clients + " clients, warm-up " + warmUp.toSeconds()
+                + "s, measured " + measured.toSeconds() + "s");
+        long measureFrom = System.nanoTime() + warmUp.toNanos();
+        long measureTo = measureFrom + measured.toNanos();
+        List<LongArrayList> latencies = new ArrayList<>(clients);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < clients; client++) {
+                LongArrayList clientLatencies = new LongArrayList();
+                latencies.add(clientLatencies);
+                int clientId = client;
+                executor.submit(() -> publishUntil(clientId, measureFrom, measureTo, clientLatencies));
+            }
+        }
+        report(latencies, measured);
+    }
+
+    private void publishUntil(int clientId, long measureFrom, long measureTo, LongArrayList latencies) {
+        long sent = 0;
+        long now;
+        while ((now = System.nanoTime()) - measureTo < 0) {
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .header("Content-Type", "application/json")
+                    .timeout(Duration.ofSeconds(30))
+                    .POST(HttpRequest.BodyPublishers.ofString(priceJson(clientId, sent++)))
+                    .build();
+            boolean published;
+            try {
+                published = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() < 300;
+            } catch (Exception e) {
+                published = false;
+            }
+            if (now - measureFrom >= 0) {
+                if (published) {
+                    latencies.addLong(System.nanoTime() - now);
+                } else {
+                    errors.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static String priceJson(int clientId, long sequence) {
+        long bidCents = 10_000 + (clientId + sequence) % 1_000;
+        return "{\"instrumentId\":\"LOAD" + (clientId + sequence) % INSTRUMENTS
+                + "\",\"vendorId\":\"" + VENDORS[clientId % VENDORS.length]
+                + "\",\"bidPrice\":" + BigDecimal.valueOf(bidCents, 2)
+                + ",\"askPrice\":" + BigDecimal.valueOf(bidCents + 5, 2)
+                + ",\"timestamp\":\"" + LocalDateTime.now().format(TIMESTAMP_FORMAT)
+                + "\",\"currency\":\"USD\"}";
+    }
+
+    private void report(List<LongArrayList> latencies, Duration measured) {
+        long[] all = latencies.stream().flatMapToLong(list -> Arrays.stream(list.toLongArray())).sorted().toArray();
+        if (all.length == 0) {
+            System.out.println("No request completed in the measured period, errors: " + errors.get());
+            return;
+        }
+        System.out.printf("Requests: %d, errors: %d, throughput: %.0f req/s%n", all.length, errors.get(),
+                all.length / (double) measured.toSeconds());
+        System.out.printf("Latency ms p50: %.2f, p99: %.2f, p99.9: %.2f, max: %.2f%n", percentile(all, 50),
+                percentile(all, 99), percentile(all, 99.9), all[all.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
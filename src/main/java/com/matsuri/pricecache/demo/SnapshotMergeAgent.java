@@ -0,0 +1,147 @@
+package com.matsuri.pricecache.demo;
+
+import com.matsuri.pricecache.codec.PriceCodec;
+import com.matsuri.pricecache.codec.SnapshotCodec;
+import com.matsuri.pricecache.domain.Price;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import io.aeron.logbuffer.Header;
+import org.agrona.DirectBuffer;
+import org.agrona.collections.LongArrayList;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Late joining consumer: buffers the live stream while it requests and loads a snapshot, then applies the buffered
+ * live prices ending after the snapshot's live position, so the book has no gaps. Live prices can also be in the
+ * snapshot, so until a key receives a newer live price its live prices not newer than the snapshot's are skipped
+ * rather than overwriting the snapshot with an older price.
+ */
+public class SnapshotMergeAgent implements Agent {
+
+    private enum State { REQUEST, AWAIT_SNAPSHOT, LOAD_SNAPSHOT, LIVE }
+
+    private final Subscription live;
+    private final Subscription snapshots;
+    private final Publication requests;
+    private final int partition;
+    private final PriceCodec priceCodec = new PriceCodec();
+    private final UnsafeBuffer requestBuffer = new UnsafeBuffer(new byte[64]);
+    private final Map<String, Price> book = new HashMap<>();
+    // timestamps of snapshot prices not yet superseded by a live price
+    private final Map<String, Long> snapshotTimestamps = new HashMap<>();
+    private final List<Price> bufferedPrices = new ArrayList<>();
+    private final LongArrayList bufferedPositions = new LongArrayList();
+    private final long correlationId = System.nanoTime();
+    private State state = State.REQUEST;
+    private long snapshotPosition;
+    private int liveUpdates;
+
+    public SnapshotMergeAgent(final Subscription live, final Subscription snapshots, final Publication requests,
+                              final int partition) {
+        this.live = live;
+        this.snapshots = snapshots;
+        this.requests = requests;
+        this.partition = partition;
+    }
+
+    @Override
+    public int doWork() {
+        int work = live.poll(this::onLive, 100);
+        if (state == State.REQUEST) {
+            if (requests.offer(requestBuffer, 0, SnapshotCodec.encodeRequest(requestBuffer, 0, correlationId, partition)) > 0) {
+                state = State.AWAIT_SNAPSHOT;
+                work++;
+            }
+        } else if (state != State.LIVE) {
+            work += snapshots.poll(this::onSnapshot, 100);
+        }
+        return work;
+    }
+
+    private void onLive(final DirectBuffer buffer, final int offset, final int length, final Header header) {
+        if (!priceCodec.isPriceMessage(buffer, offset, length)) {
+            return;
+        }
+        Price price = priceCodec.decode(buffer, offset);
+        if (state == State.LIVE) {
+            if (applyLive(price)) {
+                liveUpdates++;
+            }
+        } else {
+            bufferedPrices.add(price);
+            bufferedPositions.addLong(header.position());
+        }
+    }
+
+    private void onSnapshot(final DirectBuffer buffer, final int offset, final int length, final Header header) {
+        int templateId = SnapshotCodec.templateId(buffer, offset, length);
+        if (templateId == SnapshotCodec.BEGIN_TEMPLATE_ID) {
+            if (SnapshotCodec.correlationId(buffer, offset) == correlationId) {
+                snapshotPosition = SnapshotCodec.livePosition(buffer, offset);
+                book.clear();
+                snapshotTimestamps.clear();
+                state = State.LOAD_SNAPSHOT;
+            }
+        } else if (templateId == SnapshotCodec.END_TEMPLATE_ID) {
+            if (state == State.LOAD_SNAPSHOT && SnapshotCodec.correlationId(buffer, offset) == correlationId) {
+                merge();
+            }
+        } else if (state == State.LOAD_SNAPSHOT && priceCodec.isPriceMessage(buffer, offset, length)) {
+            Price price = priceCodec.decode(buffer, offset);
+            apply(price);
+            snapshotTimestamps.put(price.getCompositeKey(), price.timestampNanos());
+        }
+    }
+
+    private void merge() {
+        int loaded = book.size();
+        int replayed = 0;
+        for (int i = 0; i < bufferedPrices.size(); i++) {
+            // live messages ending at or before the snapshot position are already in it
+            if (bufferedPositions.getLong(i) > snapshotPosition && applyLive(bufferedPrices.get(i))) {
+                replayed++;
+            }
+        }
+        bufferedPrices.clear();
+        bufferedPositions.clear();
+        state = State.LIVE;
+        System.out.println("Snapshot of " + loaded + " prices at live position " + snapshotPosition
+                + " merged with " + replayed + " buffered live prices");
+    }
+
+    /**
+     * @return false if the snapshot already holds the price or a newer one.
+     */
+    private boolean applyLive(Price price) {
+        String key = price.getCompositeKey();
+        Long snapshotTimestamp = snapshotTimestamps.get(key);
+        if (snapshotTimestamp != null) {
+            if (price.timestampNanos() <= snapshotTimestamp) {
+                return false;
+            }
+            snapshotTimestamps.remove(key);
+        }
+        apply(price);
+        return true;
+    }
+
+    private void apply(Price price) {
+        book.put(price.getCompositeKey(), price);
+    }
+
+    @Override
+    public void onClose() {
+        System.out.println("Book holds " + book.size() + " prices after " + liveUpdates + " live updates");
+    }
+
+    @Override
+    public String roleName() {
+        return "late-joiner";
+    }
+}
@@ -0,0 +1,66 @@
+package com.matsuri.pricecache.domain;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Closed open/high/low/close bar of the mid price of one instrument/vendor over one interval. Prices are
+ * mantissas of a common scale, as in {@link Price}.
+ */
+@JsonPropertyOrder({"instrumentId", "vendorId", "interval", "startTime", "open", "high", "low", "close", "tickCount"})
+public class Bar {
+
+    private final String instrumentId;
+    private final String vendorId;
+    private final long intervalNanos;
+    private final long startNanos;
+    private final long openMantissa;
+    private final long highMantissa;
+    private final long lowMantissa;
+    private final long closeMantissa;
+    private final int scale;
+    private final int tickCount;
+
+    public Bar(String instrumentId, String vendorId, long intervalNanos, long startNanos, long openMantissa,
+               long highMantissa, long lowMantissa, long closeMantissa, int scale, int tickCount) {
+        this.instrumentId = instrumentId;
+        this.vendorId = vendorId;
+        this.intervalNanos = intervalNanos;
+        this.startNanos = startNanos;
+        this.openMantissa = openMantissa;
+        this.highMantissa = highMantissa;
+        this.lowMantissa = lowMantissa;
+        this.closeMantissa = closeMantissa;
+        this.scale = scale;
+        this.tickCount = tickCount;
+    }
+
+    public String getInstrumentId() { return instrumentId; }
+    public String getVendorId() { return vendorId; }
+    public Duration getInterval() { return Duration.ofNanos(intervalNanos); }
+    public LocalDateTime getStartTime() { return EpochNanos.toLocalDateTime(startNanos); }
+    public BigDecimal getOpen() { return BigDecimal.valueOf(openMantissa, scale); }
+    public BigDecimal getHigh() { return BigDecimal.valueOf(highMantissa, scale); }
+    public BigDecimal getLow() { return BigDecimal.valueOf(lowMantissa, scale); }
+    public BigDecimal getClose() { return BigDecimal.valueOf(closeMantissa, scale); }
+    public int getTickCount() { return tickCount; }
+
+    // Compact accessors for the hot path, not bean properties so they stay out of the JSON representation
+    public long intervalNanos() { return intervalNanos; }
+    public long startNanos() { return startNanos; }
+    public long openMantissa() { return openMantissa; }
+    public long highMantissa() { return highMantissa; }
+    public long lowMantissa() { return lowMantissa; }
+    public long closeMantissa() { return closeMantissa; }
+    public int scale() { return scale; }
+
+    @Override
+    public String toString() {
+        return String.format("Bar{instrument='%s', vendor='%s', interval=%s, start=%s, o=%s, h=%s, l=%s, c=%s, "
+                        + "ticks=%d}", instrumentId, vendorId, getInterval(), getStartTime(), getOpen(), getHigh(),
+                getLow(), getClose(), tickCount);
+    }
+}
@@ -0,0 +1,67 @@
+package com.matsuri.pricecache.domain;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * Consolidated top of book of an instrument: the highest bid and the lowest ask across vendors, with the vendors
+ * quoting them. Both sides refer to the vendors' stored quotes.
+ */
+@JsonPropertyOrder({"instrumentId", "bidPrice", "bidVendorId", "askPrice", "askVendorId", "timestamp"})
+public class BestPrice {
+
+    private final Price bid;
+    private final Price ask;
+
+    public BestPrice(Price bid, Price ask) {
+        this.bid = Objects.requireNonNull(bid, "Bid cannot be null");
+        this.ask = Objects.requireNonNull(ask, "Ask cannot be null");
+    }
+
+    public String getInstrumentId() { return bid.getInstrumentId(); }
+    public BigDecimal getBidPrice() { return bid.getBidPrice(); }
+    public String getBidVendorId() { return bid.getVendorId(); }
+    public BigDecimal getAskPrice() { return ask.getAskPrice(); }
+    public String getAskVendorId() { return ask.getVendorId(); }
+
+    /** Time of the later of the two quotes. */
+    public LocalDateTime getTimestamp() { return EpochNanos.toLocalDateTime(timestampNanos()); }
+
+    // Compact accessors for the hot path, not bean properties so they stay out of the JSON representation
+    public Price bid() { return bid; }
+    public Price ask() { return ask; }
+    public long timestampNanos() { return Math.max(bid.timestampNanos(), ask.timestampNanos()); }
+
+    /**
+     * @return true if both have the same best bid and ask from the same vendors, whatever the quote timestamps.
+     */
+    public boolean sameQuotes(BestPrice other) {
+        return other != null
+                && bid.vendorSymbol() == other.bid.vendorSymbol()
+                && ask.vendorSymbol() == other.ask.vendorSymbol()
+                && bid.bidMantissa() == other.bid.bidMantissa() && bid.scale() == other.bid.scale()
+                && ask.askMantissa() == other.ask.askMantissa() && ask.scale() == other.ask.scale();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BestPrice that = (BestPrice) o;
+        return bid.equals(that.bid) && ask.equals(that.ask);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bid, ask);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BestPrice{instrument='%s', bid=%s@%s, ask=%s@%s}",
+                getInstrumentId(), getBidPrice(), getBidVendorId(), getAskPrice(), getAskVendorId());
+    }
+}
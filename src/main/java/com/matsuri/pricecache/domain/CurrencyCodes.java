@@ -0,0 +1,66 @@
+package com.matsuri.pricecache.domain;
+
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Process wide registry assigning small numeric codes to currency strings, so prices can hold a
+ * {@code short} instead of a reference. Codes are dense, start at zero and are never reused.
+ * <p>
+ * Only ISO 4217 currencies are registered, which bounds the registry whatever input is received.
+ */
+public final class CurrencyCodes {
+
+    private static final Set<String> ISO_CODES = Currency.getAvailableCurrencies().stream()
+            .map(Currency::getCurrencyCode)
+            .collect(Collectors.toUnmodifiableSet());
+    private static final Map<String, Short> codes = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[16];
+    private static int size;
+
+    private CurrencyCodes() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the currency is not an ISO 4217 code.
+     */
+    public static short codeOf(String currency) {
+        Short code = codes.get(currency);
+        return code != null ? code : register(currency);
+    }
+
+    /**
+     * @throws IllegalArgumentException if no currency has been registered under the code.
+     */
+    public static String nameOf(short code) {
+        String[] current = names;
+        String name = code >= 0 && code < current.length ? current[code] : null;
+        if (name == null) {
+            throw new IllegalArgumentException("Unknown currency code: " + code);
+        }
+        return name;
+    }
+
+    private static synchronized short register(String currency) {
+        Short code = codes.get(currency);
+        if (code != null) {
+            return code;
+        }
+        if (!ISO_CODES.contains(currency)) {
+            throw new IllegalArgumentException("Unknown currency: " + currency);
+        }
+        if (size > Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many currencies registered");
+        }
+        String[] updated = size < names.length ? names : Arrays.copyOf(names, names.length * 2);
+        updated[size] = currency;
+        names = updated;
+        code = (short) size++;
+        codes.put(currency, code);
+        return code;
+    }
+}
@@ -0,0 +1,33 @@
+package com.matsuri.pricecache.domain;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Conversions between {@link LocalDateTime}, interpreted as UTC, and nanoseconds since the epoch.
+ */
+public final class EpochNanos {
+
+    public static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private EpochNanos() {
+    }
+
+    /**
+     * @throws IllegalArgumentException outside the years 1677 to 2262, which nanoseconds since the epoch cannot
+     *                                  represent.
+     */
+    public static long of(LocalDateTime timestamp) {
+        try {
+            return Math.addExact(Math.multiplyExact(timestamp.toEpochSecond(ZoneOffset.UTC), NANOS_PER_SECOND),
+                    timestamp.getNano());
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Timestamp out of range: " + timestamp);
+        }
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochNanos) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND),
+                (int) Math.floorMod(epochNanos, NANOS_PER_SECOND), ZoneOffset.UTC);
+    }
+}
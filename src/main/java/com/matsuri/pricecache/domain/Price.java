@@ -1,6 +1,8 @@
 
 package com.matsuri.pricecache.domain;
 
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Objects;
@@ -8,41 +10,100 @@ import java.util.Objects;
 /**
  * Domain entity representing a price quote for a traded instrument from a specific vendor.
  * This is the core domain object that encapsulates all price-related information.
+ * <p>
+ * Held in a compact primitive form: bid and ask are {@code long} mantissas sharing one decimal scale, the
+ * timestamp is nanoseconds since the epoch (UTC) and the currency a {@link CurrencyCodes} code. The scale is the
+ * price's own, the larger of the bid's and the ask's, so both sides convert back at that scale.
+ * The {@code BigDecimal}/{@code LocalDateTime} getters convert on demand and are meant for the API boundary.
+ * Instrument and vendor ids are interned in {@link SymbolTable}, internally prices are addressed by {@link #key()}.
  */
+@JsonPropertyOrder({"instrumentId", "vendorId", "bidPrice", "askPrice", "timestamp", "currency", "compositeKey"})
 public class Price {
+    public static final int MAX_SCALE = 18;
+
     private final String instrumentId;
     private final String vendorId;
-    private final BigDecimal bidPrice;
-    private final BigDecimal askPrice;
-    private final LocalDateTime timestamp;
-    private final String currency;
+    private final int instrumentSymbol;
+    private final int vendorSymbol;
+    private final long bidMantissa;
+    private final long askMantissa;
+    private final int scale;
+    private final long timestampNanos;
+    private final short currencyCode;
 
-    public Price(String instrumentId, String vendorId, BigDecimal bidPrice, 
+    public Price(String instrumentId, String vendorId, BigDecimal bidPrice,
                  BigDecimal askPrice, LocalDateTime timestamp, String currency) {
+        this(instrumentId, vendorId,
+                Objects.requireNonNull(bidPrice, "Bid price cannot be null"),
+                Objects.requireNonNull(askPrice, "Ask price cannot be null"),
+                Math.max(0, Math.max(bidPrice.scale(), askPrice.scale())),
+                Objects.requireNonNull(timestamp, "Timestamp cannot be null"),
+                Objects.requireNonNull(currency, "Currency cannot be null"));
+    }
+
+    private Price(String instrumentId, String vendorId, BigDecimal bidPrice, BigDecimal askPrice, int scale,
+                  LocalDateTime timestamp, String currency) {
+        this(instrumentId, vendorId, toMantissa(bidPrice, scale), toMantissa(askPrice, scale), scale,
+                EpochNanos.of(timestamp), CurrencyCodes.codeOf(currency));
+    }
+
+    public Price(String instrumentId, String vendorId, long bidMantissa, long askMantissa, int scale,
+                 long timestampNanos, short currencyCode) {
         this.instrumentId = Objects.requireNonNull(instrumentId, "Instrument ID cannot be null");
         this.vendorId = Objects.requireNonNull(vendorId, "Vendor ID cannot be null");
-        this.bidPrice = Objects.requireNonNull(bidPrice, "Bid price cannot be null");
-        this.askPrice = Objects.requireNonNull(askPrice, "Ask price cannot be null");
-        this.timestamp = Objects.requireNonNull(timestamp, "Timestamp cannot be null");
-        this.currency = Objects.requireNonNull(currency, "Currency cannot be null");
-        
-        if (bidPrice.compareTo(BigDecimal.ZERO) < 0 || askPrice.compareTo(BigDecimal.ZERO) < 0) {
+        this.bidMantissa = bidMantissa;
+        this.askMantissa = askMantissa;
+        this.scale = scale;
+        this.timestampNanos = timestampNanos;
+        this.currencyCode = currencyCode;
+
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Price scale must be between 0 and " + MAX_SCALE);
+        }
+        if (bidMantissa < 0 || askMantissa < 0) {
             throw new IllegalArgumentException("Prices cannot be negative");
         }
-        if (bidPrice.compareTo(askPrice) > 0) {
+        if (bidMantissa > askMantissa) {
             throw new IllegalArgumentException("Bid price cannot be higher than ask price");
         }
+        // interned once valid only, symbols are never released
+        this.instrumentSymbol = SymbolTable.INSTRUMENTS.idOf(instrumentId);
+        this.vendorSymbol = SymbolTable.VENDORS.idOf(vendorId);
+    }
+
+    private static long toMantissa(BigDecimal value, int scale) {
+        if (value.signum() < 0) {
+            throw new IllegalArgumentException("Prices cannot be negative");
+        }
+        if (scale > MAX_SCALE) {
+            throw new IllegalArgumentException("Price scale must be between 0 and " + MAX_SCALE);
+        }
+        try {
+            return value.setScale(scale).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Price out of range: " + value, e);
+        }
     }
 
     // Getters
     public String getInstrumentId() { return instrumentId; }
     public String getVendorId() { return vendorId; }
-    public BigDecimal getBidPrice() { return bidPrice; }
-    public BigDecimal getAskPrice() { return askPrice; }
-    public LocalDateTime getTimestamp() { return timestamp; }
-    public String getCurrency() { return currency; }
+    public BigDecimal getBidPrice() { return BigDecimal.valueOf(bidMantissa, scale); }
+    public BigDecimal getAskPrice() { return BigDecimal.valueOf(askMantissa, scale); }
+    public LocalDateTime getTimestamp() { return EpochNanos.toLocalDateTime(timestampNanos); }
+    public String getCurrency() { return CurrencyCodes.nameOf(currencyCode); }
+
+    // Compact accessors for the hot path, not bean properties so they stay out of the JSON representation
+    public long bidMantissa() { return bidMantissa; }
+    public long askMantissa() { return askMantissa; }
+    public int scale() { return scale; }
+    public long timestampNanos() { return timestampNanos; }
+    public short currencyCode() { return currencyCode; }
+    public int instrumentSymbol() { return instrumentSymbol; }
+    public int vendorSymbol() { return vendorSymbol; }
+    public long key() { return PriceKey.of(instrumentSymbol, vendorSymbol); }
 
-    public String getCompositeKey() { // fixme use dedicated class
+    public String getCompositeKey() { // part of the REST representation only, use key() internally
         return instrumentId + "_" + vendorId;
     }
 
@@ -51,22 +112,23 @@ public class Price {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Price price = (Price) o;
-        return Objects.equals(instrumentId, price.instrumentId) &&
-               Objects.equals(vendorId, price.vendorId) &&
-               Objects.equals(bidPrice, price.bidPrice) &&
-               Objects.equals(askPrice, price.askPrice) &&
-               Objects.equals(timestamp, price.timestamp) &&
-               Objects.equals(currency, price.currency);
+        return bidMantissa == price.bidMantissa &&
+               askMantissa == price.askMantissa &&
+               scale == price.scale &&
+               timestampNanos == price.timestampNanos &&
+               currencyCode == price.currencyCode &&
+               Objects.equals(instrumentId, price.instrumentId) &&
+               Objects.equals(vendorId, price.vendorId);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(instrumentId, vendorId, bidPrice, askPrice, timestamp, currency);
+        return Objects.hash(instrumentId, vendorId, bidMantissa, askMantissa, scale, timestampNanos, currencyCode);
     }
 
     @Override
     public String toString() {
         return String.format("Price{instrument='%s', vendor='%s', bid=%s, ask=%s, time=%s, currency='%s'}",
-                instrumentId, vendorId, bidPrice, askPrice, timestamp, currency);
+                instrumentId, vendorId, getBidPrice(), getAskPrice(), getTimestamp(), getCurrency());
     }
 }
@@ -0,0 +1,39 @@
+package com.matsuri.pricecache.domain;
+
+/**
+ * Composite instrument/vendor key packed into a {@code long}: the instrument symbol id in the high 32 bits and
+ * the vendor symbol id in the low 32 bits. Unlike {@code instrumentId + "_" + vendorId} it allocates nothing
+ * and cannot be ambiguous.
+ */
+public final class PriceKey {
+
+    public static final long NOT_FOUND = -1L;
+
+    private PriceKey() {
+    }
+
+    public static long of(int instrumentSymbol, int vendorSymbol) {
+        return ((long) instrumentSymbol << 32) | (vendorSymbol & 0xFFFF_FFFFL);
+    }
+
+    /**
+     * @return the key of already registered ids, or {@link #NOT_FOUND} if either id is unknown.
+     */
+    public static long find(String instrumentId, String vendorId) {
+        int instrument = SymbolTable.INSTRUMENTS.find(instrumentId);
+        int vendor = SymbolTable.VENDORS.find(vendorId);
+        return instrument == SymbolTable.NOT_FOUND || vendor == SymbolTable.NOT_FOUND ? NOT_FOUND : of(instrument, vendor);
+    }
+
+    public static int instrumentSymbol(long key) {
+        return (int) (key >>> 32);
+    }
+
+    public static int vendorSymbol(long key) {
+        return (int) key;
+    }
+
+    public static String toString(long key) {
+        return SymbolTable.INSTRUMENTS.symbol(instrumentSymbol(key)) + "/" + SymbolTable.VENDORS.symbol(vendorSymbol(key));
+    }
+}
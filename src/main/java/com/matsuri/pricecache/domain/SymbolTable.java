@@ -0,0 +1,72 @@
+package com.matsuri.pricecache.domain;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns identifiers to dense {@code int} ids starting at zero. Ids are never reused, lookups of known
+ * symbols do not allocate and symbol resolution by id is a plain array read.
+ */
+public class SymbolTable {
+
+    public static final int NOT_FOUND = -1;
+
+    /** Process wide table of instrument ids. */
+    public static final SymbolTable INSTRUMENTS = new SymbolTable();
+    /** Process wide table of vendor ids. */
+    public static final SymbolTable VENDORS = new SymbolTable();
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] symbols = new String[64];
+    private volatile int size;
+
+    /**
+     * @return the id of the symbol, registering it if it is new.
+     */
+    public int idOf(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : register(symbol);
+    }
+
+    /**
+     * @return the id of the symbol or {@link #NOT_FOUND} if it has never been registered.
+     */
+    public int find(String symbol) {
+        Integer id = ids.get(symbol);
+        return id != null ? id : NOT_FOUND;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the id has not been assigned.
+     */
+    public String symbol(int id) {
+        String[] current = symbols;
+        String symbol = id >= 0 && id < current.length ? current[id] : null;
+        if (symbol == null) {
+            throw new IllegalArgumentException("Unknown symbol id: " + id);
+        }
+        return symbol;
+    }
+
+    /**
+     * @return number of symbols registered, ids are in the range [0, size).
+     */
+    public int size() {
+        return size;
+    }
+
+    private synchronized int register(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+        int next = size;
+        String[] updated = next < symbols.length ? symbols : Arrays.copyOf(symbols, symbols.length * 2);
+        updated[next] = symbol;
+        symbols = updated;
+        size = next + 1;
+        ids.put(symbol, next);
+        return next;
+    }
+}
@@ -0,0 +1,16 @@
+package com.matsuri.pricecache.journal;
+
+/**
+ * When journaled prices are forced from the memory mapped segments to the storage device.
+ */
+public enum JournalSyncPolicy {
+    /** Never fsync, the operating system writes the pages back. Survives a process crash, not a power loss. */
+    NONE,
+    /** The sync thread forces new records every interval, publishers do not wait for it. */
+    PERIODIC,
+    /**
+     * Publishers wait until their records are forced. Records appended while a sync is running are forced together
+     * by the next one, so one fsync covers all concurrent publishers.
+     */
+    GROUP_COMMIT
+}
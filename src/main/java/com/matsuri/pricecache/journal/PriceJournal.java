@@ -0,0 +1,558 @@
+package com.matsuri.pricecache.journal;
+
+import com.matsuri.pricecache.codec.PriceCodec;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.PriceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.agrona.BitUtil;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal of accepted prices in pre-allocated, memory mapped segment files. Enabled with
+ * {@code journal.enabled=true}, the repository is rebuilt from the newest {@link SnapshotFile} and the journal
+ * after it on startup.
+ * <p>
+ * Every price is one frame: its message length, a CRC32C of the message and the binary {@link PriceCodec} message,
+ * padded to 8 bytes. The length is written last, so a zero length marks the end of a segment and a frame torn by a
+ * crash fails its checksum and ends the replay. A segment that can not take the next frame is handed to the sync
+ * thread and writing continues in the next file, which the sync thread allocated ahead of time so appenders do not
+ * wait for a segment to be zero filled. The sync thread forces written pages to the device according to the
+ * {@link JournalSyncPolicy}, covering all records appended since its previous sync with one fsync.
+ */
+@Component
+@ConditionalOnProperty(name = "journal.enabled", havingValue = "true")
+public class PriceJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriceJournal.class);
+
+    static final int LENGTH_OFFSET = 0;
+    static final int CHECKSUM_OFFSET = 4;
+    static final int FRAME_HEADER_LENGTH = 8;
+    static final int FRAME_ALIGNMENT = 8;
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    /** No journal position, e.g. when there is no snapshot. */
+    public static final long NO_POSITION = -1L;
+
+    private static final int REPLAY_BATCH_SIZE = 1024;
+
+    private final PriceRepository priceRepository;
+    private final PriceCodec codec = new PriceCodec();
+    private final CRC32C checksum = new CRC32C();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition syncRequested = lock.newCondition();
+    private final Condition synced = lock.newCondition();
+    private final Condition allocated = lock.newCondition();
+    // full segments waiting for their final sync and unmap
+    private final ArrayDeque<MappedByteBuffer> retired = new ArrayDeque<>();
+
+    @Value("${journal.directory:journal}")
+    private String directory = "journal";
+
+    @Value("${journal.segmentSize:67108864}")
+    private int segmentSize = 64 * 1024 * 1024;
+
+    @Value("${journal.syncPolicy:PERIODIC}")
+    private JournalSyncPolicy syncPolicy = JournalSyncPolicy.PERIODIC;
+
+    @Value("${journal.syncIntervalMillis:10}")
+    private long syncIntervalMillis = 10;
+
+    // guarded by lock
+    private MappedByteBuffer segment;
+    private ByteBuffer checksumView;
+    private final UnsafeBuffer buffer = new UnsafeBuffer(0, 0);
+    private long segmentIndex;
+    private int offset;
+    private int syncedOffset;
+    private long syncedPosition;
+    private boolean syncPending;
+    // the segment after the current one, once allocated
+    private MappedByteBuffer nextSegment;
+    private boolean allocating;
+
+    private volatile boolean running;
+    private Thread syncThread;
+
+    @Autowired
+    public PriceJournal(PriceRepository priceRepository) {
+        this.priceRepository = priceRepository;
+    }
+
+    /**
+     * Replays the journal into the repository, then opens it for appending.
+     */
+    @PostConstruct
+    public void start() {
+        if (segmentSize <= FRAME_HEADER_LENGTH || segmentSize % FRAME_ALIGNMENT != 0) {
+            throw new IllegalArgumentException("Journal segment size must be a positive multiple of "
+                    + FRAME_ALIGNMENT + ": " + segmentSize);
+        }
+        File dir = new File(directory);
+        IoUtil.ensureDirectoryExists(dir, "price journal");
+
+        long start = System.nanoTime();
+        long snapshotPosition = loadSnapshot(dir);
+        long snapshotNanos = System.nanoTime() - start;
+        long snapshotSegment = snapshotPosition == NO_POSITION ? -1 : segmentOf(snapshotPosition);
+
+        File[] files = segmentFiles(dir);
+        // segments after the last one written to were allocated ahead, a torn record can only be in that one
+        int lastWritten = files.length - 1;
+        while (lastWritten > 0 && isEmpty(files[lastWritten])) {
+            lastWritten--;
+        }
+        long lastIndex = -1;
+        int replayed = 0;
+        int replayedSegments = 0;
+        for (int i = 0; i < files.length; i++) {
+            long index = segmentIndexOf(files[i]);
+            lastIndex = Math.max(lastIndex, index);
+            if (index < snapshotSegment) {
+                continue; // covered by the snapshot
+            }
+            boolean last = i == files.length - 1;
+            int from = index == snapshotSegment ? offsetOf(snapshotPosition) : 0;
+            MappedByteBuffer mapped = IoUtil.mapExistingFile(files[i], "price journal segment");
+            ReplayResult result = replay(files[i], mapped, i >= lastWritten, from);
+            replayed += result.prices;
+            replayedSegments++;
+            if (last) {
+                open(mapped, index, result.endOffset);
+            } else {
+                IoUtil.unmap(mapped);
+            }
+        }
+        if (segment == null) {
+            long index = Math.max(lastIndex, snapshotSegment) + 1;
+            open(IoUtil.mapNewFile(segmentFile(dir, index), segmentSize, true), index, 0);
+        }
+        logger.info("Recovered {} prices in {} ms: snapshot loaded in {} ms, {} prices replayed from {} journal "
+                        + "segments", priceRepository.count(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                TimeUnit.NANOSECONDS.toMillis(snapshotNanos), replayed, replayedSegments);
+
+        running = true;
+        // runs under every policy, it also unmaps the retired segments
+        syncThread = new Thread(this::runSync, "price-journal-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.lock();
+        try {
+            if (!running) {
+                return;
+            }
+            running = false;
+            syncRequested.signalAll();
+            synced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            syncThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sync();
+        lock.lock();
+        try {
+            IoUtil.unmap(segment);
+            segment = null;
+            if (nextSegment != null) {
+                IoUtil.unmap(nextSegment);
+                nextSegment = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void append(Price price) {
+        awaitSync(appendUnsynced(price));
+    }
+
+    /**
+     * Appends the prices under one lock acquisition and waits for a single sync.
+     */
+    public void appendAll(Collection<Price> prices) {
+        awaitSync(appendAllUnsynced(prices));
+    }
+
+    /**
+     * Appends without waiting for the sync, for callers ordering the append with other work.
+     *
+     * @return the position to {@link #awaitSync} for.
+     */
+    public long appendUnsynced(Price price) {
+        lock.lock();
+        try {
+            write(price);
+            return position(segmentIndex, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the position to {@link #awaitSync} for.
+     * @see #appendUnsynced
+     */
+    public long appendAllUnsynced(Collection<Price> prices) {
+        lock.lock();
+        try {
+            for (Price price : prices) {
+                write(price);
+            }
+            return position(segmentIndex, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the position the next record is appended at. Positions order records across segments.
+     */
+    public long position() {
+        lock.lock();
+        try {
+            return position(segmentIndex, offset);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments holding only records before the position, once a snapshot covers them.
+     *
+     * @return the number of deleted segments.
+     */
+    public int deleteSegmentsBefore(long position) {
+        int deleted = 0;
+        for (File file : segmentFiles(new File(directory))) {
+            if (segmentIndexOf(file) < segmentOf(position)) {
+                if (file.delete()) {
+                    deleted++;
+                } else {
+                    logger.warn("Could not delete journal segment {}", file.getName());
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * @return the journal position up to which records are known to be on the device.
+     */
+    public long syncedPosition() {
+        lock.lock();
+        try {
+            return syncedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(Price price) {
+        if (!running) {
+            throw new IllegalStateException("Price journal is closed");
+        }
+        int messageLength = PriceCodec.encodedLength(price);
+        int frameLength = BitUtil.align(FRAME_HEADER_LENGTH + messageLength, FRAME_ALIGNMENT);
+        if (frameLength > segmentSize) {
+            throw new IllegalArgumentException("Price does not fit a journal segment: " + price);
+        }
+        if (offset + frameLength > buffer.capacity()) {
+            roll();
+        }
+        int messageOffset = offset + FRAME_HEADER_LENGTH;
+        codec.encode(price, buffer, messageOffset);
+        buffer.putInt(offset + CHECKSUM_OFFSET, checksum(checksumView, messageOffset, messageLength));
+        buffer.putIntOrdered(offset + LENGTH_OFFSET, messageLength);
+        offset += frameLength;
+    }
+
+    private void roll() {
+        while (nextSegment == null && allocating) {
+            allocated.awaitUninterruptibly();
+        }
+        long nextIndex = segmentIndex + 1;
+        MappedByteBuffer next = nextSegment;
+        nextSegment = null;
+        if (next == null) {
+            // the sync thread is behind, e.g. segments fill faster than they are allocated
+            next = IoUtil.mapNewFile(segmentFile(new File(directory), nextIndex), segmentSize, true);
+        }
+        retired.add(segment);
+        open(next, nextIndex, 0);
+        syncPending = true;
+        syncRequested.signal();
+    }
+
+    /**
+     * Maps and zero fills the segment after the current one outside the lock, for the next roll to swap in. Only
+     * called by the sync thread.
+     */
+    private void allocateNextSegment() {
+        long nextIndex;
+        lock.lock();
+        try {
+            if (nextSegment != null || !running) {
+                return;
+            }
+            allocating = true;
+            nextIndex = segmentIndex + 1;
+        } finally {
+            lock.unlock();
+        }
+        MappedByteBuffer mapped = null;
+        try {
+            mapped = IoUtil.mapNewFile(segmentFile(new File(directory), nextIndex), segmentSize, true);
+        } catch (RuntimeException e) {
+            logger.error("Could not allocate journal segment {}, the next roll allocates it", nextIndex, e);
+        } finally {
+            lock.lock();
+            try {
+                // a roll waits while allocating, so the current segment is still the one before
+                nextSegment = mapped;
+                allocating = false;
+                allocated.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void open(MappedByteBuffer mapped, long index, int endOffset) {
+        segment = mapped;
+        checksumView = mapped.duplicate();
+        buffer.wrap(mapped);
+        segmentIndex = index;
+        offset = endOffset;
+        syncedOffset = endOffset;
+    }
+
+    /**
+     * Waits until the records before the position are on the device, if the policy is
+     * {@link JournalSyncPolicy#GROUP_COMMIT}.
+     */
+    public void awaitSync(long position) {
+        if (syncPolicy != JournalSyncPolicy.GROUP_COMMIT) {
+            return;
+        }
+        lock.lock();
+        try {
+            syncPending = true;
+            syncRequested.signal();
+            while (syncedPosition < position && running) {
+                synced.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runSync() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        while (running) {
+            allocateNextSegment();
+            lock.lock();
+            try {
+                if (!syncPending && running) {
+                    syncRequested.awaitNanos(intervalNanos);
+                }
+                syncPending = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            sync();
+        }
+    }
+
+    /**
+     * Forces the records appended since the previous sync and unmaps retired segments. Only called by the sync
+     * thread, or on close once it has stopped, so the forced buffers can not be unmapped meanwhile.
+     */
+    private void sync() {
+        MappedByteBuffer[] full;
+        MappedByteBuffer current;
+        int from;
+        int to;
+        long target;
+        lock.lock();
+        try {
+            full = retired.toArray(new MappedByteBuffer[0]);
+            retired.clear();
+            current = segment;
+            from = syncedOffset;
+            to = offset;
+            syncedOffset = offset;
+            target = position(segmentIndex, offset);
+        } finally {
+            lock.unlock();
+        }
+
+        boolean force = syncPolicy != JournalSyncPolicy.NONE;
+        for (MappedByteBuffer mapped : full) {
+            if (force) {
+                mapped.force();
+            }
+            IoUtil.unmap(mapped);
+        }
+        if (force && to > from) {
+            current.force(from, to - from);
+        }
+
+        lock.lock();
+        try {
+            syncedPosition = Math.max(syncedPosition, target);
+            synced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private record ReplayResult(int prices, int endOffset) {
+    }
+
+    /**
+     * Loads the newest snapshot that verifies, older ones are kept as a fallback.
+     *
+     * @return the journal position of the loaded snapshot or {@link #NO_POSITION}.
+     */
+    private long loadSnapshot(File dir) {
+        File[] snapshots = SnapshotFile.list(dir);
+        for (int i = snapshots.length - 1; i >= 0; i--) {
+            try {
+                return SnapshotFile.load(snapshots[i], priceRepository);
+            } catch (RuntimeException e) {
+                logger.error("Skipping unreadable snapshot {}", snapshots[i].getName(), e);
+                priceRepository.clear();
+            }
+        }
+        return NO_POSITION;
+    }
+
+    /**
+     * Saves the prices of one segment from the given offset to the repository in batches. A frame failing its checksum in the last
+     * segment is a write torn by a crash, the rest of the segment is zeroed so appending continues there.
+     */
+    private ReplayResult replay(File file, MappedByteBuffer mapped, boolean last, int from) {
+        UnsafeBuffer frames = new UnsafeBuffer(mapped);
+        ByteBuffer view = mapped.duplicate();
+        List<Price> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+        int prices = 0;
+        int position = from;
+        while (position + FRAME_HEADER_LENGTH <= frames.capacity()) {
+            int messageLength = frames.getIntVolatile(position + LENGTH_OFFSET);
+            if (messageLength == 0) {
+                break;
+            }
+            int messageOffset = position + FRAME_HEADER_LENGTH;
+            if (messageLength < 0 || messageLength > frames.capacity() - messageOffset
+                    || frames.getInt(position + CHECKSUM_OFFSET) != checksum(view, messageOffset, messageLength)
+                    || !codec.isPriceMessage(frames, messageOffset, messageLength)) {
+                if (last) {
+                    logger.warn("Discarding torn journal record at {} of {}", position, file.getName());
+                    frames.setMemory(position, frames.capacity() - position, (byte) 0);
+                } else {
+                    logger.error("Corrupt journal record at {} of {}, skipping the rest of the segment",
+                            position, file.getName());
+                }
+                break;
+            }
+            batch.add(codec.decode(frames, messageOffset));
+            if (batch.size() == REPLAY_BATCH_SIZE) {
+                priceRepository.saveAll(batch);
+                prices += batch.size();
+                batch.clear();
+            }
+            position += BitUtil.align(FRAME_HEADER_LENGTH + messageLength, FRAME_ALIGNMENT);
+        }
+        if (!batch.isEmpty()) {
+            priceRepository.saveAll(batch);
+            prices += batch.size();
+        }
+        return new ReplayResult(prices, position);
+    }
+
+    private int checksum(ByteBuffer view, int offset, int length) {
+        view.limit(offset + length).position(offset);
+        checksum.reset();
+        checksum.update(view);
+        return (int) checksum.getValue();
+    }
+
+    File directory() {
+        return new File(directory);
+    }
+
+    static long position(long segmentIndex, int offset) {
+        return segmentIndex << 32 | offset;
+    }
+
+    static long segmentOf(long position) {
+        return position >>> 32;
+    }
+
+    static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    static File segmentFile(File dir, long index) {
+        return new File(dir, String.format("%020d%s", index, SEGMENT_SUFFIX));
+    }
+
+    private static boolean isEmpty(File segment) {
+        try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+            return file.length() < FRAME_HEADER_LENGTH || file.readInt() == 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read journal segment " + segment.getName(), e);
+        }
+    }
+
+    private static long segmentIndexOf(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static File[] segmentFiles(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        // zero padded indexes sort by name
+        Arrays.sort(files);
+        return files;
+    }
+}
@@ -0,0 +1,104 @@
+package com.matsuri.pricecache.journal;
+
+import com.matsuri.pricecache.repository.PriceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes a {@link SnapshotFile} of the repository on its own thread, so a restart loads the snapshot
+ * and replays only the journal after it. Keeps the last {@code journal.snapshot.retained} snapshots and deletes
+ * the journal segments before the oldest of them.
+ */
+@Component
+@ConditionalOnProperty(name = "journal.enabled", havingValue = "true")
+public class PriceSnapshotter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriceSnapshotter.class);
+
+    private final PriceJournal journal;
+    private final PriceRepository priceRepository;
+    private ScheduledExecutorService scheduler;
+
+    @Value("${journal.snapshot.intervalSeconds:300}")
+    private long intervalSeconds = 300;
+
+    @Value("${journal.snapshot.retained:2}")
+    private int retained = 2;
+
+    @Autowired
+    public PriceSnapshotter(PriceJournal journal, PriceRepository priceRepository) {
+        this.journal = journal;
+        this.priceRepository = priceRepository;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (intervalSeconds <= 0) {
+            logger.info("Periodic price snapshots disabled");
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "price-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scheduledSnapshot, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes a snapshot consistent with the current journal position, then drops snapshots and journal segments
+     * no longer needed for recovery.
+     *
+     * @return the journal position of the snapshot.
+     */
+    public long snapshot() throws IOException {
+        long start = System.nanoTime();
+        // prices are journaled once stored, so all prices before this position are visible to the scan
+        long position = journal.position();
+        File dir = journal.directory();
+        long count = SnapshotFile.write(dir, position, priceRepository);
+
+        File[] snapshots = SnapshotFile.list(dir);
+        int excess = snapshots.length - Math.max(1, retained);
+        for (int i = 0; i < excess; i++) {
+            if (!snapshots[i].delete()) {
+                logger.warn("Could not delete snapshot {}", snapshots[i].getName());
+            }
+        }
+        int deletedSegments = 0;
+        if (excess >= 0) {
+            deletedSegments = journal.deleteSegmentsBefore(SnapshotFile.positionOf(snapshots[excess]));
+        }
+        logger.info("Wrote snapshot of {} prices at journal position {} in {} ms, deleted {} journal segments",
+                count, Long.toHexString(position), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                deletedSegments);
+        return position;
+    }
+
+    private void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (Exception e) {
+            logger.error("Error writing price snapshot", e);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.matsuri.pricecache.journal;
+
+import com.matsuri.pricecache.codec.PriceCodec;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.PriceRepository;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary image of the latest prices, consistent with a journal position: every price journaled before the
+ * position is in the image, or a newer one for the same key, so recovery loads the image and replays the journal
+ * from the position.
+ * <p>
+ * A 32 byte header holds a magic number, the format version, the journal position, the price count and a CRC32C
+ * of the body. The body is the length prefixed binary {@link PriceCodec} message of every price. Files are named
+ * after their journal position so the newest sorts last, and are only renamed into place once complete and forced.
+ */
+final class SnapshotFile {
+
+    static final String SUFFIX = ".snapshot";
+
+    static final int MAGIC = 0x50534E50; // "PSNP"
+    static final int VERSION = 1;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int POSITION_OFFSET = 8;
+    static final int COUNT_OFFSET = 16;
+    static final int CHECKSUM_OFFSET = 24;
+    static final int HEADER_LENGTH = 32;
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+    private static final int LOAD_BATCH_SIZE = 1024;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Writes the prices of the repository. Reads do not lock, so writers carry on while the image is written.
+     *
+     * @return the number of prices written.
+     */
+    static long write(File dir, long journalPosition, PriceRepository priceRepository) throws IOException {
+        File target = file(dir, journalPosition);
+        File temp = new File(dir, target.getName() + ".tmp");
+        ByteBuffer chunk = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        UnsafeBuffer buffer = new UnsafeBuffer(chunk);
+        PriceCodec codec = new PriceCodec();
+        CRC32C checksum = new CRC32C();
+        long[] count = new long[1];
+
+        try {
+            try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                channel.position(HEADER_LENGTH);
+                int[] length = new int[1];
+                priceRepository.forEach(price -> {
+                    int messageLength = PriceCodec.encodedLength(price);
+                    if (length[0] + Integer.BYTES + messageLength > WRITE_BUFFER_SIZE) {
+                        flush(channel, chunk, length[0], checksum);
+                        length[0] = 0;
+                    }
+                    buffer.putInt(length[0], messageLength);
+                    codec.encode(price, buffer, length[0] + Integer.BYTES);
+                    length[0] += Integer.BYTES + messageLength;
+                    count[0]++;
+                });
+                flush(channel, chunk, length[0], checksum);
+
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+                buffer.putInt(VERSION_OFFSET, VERSION);
+                buffer.putLong(POSITION_OFFSET, journalPosition);
+                buffer.putLong(COUNT_OFFSET, count[0]);
+                buffer.putInt(CHECKSUM_OFFSET, (int) checksum.getValue());
+                buffer.putInt(CHECKSUM_OFFSET + Integer.BYTES, 0);
+                chunk.clear().limit(HEADER_LENGTH);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk, chunk.position());
+                }
+                channel.force(true);
+            }
+            // closed before the move
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            // only left behind by a failure
+            Files.deleteIfExists(temp.toPath());
+        }
+        return count[0];
+    }
+
+    /**
+     * Maps the snapshot, verifies it and saves its prices to the repository in batches.
+     *
+     * @return the journal position the snapshot is consistent with.
+     * @throws IllegalStateException if the file is not a complete snapshot, before anything is saved.
+     */
+    static long load(File file, PriceRepository priceRepository) {
+        MappedByteBuffer mapped = IoUtil.mapExistingFile(file, FileChannel.MapMode.READ_ONLY, "price snapshot");
+        try {
+            UnsafeBuffer buffer = new UnsafeBuffer(mapped);
+            if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(MAGIC_OFFSET) != MAGIC) {
+                throw new IllegalStateException("Not a price snapshot: " + file.getName());
+            }
+            if (buffer.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IllegalStateException("Unsupported snapshot version " + buffer.getInt(VERSION_OFFSET)
+                        + ": " + file.getName());
+            }
+            CRC32C checksum = new CRC32C();
+            checksum.update(mapped.duplicate().position(HEADER_LENGTH));
+            if ((int) checksum.getValue() != buffer.getInt(CHECKSUM_OFFSET)) {
+                throw new IllegalStateException("Snapshot checksum mismatch: " + file.getName());
+            }
+
+            PriceCodec codec = new PriceCodec();
+            List<Price> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            long count = buffer.getLong(COUNT_OFFSET);
+            int offset = HEADER_LENGTH;
+            for (long i = 0; i < count; i++) {
+                int messageLength = buffer.getInt(offset);
+                batch.add(codec.decode(buffer, offset + Integer.BYTES));
+                offset += Integer.BYTES + messageLength;
+                if (batch.size() == LOAD_BATCH_SIZE) {
+                    priceRepository.saveAll(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                priceRepository.saveAll(batch);
+            }
+            return buffer.getLong(POSITION_OFFSET);
+        } finally {
+            IoUtil.unmap(mapped);
+        }
+    }
+
+    static File file(File dir, long journalPosition) {
+        return new File(dir, String.format("%016x%s", journalPosition, SUFFIX));
+    }
+
+    static long positionOf(File file) {
+        String name = file.getName();
+        return Long.parseUnsignedLong(name.substring(0, name.length() - SUFFIX.length()), 16);
+    }
+
+    /**
+     * @return the complete snapshots, oldest first.
+     */
+    static File[] list(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        // zero padded positions sort by name
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer chunk, int length, CRC32C checksum) {
+        try {
+            chunk.clear().limit(length);
+            checksum.update(chunk);
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
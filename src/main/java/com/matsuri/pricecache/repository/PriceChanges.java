@@ -0,0 +1,92 @@
+package com.matsuri.pricecache.repository;
+
+import com.matsuri.pricecache.collections.ChangeLog;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.domain.PriceKey;
+import com.matsuri.pricecache.domain.SymbolTable;
+import org.agrona.collections.LongArrayList;
+import org.agrona.collections.LongHashSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * Prices changed after a sequence number: the current price of every updated key and the ids of removed keys,
+ * each key at most once. Continue from {@link #getSequence()}. If {@link #isResyncRequired()} the requested
+ * changes are no longer held and the client has to reload everything and continue from the returned sequence.
+ */
+public class PriceChanges {
+
+    private final long sequence;
+    private final boolean resyncRequired;
+    private final boolean hasMore;
+    private final List<Price> updated;
+    private final List<Removal> removed;
+
+    public static class Removal {
+        private final String instrumentId;
+        private final String vendorId;
+
+        public Removal(String instrumentId, String vendorId) {
+            this.instrumentId = instrumentId;
+            this.vendorId = vendorId;
+        }
+
+        public String getInstrumentId() { return instrumentId; }
+        public String getVendorId() { return vendorId; }
+    }
+
+    public PriceChanges(long sequence, boolean resyncRequired, boolean hasMore, List<Price> updated,
+                        List<Removal> removed) {
+        this.sequence = sequence;
+        this.resyncRequired = resyncRequired;
+        this.hasMore = hasMore;
+        this.updated = updated;
+        this.removed = removed;
+    }
+
+    /**
+     * Reads the change log after {@code since} and resolves the changed keys to their current prices.
+     *
+     * @param currentPrice current price of a key or null if it has been removed.
+     */
+    public static PriceChanges collect(ChangeLog changeLog, long since, int limit, LongFunction<Price> currentPrice) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Change limit must be positive");
+        }
+        LongHashSet seen = new LongHashSet();
+        LongArrayList keys = new LongArrayList();
+        long last = changeLog.read(since, limit, key -> {
+            if (seen.add(key)) {
+                keys.addLong(key);
+            }
+        });
+        if (last == ChangeLog.RESYNC_REQUIRED) {
+            return new PriceChanges(changeLog.lastSequence(), true, false, List.of(), List.of());
+        }
+
+        List<Price> updated = new ArrayList<>(keys.size());
+        List<Removal> removed = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            long key = keys.getLong(i);
+            Price price = currentPrice.apply(key);
+            if (price != null) {
+                updated.add(price);
+            } else {
+                removed.add(new Removal(SymbolTable.INSTRUMENTS.symbol(PriceKey.instrumentSymbol(key)),
+                        SymbolTable.VENDORS.symbol(PriceKey.vendorSymbol(key))));
+            }
+        }
+        return new PriceChanges(last, false, last < changeLog.lastSequence(), updated, removed);
+    }
+
+    /**
+     * @return the sequence to pass as {@code since} on the next call.
+     */
+    public long getSequence() { return sequence; }
+    public boolean isResyncRequired() { return resyncRequired; }
+    public boolean isHasMore() { return hasMore; }
+    public List<Price> getUpdated() { return updated; }
+    public List<Removal> getRemoved() { return removed; }
+}
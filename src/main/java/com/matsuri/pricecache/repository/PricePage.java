@@ -0,0 +1,35 @@
+package com.matsuri.pricecache.repository;
+
+import com.matsuri.pricecache.domain.Price;
+
+import java.util.List;
+
+/**
+ * One page of a repository scan. The cursor is an opaque position defined by the repository: the next page
+ * continues strictly after it, so concurrent writes never make a scan skip or repeat a price that existed
+ * when the scan started.
+ */
+public class PricePage {
+
+    /** Cursor of the first page. */
+    public static final long START = -1L;
+
+    private final List<Price> prices;
+    private final long cursor;
+    private final boolean hasMore;
+
+    public PricePage(List<Price> prices, long cursor, boolean hasMore) {
+        this.prices = prices;
+        this.cursor = cursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<Price> getPrices() { return prices; }
+
+    /**
+     * @return position of the last price of this page, to pass as the cursor of the next page.
+     */
+    public long getCursor() { return cursor; }
+
+    public boolean hasMore() { return hasMore; }
+}
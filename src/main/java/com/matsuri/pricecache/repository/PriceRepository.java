@@ -3,17 +3,84 @@ package com.matsuri.pricecache.repository;
 
 import com.matsuri.pricecache.domain.Price;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 
 public interface PriceRepository {
     void save(Price price);
+
+    /**
+     * Saves a batch of prices, later prices of the same instrument/vendor win.
+     */
+    default void saveAll(Collection<Price> prices) {
+        prices.forEach(this::save);
+    }
+
     Optional<Price> findByInstrumentAndVendor(String instrumentId, String vendorId);
     List<Price> findByVendor(String vendorId);
     List<Price> findByInstrument(String instrumentId);
     List<Price> findAll();
+
+    /**
+     * Pages through all prices. Cursors are only meaningful to the repository that returned them.
+     *
+     * @param cursor {@link PricePage#START} or the cursor of the previous page.
+     */
+    PricePage findAll(long cursor, int limit);
+    PricePage findByVendor(String vendorId, long cursor, int limit);
+    PricePage findByInstrument(String instrumentId, long cursor, int limit);
+
+    /**
+     * @return the global sequence number stamped on the latest save or removal, zero if none.
+     */
+    long lastSequence();
+
+    /**
+     * Changes after the given sequence number from a bounded change log, see {@link PriceChanges}.
+     */
+    PriceChanges findChangesSince(long sequence, int limit);
+
+    /**
+     * Hands prices to the consumer while walking the store, without collecting them first. Used for streaming.
+     */
+    default void forEach(Consumer<? super Price> consumer) {
+        findAll().forEach(consumer);
+    }
+
+    default void forEachByVendor(String vendorId, Consumer<? super Price> consumer) {
+        findByVendor(vendorId).forEach(consumer);
+    }
+
+    default void forEachByInstrument(String instrumentId, Consumer<? super Price> consumer) {
+        findByInstrument(instrumentId).forEach(consumer);
+    }
+
+    /**
+     * Ticks of the key kept by the repository's tick history, oldest first, empty if it keeps none.
+     *
+     * @param from inclusive start of the time range, null for unbounded.
+     * @param to inclusive end of the time range, null for unbounded.
+     */
+    default List<Price> findHistory(String instrumentId, String vendorId, LocalDateTime from, LocalDateTime to) {
+        return List.of();
+    }
+
     void deleteOlderThan(LocalDateTime cutoffDate);
+
+    /**
+     * Removes prices older than the cutoff until done or the time budget is used up, so cleanup can run in
+     * bounded slices alongside live traffic.
+     *
+     * @return true if no prices older than the cutoff are left.
+     */
+    default boolean deleteOlderThan(LocalDateTime cutoffDate, long budgetNanos) {
+        deleteOlderThan(cutoffDate);
+        return true;
+    }
+
     int count();
     void clear();
 }
\ No newline at end of file
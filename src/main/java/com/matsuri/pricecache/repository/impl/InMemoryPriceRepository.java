@@ -1,96 +1,244 @@
 
 package com.matsuri.pricecache.repository.impl;
 
+import com.matsuri.pricecache.collections.ChangeLog;
+import com.matsuri.pricecache.collections.ExpiryIndex;
+import com.matsuri.pricecache.collections.PriceKeyTable;
+import com.matsuri.pricecache.collections.TickHistory;
+import com.matsuri.pricecache.domain.EpochNanos;
 import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.domain.PriceKey;
+import com.matsuri.pricecache.domain.SymbolTable;
+import com.matsuri.pricecache.repository.PriceChanges;
+import com.matsuri.pricecache.repository.PricePage;
 import com.matsuri.pricecache.repository.PriceRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
- * In-memory implementation of PriceRepository using ConcurrentHashMap.
+ * In-memory implementation of PriceRepository keyed by interned instrument and vendor symbol ids.
  * This implementation is thread-safe and can be easily replaced with a database implementation.
+ * Default repository, see {@link OffHeapPriceRepository} for the off-heap alternative.
  */
 @Repository
+@ConditionalOnProperty(name = "repository.type", havingValue = "HEAP", matchIfMissing = true)
 public class InMemoryPriceRepository implements PriceRepository {
-    
-    // Using composite key (instrumentId_vendorId) for O(1) lookups
-    private final Map<String, Price> priceStore = new ConcurrentHashMap<>();
-    
-    // Secondary indexes for efficient querying
-    private final Map<String, Set<String>> vendorIndex = new ConcurrentHashMap<>();
-    private final Map<String, Set<String>> instrumentIndex = new ConcurrentHashMap<>();
+
+    // One slot per instrument/vendor pair, rows by instrument double as the instrument index and
+    // the table keeps a per vendor column as the vendor index
+    private final PriceKeyTable<Price> priceStore = new PriceKeyTable<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ExpiryIndex expiryIndex = new ExpiryIndex(TimeUnit.MINUTES.toNanos(1));
+    private final ChangeLog changeLog;
+    private final TickHistory history;
+
+    public InMemoryPriceRepository() {
+        this(65536, 32);
+    }
+
+    @Autowired
+    public InMemoryPriceRepository(@Value("${repository.changeLog.capacity:65536}") int changeLogCapacity,
+                                   @Value("${repository.history.ticksPerKey:32}") int historyTicksPerKey) {
+        this(new ChangeLog(changeLogCapacity), historyTicksPerKey);
+    }
+
+    /**
+     * Repository stamping its changes on a change log shared with others, see {@link ShardedPriceRepository}.
+     */
+    InMemoryPriceRepository(ChangeLog changeLog, int historyTicksPerKey) {
+        this.changeLog = changeLog;
+        this.history = new TickHistory(historyTicksPerKey);
+    }
 
     @Override
     public void save(Price price) {
-        String compositeKey = price.getCompositeKey();
-        priceStore.put(compositeKey, price);
-        
-        // Update indexes
-        vendorIndex.computeIfAbsent(price.getVendorId(), k -> ConcurrentHashMap.newKeySet())
-                  .add(compositeKey);
-        instrumentIndex.computeIfAbsent(price.getInstrumentId(), k -> ConcurrentHashMap.newKeySet())
-                      .add(compositeKey);
+        if (store(price)) {
+            size.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<Price> prices) {
+        int added = 0;
+        for (Price price : prices) {
+            if (store(price)) {
+                added++;
+            }
+        }
+        size.addAndGet(added);
     }
 
     @Override
     public Optional<Price> findByInstrumentAndVendor(String instrumentId, String vendorId) {
-        String compositeKey = instrumentId + "_" + vendorId;
-        return Optional.ofNullable(priceStore.get(compositeKey));
+        int instrumentSymbol = SymbolTable.INSTRUMENTS.find(instrumentId);
+        int vendorSymbol = SymbolTable.VENDORS.find(vendorId);
+        return Optional.ofNullable(priceStore.get(instrumentSymbol, vendorSymbol));
     }
 
     @Override
     public List<Price> findByVendor(String vendorId) {
-        return vendorIndex.getOrDefault(vendorId, Collections.emptySet())
-                         .stream()
-                         .map(priceStore::get)
-                         .filter(Objects::nonNull)
-                         .collect(Collectors.toList());
+        List<Price> prices = new ArrayList<>();
+        priceStore.forEachInVendor(SymbolTable.VENDORS.find(vendorId), prices::add);
+        return prices;
     }
 
     @Override
     public List<Price> findByInstrument(String instrumentId) {
-        return instrumentIndex.getOrDefault(instrumentId, Collections.emptySet())
-                             .stream()
-                             .map(priceStore::get)
-                             .filter(Objects::nonNull)
-                             .collect(Collectors.toList());
+        List<Price> prices = new ArrayList<>();
+        priceStore.forEachInInstrument(SymbolTable.INSTRUMENTS.find(instrumentId), prices::add);
+        return prices;
     }
 
     @Override
     public List<Price> findAll() {
-        return new ArrayList<>(priceStore.values());
+        List<Price> prices = new ArrayList<>(size.get());
+        priceStore.forEach(prices::add);
+        return prices;
+    }
+
+    // Pages are in key order, the cursor is the key of the last price returned
+
+    @Override
+    public PricePage findAll(long cursor, int limit) {
+        return page(cursor, limit, visitor -> priceStore.forEachAfter(cursor, visitor));
+    }
+
+    @Override
+    public PricePage findByVendor(String vendorId, long cursor, int limit) {
+        int vendorSymbol = SymbolTable.VENDORS.find(vendorId);
+        int afterInstrument = cursor < 0 ? -1 : PriceKey.instrumentSymbol(cursor);
+        return page(cursor, limit, visitor -> priceStore.forEachInVendorAfter(vendorSymbol, afterInstrument, visitor));
+    }
+
+    @Override
+    public PricePage findByInstrument(String instrumentId, long cursor, int limit) {
+        int instrumentSymbol = SymbolTable.INSTRUMENTS.find(instrumentId);
+        int afterVendor = cursor < 0 ? -1 : PriceKey.vendorSymbol(cursor);
+        return page(cursor, limit, visitor -> priceStore.forEachInInstrumentAfter(instrumentSymbol, afterVendor, visitor));
+    }
+
+    @Override
+    public long lastSequence() {
+        return changeLog.lastSequence();
+    }
+
+    @Override
+    public PriceChanges findChangesSince(long sequence, int limit) {
+        return PriceChanges.collect(changeLog, sequence, limit, this::findByKey);
+    }
+
+    /**
+     * @return the current price of the {@link PriceKey}, null if none.
+     */
+    Price findByKey(long key) {
+        AtomicReference<Price> slot = priceStore.slot(key);
+        return slot != null ? slot.get() : null;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Price> consumer) {
+        priceStore.forEach(consumer);
+    }
+
+    @Override
+    public void forEachByVendor(String vendorId, Consumer<? super Price> consumer) {
+        priceStore.forEachInVendor(SymbolTable.VENDORS.find(vendorId), consumer);
+    }
+
+    @Override
+    public void forEachByInstrument(String instrumentId, Consumer<? super Price> consumer) {
+        priceStore.forEachInInstrument(SymbolTable.INSTRUMENTS.find(instrumentId), consumer);
+    }
+
+    @Override
+    public List<Price> findHistory(String instrumentId, String vendorId, LocalDateTime from, LocalDateTime to) {
+        return history.find(SymbolTable.INSTRUMENTS.find(instrumentId), SymbolTable.VENDORS.find(vendorId),
+                from == null ? Long.MIN_VALUE : EpochNanos.of(from), to == null ? Long.MAX_VALUE : EpochNanos.of(to));
     }
 
     @Override
     public void deleteOlderThan(LocalDateTime cutoffDate) {
-        List<String> keysToRemove = priceStore.entrySet().stream()
-                .filter(entry -> entry.getValue().getTimestamp().isBefore(cutoffDate))
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-        
-        keysToRemove.forEach(key -> {
-            Price price = priceStore.remove(key);
-            if (price != null) {
-                // Update indexes
-                vendorIndex.getOrDefault(price.getVendorId(), Collections.emptySet()).remove(key);
-                instrumentIndex.getOrDefault(price.getInstrumentId(), Collections.emptySet()).remove(key);
-            }
-        });
+        deleteOlderThan(cutoffDate, Long.MAX_VALUE);
+    }
+
+    @Override
+    public boolean deleteOlderThan(LocalDateTime cutoffDate, long budgetNanos) {
+        return expiryIndex.expire(EpochNanos.of(cutoffDate), budgetNanos, this::expire);
     }
 
     @Override
     public int count() {
-        return priceStore.size();
+        return size.get();
     }
 
     @Override
     public void clear() {
         priceStore.clear();
-        vendorIndex.clear();
-        instrumentIndex.clear();
+        history.clear();
+        expiryIndex.clear();
+        changeLog.reset();
+        size.set(0);
+    }
+
+    private static PricePage page(long cursor, int limit, Consumer<Predicate<Price>> scan) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+        List<Price> prices = new ArrayList<>(Math.min(limit, 1024));
+        boolean[] hasMore = new boolean[1];
+        scan.accept(price -> {
+            if (prices.size() == limit) {
+                hasMore[0] = true;
+                return false;
+            }
+            return prices.add(price);
+        });
+        long lastKey = prices.isEmpty() ? cursor : prices.get(prices.size() - 1).key();
+        return new PricePage(prices, lastKey, hasMore[0]);
+    }
+
+    /**
+     * @return true if the price was added rather than replacing one.
+     */
+    private boolean store(Price price) {
+        AtomicReference<Price> slot = priceStore.getOrCreateSlot(price.instrumentSymbol(), price.vendorSymbol());
+        Price previous = slot.getAndSet(price);
+        // the entry of the previous price still covers a newer one
+        if (previous == null || price.timestampNanos() < previous.timestampNanos()) {
+            expiryIndex.add(price.key(), price.timestampNanos());
+        }
+        changeLog.append(price.key());
+        history.record(price);
+        return previous == null;
+    }
+
+    private long expire(long key, long cutoffNanos) {
+        AtomicReference<Price> slot = priceStore.slot(key);
+        while (slot != null) {
+            Price price = slot.get();
+            if (price == null) {
+                break;
+            }
+            if (price.timestampNanos() >= cutoffNanos) {
+                return price.timestampNanos();
+            }
+            // only remove the price that was checked, never a newer one saved concurrently
+            if (slot.compareAndSet(price, null)) {
+                size.decrementAndGet();
+                changeLog.append(key);
+                break;
+            }
+        }
+        return ExpiryIndex.REMOVED;
     }
 }
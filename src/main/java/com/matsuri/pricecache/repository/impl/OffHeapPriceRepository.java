@@ -0,0 +1,460 @@
+package com.matsuri.pricecache.repository.impl;
+
+import com.matsuri.pricecache.collections.ChangeLog;
+import com.matsuri.pricecache.collections.ExpiryIndex;
+import com.matsuri.pricecache.collections.LongIntHashIndex;
+import com.matsuri.pricecache.collections.TickHistory;
+import com.matsuri.pricecache.domain.EpochNanos;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.domain.PriceKey;
+import com.matsuri.pricecache.domain.SymbolTable;
+import com.matsuri.pricecache.repository.PriceChanges;
+import com.matsuri.pricecache.repository.PricePage;
+import com.matsuri.pricecache.repository.PriceRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
+
+/**
+ * PriceRepository storing fixed size price records in off-heap {@link MemorySegment} slabs, so the store adds
+ * no heap objects per price and does not grow the GC's live set. Enabled with {@code repository.type=OFF_HEAP}.
+ * <p>
+ * Every instrument/vendor pair owns one record for the lifetime of the repository, found through an open
+ * addressing {@link LongIntHashIndex} keyed by {@link PriceKey}. Records are guarded by a per-record seqlock:
+ * writers take it by moving the version from even to odd, readers copy the record without locking and retry if
+ * the version was odd or changed meanwhile. {@link Price} objects are only materialized for results.
+ */
+@Repository
+@ConditionalOnProperty(name = "repository.type", havingValue = "OFF_HEAP")
+public class OffHeapPriceRepository implements PriceRepository {
+
+    // Record layout, 8 byte aligned
+    static final long KEY_OFFSET = 0;
+    static final long BID_OFFSET = 8;
+    static final long ASK_OFFSET = 16;
+    static final long TIMESTAMP_OFFSET = 24;
+    static final long SCALE_OFFSET = 32;
+    static final long CURRENCY_OFFSET = 36;
+    static final long PRESENT_OFFSET = 38;
+    static final long RECORD_SIZE = 40;
+
+    private static final int INITIAL_SLABS = 16;
+
+    private final Arena arena = Arena.ofShared();
+    private final LongIntHashIndex index;
+    private final Object allocationLock = new Object();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ExpiryIndex expiryIndex = new ExpiryIndex(TimeUnit.MINUTES.toNanos(1));
+    private final ChangeLog changeLog;
+    private final TickHistory history;
+    private volatile Slab[] slabs = new Slab[INITIAL_SLABS];
+    private volatile int recordCount;
+
+    @Value("${repository.offHeap.slabRecords:65536}")
+    private int slabRecords = 65536;
+
+    private static final class Slab {
+        final MemorySegment segment;
+        // seqlock versions, kept on heap for CAS support common to all FFM versions
+        final AtomicLongArray versions;
+
+        Slab(Arena arena, int records) {
+            segment = arena.allocate(records * RECORD_SIZE, Long.BYTES);
+            versions = new AtomicLongArray(records);
+        }
+    }
+
+    public OffHeapPriceRepository() {
+        this(1024, 65536, 32);
+    }
+
+    @Autowired
+    public OffHeapPriceRepository(@Value("${repository.offHeap.expectedKeys:1024}") int expectedKeys,
+                                  @Value("${repository.changeLog.capacity:65536}") int changeLogCapacity,
+                                  @Value("${repository.history.ticksPerKey:32}") int historyTicksPerKey) {
+        this.index = new LongIntHashIndex(expectedKeys);
+        this.changeLog = new ChangeLog(changeLogCapacity);
+        this.history = new TickHistory(historyTicksPerKey);
+    }
+
+    @Override
+    public void save(Price price) {
+        long key = price.key();
+        int record = index.get(key);
+        if (record == LongIntHashIndex.MISSING) {
+            record = allocate(key);
+        }
+        if (write(record, price)) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Allocates the records of all new keys under one lock acquisition before writing the batch.
+     */
+    @Override
+    public void saveAll(Collection<Price> prices) {
+        int[] records = new int[prices.size()];
+        int i = 0;
+        boolean missing = false;
+        for (Price price : prices) {
+            records[i] = index.get(price.key());
+            missing |= records[i++] == LongIntHashIndex.MISSING;
+        }
+        if (missing) {
+            synchronized (allocationLock) {
+                i = 0;
+                for (Price price : prices) {
+                    if (records[i] == LongIntHashIndex.MISSING) {
+                        records[i] = allocate(price.key());
+                    }
+                    i++;
+                }
+            }
+        }
+
+        int added = 0;
+        i = 0;
+        for (Price price : prices) {
+            if (write(records[i++], price)) {
+                added++;
+            }
+        }
+        size.addAndGet(added);
+    }
+
+    @Override
+    public Optional<Price> findByInstrumentAndVendor(String instrumentId, String vendorId) {
+        long key = PriceKey.find(instrumentId, vendorId);
+        int record = key == PriceKey.NOT_FOUND ? LongIntHashIndex.MISSING : index.get(key);
+        return Optional.ofNullable(record == LongIntHashIndex.MISSING ? null : read(record));
+    }
+
+    @Override
+    public List<Price> findByVendor(String vendorId) {
+        List<Price> prices = new ArrayList<>();
+        forEachByVendor(vendorId, prices::add);
+        return prices;
+    }
+
+    @Override
+    public List<Price> findByInstrument(String instrumentId) {
+        List<Price> prices = new ArrayList<>();
+        forEachByInstrument(instrumentId, prices::add);
+        return prices;
+    }
+
+    @Override
+    public List<Price> findAll() {
+        List<Price> prices = new ArrayList<>();
+        forEach(prices::add);
+        return prices;
+    }
+
+    // Pages are in record allocation order, the cursor is the index of the last record returned. Records never
+    // move and new keys are appended, so a scan neither skips nor repeats a price
+
+    @Override
+    public PricePage findAll(long cursor, int limit) {
+        return page(cursor, limit, key -> true);
+    }
+
+    @Override
+    public PricePage findByVendor(String vendorId, long cursor, int limit) {
+        int vendorSymbol = SymbolTable.VENDORS.find(vendorId);
+        return page(cursor, limit, key -> PriceKey.vendorSymbol(key) == vendorSymbol);
+    }
+
+    @Override
+    public PricePage findByInstrument(String instrumentId, long cursor, int limit) {
+        int instrumentSymbol = SymbolTable.INSTRUMENTS.find(instrumentId);
+        return page(cursor, limit, key -> PriceKey.instrumentSymbol(key) == instrumentSymbol);
+    }
+
+    @Override
+    public long lastSequence() {
+        return changeLog.lastSequence();
+    }
+
+    @Override
+    public PriceChanges findChangesSince(long sequence, int limit) {
+        return PriceChanges.collect(changeLog, sequence, limit, key -> {
+            int record = index.get(key);
+            return record == LongIntHashIndex.MISSING ? null : read(record);
+        });
+    }
+
+    @Override
+    public void forEach(Consumer<? super Price> consumer) {
+        scan(key -> true, consumer);
+    }
+
+    @Override
+    public void forEachByVendor(String vendorId, Consumer<? super Price> consumer) {
+        int vendorSymbol = SymbolTable.VENDORS.find(vendorId);
+        if (vendorSymbol != SymbolTable.NOT_FOUND) {
+            scan(key -> PriceKey.vendorSymbol(key) == vendorSymbol, consumer);
+        }
+    }
+
+    @Override
+    public void forEachByInstrument(String instrumentId, Consumer<? super Price> consumer) {
+        int instrumentSymbol = SymbolTable.INSTRUMENTS.find(instrumentId);
+        if (instrumentSymbol != SymbolTable.NOT_FOUND) {
+            scan(key -> PriceKey.instrumentSymbol(key) == instrumentSymbol, consumer);
+        }
+    }
+
+    /**
+     * The tick history is kept on heap, in primitive arrays per key.
+     */
+    @Override
+    public List<Price> findHistory(String instrumentId, String vendorId, LocalDateTime from, LocalDateTime to) {
+        return history.find(SymbolTable.INSTRUMENTS.find(instrumentId), SymbolTable.VENDORS.find(vendorId),
+                from == null ? Long.MIN_VALUE : EpochNanos.of(from), to == null ? Long.MAX_VALUE : EpochNanos.of(to));
+    }
+
+    @Override
+    public void deleteOlderThan(LocalDateTime cutoffDate) {
+        deleteOlderThan(cutoffDate, Long.MAX_VALUE);
+    }
+
+    @Override
+    public boolean deleteOlderThan(LocalDateTime cutoffDate, long budgetNanos) {
+        return expiryIndex.expire(EpochNanos.of(cutoffDate), budgetNanos, this::expire);
+    }
+
+    @Override
+    public int count() {
+        return size.get();
+    }
+
+    /**
+     * Marks every record empty, records stay allocated to their keys for reuse.
+     */
+    @Override
+    public void clear() {
+        removeIf(Long.MAX_VALUE);
+        history.clear();
+        expiryIndex.clear();
+        changeLog.reset();
+    }
+
+    @PreDestroy
+    public void close() {
+        arena.close();
+    }
+
+    private void removeIf(long olderThanNanos) {
+        int records = recordCount;
+        for (int record = 0; record < records; record++) {
+            Slab slab = slabs[record / slabRecords];
+            long offset = (record % slabRecords) * RECORD_SIZE;
+            if (isPresentAndOlder(slab.segment, offset, olderThanNanos)) {
+                removeIfOlder(record, olderThanNanos);
+            }
+        }
+    }
+
+    private long expire(long key, long cutoffNanos) {
+        int record = index.get(key);
+        return record == LongIntHashIndex.MISSING ? ExpiryIndex.REMOVED : removeIfOlder(record, cutoffNanos);
+    }
+
+    /**
+     * Removes the record if it holds a price older than the given time.
+     *
+     * @return the timestamp of the retained price or {@link ExpiryIndex#REMOVED} if the record is empty.
+     */
+    private long removeIfOlder(int record, long olderThanNanos) {
+        Slab slab = slabs[record / slabRecords];
+        int slot = record % slabRecords;
+        long offset = slot * RECORD_SIZE;
+        MemorySegment segment = slab.segment;
+
+        long version = lock(slab.versions, slot);
+        boolean present = segment.get(ValueLayout.JAVA_SHORT, offset + PRESENT_OFFSET) != 0;
+        long timestampNanos = segment.get(ValueLayout.JAVA_LONG, offset + TIMESTAMP_OFFSET);
+        boolean remove = present && timestampNanos < olderThanNanos;
+        if (remove) {
+            segment.set(ValueLayout.JAVA_SHORT, offset + PRESENT_OFFSET, (short) 0);
+        }
+        slab.versions.setRelease(slot, remove ? version + 2 : version);
+        if (remove) {
+            size.decrementAndGet();
+            changeLog.append(segment.get(ValueLayout.JAVA_LONG, offset + KEY_OFFSET));
+        }
+        return present && !remove ? timestampNanos : ExpiryIndex.REMOVED;
+    }
+
+    private static boolean isPresentAndOlder(MemorySegment segment, long offset, long olderThanNanos) {
+        return segment.get(ValueLayout.JAVA_SHORT, offset + PRESENT_OFFSET) != 0
+                && segment.get(ValueLayout.JAVA_LONG, offset + TIMESTAMP_OFFSET) < olderThanNanos;
+    }
+
+    /**
+     * Writes the price into its record under the record seqlock.
+     *
+     * @return true if the record was empty.
+     */
+    private boolean write(int record, Price price) {
+        Slab slab = slabs[record / slabRecords];
+        int slot = record % slabRecords;
+        long offset = slot * RECORD_SIZE;
+        MemorySegment segment = slab.segment;
+
+        long version = lock(slab.versions, slot);
+        boolean wasPresent = segment.get(ValueLayout.JAVA_SHORT, offset + PRESENT_OFFSET) != 0;
+        long previousTimestamp = segment.get(ValueLayout.JAVA_LONG, offset + TIMESTAMP_OFFSET);
+        segment.set(ValueLayout.JAVA_LONG, offset + BID_OFFSET, price.bidMantissa());
+        segment.set(ValueLayout.JAVA_LONG, offset + ASK_OFFSET, price.askMantissa());
+        segment.set(ValueLayout.JAVA_LONG, offset + TIMESTAMP_OFFSET, price.timestampNanos());
+        segment.set(ValueLayout.JAVA_INT, offset + SCALE_OFFSET, price.scale());
+        segment.set(ValueLayout.JAVA_SHORT, offset + CURRENCY_OFFSET, price.currencyCode());
+        segment.set(ValueLayout.JAVA_SHORT, offset + PRESENT_OFFSET, (short) 1);
+        slab.versions.setRelease(slot, version + 2);
+
+        // the entry of the previous price still covers a newer one
+        if (!wasPresent || price.timestampNanos() < previousTimestamp) {
+            expiryIndex.add(price.key(), price.timestampNanos());
+        }
+        changeLog.append(price.key());
+        history.record(price);
+        return !wasPresent;
+    }
+
+    private PricePage page(long cursor, int limit, LongPredicate keyFilter) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive");
+        }
+        int records = recordCount;
+        List<Price> prices = new ArrayList<>(Math.min(limit, 1024));
+        long lastRecord = cursor;
+        for (long record = Math.max(0, cursor + 1); record < records; record++) {
+            Slab slab = slabs[(int) record / slabRecords];
+            long key = slab.segment.get(ValueLayout.JAVA_LONG, (record % slabRecords) * RECORD_SIZE + KEY_OFFSET);
+            if (keyFilter.test(key)) {
+                Price price = read((int) record);
+                if (price != null) {
+                    if (prices.size() == limit) {
+                        return new PricePage(prices, lastRecord, true);
+                    }
+                    prices.add(price);
+                    lastRecord = record;
+                }
+            }
+        }
+        return new PricePage(prices, lastRecord, false);
+    }
+
+    private void scan(LongPredicate keyFilter, Consumer<? super Price> consumer) {
+        int records = recordCount;
+        for (int record = 0; record < records; record++) {
+            Slab slab = slabs[record / slabRecords];
+            // the key of a record never changes once allocated, no need to lock to filter on it
+            long key = slab.segment.get(ValueLayout.JAVA_LONG, (record % slabRecords) * RECORD_SIZE + KEY_OFFSET);
+            if (keyFilter.test(key)) {
+                Price price = read(record);
+                if (price != null) {
+                    consumer.accept(price);
+                }
+            }
+        }
+    }
+
+    /**
+     * Optimistic seqlock read of one record.
+     *
+     * @return the stored price or null if the record is empty.
+     */
+    private Price read(int record) {
+        Slab slab = slabs[record / slabRecords];
+        int slot = record % slabRecords;
+        long offset = slot * RECORD_SIZE;
+        MemorySegment segment = slab.segment;
+        while (true) {
+            long version = slab.versions.getAcquire(slot);
+            if ((version & 1) != 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            boolean present = segment.get(ValueLayout.JAVA_SHORT, offset + PRESENT_OFFSET) != 0;
+            long key = segment.get(ValueLayout.JAVA_LONG, offset + KEY_OFFSET);
+            long bid = segment.get(ValueLayout.JAVA_LONG, offset + BID_OFFSET);
+            long ask = segment.get(ValueLayout.JAVA_LONG, offset + ASK_OFFSET);
+            long timestampNanos = segment.get(ValueLayout.JAVA_LONG, offset + TIMESTAMP_OFFSET);
+            int scale = segment.get(ValueLayout.JAVA_INT, offset + SCALE_OFFSET);
+            short currencyCode = segment.get(ValueLayout.JAVA_SHORT, offset + CURRENCY_OFFSET);
+            // keep the data loads above from floating below the validating version load
+            VarHandle.acquireFence();
+            if (slab.versions.get(slot) != version) {
+                continue;
+            }
+            if (!present) {
+                return null;
+            }
+            return new Price(SymbolTable.INSTRUMENTS.symbol(PriceKey.instrumentSymbol(key)),
+                    SymbolTable.VENDORS.symbol(PriceKey.vendorSymbol(key)),
+                    bid, ask, scale, timestampNanos, currencyCode);
+        }
+    }
+
+    /**
+     * Takes the write side of the record seqlock.
+     *
+     * @return the even version the record had before locking.
+     */
+    private static long lock(AtomicLongArray versions, int slot) {
+        while (true) {
+            long version = versions.get(slot);
+            if ((version & 1) == 0 && versions.compareAndSet(slot, version, version + 1)) {
+                // keep the record stores that follow from becoming visible before the odd version
+                VarHandle.storeStoreFence();
+                return version;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private int allocate(long key) {
+        synchronized (allocationLock) {
+            int record = index.get(key);
+            if (record != LongIntHashIndex.MISSING) {
+                return record;
+            }
+            record = recordCount;
+            int slabIndex = record / slabRecords;
+            Slab[] current = slabs;
+            if (slabIndex >= current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            if (current[slabIndex] == null) {
+                current[slabIndex] = new Slab(arena, slabRecords);
+            }
+            current[slabIndex].segment.set(ValueLayout.JAVA_LONG, (record % slabRecords) * RECORD_SIZE + KEY_OFFSET, key);
+            slabs = current;
+            // publish the record to scans before the key becomes visible in the index
+            recordCount = record + 1;
+            index.putIfAbsent(key, record);
+            return record;
+        }
+    }
+}
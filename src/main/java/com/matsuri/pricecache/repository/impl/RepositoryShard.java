@@ -0,0 +1,138 @@
+package com.matsuri.pricecache.repository.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One shard of the {@link ShardedPriceRepository}: an {@link InMemoryPriceRepository} only ever written by the
+ * shard's writer agent, and the queue producers hand it prices through.
+ * <p>
+ * Producers claim consecutive tickets and fill the queue slot of their ticket, the writer applies the slots in
+ * ticket order. A producer waits for room while the queue is full and, to read its own write, until the writer
+ * has applied its ticket. A save that fails is recorded against its ticket and rethrown to the waiting producer.
+ */
+final class RepositoryShard implements Agent {
+
+    private static final ThreadLocal<IdleStrategy> WAIT_IDLE_STRATEGY =
+            ThreadLocal.withInitial(() -> new BackoffIdleStrategy(100, 10, 1_000, 100_000));
+
+    final InMemoryPriceRepository store;
+    private final int index;
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Price> queue;
+    private final AtomicLong claimed = new AtomicLong();
+    // tickets below this have been applied, written by the writer only
+    private final AtomicLong applied = new AtomicLong();
+    // failed saves by ticket until their producer takes them, rarely any
+    private final Map<Long, RuntimeException> failures = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    RepositoryShard(int index, InMemoryPriceRepository store, int queueCapacity) {
+        if (queueCapacity <= 0 || Integer.bitCount(queueCapacity) != 1) {
+            throw new IllegalArgumentException("Queue capacity must be a positive power of two: " + queueCapacity);
+        }
+        this.index = index;
+        this.store = store;
+        this.capacity = queueCapacity;
+        this.mask = queueCapacity - 1;
+        this.queue = new AtomicReferenceArray<>(queueCapacity);
+    }
+
+    /**
+     * Hands the price to the writer, waiting while the queue is full.
+     *
+     * @return the ticket to {@link #awaitApplied} for.
+     */
+    long submit(Price price) {
+        long ticket = claimed.getAndIncrement();
+        IdleStrategy idleStrategy = WAIT_IDLE_STRATEGY.get();
+        idleStrategy.reset();
+        while (ticket - applied.get() >= capacity) {
+            checkOpen();
+            idleStrategy.idle();
+        }
+        queue.setRelease((int) (ticket & mask), price);
+        return ticket;
+    }
+
+    /**
+     * Waits until the writer has applied the ticket and every ticket before it.
+     *
+     * @throws RuntimeException the save of the ticket failed with.
+     */
+    void awaitApplied(long ticket) {
+        awaitAppliedUpTo(ticket);
+        RuntimeException failure = takeFailure(ticket);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Waits until the writer has applied the ticket and every ticket before it, without checking for failures.
+     */
+    void awaitAppliedUpTo(long ticket) {
+        IdleStrategy idleStrategy = WAIT_IDLE_STRATEGY.get();
+        idleStrategy.reset();
+        while (applied.getAcquire() <= ticket) {
+            checkOpen();
+            idleStrategy.idle();
+        }
+    }
+
+    /**
+     * @return the failure of the applied ticket's save, if it failed, once only.
+     */
+    RuntimeException takeFailure(long ticket) {
+        return failures.isEmpty() ? null : failures.remove(ticket);
+    }
+
+    @Override
+    public int doWork() {
+        long next = applied.get();
+        int work = 0;
+        while (work < capacity) {
+            int slot = (int) (next & mask);
+            Price price = queue.getAcquire(slot);
+            if (price == null) {
+                break;
+            }
+            queue.set(slot, null);
+            try {
+                store.save(price);
+            } catch (RuntimeException e) {
+                // recorded before the ticket is released, for its producer to rethrow
+                failures.put(next, e);
+            } finally {
+                // a failed save must not leave its producer waiting
+                applied.setRelease(++next);
+            }
+            work++;
+        }
+        return work;
+    }
+
+    @Override
+    public void onClose() {
+        closed = true;
+    }
+
+    @Override
+    public String roleName() {
+        return "repository-shard-" + index;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Repository shard " + index + " is closed");
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.matsuri.pricecache.repository.impl;
+
+import com.matsuri.pricecache.collections.ChangeLog;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.domain.PriceKey;
+import com.matsuri.pricecache.domain.SymbolTable;
+import com.matsuri.pricecache.repository.PriceChanges;
+import com.matsuri.pricecache.repository.PricePage;
+import com.matsuri.pricecache.repository.PriceRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * PriceRepository partitioned by instrument over {@link RepositoryShard}s, each saving through its own single
+ * writer agent thread, so concurrent publishers of different shards never contend. Cleanup and clear run on the
+ * caller's thread next to the writer, which the shards' {@link InMemoryPriceRepository} stores are safe for.
+ * Enabled with {@code repository.type=SHARDED}.
+ * <p>
+ * Saves return once applied, so a publisher reads its own writes, and throw what the shard's save failed with. Reads are lock free and go straight to the
+ * shards: queries by instrument to the one owning it, others fan out and merge, pages in key order. The shards
+ * share one change log, the only state every writer updates.
+ */
+@Repository
+@ConditionalOnProperty(name = "repository.type", havingValue = "SHARDED")
+public class ShardedPriceRepository implements PriceRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedPriceRepository.class);
+
+    private final ChangeLog changeLog;
+    private final RepositoryShard[] shards;
+    private final AgentRunner[] writerRunners;
+    // shard the next cleanup slice starts with, so a slice running out of budget does not starve later shards
+    private int nextExpiryShard;
+
+    public ShardedPriceRepository(int shardCount) {
+        this(shardCount, 4096, 65536, 32);
+    }
+
+    @Autowired
+    public ShardedPriceRepository(@Value("${repository.sharded.shards:4}") int shardCount,
+                                  @Value("${repository.sharded.queueCapacity:4096}") int queueCapacity,
+                                  @Value("${repository.changeLog.capacity:65536}") int changeLogCapacity,
+                                  @Value("${repository.history.ticksPerKey:32}") int historyTicksPerKey) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        changeLog = new ChangeLog(changeLogCapacity);
+        shards = new RepositoryShard[shardCount];
+        writerRunners = new AgentRunner[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new RepositoryShard(i, new InMemoryPriceRepository(changeLog, historyTicksPerKey),
+                    queueCapacity);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < shards.length; i++) {
+            writerRunners[i] = new AgentRunner(new BackoffIdleStrategy(), Throwable::printStackTrace, null, shards[i]);
+            AgentRunner.startOnThread(writerRunners[i]);
+        }
+        logger.info("Started {} repository shard writers", shards.length);
+    }
+
+    @PreDestroy
+    public void stop() {
+        for (AgentRunner runner : writerRunners) {
+            if (runner != null) {
+                runner.close();
+            }
+        }
+    }
+
+    @Override
+    public void save(Price price) {
+        RepositoryShard shard = shardOf(price.instrumentSymbol());
+        shard.awaitApplied(shard.submit(price));
+    }
+
+    @Override
+    public void saveAll(Collection<Price> prices) {
+        // submitted to every shard before waiting, so the shards apply the batch in parallel
+        long[] lastTickets = new long[shards.length];
+        Arrays.fill(lastTickets, -1);
+        int[] shardIndexes = new int[prices.size()];
+        long[] tickets = new long[prices.size()];
+        int submitted = 0;
+        for (Price price : prices) {
+            int shard = shardIndexOf(price.instrumentSymbol());
+            lastTickets[shard] = shards[shard].submit(price);
+            shardIndexes[submitted] = shard;
+            tickets[submitted++] = lastTickets[shard];
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (lastTickets[i] >= 0) {
+                shards[i].awaitAppliedUpTo(lastTickets[i]);
+            }
+        }
+        // every failure is taken, the first is thrown with the others suppressed
+        RuntimeException failure = null;
+        for (int i = 0; i < submitted; i++) {
+            RuntimeException saveFailure = shards[shardIndexes[i]].takeFailure(tickets[i]);
+            if (saveFailure == null) {
+                continue;
+            }
+            if (failure == null) {
+                failure = saveFailure;
+            } else {
+                failure.addSuppressed(saveFailure);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public Optional<Price> findByInstrumentAndVendor(String instrumentId, String vendorId) {
+        RepositoryShard shard = shardOf(instrumentId);
+        return shard != null ? shard.store.findByInstrumentAndVendor(instrumentId, vendorId) : Optional.empty();
+    }
+
+    @Override
+    public List<Price> findByVendor(String vendorId) {
+        List<Price> prices = new ArrayList<>();
+        forEachByVendor(vendorId, prices::add);
+        return prices;
+    }
+
+    @Override
+    public List<Price> findByInstrument(String instrumentId) {
+        RepositoryShard shard = shardOf(instrumentId);
+        return shard != null ? shard.store.findByInstrument(instrumentId) : new ArrayList<>();
+    }
+
+    @Override
+    public List<Price> findAll() {
+        List<Price> prices = new ArrayList<>(count());
+        forEach(prices::add);
+        return prices;
+    }
+
+    // Pages are in key order: each shard contributes its first page after the cursor, the merged page takes the
+    // lowest keys of those
+
+    @Override
+    public PricePage findAll(long cursor, int limit) {
+        List<PricePage> pages = new ArrayList<>(shards.length);
+        for (RepositoryShard shard : shards) {
+            pages.add(shard.store.findAll(cursor, limit));
+        }
+        return merge(pages, cursor, limit);
+    }
+
+    @Override
+    public PricePage findByVendor(String vendorId, long cursor, int limit) {
+        List<PricePage> pages = new ArrayList<>(shards.length);
+        for (RepositoryShard shard : shards) {
+            pages.add(shard.store.findByVendor(vendorId, cursor, limit));
+        }
+        return merge(pages, cursor, limit);
+    }
+
+    @Override
+    public PricePage findByInstrument(String instrumentId, long cursor, int limit) {
+        RepositoryShard shard = shardOf(instrumentId);
+        // an unknown instrument has an empty page in any shard
+        return (shard != null ? shard : shards[0]).store.findByInstrument(instrumentId, cursor, limit);
+    }
+
+    @Override
+    public long lastSequence() {
+        return changeLog.lastSequence();
+    }
+
+    @Override
+    public PriceChanges findChangesSince(long sequence, int limit) {
+        return PriceChanges.collect(changeLog, sequence, limit,
+                key -> shardOf(PriceKey.instrumentSymbol(key)).store.findByKey(key));
+    }
+
+    @Override
+    public void forEach(Consumer<? super Price> consumer) {
+        for (RepositoryShard shard : shards) {
+            shard.store.forEach(consumer);
+        }
+    }
+
+    @Override
+    public void forEachByVendor(String vendorId, Consumer<? super Price> consumer) {
+        for (RepositoryShard shard : shards) {
+            shard.store.forEachByVendor(vendorId, consumer);
+        }
+    }
+
+    @Override
+    public void forEachByInstrument(String instrumentId, Consumer<? super Price> consumer) {
+        RepositoryShard shard = shardOf(instrumentId);
+        if (shard != null) {
+            shard.store.forEachByInstrument(instrumentId, consumer);
+        }
+    }
+
+    @Override
+    public List<Price> findHistory(String instrumentId, String vendorId, LocalDateTime from, LocalDateTime to) {
+        RepositoryShard shard = shardOf(instrumentId);
+        return shard != null ? shard.store.findHistory(instrumentId, vendorId, from, to) : List.of();
+    }
+
+    @Override
+    public void deleteOlderThan(LocalDateTime cutoffDate) {
+        for (RepositoryShard shard : shards) {
+            shard.store.deleteOlderThan(cutoffDate);
+        }
+    }
+
+    @Override
+    public synchronized boolean deleteOlderThan(LocalDateTime cutoffDate, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        for (int i = 0; i < shards.length; i++) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !shards[nextExpiryShard].store.deleteOlderThan(cutoffDate, remaining)) {
+                return false;
+            }
+            nextExpiryShard = (nextExpiryShard + 1) % shards.length;
+        }
+        return true;
+    }
+
+    @Override
+    public int count() {
+        int count = 0;
+        for (RepositoryShard shard : shards) {
+            count += shard.store.count();
+        }
+        return count;
+    }
+
+    @Override
+    public void clear() {
+        for (RepositoryShard shard : shards) {
+            shard.store.clear();
+        }
+    }
+
+    int shardIndexOf(int instrumentSymbol) {
+        // symbols are dense ids, so consecutive instruments go round robin over the shards
+        return instrumentSymbol % shards.length;
+    }
+
+    private RepositoryShard shardOf(int instrumentSymbol) {
+        return shards[shardIndexOf(instrumentSymbol)];
+    }
+
+    private RepositoryShard shardOf(String instrumentId) {
+        int instrumentSymbol = SymbolTable.INSTRUMENTS.find(instrumentId);
+        return instrumentSymbol != SymbolTable.NOT_FOUND ? shardOf(instrumentSymbol) : null;
+    }
+
+    private static PricePage merge(List<PricePage> pages, long cursor, int limit) {
+        List<Price> merged = new ArrayList<>();
+        boolean hasMore = false;
+        for (PricePage page : pages) {
+            merged.addAll(page.getPrices());
+            hasMore |= page.hasMore();
+        }
+        merged.sort(Comparator.comparingLong(Price::key));
+        if (merged.size() > limit) {
+            merged = new ArrayList<>(merged.subList(0, limit));
+            hasMore = true;
+        }
+        long lastKey = merged.isEmpty() ? cursor : merged.get(merged.size() - 1).key();
+        return new PricePage(merged, lastKey, hasMore);
+    }
+}
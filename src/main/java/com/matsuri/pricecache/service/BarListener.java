@@ -0,0 +1,14 @@
+package com.matsuri.pricecache.service;
+
+import com.matsuri.pricecache.domain.Bar;
+
+/**
+ * Notified of closed bars, see {@link com.matsuri.pricecache.service.impl.BarAggregator}.
+ */
+public interface BarListener {
+
+    /**
+     * Called on the publishing or the sweeping thread, implementations must not block.
+     */
+    void onBarClosed(Bar bar);
+}
@@ -0,0 +1,20 @@
+package com.matsuri.pricecache.service;
+
+import com.matsuri.pricecache.domain.BestPrice;
+
+/**
+ * Notified of changes of an instrument's consolidated best bid/offer, in order per instrument.
+ */
+public interface BestPriceListener {
+
+    /**
+     * Called on the publishing thread while the instrument's book is locked, implementations must not block.
+     */
+    void onBestPriceChange(BestPrice bestPrice);
+
+    /**
+     * Called like {@link #onBestPriceChange} once the instrument has no quotes left, e.g. after cleanup.
+     */
+    default void onBestPriceCleared(String instrumentId) {
+    }
+}
@@ -1,9 +1,16 @@
 
 package com.matsuri.pricecache.service;
 
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.domain.BestPrice;
 import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.PriceChanges;
+import com.matsuri.pricecache.repository.PricePage;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Service interface for price cache operations.
@@ -11,10 +18,45 @@ import java.util.Optional;
  */
 public interface PriceCacheService {
     void publishPrice(Price price);
+    void publishPrices(List<Price> prices);
     Optional<Price> getPrice(String instrumentId, String vendorId);
     List<Price> getPricesByVendor(String vendorId);
     List<Price> getPricesByInstrument(String instrumentId);
+    Optional<BestPrice> getBestPrice(String instrumentId);
+
+    /**
+     * Recent ticks of the instrument/vendor within the time range, bounds inclusive and optional, oldest first.
+     */
+    List<Price> getPriceHistory(String instrumentId, String vendorId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Closed mid price bars of the instrument/vendor starting within the time range, bounds inclusive and optional,
+     * oldest first.
+     *
+     * @throws IllegalArgumentException if bars are not kept for the interval.
+     */
+    List<Bar> getBars(String instrumentId, String vendorId, Duration interval, LocalDateTime from, LocalDateTime to);
     List<Price> getAllPrices();
+    PricePage getPricesPage(long cursor, int limit);
+    PricePage getPricesByVendorPage(String vendorId, long cursor, int limit);
+    PricePage getPricesByInstrumentPage(String instrumentId, long cursor, int limit);
+    long getLastSequence();
+    PriceChanges getChangesSince(long sequence, int limit);
+    void forEachPrice(Consumer<? super Price> consumer);
+    void forEachPriceByVendor(String vendorId, Consumer<? super Price> consumer);
+    void forEachPriceByInstrument(String instrumentId, Consumer<? super Price> consumer);
     void cleanupOldPrices();
+
+    /**
+     * Runs one cleanup slice limited by the time budget.
+     *
+     * @return true if no expired prices are left.
+     */
+    boolean cleanupOldPrices(long budgetNanos);
     int getPriceCount();
+
+    /**
+     * Removes all prices together with the best bid/offer. The journal is kept, a restart recovers its prices.
+     */
+    void clearPrices();
 }
@@ -3,11 +3,18 @@ package com.matsuri.pricecache.service;
 
 import com.matsuri.pricecache.domain.Price;
 
+import java.util.List;
+
 /**
  * Service interface for distributing price updates to downstream systems.
  */
 public interface PriceDistributionService {
     void distributePrice(Price price);
+
+    default void distributeAll(List<Price> prices) {
+        prices.forEach(this::distributePrice);
+    }
+
     void start();
     void stop();
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package com.matsuri.pricecache.service;
+
+import com.matsuri.pricecache.domain.Price;
+
+import java.util.Set;
+
+/**
+ * Selects prices by instrument, vendor and currency, an empty set matches any value.
+ */
+public record PriceFilter(Set<String> instrumentIds, Set<String> vendorIds, Set<String> currencies) {
+
+    public static final PriceFilter ALL = new PriceFilter(Set.of(), Set.of(), Set.of());
+
+    public PriceFilter {
+        instrumentIds = Set.copyOf(instrumentIds);
+        vendorIds = Set.copyOf(vendorIds);
+        currencies = Set.copyOf(currencies);
+    }
+
+    public boolean matches(Price price) {
+        return (instrumentIds.isEmpty() || instrumentIds.contains(price.getInstrumentId()))
+                && (vendorIds.isEmpty() || vendorIds.contains(price.getVendorId()))
+                && (currencies.isEmpty() || currencies.contains(price.getCurrency()));
+    }
+}
@@ -0,0 +1,14 @@
+package com.matsuri.pricecache.service;
+
+import com.matsuri.pricecache.domain.Price;
+
+/**
+ * Notified of every published price, in publication order per instrument/vendor.
+ */
+public interface PriceListener {
+
+    /**
+     * Called on the publishing thread once the price is stored, implementations must not block.
+     */
+    void onPrice(Price price);
+}
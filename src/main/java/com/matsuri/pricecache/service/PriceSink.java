@@ -0,0 +1,21 @@
+package com.matsuri.pricecache.service;
+
+import com.matsuri.pricecache.domain.Price;
+
+import java.io.IOException;
+
+/**
+ * Client end of a price stream subscription, e.g. a Server-Sent Events connection.
+ */
+public interface PriceSink {
+
+    /**
+     * Sends one price, called by one thread at a time and never by the publishing thread, so it may block.
+     */
+    void send(Price price) throws IOException;
+
+    /**
+     * Ends the client connection after the subscription was dropped, e.g. for falling behind.
+     */
+    void close(String reason);
+}
@@ -0,0 +1,93 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.codec.BarCodec;
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.service.BarListener;
+import io.aeron.Aeron;
+import io.aeron.Publication;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
+
+/**
+ * Publishes closed bars on their own stream, enabled with {@code aeron.bars.enabled=true}, through the media driver
+ * of the {@link AeronPriceDistributionService}.
+ * <p>
+ * A bar is offered straight from the thread closing it and is not retried: a bar lost to back pressure is still
+ * available over REST for as long as it is retained.
+ */
+@Service
+@ConditionalOnProperty(name = "aeron.bars.enabled", havingValue = "true")
+public class AeronBarService implements BarListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AeronBarService.class);
+    // a message with two maximum length strings fits
+    private static final int MAX_MESSAGE_LENGTH = 1024;
+
+    private final AeronPriceDistributionService distributionService;
+    private final DistributionStats stats = new DistributionStats();
+    private final ThreadLocal<UnsafeBuffer> buffer =
+            ThreadLocal.withInitial(() -> new UnsafeBuffer(ByteBuffer.allocateDirect(MAX_MESSAGE_LENGTH)));
+    private Aeron aeron;
+    private Publication publication;
+
+    @Value("${aeron.bars.channel:aeron:udp?endpoint=localhost:40128}")
+    private String channel = "aeron:udp?endpoint=localhost:40128";
+
+    @Value("${aeron.bars.streamId:1005}")
+    private int streamId = 1005;
+
+    @Autowired
+    public AeronBarService(AeronPriceDistributionService distributionService) {
+        this.distributionService = distributionService;
+    }
+
+    @PostConstruct
+    public void start() {
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(distributionService.aeronDirectoryName()));
+        publication = aeron.addPublication(channel, streamId);
+        logger.info("Closed bars published on channel: {}, streamId: {}", channel, streamId);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (publication != null) {
+            publication.close();
+        }
+        if (aeron != null) {
+            aeron.close();
+        }
+        logger.info("Bar publication stopped, stats: {}", stats);
+    }
+
+    @Override
+    public void onBarClosed(Bar bar) {
+        if (publication == null || !publication.isConnected()) {
+            stats.increment(NOT_CONNECTED);
+            return;
+        }
+        UnsafeBuffer messageBuffer = buffer.get();
+        long result = publication.offer(messageBuffer, 0, BarCodec.encode(bar, messageBuffer, 0));
+        if (result > 0) {
+            stats.increment(PUBLISHED);
+        } else if (result == Publication.BACK_PRESSURED || result == Publication.ADMIN_ACTION) {
+            stats.increment(PUBLICATION_DROPPED);
+        } else {
+            stats.increment(result == Publication.NOT_CONNECTED ? NOT_CONNECTED : PUBLICATION_FAILED);
+        }
+    }
+
+    public DistributionStats getStats() {
+        return stats;
+    }
+}
@@ -0,0 +1,108 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.codec.BestPriceCodec;
+import com.matsuri.pricecache.domain.BestPrice;
+import com.matsuri.pricecache.service.BestPriceListener;
+import io.aeron.Aeron;
+import io.aeron.Publication;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
+
+/**
+ * Publishes changes of the consolidated best bid/offer on their own stream, enabled with
+ * {@code aeron.bbo.enabled=true}, through the media driver of the {@link AeronPriceDistributionService}.
+ * <p>
+ * A change is offered straight from the publishing thread, in order per instrument. It is not retried: a
+ * change lost to back pressure is superseded by the instrument's next one, and the current value is always
+ * available over REST.
+ */
+@Service
+@ConditionalOnProperty(name = "aeron.bbo.enabled", havingValue = "true")
+public class AeronBestPriceService implements BestPriceListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(AeronBestPriceService.class);
+    // a message with three maximum length strings fits
+    private static final int MAX_MESSAGE_LENGTH = 1024;
+
+    private final AeronPriceDistributionService distributionService;
+    private final DistributionStats stats = new DistributionStats();
+    private final ThreadLocal<UnsafeBuffer> buffer =
+            ThreadLocal.withInitial(() -> new UnsafeBuffer(ByteBuffer.allocateDirect(MAX_MESSAGE_LENGTH)));
+    private Aeron aeron;
+    private Publication publication;
+
+    @Value("${aeron.bbo.channel:aeron:udp?endpoint=localhost:40127}")
+    private String channel = "aeron:udp?endpoint=localhost:40127";
+
+    @Value("${aeron.bbo.streamId:1004}")
+    private int streamId = 1004;
+
+    @Autowired
+    public AeronBestPriceService(AeronPriceDistributionService distributionService) {
+        this.distributionService = distributionService;
+    }
+
+    @PostConstruct
+    public void start() {
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(distributionService.aeronDirectoryName()));
+        publication = aeron.addPublication(channel, streamId);
+        logger.info("Best bid/offer changes published on channel: {}, streamId: {}", channel, streamId);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (publication != null) {
+            publication.close();
+        }
+        if (aeron != null) {
+            aeron.close();
+        }
+        logger.info("Best bid/offer publication stopped, stats: {}", stats);
+    }
+
+    @Override
+    public void onBestPriceChange(BestPrice bestPrice) {
+        if (publication == null || !publication.isConnected()) {
+            stats.increment(NOT_CONNECTED);
+            return;
+        }
+        UnsafeBuffer messageBuffer = buffer.get();
+        offer(messageBuffer, BestPriceCodec.encode(bestPrice, messageBuffer, 0));
+    }
+
+    @Override
+    public void onBestPriceCleared(String instrumentId) {
+        if (publication == null || !publication.isConnected()) {
+            stats.increment(NOT_CONNECTED);
+            return;
+        }
+        UnsafeBuffer messageBuffer = buffer.get();
+        offer(messageBuffer, BestPriceCodec.encodeCleared(instrumentId, messageBuffer, 0));
+    }
+
+    private void offer(UnsafeBuffer messageBuffer, int length) {
+        long result = publication.offer(messageBuffer, 0, length);
+        if (result > 0) {
+            stats.increment(PUBLISHED);
+        } else if (result == Publication.BACK_PRESSURED || result == Publication.ADMIN_ACTION) {
+            stats.increment(PUBLICATION_DROPPED);
+        } else {
+            stats.increment(result == Publication.NOT_CONNECTED ? NOT_CONNECTED : PUBLICATION_FAILED);
+        }
+    }
+
+    public DistributionStats getStats() {
+        return stats;
+    }
+}
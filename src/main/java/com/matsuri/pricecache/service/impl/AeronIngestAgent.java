@@ -0,0 +1,84 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.codec.PriceCodec;
+import com.matsuri.pricecache.codec.StringCache;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.PriceCacheService;
+import io.aeron.FragmentAssembler;
+import io.aeron.Subscription;
+import io.aeron.logbuffer.FragmentHandler;
+import io.aeron.logbuffer.Header;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.Agent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.matsuri.pricecache.service.impl.IngestionStats.Counter.*;
+
+/**
+ * Polls vendor price messages from the inbound subscription, decodes them straight from the term buffer and
+ * publishes them through the {@link PriceCacheService}. Symbols are decoded through a {@link StringCache}, so a
+ * message of known instrument, vendor and currency only allocates its {@link Price}. Each bad message is counted
+ * and skipped without affecting the rest of the fragment batch.
+ */
+public class AeronIngestAgent implements Agent, FragmentHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AeronIngestAgent.class);
+    static final int SYMBOL_CACHE_SIZE = 4096;
+
+    private final Subscription subscription;
+    private final PriceCacheService priceCacheService;
+    private final IngestionStats stats;
+    private final int fragmentLimit;
+    private final PriceCodec priceCodec = new PriceCodec();
+    private final StringCache strings = new StringCache(SYMBOL_CACHE_SIZE);
+    private FragmentAssembler assembler;
+
+    public AeronIngestAgent(final Subscription subscription, final PriceCacheService priceCacheService,
+                            final IngestionStats stats, final int fragmentLimit) {
+        this.subscription = subscription;
+        this.priceCacheService = priceCacheService;
+        this.stats = stats;
+        this.fragmentLimit = fragmentLimit;
+    }
+
+    @Override
+    public void onStart() {
+        // created here rather than in the constructor, so this is not handed out before construction completes
+        assembler = new FragmentAssembler(this);
+    }
+
+    @Override
+    public int doWork() {
+        return subscription.poll(assembler, fragmentLimit);
+    }
+
+    @Override
+    public void onFragment(DirectBuffer buffer, int offset, int length, Header header) {
+        Price price;
+        try {
+            price = priceCodec.decode(buffer, offset, length, strings);
+        } catch (IllegalArgumentException e) {
+            stats.increment(INVALID);
+            logger.debug("Rejected invalid price message: {}", e.getMessage());
+            return;
+        } catch (RuntimeException e) {
+            stats.increment(MALFORMED);
+            logger.debug("Rejected malformed price message of {} bytes: {}", length, e.getMessage());
+            return;
+        }
+
+        try {
+            priceCacheService.publishPrice(price);
+            stats.increment(PUBLISHED);
+        } catch (RuntimeException e) {
+            stats.increment(FAILED);
+            logger.error("Failed to publish ingested price {}", price, e);
+        }
+    }
+
+    @Override
+    public String roleName() {
+        return "ingest";
+    }
+}
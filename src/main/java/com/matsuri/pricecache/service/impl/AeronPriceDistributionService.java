@@ -4,6 +4,8 @@ package com.matsuri.pricecache.service.impl;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.matsuri.pricecache.codec.PriceCodec;
+import com.matsuri.pricecache.codec.PriceMessageFormat;
 import com.matsuri.pricecache.domain.Price;
 import com.matsuri.pricecache.service.PriceDistributionService;
 import io.aeron.Aeron;
@@ -12,31 +14,60 @@ import io.aeron.driver.MediaDriver;
 import io.aeron.driver.ThreadingMode;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import org.agrona.BitUtil;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.Agent;
 import org.agrona.concurrent.AgentRunner;
 import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
 
 /**
  * Aeron-based implementation for distributing price updates.
  * Uses Aeron's high-performance messaging for real-time price distribution.
- * Not optimal serialization and data model but just to proof of concept.
+ * Prices are sent in the binary format of {@link PriceCodec} unless {@code aeron.format} selects JSON.
+ * Callers encode straight into a preallocated many-to-one ring buffer which {@link AeronSendAgent} drains
+ * into the publication, so the hand-off neither locks nor allocates. What happens when the ring buffer is full
+ * or the publication is back pressured is selected with {@link OverflowPolicy}. In
+ * {@link DistributionQueueMode#CONFLATING} mode only the latest pending price per key is kept instead.
+ * <p>
+ * With {@code aeron.partitions.count} above one the prices are sharded by {@link InstrumentPartitioner} over
+ * consecutive stream ids starting at {@code aeron.stream.id}, each partition with its own queue, publication and
+ * send agent thread. With {@code aeron.archive.enabled} the publications are recorded by an embedded
+ * {@link PriceStreamArchive}.
  */
 @Service
 public class AeronPriceDistributionService implements PriceDistributionService {
 
     private static final Logger logger = LoggerFactory.getLogger(AeronPriceDistributionService.class);
+    static final int PRICE_MSG_TYPE_ID = 1;
+    // binary price messages back to back, each prefixed by its int length, see enqueueBatch
+    static final int PRICE_BATCH_MSG_TYPE_ID = 2;
+    private static final long BLOCK_PARK_NS = TimeUnit.MICROSECONDS.toNanos(10);
 
     private final ObjectMapper objectMapper;
-    private LinkedBlockingQueue<String> linkedBlockingQueue;
+    private final ThreadLocal<PriceCodec> priceCodec = ThreadLocal.withInitial(PriceCodec::new);
+    private final DistributionStats stats = new DistributionStats();
+    private InstrumentPartitioner partitioner;
+    private DistributionPartition[] partitions;
     private Aeron aeron;
-    private Publication publication;
     private MediaDriver mediaDriver;
-    private AgentRunner sendAgentRunner;
+    private PriceStreamArchive archive;
 
     @Value("${aeron.channel:aeron:udp?endpoint=localhost:40123}")
     private String channel;
@@ -44,8 +75,56 @@ public class AeronPriceDistributionService implements PriceDistributionService {
     @Value("${aeron.stream.id:1001}")
     private int streamId;
 
+    @Value("${aeron.partitions.count:1}")
+    private int partitionCount = 1;
+
+    @Value("${aeron.partitions.groups:}")
+    private String partitionGroups = "";
+
     @Value("${aeron.queueCapacity:1048576}")
-    private int queueCapacity; // warning this may get full and block main thread
+    private int queueCapacity; // ring buffer size in bytes per partition, rounded up to a power of two
+
+    @Value("${aeron.queueMode:RING_BUFFER}")
+    private DistributionQueueMode queueMode = DistributionQueueMode.RING_BUFFER;
+
+    @Value("${aeron.conflation.maxKeys:65536}")
+    private int conflationMaxKeys = 65536;
+
+    @Value("${aeron.idleStrategy:BACKOFF}")
+    private IdleStrategyType idleStrategy = IdleStrategyType.BACKOFF;
+
+    @Value("${aeron.backpressure.queueFullPolicy:DROP_NEWEST}")
+    private OverflowPolicy queueFullPolicy = OverflowPolicy.DROP_NEWEST;
+
+    @Value("${aeron.backpressure.queueFullTimeoutMicros:1000}")
+    private long queueFullTimeoutMicros = 1000;
+
+    @Value("${aeron.backpressure.publicationPolicy:RETRY_WITH_DEADLINE}")
+    private OverflowPolicy publicationPolicy = OverflowPolicy.RETRY_WITH_DEADLINE;
+
+    @Value("${aeron.backpressure.publicationTimeoutMicros:1000}")
+    private long publicationTimeoutMicros = 1000;
+
+    @Value("${aeron.format:BINARY}")
+    private PriceMessageFormat format = PriceMessageFormat.BINARY;
+
+    @Value("${aeron.archive.enabled:false}")
+    private boolean archiveEnabled;
+
+    @Value("${aeron.archive.dir:aeron-archive}")
+    private String archiveDir = "aeron-archive";
+
+    @Value("${aeron.archive.controlChannel:aeron:udp?endpoint=localhost:8010}")
+    private String archiveControlChannel = "aeron:udp?endpoint=localhost:8010";
+
+    @Value("${aeron.archive.replicationChannel:aeron:udp?endpoint=localhost:0}")
+    private String archiveReplicationChannel = "aeron:udp?endpoint=localhost:0";
+
+    @Value("${aeron.archive.segmentFileLength:134217728}")
+    private int archiveSegmentFileLength = 128 * 1024 * 1024;
+
+    @Value("${aeron.archive.retentionBytes:1073741824}")
+    private long archiveRetentionBytes = 1024L * 1024 * 1024;
 
     public AeronPriceDistributionService() {
         this.objectMapper = new ObjectMapper();
@@ -58,12 +137,13 @@ public class AeronPriceDistributionService implements PriceDistributionService {
     public void start() {
         try {
             logger.info("Starting Aeron price distribution service");
-            linkedBlockingQueue = new LinkedBlockingQueue<>(queueCapacity); // so much more to be improved than queue size - expiration policy, how to behave if full, competing consumers
 
             final MediaDriver.Context mediaDriverCtx = new MediaDriver.Context()
                     .dirDeleteOnStart(true)
                     .threadingMode(ThreadingMode.SHARED)
                     .sharedIdleStrategy(new BusySpinIdleStrategy())
+                    // the archive's recording spy keeps the publication connected without subscribers
+                    .spiesSimulateConnection(archiveEnabled)
                     .dirDeleteOnShutdown(true);
             mediaDriver = MediaDriver.launchEmbedded(mediaDriverCtx);
 
@@ -72,13 +152,20 @@ public class AeronPriceDistributionService implements PriceDistributionService {
 
             logger.info("Aeron Dir {}", mediaDriver.aeronDirectoryName());
             aeron = Aeron.connect(aeronCtx);
-            publication = aeron.addPublication(channel, streamId);
-            final AeronSendAgent sendAgent = new AeronSendAgent(publication, linkedBlockingQueue);
-            sendAgentRunner = new AgentRunner(new BusySpinIdleStrategy(),
-                    Throwable::printStackTrace, null, sendAgent);
-            AgentRunner.startOnThread(sendAgentRunner);
-            logger.info("Aeron distribution service started successfully on channel: {}, streamId: {}",
-                    channel, streamId);
+            if (archiveEnabled) {
+                archive = new PriceStreamArchive(channel, archiveRetentionBytes);
+                archive.start(aeron, archiveDir, archiveControlChannel, archiveReplicationChannel,
+                        archiveSegmentFileLength);
+            }
+            partitioner = new InstrumentPartitioner(partitionCount, partitionGroups);
+            partitions = new DistributionPartition[partitionCount];
+            for (int i = 0; i < partitionCount; i++) {
+                partitions[i] = startPartition(i);
+            }
+            logger.info("Aeron distribution service started successfully on channel: {}, streamIds: {}..{}, "
+                    + "format: {}, queue mode: {}, queue full policy: {}, publication policy: {}",
+                    channel, streamId, streamId + partitionCount - 1, format, queueMode, queueFullPolicy,
+                    publicationPolicy);
         } catch (Exception e) {
             logger.error("Failed to start Aeron distribution service", e);
             throw new RuntimeException("Failed to initialize Aeron", e);
@@ -89,12 +176,19 @@ public class AeronPriceDistributionService implements PriceDistributionService {
     @Override
     public void stop() {
         logger.info("Stopping Aeron price distribution service");
-        if (sendAgentRunner != null) {
-            sendAgentRunner.close();
+        if (partitions != null) {
+            for (DistributionPartition partition : partitions) {
+                if (partition != null && partition.sendAgentRunner != null) {
+                    partition.sendAgentRunner.close();
+                }
+                if (partition != null && partition.publication != null) {
+                    partition.publication.close();
+                }
+            }
         }
 
-        if (publication != null) {
-            publication.close();
+        if (archive != null) {
+            archive.close();
         }
 
         if (aeron != null) {
@@ -105,22 +199,295 @@ public class AeronPriceDistributionService implements PriceDistributionService {
             mediaDriver.close();
         }
 
-        logger.info("Aeron distribution service stopped");
+        logger.info("Aeron distribution service stopped, stats: {}", stats);
     }
 
     @Override
     public void distributePrice(Price price) {
-        if (publication == null || !publication.isConnected()) {
+        DistributionPartition partition = partitionOf(price);
+        if (partition == null || !partition.isConnected()) {
+            stats.increment(NOT_CONNECTED);
             logger.error("Publication not available, skipping price distribution");
             return;
         }
 
         try {
-            // fixme should use binary serialization for better perf, not JSON
-            String jsonMessage = objectMapper.writeValueAsString(price);
-            linkedBlockingQueue.offer(jsonMessage);
-        } catch (JsonProcessingException e) {
+            offer(partition, price);
+        } catch (JsonProcessingException | RuntimeException e) {
             logger.error("Failed to serialize price for distribution", e);
         }
     }
+
+    /**
+     * Enqueues the prices of each partition as batch records of its ring buffer, so a record is claimed and
+     * committed once for as many prices as fit. The send agent still publishes each price as its own Aeron
+     * message, subscribers see the same stream as for single prices. Prices are enqueued one by one, under the
+     * queue full policy, when a batch record does not fit, in {@link DistributionQueueMode#CONFLATING} mode and in
+     * the JSON format.
+     */
+    @Override
+    public void distributeAll(List<Price> prices) {
+        if (partitions == null) {
+            stats.add(NOT_CONNECTED, prices.size());
+            logger.error("Publication not available, skipping distribution of {} prices", prices.size());
+            return;
+        }
+
+        int failed = 0;
+        int notConnected = 0;
+        for (DistributionPartition partition : partitions) {
+            List<Price> partitionPrices = partitions.length == 1 ? prices : prices.stream()
+                    .filter(price -> partitionOf(price) == partition)
+                    .toList();
+            if (partitionPrices.isEmpty()) {
+                continue;
+            }
+            if (!partition.isConnected()) {
+                notConnected += partitionPrices.size();
+                continue;
+            }
+            failed = distributeBatch(partition, partitionPrices, failed);
+        }
+        if (notConnected > 0) {
+            stats.add(NOT_CONNECTED, notConnected);
+            logger.error("Publication not available, skipped distribution of {} of {} prices", notConnected,
+                    prices.size());
+        }
+        if (failed > 0) {
+            logger.error("Failed to serialize {} of {} prices for distribution", failed, prices.size());
+        }
+    }
+
+    /**
+     * @param failed the failures of the batch so far, the first one is logged with its cause.
+     * @return the failures including those of this partition.
+     */
+    private int distributeBatch(DistributionPartition partition, List<Price> prices, int failed) {
+        boolean batched = partition.ringBuffer != null && format == PriceMessageFormat.BINARY;
+        int maxBatchLength = batched ? partition.ringBuffer.maxMsgLength() : 0;
+        int from = 0;
+        while (from < prices.size()) {
+            int to = from;
+            int length = 0;
+            while (batched && to < prices.size()) {
+                int entryLength = BitUtil.SIZE_OF_INT + PriceCodec.encodedLength(prices.get(to));
+                if (length + entryLength > maxBatchLength) {
+                    break;
+                }
+                length += entryLength;
+                to++;
+            }
+            if (to - from > 1 && enqueueBatch(partition.ringBuffer, prices.subList(from, to), length)) {
+                stats.add(ENQUEUED, to - from);
+                from = to;
+                continue;
+            }
+            for (int i = from; i < Math.max(to, from + 1); i++) {
+                try {
+                    offer(partition, prices.get(i));
+                } catch (JsonProcessingException | RuntimeException e) {
+                    if (failed++ == 0) {
+                        logger.error("Failed to serialize price {} for distribution", prices.get(i), e);
+                    }
+                }
+            }
+            from = Math.max(to, from + 1);
+        }
+        return failed;
+    }
+
+    /**
+     * Purges archived segments beyond the retention, a no-op unless the archive is enabled.
+     */
+    @Scheduled(fixedDelayString = "${aeron.archive.retentionCheckMillis:60000}")
+    public void enforceArchiveRetention() {
+        if (archive == null || partitions == null) {
+            return;
+        }
+        try {
+            for (DistributionPartition partition : partitions) {
+                archive.enforceRetention(partition.publication);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Failed to enforce archive retention", e);
+        }
+    }
+
+    public DistributionStats getStats() {
+        return stats;
+    }
+
+    /**
+     * @return the position of the partition's publication after the last price handed to it, zero before start.
+     */
+    public long publicationPosition(int partition) {
+        return partitions == null ? 0 : partitions[partition].publication.position();
+    }
+
+    /**
+     * @return the partitioner of the live prices, null before start.
+     */
+    public InstrumentPartitioner partitioner() {
+        return partitioner;
+    }
+
+    /**
+     * @return the directory of the embedded media driver, for other Aeron clients of this process.
+     */
+    public String aeronDirectoryName() {
+        return mediaDriver.aeronDirectoryName();
+    }
+
+    private DistributionPartition startPartition(int index) {
+        int partitionStreamId = streamId + index;
+        if (archive != null) {
+            archive.record(partitionStreamId);
+        }
+        Publication publication = aeron.addPublication(channel, partitionStreamId);
+        DistributionPartition partition;
+        Agent sendAgent;
+        if (queueMode == DistributionQueueMode.CONFLATING) {
+            partition = new DistributionPartition(index, publication, null,
+                    new ConflatingPriceQueue(conflationMaxKeys));
+            sendAgent = new ConflatingSendAgent(newPricePublisher(partition), partition.conflatingQueue,
+                    this::writeMessage, "conflating-sender-" + index);
+        } else {
+            partition = new DistributionPartition(index, publication, newRingBuffer(queueCapacity), null);
+            sendAgent = new AeronSendAgent(newPricePublisher(partition), partition.ringBuffer, "sender-" + index);
+        }
+        partition.sendAgentRunner = new AgentRunner(idleStrategy.create(), Throwable::printStackTrace, null,
+                sendAgent);
+        AgentRunner.startOnThread(partition.sendAgentRunner);
+        return partition;
+    }
+
+    private PricePublisher newPricePublisher(DistributionPartition partition) {
+        return new PricePublisher(partition.publication, publicationPolicy,
+                TimeUnit.MICROSECONDS.toNanos(publicationTimeoutMicros), stats, partition.discardRequests);
+    }
+
+    private DistributionPartition partitionOf(Price price) {
+        if (partitions == null) {
+            return null;
+        }
+        return partitions.length == 1 ? partitions[0] : partitions[partitioner.partitionOf(price.getInstrumentId())];
+    }
+
+    boolean offer(Price price) throws JsonProcessingException {
+        return offer(partitionOf(price), price);
+    }
+
+    private boolean offer(DistributionPartition partition, Price price) throws JsonProcessingException {
+        if (tryEnqueue(partition, price)) {
+            return true;
+        }
+        if (queueFullPolicy == OverflowPolicy.DROP_NEWEST) {
+            stats.increment(QUEUE_FULL_DROPPED_NEWEST);
+            return false;
+        }
+
+        if (queueFullPolicy == OverflowPolicy.DROP_OLDEST) {
+            partition.discardRequests.incrementAndGet();
+        }
+        long deadlineNs = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(queueFullTimeoutMicros);
+        boolean enqueued = false;
+        do {
+            if (queueFullPolicy == OverflowPolicy.BLOCK_WITH_TIMEOUT) {
+                LockSupport.parkNanos(BLOCK_PARK_NS);
+            } else {
+                Thread.onSpinWait();
+            }
+            enqueued = tryEnqueue(partition, price);
+        } while (!enqueued && System.nanoTime() - deadlineNs < 0);
+
+        if (queueFullPolicy == OverflowPolicy.DROP_OLDEST) {
+            PricePublisher.consumeRequest(partition.discardRequests); // withdraw the request if the agent has not served it
+        }
+        if (!enqueued) {
+            stats.increment(QUEUE_FULL_TIMED_OUT);
+        }
+        return enqueued;
+    }
+
+    private boolean tryEnqueue(DistributionPartition partition, Price price) throws JsonProcessingException {
+        if (partition.conflatingQueue == null) {
+            if (enqueue(partition.ringBuffer, price)) {
+                stats.increment(ENQUEUED);
+                return true;
+            }
+            return false;
+        }
+
+        ConflatingPriceQueue.OfferResult result = partition.conflatingQueue.offer(price);
+        if (result == ConflatingPriceQueue.OfferResult.FULL) {
+            return false;
+        }
+        stats.increment(result == ConflatingPriceQueue.OfferResult.CONFLATED ? CONFLATED : ENQUEUED);
+        return true;
+    }
+
+    private int writeMessage(Price price, MutableDirectBuffer buffer, int offset) {
+        if (format == PriceMessageFormat.JSON) {
+            try {
+                byte[] message = objectMapper.writeValueAsBytes(price);
+                buffer.putBytes(offset, message);
+                return message.length;
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return priceCodec.get().encode(price, buffer, offset);
+    }
+
+    boolean enqueue(RingBuffer ringBuffer, Price price) throws JsonProcessingException {
+        if (format == PriceMessageFormat.JSON) {
+            byte[] message = objectMapper.writeValueAsBytes(price);
+            return ringBuffer.write(PRICE_MSG_TYPE_ID, new UnsafeBuffer(message), 0, message.length);
+        }
+
+        int index = ringBuffer.tryClaim(PRICE_MSG_TYPE_ID, PriceCodec.encodedLength(price));
+        if (index == RingBuffer.INSUFFICIENT_CAPACITY) {
+            return false;
+        }
+        try {
+            priceCodec.get().encode(price, ringBuffer.buffer(), index);
+            ringBuffer.commit(index);
+        } catch (RuntimeException e) {
+            ringBuffer.abort(index);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Encodes the prices into one record of the ring buffer, each message prefixed by its length.
+     *
+     * @return false, leaving the ring buffer unchanged, if the record does not fit or a price fails to encode.
+     */
+    boolean enqueueBatch(RingBuffer ringBuffer, List<Price> prices, int length) {
+        int index = ringBuffer.tryClaim(PRICE_BATCH_MSG_TYPE_ID, length);
+        if (index == RingBuffer.INSUFFICIENT_CAPACITY) {
+            return false;
+        }
+        try {
+            PriceCodec codec = priceCodec.get();
+            MutableDirectBuffer buffer = ringBuffer.buffer();
+            int offset = index;
+            for (Price price : prices) {
+                int messageLength = codec.encode(price, buffer, offset + BitUtil.SIZE_OF_INT);
+                buffer.putInt(offset, messageLength);
+                offset += BitUtil.SIZE_OF_INT + messageLength;
+            }
+            ringBuffer.commit(index);
+            return true;
+        } catch (RuntimeException e) {
+            ringBuffer.abort(index);
+            return false;
+        }
+    }
+
+    static RingBuffer newRingBuffer(int capacity) {
+        int length = BitUtil.findNextPositivePowerOfTwo(capacity) + RingBufferDescriptor.TRAILER_LENGTH;
+        return new ManyToOneRingBuffer(new UnsafeBuffer(ByteBuffer.allocateDirect(length)));
+    }
 }
\ No newline at end of file
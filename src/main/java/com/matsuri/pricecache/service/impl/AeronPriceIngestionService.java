@@ -0,0 +1,81 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.service.PriceCacheService;
+import io.aeron.Aeron;
+import io.aeron.Subscription;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.agrona.concurrent.AgentRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Inbound Aeron channel for vendor prices in the binary format of {@link com.matsuri.pricecache.codec.PriceCodec},
+ * bypassing HTTP and JSON. Enabled with {@code aeron.ingest.enabled=true}, it subscribes on its own channel and
+ * stream through the media driver of the {@link AeronPriceDistributionService} and runs an
+ * {@link AeronIngestAgent} on a dedicated thread.
+ */
+@Service
+@ConditionalOnProperty(name = "aeron.ingest.enabled", havingValue = "true")
+public class AeronPriceIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AeronPriceIngestionService.class);
+
+    private final PriceCacheService priceCacheService;
+    private final AeronPriceDistributionService distributionService;
+    private final IngestionStats stats = new IngestionStats();
+    private Aeron aeron;
+    private Subscription subscription;
+    private AgentRunner ingestAgentRunner;
+
+    @Value("${aeron.ingest.channel:aeron:udp?endpoint=localhost:40124}")
+    private String channel = "aeron:udp?endpoint=localhost:40124";
+
+    @Value("${aeron.ingest.stream.id:2001}")
+    private int streamId = 2001;
+
+    @Value("${aeron.ingest.idleStrategy:BACKOFF}")
+    private IdleStrategyType idleStrategy = IdleStrategyType.BACKOFF;
+
+    @Value("${aeron.ingest.fragmentLimit:64}")
+    private int fragmentLimit = 64;
+
+    @Autowired
+    public AeronPriceIngestionService(PriceCacheService priceCacheService,
+                                      AeronPriceDistributionService distributionService) {
+        this.priceCacheService = priceCacheService;
+        this.distributionService = distributionService;
+    }
+
+    @PostConstruct
+    public void start() {
+        logger.info("Starting Aeron price ingestion on channel: {}, streamId: {}", channel, streamId);
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(distributionService.aeronDirectoryName()));
+        subscription = aeron.addSubscription(channel, streamId);
+        ingestAgentRunner = new AgentRunner(idleStrategy.create(), Throwable::printStackTrace, null,
+                new AeronIngestAgent(subscription, priceCacheService, stats, fragmentLimit));
+        AgentRunner.startOnThread(ingestAgentRunner);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ingestAgentRunner != null) {
+            ingestAgentRunner.close();
+        }
+        if (subscription != null) {
+            subscription.close();
+        }
+        if (aeron != null) {
+            aeron.close();
+        }
+        logger.info("Aeron price ingestion stopped, stats: {}", stats);
+    }
+
+    public IngestionStats getStats() {
+        return stats;
+    }
+}
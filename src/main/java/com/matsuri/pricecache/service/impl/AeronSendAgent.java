@@ -1,46 +1,64 @@
 package com.matsuri.pricecache.service.impl;
 
-import io.aeron.Publication;
+import org.agrona.BitUtil;
+import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.Agent;
-import org.agrona.concurrent.UnsafeBuffer;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.agrona.concurrent.ControlledMessageHandler;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
 
-import java.nio.charset.StandardCharsets;
-import java.util.concurrent.LinkedBlockingQueue;
+/**
+ * Drains encoded price messages from the ring buffer shared with the producers and hands each one to the
+ * {@link PricePublisher}. A message the publisher wants to retry is left at the head of the ring buffer. The prices
+ * of a batch record are published one by one, a retried batch resumes at the price the publisher wants to retry.
+ */
+public class AeronSendAgent implements Agent, ControlledMessageHandler {
+    static final int MESSAGE_LIMIT = 64;
 
-public class AeronSendAgent implements Agent {
-    private static final Logger logger = LoggerFactory.getLogger(AeronSendAgent.class);
-    private final Publication publication;
-    private final LinkedBlockingQueue<String> linkedBlockingQueue;
+    private final PricePublisher pricePublisher;
+    private final RingBuffer ringBuffer;
+    private final String roleName;
+    // offset within the batch record at the head of the ring buffer of its first unpublished price
+    private int batchResumeOffset;
 
-    public AeronSendAgent(final Publication publication, LinkedBlockingQueue<String> linkedBlockingQueue) {
-        this.publication = publication;
-        this.linkedBlockingQueue = linkedBlockingQueue;
+    public AeronSendAgent(final PricePublisher pricePublisher, final RingBuffer ringBuffer) {
+        this(pricePublisher, ringBuffer, "sender");
+    }
+
+    public AeronSendAgent(final PricePublisher pricePublisher, final RingBuffer ringBuffer, final String roleName) {
+        this.pricePublisher = pricePublisher;
+        this.ringBuffer = ringBuffer;
+        this.roleName = roleName;
     }
 
     @Override
     public int doWork() {
+        return ringBuffer.controlledRead(this, MESSAGE_LIMIT);
+    }
+
+    @Override
+    public Action onMessage(int msgTypeId, MutableDirectBuffer buffer, int index, int length) {
+        if (msgTypeId == AeronPriceDistributionService.PRICE_BATCH_MSG_TYPE_ID) {
+            return publishBatch(buffer, index, length);
+        }
+        return pricePublisher.publish(buffer, index, length) ? Action.CONTINUE : Action.ABORT;
+    }
 
-        try {
-            String jsonMessage  = linkedBlockingQueue.take();
-            byte[] messageBytes = jsonMessage.getBytes(StandardCharsets.UTF_8);
-            UnsafeBuffer buffer = new UnsafeBuffer(messageBytes);
-            buffer.putStringWithoutLengthUtf8(0, jsonMessage);
-            if (publication.isConnected()) {
-                long result = publication.offer(buffer);
-                if (result <= 0) {
-                    logger.warn("Failed to distribute price, result: {}", result); // assumption, do not reattempt
-                }
+    private Action publishBatch(MutableDirectBuffer buffer, int index, int length) {
+        int offset = batchResumeOffset;
+        while (offset < length) {
+            int messageLength = buffer.getInt(index + offset);
+            if (!pricePublisher.publish(buffer, index + offset + BitUtil.SIZE_OF_INT, messageLength)) {
+                batchResumeOffset = offset;
+                return Action.ABORT;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            offset += BitUtil.SIZE_OF_INT + messageLength;
         }
-        return 0;
+        batchResumeOffset = 0;
+        return Action.CONTINUE;
     }
 
     @Override
     public String roleName() {
-        return "sender";
+        return roleName;
     }
-}
\ No newline at end of file
+}
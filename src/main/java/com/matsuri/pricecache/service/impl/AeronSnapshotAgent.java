@@ -0,0 +1,166 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.codec.PriceCodec;
+import com.matsuri.pricecache.codec.SnapshotCodec;
+import com.matsuri.pricecache.service.PriceCacheService;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import io.aeron.logbuffer.FragmentHandler;
+import io.aeron.logbuffer.Header;
+import org.agrona.DirectBuffer;
+import org.agrona.collections.IntArrayList;
+import org.agrona.collections.LongArrayList;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Serves late-joiner snapshot requests: polls the request stream and answers each request on the snapshot
+ * publication with the current prices of the requested partition framed by begin and end messages, see
+ * {@link SnapshotCodec}.
+ * <p>
+ * The position of the partition's live stream is read before the repository is scanned. Prices are stored before they are
+ * distributed, so every price on the live stream up to that position is in the scan or superseded by a newer
+ * one. The converse does not hold: prices still queued for sending when the position is read can be in the scan and
+ * be published after the position too, so consumers skip live prices not newer than the snapshot's price of the
+ * key. Snapshots are sent one at a time on this agent's thread, a snapshot the publication does not accept
+ * within the offer timeout is abandoned without its end message and the consumer asks again.
+ */
+public class AeronSnapshotAgent implements Agent, FragmentHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AeronSnapshotAgent.class);
+    static final int FRAGMENT_LIMIT = 16;
+    // a price message with three maximum length strings fits
+    private static final int MAX_MESSAGE_LENGTH = 1024;
+
+    private final Subscription requests;
+    private final Publication snapshots;
+    private final PriceCacheService priceCacheService;
+    private final InstrumentPartitioner partitioner;
+    private final IntToLongFunction livePosition;
+    private final IdleStrategy offerIdleStrategy;
+    private final long offerTimeoutNanos;
+    private final LongArrayList pendingRequests = new LongArrayList();
+    private final IntArrayList pendingPartitions = new IntArrayList();
+    private final UnsafeBuffer buffer = new UnsafeBuffer(ByteBuffer.allocateDirect(MAX_MESSAGE_LENGTH));
+    private final PriceCodec priceCodec = new PriceCodec();
+
+    private static final class SnapshotAbandoned extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SnapshotAbandoned() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final SnapshotAbandoned ABANDONED = new SnapshotAbandoned();
+
+    public AeronSnapshotAgent(final Subscription requests, final Publication snapshots,
+                              final PriceCacheService priceCacheService, final InstrumentPartitioner partitioner,
+                              final IntToLongFunction livePosition, final IdleStrategy offerIdleStrategy,
+                              final long offerTimeoutNanos) {
+        this.requests = requests;
+        this.snapshots = snapshots;
+        this.priceCacheService = priceCacheService;
+        this.partitioner = partitioner;
+        this.livePosition = livePosition;
+        this.offerIdleStrategy = offerIdleStrategy;
+        this.offerTimeoutNanos = offerTimeoutNanos;
+    }
+
+    @Override
+    public int doWork() {
+        int work = requests.poll(this, FRAGMENT_LIMIT);
+        for (int i = 0; i < pendingRequests.size(); i++) {
+            sendSnapshot(pendingRequests.getLong(i), pendingPartitions.getInt(i));
+            work++;
+        }
+        pendingRequests.clear();
+        pendingPartitions.clear();
+        return work;
+    }
+
+    @Override
+    public void onFragment(DirectBuffer buffer, int offset, int length, Header header) {
+        if (SnapshotCodec.templateId(buffer, offset, length) != SnapshotCodec.REQUEST_TEMPLATE_ID) {
+            logger.debug("Ignoring unexpected message of {} bytes on the snapshot request stream", length);
+            return;
+        }
+        int partition = SnapshotCodec.partition(buffer, offset);
+        if (partition < 0 || partition >= partitioner.partitionCount()) {
+            logger.warn("Ignoring snapshot request {} for unknown partition {}",
+                    SnapshotCodec.correlationId(buffer, offset), partition);
+        } else {
+            pendingRequests.addLong(SnapshotCodec.correlationId(buffer, offset));
+            pendingPartitions.addInt(partition);
+        }
+    }
+
+    /**
+     * @return true if the whole snapshot was sent.
+     */
+    boolean sendSnapshot(long correlationId, int partition) {
+        long start = System.nanoTime();
+        long position = livePosition.applyAsLong(partition);
+        long sequence = priceCacheService.getLastSequence();
+        if (!offer(SnapshotCodec.encodeBegin(buffer, 0, correlationId, position, sequence))) {
+            logger.warn("Abandoned snapshot {}, the begin message was not accepted", correlationId);
+            return false;
+        }
+
+        long[] count = new long[1];
+        try {
+            priceCacheService.forEachPrice(price -> {
+                if (partitioner.partitionOf(price.getInstrumentId()) != partition) {
+                    return;
+                }
+                if (!offer(priceCodec.encode(price, buffer, 0))) {
+                    throw ABANDONED;
+                }
+                count[0]++;
+            });
+        } catch (SnapshotAbandoned e) {
+            logger.warn("Abandoned snapshot {} after {} prices, the publication did not accept more",
+                    correlationId, count[0]);
+            return false;
+        }
+
+        if (!offer(SnapshotCodec.encodeEnd(buffer, 0, correlationId, count[0]))) {
+            logger.warn("Abandoned snapshot {}, the end message was not accepted", correlationId);
+            return false;
+        }
+        logger.info("Sent snapshot {} of {} prices of partition {} at live position {}, sequence {} in {} ms",
+                correlationId, count[0], partition, position, sequence, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+    }
+
+    /**
+     * Retries a back pressured or not yet connected publication until the offer timeout.
+     */
+    private boolean offer(int length) {
+        long deadlineNs = System.nanoTime() + offerTimeoutNanos;
+        offerIdleStrategy.reset();
+        while (true) {
+            long result = snapshots.offer(buffer, 0, length);
+            if (result > 0) {
+                return true;
+            }
+            if (result == Publication.CLOSED || result == Publication.MAX_POSITION_EXCEEDED
+                    || System.nanoTime() - deadlineNs >= 0) {
+                return false;
+            }
+            offerIdleStrategy.idle();
+        }
+    }
+
+    @Override
+    public String roleName() {
+        return "snapshot";
+    }
+}
@@ -0,0 +1,90 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.service.PriceCacheService;
+import io.aeron.Aeron;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Late-joiner snapshots of the live price stream. Enabled with {@code aeron.snapshot.enabled=true}, it listens for
+ * requests on its own stream and answers on a separate snapshot stream through the media driver of the
+ * {@link AeronPriceDistributionService}, see {@link AeronSnapshotAgent}.
+ */
+@Service
+@ConditionalOnProperty(name = "aeron.snapshot.enabled", havingValue = "true")
+public class AeronSnapshotService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AeronSnapshotService.class);
+
+    private final PriceCacheService priceCacheService;
+    private final AeronPriceDistributionService distributionService;
+    private Aeron aeron;
+    private Subscription requests;
+    private Publication snapshots;
+    private AgentRunner snapshotAgentRunner;
+
+    @Value("${aeron.snapshot.requestChannel:aeron:udp?endpoint=localhost:40125}")
+    private String requestChannel = "aeron:udp?endpoint=localhost:40125";
+
+    @Value("${aeron.snapshot.requestStreamId:1002}")
+    private int requestStreamId = 1002;
+
+    @Value("${aeron.snapshot.channel:aeron:udp?endpoint=localhost:40126}")
+    private String channel = "aeron:udp?endpoint=localhost:40126";
+
+    @Value("${aeron.snapshot.streamId:1003}")
+    private int streamId = 1003;
+
+    @Value("${aeron.snapshot.offerTimeoutMillis:5000}")
+    private long offerTimeoutMillis = 5000;
+
+    @Autowired
+    public AeronSnapshotService(PriceCacheService priceCacheService,
+                                AeronPriceDistributionService distributionService) {
+        this.priceCacheService = priceCacheService;
+        this.distributionService = distributionService;
+    }
+
+    @PostConstruct
+    public void start() {
+        logger.info("Starting snapshot service, requests on channel: {}, streamId: {}, snapshots on channel: {}, "
+                + "streamId: {}", requestChannel, requestStreamId, channel, streamId);
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(distributionService.aeronDirectoryName()));
+        requests = aeron.addSubscription(requestChannel, requestStreamId);
+        snapshots = aeron.addPublication(channel, streamId);
+        AeronSnapshotAgent agent = new AeronSnapshotAgent(requests, snapshots, priceCacheService,
+                distributionService.partitioner(), distributionService::publicationPosition, new BackoffIdleStrategy(),
+                TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis));
+        snapshotAgentRunner = new AgentRunner(new BackoffIdleStrategy(), Throwable::printStackTrace, null, agent);
+        AgentRunner.startOnThread(snapshotAgentRunner);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (snapshotAgentRunner != null) {
+            snapshotAgentRunner.close();
+        }
+        if (snapshots != null) {
+            snapshots.close();
+        }
+        if (requests != null) {
+            requests.close();
+        }
+        if (aeron != null) {
+            aeron.close();
+        }
+        logger.info("Snapshot service stopped");
+    }
+}
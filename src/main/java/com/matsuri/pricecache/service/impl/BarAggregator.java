@@ -0,0 +1,144 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.collections.BarSeries;
+import com.matsuri.pricecache.collections.PriceKeyTable;
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.domain.EpochNanos;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.domain.SymbolTable;
+import com.matsuri.pricecache.service.BarListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Open/high/low/close bars of the mid price per instrument/vendor, one {@link BarSeries} per configured interval,
+ * updated as each tick is published.
+ * <p>
+ * A bar closes on the first tick of a later interval or, for quiet instruments, on the periodic sweep once its
+ * interval ended more than {@code bars.closeDelayMillis} ago; the delay leaves time for late ticks. Closed bars
+ * go to the {@link BarListener}, if any.
+ */
+@Component
+public class BarAggregator {
+
+    private final long[] intervalNanos;
+    private final int retained;
+    private final BarListener listener;
+    private final PriceKeyTable<BarSeries[]> series = new PriceKeyTable<>();
+
+    @Value("${bars.closeDelayMillis:1000}")
+    private long closeDelayMillis = 1000;
+
+    @Autowired
+    public BarAggregator(@Value("${bars.intervals:1s,1m}") String intervals,
+                         @Value("${bars.retained:120}") int retained,
+                         Optional<BarListener> listener) {
+        this(parseIntervals(intervals), retained, listener.orElse(null));
+    }
+
+    public BarAggregator(List<Duration> intervals, int retained, BarListener listener) {
+        this.intervalNanos = intervals.stream().mapToLong(Duration::toNanos).toArray();
+        if (Arrays.stream(intervalNanos).anyMatch(interval -> interval <= 0) || retained <= 0) {
+            throw new IllegalArgumentException("Bar intervals and retained bars must be positive");
+        }
+        this.retained = retained;
+        this.listener = listener;
+    }
+
+    public void onTick(Price price) {
+        if (intervalNanos.length == 0) {
+            return;
+        }
+        AtomicReference<BarSeries[]> slot = series.getOrCreateSlot(price.instrumentSymbol(), price.vendorSymbol());
+        BarSeries[] keySeries = slot.get();
+        if (keySeries == null) {
+            keySeries = newSeries(price);
+            if (!slot.compareAndSet(null, keySeries)) {
+                keySeries = slot.get();
+            }
+        }
+        for (BarSeries barSeries : keySeries) {
+            notifyClosed(barSeries.onTick(price));
+        }
+    }
+
+    /**
+     * Closes the bars of quiet instruments, against the local time the tick timestamps are in.
+     */
+    @Scheduled(fixedDelayString = "${bars.sweepIntervalMillis:1000}")
+    public void closeEndedBars() {
+        closeBarsEndedBefore(EpochNanos.of(LocalDateTime.now()) - TimeUnit.MILLISECONDS.toNanos(closeDelayMillis));
+    }
+
+    void closeBarsEndedBefore(long nanos) {
+        series.forEach(keySeries -> {
+            for (BarSeries barSeries : keySeries) {
+                notifyClosed(barSeries.closeIfEnded(nanos));
+            }
+        });
+    }
+
+    /**
+     * @return the retained closed bars of the interval starting within the range, bounds inclusive, oldest first.
+     * @throws IllegalArgumentException if bars are not kept for the interval.
+     */
+    public List<Bar> find(String instrumentId, String vendorId, Duration interval, long fromNanos, long toNanos) {
+        int index = indexOf(interval.toNanos());
+        if (index < 0) {
+            throw new IllegalArgumentException("No bars kept for interval " + interval);
+        }
+        int instrumentSymbol = SymbolTable.INSTRUMENTS.find(instrumentId);
+        int vendorSymbol = SymbolTable.VENDORS.find(vendorId);
+        if (instrumentSymbol == SymbolTable.NOT_FOUND || vendorSymbol == SymbolTable.NOT_FOUND) {
+            return List.of();
+        }
+        BarSeries[] keySeries = series.get(instrumentSymbol, vendorSymbol);
+        return keySeries != null ? keySeries[index].find(fromNanos, toNanos) : List.of();
+    }
+
+    public List<Duration> intervals() {
+        return Arrays.stream(intervalNanos).mapToObj(Duration::ofNanos).toList();
+    }
+
+    private BarSeries[] newSeries(Price price) {
+        BarSeries[] keySeries = new BarSeries[intervalNanos.length];
+        for (int i = 0; i < keySeries.length; i++) {
+            keySeries[i] = new BarSeries(price.getInstrumentId(), price.getVendorId(), intervalNanos[i], retained);
+        }
+        return keySeries;
+    }
+
+    private void notifyClosed(Bar bar) {
+        if (bar != null && listener != null) {
+            listener.onBarClosed(bar);
+        }
+    }
+
+    private int indexOf(long nanos) {
+        for (int i = 0; i < intervalNanos.length; i++) {
+            if (intervalNanos[i] == nanos) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static List<Duration> parseIntervals(String intervals) {
+        return Arrays.stream(intervals.split(","))
+                .map(String::trim)
+                .filter(interval -> !interval.isEmpty())
+                .map(DurationStyle::detectAndParse)
+                .toList();
+    }
+}
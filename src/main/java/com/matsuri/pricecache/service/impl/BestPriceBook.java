@@ -0,0 +1,159 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.collections.PriceHeap;
+import com.matsuri.pricecache.domain.BestPrice;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.BestPriceListener;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Consolidated best bid/offer per instrument, maintained incrementally from the stored quotes. Each instrument
+ * keeps a bid and an ask {@link PriceHeap} of its vendors' latest quotes, so a save costs {@code O(log vendors)}
+ * and reads return the precomputed top of book.
+ * <p>
+ * Updates of one instrument are serialized by its book's lock, the listener hears about every change of the best
+ * quotes in that order. The lock is a {@link ReentrantLock} rather than a monitor, so a virtual thread waiting for
+ * it, or blocking in the listener, unmounts instead of pinning its carrier thread. A book emptied by cleanup is
+ * dropped and the listener told it was cleared.
+ * <p>
+ * Callers update a key in the order the repository applied its prices, the book holds the vendor's last update.
+ * Quotes are only ranked against quotes of the same currency: a book takes the currency of its first quote and a
+ * quote in another currency removes the vendor's previous quote instead of being ranked.
+ */
+public class BestPriceBook {
+
+    private final Map<String, InstrumentBook> books = new ConcurrentHashMap<>();
+    private final BestPriceListener listener;
+
+    private static final class InstrumentBook {
+        final String instrumentId;
+        final PriceHeap bids = new PriceHeap(PriceHeap.Side.BID);
+        final PriceHeap asks = new PriceHeap(PriceHeap.Side.ASK);
+        final ReentrantLock lock = new ReentrantLock();
+        volatile BestPrice best;
+        // guarded by lock, the currency of the quotes while the book is not empty
+        short currencyCode;
+        // guarded by lock, set once the book is no longer in books
+        boolean dropped;
+
+        InstrumentBook(String instrumentId) {
+            this.instrumentId = instrumentId;
+        }
+
+        /**
+         * @return the new best price if it changed, otherwise null.
+         */
+        BestPrice refresh() {
+            BestPrice previous = best;
+            Price bid = bids.top();
+            BestPrice next = bid == null ? null : new BestPrice(bid, asks.top());
+            best = next;
+            return next == null || next.sameQuotes(previous) ? null : next;
+        }
+    }
+
+    public BestPriceBook(BestPriceListener listener) {
+        this.listener = listener;
+    }
+
+    public void update(Price price) {
+        while (true) {
+            InstrumentBook book = books.get(price.getInstrumentId());
+            if (book == null) {
+                book = books.computeIfAbsent(price.getInstrumentId(), InstrumentBook::new);
+            }
+            book.lock.lock();
+            try {
+                if (book.dropped) {
+                    continue; // emptied by cleanup meanwhile, the next lookup finds or creates its successor
+                }
+                if (book.bids.size() > 0 && price.currencyCode() != book.currencyCode) {
+                    // not comparable, though it replaces the vendor's quote in the book's currency
+                    if (!book.bids.remove(price.vendorSymbol())) {
+                        return;
+                    }
+                    book.asks.remove(price.vendorSymbol());
+                    if (book.bids.top() == null) {
+                        drop(book);
+                        continue; // the vendor was the last, its quote starts a book in the new currency
+                    }
+                } else {
+                    book.currencyCode = price.currencyCode();
+                    book.bids.put(price);
+                    book.asks.put(price);
+                }
+                BestPrice changed = book.refresh();
+                if (changed != null && listener != null) {
+                    listener.onBestPriceChange(changed);
+                }
+                return;
+            } finally {
+                book.lock.unlock();
+            }
+        }
+    }
+
+    public Optional<BestPrice> get(String instrumentId) {
+        InstrumentBook book = books.get(instrumentId);
+        return book == null ? Optional.empty() : Optional.ofNullable(book.best);
+    }
+
+    /**
+     * Drops quotes timestamped before the cutoff, following the repository's cleanup.
+     *
+     * @return the number of quotes removed.
+     */
+    public int removeOlderThan(long cutoffNanos) {
+        int removed = 0;
+        for (InstrumentBook book : books.values()) {
+            book.lock.lock();
+            try {
+                int bookRemoved = book.bids.removeOlderThan(cutoffNanos);
+                if (bookRemoved > 0) {
+                    book.asks.removeOlderThan(cutoffNanos);
+                    removed += bookRemoved;
+                    if (book.bids.top() == null) {
+                        drop(book);
+                        continue;
+                    }
+                    BestPrice changed = book.refresh();
+                    if (changed != null && listener != null) {
+                        listener.onBestPriceChange(changed);
+                    }
+                }
+            } finally {
+                book.lock.unlock();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Drops all books, following a clear of the repository.
+     */
+    public void clear() {
+        for (InstrumentBook book : books.values()) {
+            book.lock.lock();
+            try {
+                if (!book.dropped) {
+                    drop(book);
+                }
+            } finally {
+                book.lock.unlock();
+            }
+        }
+    }
+
+    private void drop(InstrumentBook book) {
+        book.dropped = true;
+        book.best = null;
+        books.remove(book.instrumentId, book);
+        if (listener != null) {
+            listener.onBestPriceCleared(book.instrumentId);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.collections.PriceKeyTable;
+import com.matsuri.pricecache.domain.Price;
+import org.agrona.concurrent.ManyToOneConcurrentArrayQueue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Many producer, single consumer queue holding at most one pending price per instrument/vendor key.
+ * A newer price replaces the pending one in place, keys are served in the order they first became pending,
+ * so depth is bounded by the number of distinct keys rather than the tick rate. Keys are the per-key slots of a
+ * {@link PriceKeyTable}, so once a key has been seen neither side allocates.
+ */
+public class ConflatingPriceQueue {
+
+    public enum OfferResult { QUEUED, CONFLATED, FULL }
+
+    private final PriceKeyTable<Price> pending = new PriceKeyTable<>();
+    private final ManyToOneConcurrentArrayQueue<AtomicReference<Price>> keys;
+
+    /**
+     * @param maxKeys maximum number of keys pending at the same time, rounded up to a power of two.
+     */
+    public ConflatingPriceQueue(int maxKeys) {
+        this.keys = new ManyToOneConcurrentArrayQueue<>(maxKeys);
+    }
+
+    public OfferResult offer(Price price) {
+        AtomicReference<Price> key = pending.getOrCreateSlot(price.instrumentSymbol(), price.vendorSymbol());
+        if (key.getAndSet(price) != null) {
+            return OfferResult.CONFLATED;
+        }
+        if (keys.offer(key)) {
+            return OfferResult.QUEUED;
+        }
+        // The key is not queued, nothing would ever drain it, so its slot is cleared. A producer may have
+        // conflated a newer price into the slot meanwhile: that one is queued if there is room by now, else it
+        // is the price dropped, counted once by the FULL returned here.
+        Price pendingPrice = price;
+        while (!key.compareAndSet(pendingPrice, null)) {
+            pendingPrice = key.get();
+            if (keys.offer(key)) {
+                return OfferResult.CONFLATED;
+            }
+        }
+        return OfferResult.FULL;
+    }
+
+    /**
+     * Consumer side only.
+     *
+     * @return the latest price of the longest waiting key, or null if nothing is pending.
+     */
+    public Price poll() {
+        AtomicReference<Price> key;
+        while ((key = keys.poll()) != null) {
+            Price price = key.getAndSet(null);
+            if (price != null) {
+                return price;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return number of keys with a pending price.
+     */
+    public int size() {
+        return keys.size();
+    }
+}
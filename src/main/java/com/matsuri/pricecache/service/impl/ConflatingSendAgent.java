@@ -0,0 +1,59 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.concurrent.Agent;
+
+/**
+ * Drains the latest price per key from a {@link ConflatingPriceQueue} and hands it to the {@link PricePublisher}.
+ * A message the publisher wants to retry is kept encoded and offered again on the next duty cycle.
+ */
+public class ConflatingSendAgent implements Agent {
+
+    private final PricePublisher pricePublisher;
+    private final ConflatingPriceQueue queue;
+    private final PriceMessageWriter messageWriter;
+    private final ExpandableDirectByteBuffer buffer = new ExpandableDirectByteBuffer(256);
+    private final String roleName;
+    private int retainedLength;
+
+    public ConflatingSendAgent(PricePublisher pricePublisher, ConflatingPriceQueue queue, PriceMessageWriter messageWriter) {
+        this(pricePublisher, queue, messageWriter, "conflating-sender");
+    }
+
+    public ConflatingSendAgent(PricePublisher pricePublisher, ConflatingPriceQueue queue,
+                               PriceMessageWriter messageWriter, String roleName) {
+        this.pricePublisher = pricePublisher;
+        this.queue = queue;
+        this.messageWriter = messageWriter;
+        this.roleName = roleName;
+    }
+
+    @Override
+    public int doWork() {
+        int workCount = 0;
+        if (retainedLength > 0) {
+            if (!pricePublisher.publish(buffer, 0, retainedLength)) {
+                return 0;
+            }
+            retainedLength = 0;
+            workCount++;
+        }
+
+        Price price;
+        while (workCount < AeronSendAgent.MESSAGE_LIMIT && (price = queue.poll()) != null) {
+            int length = messageWriter.write(price, buffer, 0);
+            if (!pricePublisher.publish(buffer, 0, length)) {
+                retainedLength = length;
+                break;
+            }
+            workCount++;
+        }
+        return workCount;
+    }
+
+    @Override
+    public String roleName() {
+        return roleName;
+    }
+}
@@ -0,0 +1,33 @@
+package com.matsuri.pricecache.service.impl;
+
+import io.aeron.Publication;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One stream of the partitioned distribution: its publication, the queue producers hand prices to, and the send
+ * agent draining the queue on its own thread. Exactly one of the ring buffer and the conflating queue is set.
+ */
+final class DistributionPartition {
+
+    final int index;
+    final Publication publication;
+    final RingBuffer ringBuffer;
+    final ConflatingPriceQueue conflatingQueue;
+    final AtomicLong discardRequests = new AtomicLong();
+    AgentRunner sendAgentRunner;
+
+    DistributionPartition(int index, Publication publication, RingBuffer ringBuffer,
+                          ConflatingPriceQueue conflatingQueue) {
+        this.index = index;
+        this.publication = publication;
+        this.ringBuffer = ringBuffer;
+        this.conflatingQueue = conflatingQueue;
+    }
+
+    boolean isConnected() {
+        return publication != null && publication.isConnected();
+    }
+}
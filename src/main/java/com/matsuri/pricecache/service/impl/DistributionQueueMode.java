@@ -0,0 +1,11 @@
+package com.matsuri.pricecache.service.impl;
+
+/**
+ * How prices are queued between {@code distributePrice} callers and the send agent.
+ */
+public enum DistributionQueueMode {
+    /** Every price is encoded into a ring buffer and sent in order. */
+    RING_BUFFER,
+    /** Only the latest pending price per instrument/vendor key is sent, see {@link ConflatingPriceQueue}. */
+    CONFLATING
+}
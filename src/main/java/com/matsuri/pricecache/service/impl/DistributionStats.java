@@ -0,0 +1,61 @@
+package com.matsuri.pricecache.service.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for price distribution, one per outcome so that no tick is lost without a trace.
+ */
+public class DistributionStats {
+
+    public enum Counter {
+        ENQUEUED,
+        CONFLATED,
+        QUEUE_FULL_DROPPED_NEWEST,
+        QUEUE_FULL_DROPPED_OLDEST,
+        QUEUE_FULL_TIMED_OUT,
+        PUBLISHED,
+        NOT_CONNECTED,
+        BACK_PRESSURED,
+        ADMIN_ACTION,
+        PUBLICATION_DROPPED,
+        PUBLICATION_TIMED_OUT,
+        PUBLICATION_FAILED,
+        SUBSCRIBER_DROPPED,
+        THROTTLED
+    }
+
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+    public DistributionStats() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public void add(Counter counter, long delta) {
+        counters[counter.ordinal()].add(delta);
+    }
+
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public Map<Counter, Long> snapshot() {
+        Map<Counter, Long> snapshot = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            snapshot.put(counter, get(counter));
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
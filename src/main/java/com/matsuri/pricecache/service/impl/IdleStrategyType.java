@@ -0,0 +1,30 @@
+package com.matsuri.pricecache.service.impl;
+
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.SleepingMillisIdleStrategy;
+import org.agrona.concurrent.YieldingIdleStrategy;
+
+/**
+ * Idle strategies selectable for agents that poll for work.
+ */
+public enum IdleStrategyType {
+    /** Lowest latency, burns a core. */
+    BUSY_SPIN,
+    /** Yields the core between polls. */
+    YIELDING,
+    /** Spins, then yields, then parks with growing timeouts while there is no work. */
+    BACKOFF,
+    /** Sleeps a millisecond between empty polls. */
+    SLEEPING;
+
+    public IdleStrategy create() {
+        return switch (this) {
+            case BUSY_SPIN -> new BusySpinIdleStrategy();
+            case YIELDING -> new YieldingIdleStrategy();
+            case BACKOFF -> new BackoffIdleStrategy();
+            case SLEEPING -> new SleepingMillisIdleStrategy();
+        };
+    }
+}
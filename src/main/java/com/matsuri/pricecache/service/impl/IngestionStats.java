@@ -0,0 +1,50 @@
+package com.matsuri.pricecache.service.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for inbound price messages, one per outcome so every rejected message is accounted for.
+ */
+public class IngestionStats {
+
+    public enum Counter {
+        PUBLISHED,
+        /** Not a complete binary price message. */
+        MALFORMED,
+        /** Decoded, but not a valid price. */
+        INVALID,
+        /** Valid, but publishing it failed. */
+        FAILED
+    }
+
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+    public IngestionStats() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public Map<Counter, Long> snapshot() {
+        Map<Counter, Long> snapshot = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            snapshot.put(counter, get(counter));
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.matsuri.pricecache.service.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps an instrument to one of the distribution partitions. Instruments of a configured group go to the
+ * partition of the group, the others by hash of the instrument id, so a consumer interested in a few instruments
+ * subscribes to their partitions only.
+ * <p>
+ * Groups are written as {@code AAPL,MSFT;GOOGL}: groups separated by semicolons, the {@code n}-th group is
+ * partition {@code n}.
+ */
+public final class InstrumentPartitioner {
+
+    private final int partitionCount;
+    private final Map<String, Integer> groupPartitions = new HashMap<>();
+
+    public InstrumentPartitioner(int partitionCount, String groups) {
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("partition count must be positive: " + partitionCount);
+        }
+        this.partitionCount = partitionCount;
+        if (groups == null || groups.isBlank()) {
+            return;
+        }
+        String[] groupList = groups.split(";");
+        if (groupList.length > partitionCount) {
+            throw new IllegalArgumentException(groupList.length + " instrument groups for " + partitionCount
+                    + " partitions");
+        }
+        for (int partition = 0; partition < groupList.length; partition++) {
+            for (String instrumentId : groupList[partition].split(",")) {
+                if (!instrumentId.isBlank()) {
+                    Integer previous = groupPartitions.put(instrumentId.trim(), partition);
+                    if (previous != null && previous != partition) {
+                        throw new IllegalArgumentException(instrumentId.trim() + " is in more than one group");
+                    }
+                }
+            }
+        }
+    }
+
+    public int partitionCount() {
+        return partitionCount;
+    }
+
+    public int partitionOf(String instrumentId) {
+        if (partitionCount == 1) {
+            return 0;
+        }
+        Integer partition = groupPartitions.get(instrumentId);
+        if (partition != null) {
+            return partition;
+        }
+        int hash = instrumentId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), partitionCount);
+    }
+}
@@ -0,0 +1,25 @@
+package com.matsuri.pricecache.service.impl;
+
+/**
+ * What to do with a price when the distribution queue is full or the publication is back pressured.
+ * <p>
+ * On a full queue the policy is applied by the caller of {@code distributePrice}, on a back pressured
+ * publication by the send agent for the message at the head of the queue.
+ */
+public enum OverflowPolicy {
+    /**
+     * Queue: discard the incoming price.
+     * Publication: keep the head message and try again on the next duty cycle, so the queue fills and newer
+     * prices are the ones dropped.
+     */
+    DROP_NEWEST,
+    /**
+     * Queue: ask the send agent to discard the oldest queued message and retry until the timeout.
+     * Publication: discard the head message and carry on with the next one.
+     */
+    DROP_OLDEST,
+    /** Spin retrying until the timeout expires, then drop. The send agent keeps polling while it waits. */
+    RETRY_WITH_DEADLINE,
+    /** Park between retries until the timeout expires, then drop. */
+    BLOCK_WITH_TIMEOUT
+}
@@ -1,55 +1,170 @@
 
 package com.matsuri.pricecache.service.impl;
 
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.domain.BestPrice;
+import com.matsuri.pricecache.domain.EpochNanos;
 import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.journal.PriceJournal;
+import com.matsuri.pricecache.repository.PriceChanges;
+import com.matsuri.pricecache.repository.PricePage;
 import com.matsuri.pricecache.repository.PriceRepository;
+import com.matsuri.pricecache.service.BestPriceListener;
 import com.matsuri.pricecache.service.PriceCacheService;
 import com.matsuri.pricecache.service.PriceDistributionService;
+import com.matsuri.pricecache.service.PriceListener;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 /**
  * Implementation of PriceCacheService.
  * This service orchestrates price storage, retrieval, and distribution operations.
+ * It also maintains the consolidated best bid/offer per instrument, see {@link BestPriceBook}, and the mid price
+ * bars, see {@link BarAggregator}.
  */
 @Service
 public class PriceCacheServiceImpl implements PriceCacheService {
     
     private static final Logger logger = LoggerFactory.getLogger(PriceCacheServiceImpl.class);
+    // power of two, see keyStripe
+    private static final int KEY_LOCK_STRIPES = 1024;
 
     @Value("${cleanup.retentionDays:30}")
     private int retentionDays;
 
     private final PriceRepository priceRepository;
     private final PriceDistributionService distributionService;
+    // null unless journal.enabled
+    private final PriceJournal journal;
+    private final BestPriceBook bestPrices;
+    // null if constructed without one
+    private final BarAggregator bars;
+    private final PriceListener[] priceListeners;
+    // held while a key is stored, journaled and ranked, so the journal and the best bid/offer see a key's prices in
+    // the order the repository applied them; replay, being last write wins too, restores the live price
+    private final ReentrantLock[] keyLocks = new ReentrantLock[KEY_LOCK_STRIPES];
+    private boolean bestPricesExpired;
 
-    @Autowired
     public PriceCacheServiceImpl(PriceRepository priceRepository, 
                                 PriceDistributionService distributionService) {
+        this(priceRepository, distributionService, Optional.empty(), Optional.empty(), Optional.empty(), List.of());
+    }
+
+    @Autowired
+    public PriceCacheServiceImpl(PriceRepository priceRepository,
+                                PriceDistributionService distributionService,
+                                Optional<PriceJournal> journal,
+                                Optional<BestPriceListener> bestPriceListener,
+                                Optional<BarAggregator> bars,
+                                List<PriceListener> priceListeners) {
         this.priceRepository = priceRepository;
         this.distributionService = distributionService;
+        this.journal = journal.orElse(null);
+        this.bestPrices = new BestPriceBook(bestPriceListener.orElse(null));
+        this.bars = bars.orElse(null);
+        this.priceListeners = priceListeners.toArray(new PriceListener[0]);
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Builds the best bid/offer of the prices already stored, recovered from the journal.
+     */
+    @PostConstruct
+    public void loadBestPrices() {
+        if (priceRepository.count() > 0) {
+            priceRepository.forEach(bestPrices::update);
+            logger.info("Best bid/offer built from {} stored prices", priceRepository.count());
+        }
     }
 
     @Override
     public void publishPrice(Price price) {
         logger.debug("Publishing price: {}", price);
 
-        priceRepository.save(price);
+        long journalPosition = 0;
+        ReentrantLock keyLock = keyLocks[keyStripe(price.key())];
+        keyLock.lock();
+        try {
+            priceRepository.save(price);
+            // journaled once stored, so a snapshot taken at a journal position holds every price before it
+            if (journal != null) {
+                journalPosition = journal.appendUnsynced(price);
+            }
+            bestPrices.update(price);
+        } finally {
+            keyLock.unlock();
+        }
+        if (bars != null) {
+            bars.onTick(price);
+        }
+        // the publisher is not acknowledged before the append is synced
+        if (journal != null) {
+            journal.awaitSync(journalPosition);
+        }
         
         // Distribute to interested parties - assumption distribute (PUSH) all
         distributionService.distributePrice(price);
+        for (PriceListener priceListener : priceListeners) {
+            priceListener.onPrice(price);
+        }
         
-        logger.info("Price published successfully for instrument {} from vendor {}", 
+        logger.debug("Price published successfully for instrument {} from vendor {}", 
                    price.getInstrumentId(), price.getVendorId());
     }
 
+    @Override
+    public void publishPrices(List<Price> prices) {
+        if (prices.isEmpty()) {
+            return;
+        }
+        long journalPosition = 0;
+        // stripes taken in ascending order, so batches sharing keys cannot deadlock
+        BitSet stripes = new BitSet(KEY_LOCK_STRIPES);
+        for (Price price : prices) {
+            stripes.set(keyStripe(price.key()));
+        }
+        for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+            keyLocks[i].lock();
+        }
+        try {
+            priceRepository.saveAll(prices);
+            if (journal != null) {
+                journalPosition = journal.appendAllUnsynced(prices);
+            }
+            prices.forEach(bestPrices::update);
+        } finally {
+            for (int i = stripes.nextSetBit(0); i >= 0; i = stripes.nextSetBit(i + 1)) {
+                keyLocks[i].unlock();
+            }
+        }
+        if (bars != null) {
+            prices.forEach(bars::onTick);
+        }
+        if (journal != null) {
+            journal.awaitSync(journalPosition);
+        }
+        distributionService.distributeAll(prices);
+        for (PriceListener priceListener : priceListeners) {
+            prices.forEach(priceListener::onPrice);
+        }
+
+        logger.info("Batch of {} prices published successfully", prices.size());
+    }
+
     @Override
     public Optional<Price> getPrice(String instrumentId, String vendorId) {
         logger.debug("Retrieving price for instrument {} from vendor {}", instrumentId, vendorId);
@@ -68,12 +183,84 @@ public class PriceCacheServiceImpl implements PriceCacheService {
         return priceRepository.findByInstrument(instrumentId);
     }
 
+    @Override
+    public Optional<BestPrice> getBestPrice(String instrumentId) {
+        logger.debug("Retrieving best bid/offer for instrument {}", instrumentId);
+        return bestPrices.get(instrumentId);
+    }
+
+    @Override
+    public List<Price> getPriceHistory(String instrumentId, String vendorId, LocalDateTime from, LocalDateTime to) {
+        logger.debug("Retrieving history of instrument {} from vendor {} between {} and {}", instrumentId, vendorId,
+                from, to);
+        return priceRepository.findHistory(instrumentId, vendorId, from, to);
+    }
+
+    @Override
+    public List<Bar> getBars(String instrumentId, String vendorId, Duration interval, LocalDateTime from,
+                             LocalDateTime to) {
+        logger.debug("Retrieving {} bars of instrument {} from vendor {} between {} and {}", interval, instrumentId,
+                vendorId, from, to);
+        if (bars == null) {
+            return List.of();
+        }
+        return bars.find(instrumentId, vendorId, interval, from == null ? Long.MIN_VALUE : EpochNanos.of(from),
+                to == null ? Long.MAX_VALUE : EpochNanos.of(to));
+    }
+
     @Override
     public List<Price> getAllPrices() {
         logger.debug("Retrieving all prices");
         return priceRepository.findAll();
     }
 
+    @Override
+    public PricePage getPricesPage(long cursor, int limit) {
+        logger.debug("Retrieving page of {} prices after {}", limit, cursor);
+        return priceRepository.findAll(cursor, limit);
+    }
+
+    @Override
+    public PricePage getPricesByVendorPage(String vendorId, long cursor, int limit) {
+        logger.debug("Retrieving page of {} prices from vendor {} after {}", limit, vendorId, cursor);
+        return priceRepository.findByVendor(vendorId, cursor, limit);
+    }
+
+    @Override
+    public PricePage getPricesByInstrumentPage(String instrumentId, long cursor, int limit) {
+        logger.debug("Retrieving page of {} prices for instrument {} after {}", limit, instrumentId, cursor);
+        return priceRepository.findByInstrument(instrumentId, cursor, limit);
+    }
+
+    @Override
+    public long getLastSequence() {
+        return priceRepository.lastSequence();
+    }
+
+    @Override
+    public PriceChanges getChangesSince(long sequence, int limit) {
+        logger.debug("Retrieving up to {} changes since sequence {}", limit, sequence);
+        return priceRepository.findChangesSince(sequence, limit);
+    }
+
+    @Override
+    public void forEachPrice(Consumer<? super Price> consumer) {
+        logger.debug("Streaming all prices");
+        priceRepository.forEach(consumer);
+    }
+
+    @Override
+    public void forEachPriceByVendor(String vendorId, Consumer<? super Price> consumer) {
+        logger.debug("Streaming all prices from vendor {}", vendorId);
+        priceRepository.forEachByVendor(vendorId, consumer);
+    }
+
+    @Override
+    public void forEachPriceByInstrument(String instrumentId, Consumer<? super Price> consumer) {
+        logger.debug("Streaming all prices for instrument {}", instrumentId);
+        priceRepository.forEachByInstrument(instrumentId, consumer);
+    }
+
     @Override
     public void cleanupOldPrices() {
         LocalDateTime cutoffDate = LocalDateTime.now().minusDays(retentionDays);
@@ -81,13 +268,54 @@ public class PriceCacheServiceImpl implements PriceCacheService {
         
         int countBefore = priceRepository.count();
         priceRepository.deleteOlderThan(cutoffDate);
+        bestPrices.removeOlderThan(EpochNanos.of(cutoffDate));
         int countAfter = priceRepository.count();
         
         logger.info("Cleanup complete. Removed {} prices", countBefore - countAfter);
     }
 
+    @Override
+    public boolean cleanupOldPrices(long budgetNanos) {
+        int countBefore = priceRepository.count();
+        LocalDateTime cutoffDate = LocalDateTime.now().minusDays(retentionDays);
+        boolean complete = priceRepository.deleteOlderThan(cutoffDate, budgetNanos);
+        int removed = countBefore - priceRepository.count();
+        // the books are swept once a cleanup round has removed everything expired, not per slice
+        bestPricesExpired |= removed > 0;
+        if (complete && bestPricesExpired) {
+            bestPrices.removeOlderThan(EpochNanos.of(cutoffDate));
+            bestPricesExpired = false;
+        }
+        if (removed > 0) {
+            logger.debug("Cleanup slice removed {} prices, complete: {}", removed, complete);
+        }
+        return complete;
+    }
+
     @Override
     public int getPriceCount() {
         return priceRepository.count();
     }
+
+    @Override
+    public void clearPrices() {
+        // every key locked, so no publisher stores a price the book then misses or ranks one already cleared
+        for (ReentrantLock keyLock : keyLocks) {
+            keyLock.lock();
+        }
+        try {
+            priceRepository.clear();
+            bestPrices.clear();
+        } finally {
+            for (ReentrantLock keyLock : keyLocks) {
+                keyLock.unlock();
+            }
+        }
+        logger.info("All prices cleared");
+    }
+
+    private static int keyStripe(long key) {
+        // Fibonacci hashing, spreading keys that differ only in the vendor bits
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - Integer.numberOfTrailingZeros(KEY_LOCK_STRIPES)));
+    }
 }
\ No newline at end of file
@@ -1,16 +1,19 @@
-
 package com.matsuri.pricecache.service.impl;
 
 import com.matsuri.pricecache.service.PriceCacheService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.TimeUnit;
+
 /**
- * Service for scheduled cleanup of old prices.
- * Automatically removes prices older than 30 days on a daily basis.
+ * Service for continuous cleanup of old prices.
+ * Removes prices older than the retention period in small slices, each limited by a latency budget, instead of
+ * one daily burst competing with live traffic.
  */
 @Service
 public class PriceCleanupService {
@@ -19,22 +22,25 @@ public class PriceCleanupService {
     
     private final PriceCacheService priceCacheService;
 
+    @Value("${cleanup.sliceBudgetMicros:500}")
+    private long sliceBudgetMicros = 500;
+
     @Autowired
     public PriceCleanupService(PriceCacheService priceCacheService) {
         this.priceCacheService = priceCacheService;
     }
 
-    @Scheduled(cron = "${cleanup.schedule}")
+    @Scheduled(fixedDelayString = "${cleanup.sliceIntervalMillis:1000}")
     public void scheduledCleanup() {
-        long start = System.currentTimeMillis();
-        logger.info("Starting scheduled price cleanup");
+        long start = System.nanoTime();
         try {
-            priceCacheService.cleanupOldPrices();
-            long finish = System.currentTimeMillis();
-            long timeElapsed = finish - start;
-            logger.info("Scheduled price cleanup completed successfully in {} ms", timeElapsed);
+            boolean complete = priceCacheService.cleanupOldPrices(TimeUnit.MICROSECONDS.toNanos(sliceBudgetMicros));
+            if (!complete) {
+                logger.debug("Price cleanup slice used its budget in {} us, continuing with the next slice",
+                        TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            }
         } catch (Exception e) {
             logger.error("Error during scheduled price cleanup", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,118 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.domain.PriceKey;
+import com.matsuri.pricecache.service.PriceFilter;
+import com.matsuri.pricecache.service.PriceSink;
+import org.agrona.collections.IntHashSet;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.collections.LongHashSet;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.THROTTLED;
+
+/**
+ * One client connection of the {@link PriceSubscriptionRegistry}, e.g. a WebSocket session: what it subscribed to,
+ * the per key rate limit and the {@link PriceSubscription} delivering to its sink.
+ * <p>
+ * A key sent less than the minimum interval ago is held back, a newer price of a held key replaces the held one,
+ * and the latest is released once the interval has passed. Apart from the subscription names, the state is only
+ * touched by the registry's fan-out thread.
+ */
+public final class PriceGatewaySession {
+
+    private static final long NEVER_SENT = Long.MIN_VALUE;
+
+    final Set<String> subscriptionNames = ConcurrentHashMap.newKeySet();
+    final PriceSubscription outbound;
+    // fan-out thread only
+    final LongHashSet keys = new LongHashSet();
+    final IntHashSet instruments = new IntHashSet();
+    private final long minIntervalNanos;
+    private final DistributionStats stats;
+    private final Long2LongHashMap nextSendNanos = new Long2LongHashMap(NEVER_SENT);
+    private final Long2ObjectHashMap<Price> held = new Long2ObjectHashMap<>();
+
+    PriceGatewaySession(PriceSink sink, int maxUpdatesPerSecond, int maxPendingKeys, Executor sendExecutor,
+                        DistributionStats stats, Consumer<PriceGatewaySession> onClose) {
+        this.minIntervalNanos = maxUpdatesPerSecond > 0 ? 1_000_000_000L / maxUpdatesPerSecond : 0;
+        this.stats = stats;
+        this.outbound = new PriceSubscription(PriceFilter.ALL, sink, maxPendingKeys, sendExecutor, stats,
+                subscription -> onClose.accept(this));
+    }
+
+    public boolean isClosed() {
+        return outbound.isClosed();
+    }
+
+    /**
+     * @return the names of the current subscriptions, {@code instrument/vendor} or {@code instrument/*}.
+     */
+    public Set<String> subscriptions() {
+        return Set.copyOf(subscriptionNames);
+    }
+
+    /**
+     * Fan-out thread only.
+     *
+     * @return true if the price is held back, its key to be {@link #release}d at {@link #nextSendNanos}.
+     */
+    boolean offer(Price price, long nowNanos) {
+        if (minIntervalNanos == 0) {
+            outbound.offer(price);
+            return false;
+        }
+        long key = price.key();
+        if (held.containsKey(key)) {
+            // already waiting for its interval to pass
+            held.put(key, price);
+            stats.increment(THROTTLED);
+            return false;
+        }
+        long next = nextSendNanos.get(key);
+        if (next == NEVER_SENT || nowNanos - next >= 0) {
+            send(key, price, nowNanos);
+            return false;
+        }
+        held.put(key, price);
+        stats.increment(THROTTLED);
+        return true;
+    }
+
+    /**
+     * Fan-out thread only, sends the held price of the key if there still is one.
+     */
+    void release(long key, long nowNanos) {
+        Price price = held.remove(key);
+        if (price != null) {
+            send(key, price, nowNanos);
+        }
+    }
+
+    long nextSendNanos(long key) {
+        return nextSendNanos.get(key);
+    }
+
+    /**
+     * Fan-out thread only, drops the rate limit state of the keys of an instrument no longer subscribed to.
+     */
+    void forget(int instrumentSymbol) {
+        held.keySet().removeIf(key -> isUnsubscribed(key, instrumentSymbol));
+        nextSendNanos.keySet().removeIf(key -> isUnsubscribed(key, instrumentSymbol));
+    }
+
+    private boolean isUnsubscribed(long key, int instrumentSymbol) {
+        return PriceKey.instrumentSymbol(key) == instrumentSymbol && !keys.contains(key)
+                && !instruments.contains(instrumentSymbol);
+    }
+
+    private void send(long key, Price price, long nowNanos) {
+        nextSendNanos.put(key, nowNanos + minIntervalNanos);
+        outbound.offer(price);
+    }
+}
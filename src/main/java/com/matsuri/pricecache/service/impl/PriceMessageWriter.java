@@ -0,0 +1,16 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * Encodes a price in the configured wire format.
+ */
+@FunctionalInterface
+public interface PriceMessageWriter {
+
+    /**
+     * @return number of bytes written at the offset.
+     */
+    int write(Price price, MutableDirectBuffer buffer, int offset);
+}
@@ -0,0 +1,139 @@
+package com.matsuri.pricecache.service.impl;
+
+import io.aeron.Publication;
+import io.aeron.logbuffer.BufferClaim;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
+
+/**
+ * Offers encoded messages to an Aeron publication and applies the configured {@link OverflowPolicy}
+ * when it is back pressured. Used from a single send agent thread.
+ */
+public class PricePublisher {
+
+    private static final long NO_DEADLINE = Long.MIN_VALUE;
+
+    private final Publication publication;
+    private final OverflowPolicy policy;
+    private final long timeoutNs;
+    private final DistributionStats stats;
+    private final AtomicLong discardRequests;
+    private final BufferClaim bufferClaim = new BufferClaim();
+    private final IdleStrategy blockIdleStrategy = new BackoffIdleStrategy();
+    private long retryDeadlineNs = NO_DEADLINE;
+
+    /**
+     * @param discardRequests number of oldest queued messages producers have asked to be discarded,
+     *                        see {@link OverflowPolicy#DROP_OLDEST}.
+     */
+    public PricePublisher(Publication publication, OverflowPolicy policy, long timeoutNs,
+                          DistributionStats stats, AtomicLong discardRequests) {
+        this.publication = publication;
+        this.policy = policy;
+        this.timeoutNs = timeoutNs;
+        this.stats = stats;
+        this.discardRequests = discardRequests;
+    }
+
+    /**
+     * @return true if the message was consumed, i.e. published or dropped, false if it should be offered again
+     * on a later duty cycle.
+     */
+    public boolean publish(DirectBuffer buffer, int index, int length) {
+        if (consumeRequest(discardRequests)) {
+            stats.increment(QUEUE_FULL_DROPPED_OLDEST);
+            return true;
+        }
+
+        long result = offer(buffer, index, length);
+        if (policy == OverflowPolicy.BLOCK_WITH_TIMEOUT && isRetryable(result)) {
+            long deadlineNs = System.nanoTime() + timeoutNs;
+            blockIdleStrategy.reset();
+            do {
+                countRetryable(result);
+                if (consumeRequest(discardRequests)) {
+                    stats.increment(QUEUE_FULL_DROPPED_OLDEST);
+                    return true;
+                }
+                blockIdleStrategy.idle();
+                result = offer(buffer, index, length);
+            } while (isRetryable(result) && System.nanoTime() - deadlineNs < 0);
+        }
+        return complete(result);
+    }
+
+    private long offer(DirectBuffer buffer, int index, int length) {
+        if (length > publication.maxPayloadLength()) {
+            return publication.offer(buffer, index, length);
+        }
+        long result = publication.tryClaim(length, bufferClaim);
+        if (result > 0) {
+            bufferClaim.putBytes(buffer, index, length);
+            bufferClaim.commit();
+        }
+        return result;
+    }
+
+    private boolean complete(long result) {
+        if (result > 0) {
+            retryDeadlineNs = NO_DEADLINE;
+            stats.increment(PUBLISHED);
+            return true;
+        }
+        if (!isRetryable(result)) {
+            retryDeadlineNs = NO_DEADLINE;
+            stats.increment(result == Publication.NOT_CONNECTED ? NOT_CONNECTED : PUBLICATION_FAILED);
+            return true;
+        }
+
+        countRetryable(result);
+        switch (policy) {
+            case DROP_NEWEST:
+                return false;
+            case DROP_OLDEST:
+                stats.increment(PUBLICATION_DROPPED);
+                return true;
+            case RETRY_WITH_DEADLINE:
+                long now = System.nanoTime();
+                if (retryDeadlineNs == NO_DEADLINE) {
+                    retryDeadlineNs = now + timeoutNs;
+                }
+                if (now - retryDeadlineNs < 0) {
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+        retryDeadlineNs = NO_DEADLINE;
+        stats.increment(PUBLICATION_TIMED_OUT);
+        return true;
+    }
+
+    private void countRetryable(long result) {
+        stats.increment(result == Publication.ADMIN_ACTION ? ADMIN_ACTION : BACK_PRESSURED);
+    }
+
+    private static boolean isRetryable(long result) {
+        return result == Publication.BACK_PRESSURED || result == Publication.ADMIN_ACTION;
+    }
+
+    /**
+     * Takes one outstanding request, if any.
+     */
+    static boolean consumeRequest(AtomicLong requests) {
+        long current;
+        do {
+            current = requests.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!requests.compareAndSet(current, current - 1));
+        return true;
+    }
+}
@@ -0,0 +1,150 @@
+package com.matsuri.pricecache.service.impl;
+
+import io.aeron.Aeron;
+import io.aeron.Publication;
+import io.aeron.archive.Archive;
+import io.aeron.archive.client.AeronArchive;
+import io.aeron.archive.codecs.SourceLocation;
+import org.agrona.CloseHelper;
+import org.agrona.collections.Int2ObjectHashMap;
+import org.agrona.collections.LongArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Embedded Aeron Archive recording the live price publications, so a subscriber that missed ticks replays them
+ * from the stream position it last saw instead of reloading everything over REST. Subscribers connect to the
+ * archive control channel with their own {@link AeronArchive} client, look the recording up by channel and
+ * stream id and replay from a position, the one of the last price they applied as given by the Aeron
+ * {@code Header}. Price messages do not carry the repository's change sequence, catching up from a sequence is
+ * served by the change feed of {@code GET /api/prices/changes} instead.
+ * <p>
+ * Retention is by size: once the recording is longer than the retained length, whole segment files before it
+ * are purged. Each run records new publications, recordings of earlier runs are purged when recording starts.
+ */
+public class PriceStreamArchive implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriceStreamArchive.class);
+
+    private record Recording(long recordingId, int termBufferLength, int segmentFileLength) {
+    }
+
+    private final String channel;
+    private final long retentionBytes;
+    private final Int2ObjectHashMap<Recording> recordings = new Int2ObjectHashMap<>();
+    private Archive archive;
+    private AeronArchive archiveClient;
+
+    public PriceStreamArchive(String channel, long retentionBytes) {
+        this.channel = channel;
+        this.retentionBytes = retentionBytes;
+    }
+
+    /**
+     * Launches the archive on the media driver of the client.
+     */
+    public void start(Aeron aeron, String archiveDir, String controlChannel, String replicationChannel,
+                      int segmentFileLength) {
+        archive = Archive.launch(new Archive.Context()
+                .aeronDirectoryName(aeron.context().aeronDirectoryName())
+                .archiveDirectoryName(archiveDir)
+                .controlChannel(controlChannel)
+                .replicationChannel(replicationChannel)
+                .segmentFileLength(segmentFileLength)
+                .recordingEventsEnabled(false));
+        archiveClient = AeronArchive.connect(new AeronArchive.Context()
+                .aeron(aeron)
+                .controlRequestChannel(archive.context().localControlChannel())
+                .controlRequestStreamId(archive.context().localControlStreamId())
+                .controlResponseChannel("aeron:ipc"));
+        logger.info("Archive started in {}, control channel: {}", archiveDir, controlChannel);
+    }
+
+    /**
+     * Starts recording the publications of the stream, call before adding them.
+     */
+    public synchronized void record(int streamId) {
+        purgeEarlierRecordings(streamId);
+        archiveClient.startRecording(channel, streamId, SourceLocation.LOCAL, true);
+        logger.info("Recording channel: {}, streamId: {}", channel, streamId);
+    }
+
+    /**
+     * Purges the segments of the publication's recording older than the retained length.
+     *
+     * @return the number of bytes purged.
+     */
+    public synchronized long enforceRetention(Publication publication) {
+        Recording recording = archiveClient == null ? null : findRecording(publication);
+        if (recording == null) {
+            return 0;
+        }
+        long startPosition = archiveClient.getStartPosition(recording.recordingId());
+        long recordedPosition = archiveClient.getRecordingPosition(recording.recordingId());
+        long newStartPosition = retainedStartPosition(startPosition, recordedPosition, retentionBytes,
+                recording.termBufferLength(), recording.segmentFileLength());
+        if (newStartPosition <= startPosition) {
+            return 0;
+        }
+        archiveClient.purgeSegments(recording.recordingId(), newStartPosition);
+        logger.info("Purged recording {} up to position {}", recording.recordingId(), newStartPosition);
+        return newStartPosition - startPosition;
+    }
+
+    /**
+     * @return the segment aligned position the recording may start at to keep at least the retained length, the
+     * current start position if nothing can be purged.
+     */
+    static long retainedStartPosition(long startPosition, long recordedPosition, long retentionBytes,
+                                      int termBufferLength, int segmentFileLength) {
+        long oldestRetained = recordedPosition - retentionBytes;
+        if (oldestRetained <= startPosition) {
+            return startPosition;
+        }
+        return AeronArchive.segmentFileBasePosition(startPosition, oldestRetained, termBufferLength,
+                segmentFileLength);
+    }
+
+    /**
+     * Purges the recordings of the stream left by earlier runs, none of this run exist before it records.
+     */
+    private void purgeEarlierRecordings(int streamId) {
+        LongArrayList earlier = new LongArrayList();
+        archiveClient.listRecordingsForUri(0, Integer.MAX_VALUE, channel, streamId, (controlSessionId,
+                correlationId, id, startTimestamp, stopTimestamp, startPosition, stopPosition, initialTermId,
+                segmentLength, termLength, mtuLength, sessionId, recordedStreamId, strippedChannel, originalChannel,
+                sourceIdentity) -> earlier.addLong(id));
+        for (int i = 0; i < earlier.size(); i++) {
+            archiveClient.purgeRecording(earlier.getLong(i));
+        }
+        if (!earlier.isEmpty()) {
+            logger.info("Purged {} recordings of earlier runs of streamId: {}", earlier.size(), streamId);
+        }
+    }
+
+    private Recording findRecording(Publication publication) {
+        Recording recording = recordings.get(publication.streamId());
+        if (recording == null) {
+            long found = archiveClient.findLastMatchingRecording(0, channel, publication.streamId(),
+                    publication.sessionId());
+            if (found == Aeron.NULL_VALUE) {
+                return null;
+            }
+            Recording[] listed = new Recording[1];
+            archiveClient.listRecording(found, (controlSessionId, correlationId, id, startTimestamp,
+                    stopTimestamp, startPosition, stopPosition, initialTermId, segmentLength, termLength, mtuLength,
+                    sessionId, streamId, strippedChannel, originalChannel, sourceIdentity) ->
+                    listed[0] = new Recording(id, termLength, segmentLength));
+            recording = listed[0];
+            if (recording != null) {
+                recordings.put(publication.streamId(), recording);
+            }
+        }
+        return recording;
+    }
+
+    @Override
+    public void close() {
+        CloseHelper.closeAll(archiveClient, archive);
+    }
+}
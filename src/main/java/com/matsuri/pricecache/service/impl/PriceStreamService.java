@@ -0,0 +1,127 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.PriceFilter;
+import com.matsuri.pricecache.service.PriceListener;
+import com.matsuri.pricecache.service.PriceSink;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
+
+/**
+ * Pushes published prices to HTTP clients, e.g. over Server-Sent Events, each client with its own filter.
+ * <p>
+ * The publishing thread only offers the price to a {@link ConflatingPriceQueue}, and only while there are
+ * subscribers. A fan-out agent thread drains it into the bounded, conflating queue of every matching
+ * {@link PriceSubscription}, and the sends to the clients run on virtual threads, so a slow client holds up
+ * neither publishers nor other clients.
+ */
+@Service
+public class PriceStreamService implements PriceListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriceStreamService.class);
+    private static final int FAN_OUT_LIMIT = 256;
+
+    private final List<PriceSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final DistributionStats stats = new DistributionStats();
+    private final ConflatingPriceQueue inbound;
+    private final int clientMaxPendingKeys;
+    private ExecutorService sendExecutor;
+    private AgentRunner fanOutRunner;
+
+    @Autowired
+    public PriceStreamService(@Value("${stream.maxKeys:65536}") int maxKeys,
+                              @Value("${stream.client.maxPendingKeys:1024}") int clientMaxPendingKeys) {
+        this.inbound = new ConflatingPriceQueue(maxKeys);
+        this.clientMaxPendingKeys = clientMaxPendingKeys;
+    }
+
+    @PostConstruct
+    public void start() {
+        sendExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        fanOutRunner = new AgentRunner(new BackoffIdleStrategy(), Throwable::printStackTrace, null, new FanOutAgent());
+        AgentRunner.startOnThread(fanOutRunner);
+        logger.info("Price stream started, up to {} pending prices per client", clientMaxPendingKeys);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (fanOutRunner != null) {
+            fanOutRunner.close();
+        }
+        subscriptions.forEach(subscription -> subscription.drop("Service stopped"));
+        if (sendExecutor != null) {
+            sendExecutor.shutdownNow();
+        }
+        logger.info("Price stream stopped, stats: {}", stats);
+    }
+
+    @Override
+    public void onPrice(Price price) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        ConflatingPriceQueue.OfferResult result = inbound.offer(price);
+        if (result == ConflatingPriceQueue.OfferResult.QUEUED) {
+            stats.increment(ENQUEUED);
+        } else if (result == ConflatingPriceQueue.OfferResult.CONFLATED) {
+            stats.increment(CONFLATED);
+        } else {
+            stats.increment(QUEUE_FULL_DROPPED_NEWEST);
+        }
+    }
+
+    /**
+     * Starts pushing the prices published from now on that match the filter to the sink.
+     */
+    public PriceSubscription subscribe(PriceFilter filter, PriceSink sink) {
+        PriceSubscription subscription = new PriceSubscription(filter, sink, clientMaxPendingKeys, sendExecutor,
+                stats, subscriptions::remove);
+        subscriptions.add(subscription);
+        logger.debug("Client subscribed with {}, {} subscriptions", filter, subscriptions.size());
+        return subscription;
+    }
+
+    public int subscriptionCount() {
+        return subscriptions.size();
+    }
+
+    public DistributionStats getStats() {
+        return stats;
+    }
+
+    private final class FanOutAgent implements Agent {
+
+        @Override
+        public int doWork() {
+            int work = 0;
+            Price price;
+            while (work < FAN_OUT_LIMIT && (price = inbound.poll()) != null) {
+                for (PriceSubscription subscription : subscriptions) {
+                    subscription.offer(price);
+                }
+                work++;
+            }
+            return work;
+        }
+
+        @Override
+        public String roleName() {
+            return "price-stream-fan-out";
+        }
+    }
+}
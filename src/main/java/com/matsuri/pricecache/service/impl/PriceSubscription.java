@@ -0,0 +1,109 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.PriceFilter;
+import com.matsuri.pricecache.service.PriceSink;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
+
+/**
+ * One client of the {@link PriceStreamService}: its filter, a {@link ConflatingPriceQueue} holding the latest
+ * unsent price per key, and the sink the queue is drained to.
+ * <p>
+ * The fan-out thread offers matching prices, a drain task on the send executor empties the queue into the sink,
+ * at most one task per subscription at a time. A client keeping more keys pending than the queue holds is dropped
+ * rather than buffered further.
+ */
+public class PriceSubscription {
+
+    private final PriceFilter filter;
+    private final PriceSink sink;
+    private final ConflatingPriceQueue pending;
+    private final Executor sendExecutor;
+    private final DistributionStats stats;
+    private final Consumer<PriceSubscription> onClose;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    PriceSubscription(PriceFilter filter, PriceSink sink, int maxPendingKeys, Executor sendExecutor,
+                      DistributionStats stats, Consumer<PriceSubscription> onClose) {
+        this.filter = filter;
+        this.sink = sink;
+        this.pending = new ConflatingPriceQueue(maxPendingKeys);
+        this.sendExecutor = sendExecutor;
+        this.stats = stats;
+        this.onClose = onClose;
+    }
+
+    public PriceFilter filter() {
+        return filter;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Fan-out thread only.
+     */
+    void offer(Price price) {
+        if (closed.get() || !filter.matches(price)) {
+            return;
+        }
+        if (pending.offer(price) == ConflatingPriceQueue.OfferResult.FULL) {
+            stats.increment(SUBSCRIBER_DROPPED);
+            drop("Client fell behind by more than " + pending.size() + " prices");
+            return;
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Stops the subscription without touching the client connection, e.g. once the client went away.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            onClose.accept(this);
+        }
+    }
+
+    /**
+     * Stops the subscription and ends the client connection.
+     */
+    void drop(String reason) {
+        if (closed.compareAndSet(false, true)) {
+            onClose.accept(this);
+            // the sink may be blocked in a send to the client, close it off the calling thread
+            sendExecutor.execute(() -> sink.close(reason));
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            sendExecutor.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            Price price;
+            while (!closed.get() && (price = pending.poll()) != null) {
+                sink.send(price);
+                stats.increment(PUBLISHED);
+            }
+        } catch (Exception e) {
+            stats.increment(PUBLICATION_FAILED);
+            drop("Send failed: " + e.getMessage());
+        } finally {
+            draining.set(false);
+        }
+        // a price offered after the last poll but before the flag was cleared found a drain still running
+        if (!closed.get() && pending.size() > 0) {
+            scheduleDrain();
+        }
+    }
+}
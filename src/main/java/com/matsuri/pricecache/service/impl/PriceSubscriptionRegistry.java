@@ -0,0 +1,384 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.domain.PriceKey;
+import com.matsuri.pricecache.domain.SymbolTable;
+import com.matsuri.pricecache.service.PriceListener;
+import com.matsuri.pricecache.service.PriceSink;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.agrona.collections.Int2ObjectHashMap;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.ManyToOneConcurrentLinkedQueue;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.SystemNanoClock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
+
+/**
+ * Subscriptions of {@link PriceGatewaySession}s to instrument/vendor keys, or to every vendor of an instrument,
+ * which sessions add and remove as they go.
+ * <p>
+ * The registry keeps an inverted index from key, and from instrument, to the subscribed sessions, so a price costs
+ * a lookup plus one offer per interested session however many sessions there are. Like the
+ * {@link PriceStreamService} the publishing thread only offers the price to a {@link ConflatingPriceQueue}; the
+ * index is owned by a fan-out agent thread, which applies subscription changes handed over as commands, releases
+ * prices held back by the session rate limits and fans the queued prices out.
+ * <p>
+ * Subscriptions name instruments and vendors chosen by clients, so they never register symbols: a subscription to
+ * an instrument or vendor without a symbol yet is kept by name until its first price is published.
+ */
+@Service
+public class PriceSubscriptionRegistry implements PriceListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriceSubscriptionRegistry.class);
+    private static final int FAN_OUT_LIMIT = 256;
+    private static final String ALL_VENDORS = "*";
+
+    private final ConflatingPriceQueue inbound;
+    private final Queue<Runnable> commands = new ManyToOneConcurrentLinkedQueue<>();
+    private final Set<PriceGatewaySession> sessions = ConcurrentHashMap.newKeySet();
+    private final DistributionStats stats = new DistributionStats();
+    private final int sessionMaxPendingKeys;
+    private final int maxSubscriptionsPerSession;
+    private final Executor sendExecutor;
+    private final NanoClock clock;
+    // fan-out thread only
+    private final Long2ObjectHashMap<List<PriceGatewaySession>> sessionsByKey = new Long2ObjectHashMap<>();
+    private final Int2ObjectHashMap<List<PriceGatewaySession>> sessionsByInstrument = new Int2ObjectHashMap<>();
+    // subscriptions of not yet published symbols, by instrument id, and by instrument then vendor id
+    private final Map<String, List<PriceGatewaySession>> pendingByInstrument = new HashMap<>();
+    private final Map<String, Map<String, List<PriceGatewaySession>>> pendingByKey = new HashMap<>();
+    private final PriorityQueue<HeldKey> heldKeys = new PriorityQueue<>(Comparator.comparingLong(HeldKey::dueNanos));
+    private AgentRunner fanOutRunner;
+
+    @Autowired
+    public PriceSubscriptionRegistry(@Value("${websocket.maxKeys:65536}") int maxKeys,
+                                     @Value("${websocket.session.maxPendingKeys:1024}") int sessionMaxPendingKeys,
+                                     @Value("${websocket.session.maxSubscriptions:1000}") int maxSubscriptions) {
+        this(maxKeys, sessionMaxPendingKeys, maxSubscriptions, Executors.newVirtualThreadPerTaskExecutor(),
+                SystemNanoClock.INSTANCE);
+    }
+
+    PriceSubscriptionRegistry(int maxKeys, int sessionMaxPendingKeys, int maxSubscriptionsPerSession,
+                              Executor sendExecutor, NanoClock clock) {
+        this.inbound = new ConflatingPriceQueue(maxKeys);
+        this.sessionMaxPendingKeys = sessionMaxPendingKeys;
+        this.maxSubscriptionsPerSession = maxSubscriptionsPerSession;
+        this.sendExecutor = sendExecutor;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public void start() {
+        fanOutRunner = new AgentRunner(new BackoffIdleStrategy(), Throwable::printStackTrace, null, new FanOutAgent());
+        AgentRunner.startOnThread(fanOutRunner);
+        logger.info("Price subscription registry started, up to {} subscriptions per session",
+                maxSubscriptionsPerSession);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (fanOutRunner != null) {
+            fanOutRunner.close();
+        }
+        sessions.forEach(session -> session.outbound.drop("Service stopped"));
+        if (sendExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+        logger.info("Price subscription registry stopped, stats: {}", stats);
+    }
+
+    @Override
+    public void onPrice(Price price) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        ConflatingPriceQueue.OfferResult result = inbound.offer(price);
+        if (result == ConflatingPriceQueue.OfferResult.QUEUED) {
+            stats.increment(ENQUEUED);
+        } else if (result == ConflatingPriceQueue.OfferResult.CONFLATED) {
+            stats.increment(CONFLATED);
+        } else {
+            stats.increment(QUEUE_FULL_DROPPED_NEWEST);
+        }
+    }
+
+    /**
+     * Opens a session without subscriptions.
+     *
+     * @param maxUpdatesPerSecond per key, 0 sends every update the session keeps up with.
+     */
+    public PriceGatewaySession open(PriceSink sink, int maxUpdatesPerSecond) {
+        if (maxUpdatesPerSecond < 0) {
+            throw new IllegalArgumentException("Updates per second must not be negative: " + maxUpdatesPerSecond);
+        }
+        PriceGatewaySession session = new PriceGatewaySession(sink, maxUpdatesPerSecond, sessionMaxPendingKeys,
+                sendExecutor, stats, this::close);
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * Subscribes the session to the prices of an instrument from a vendor, or from every vendor if the vendor is
+     * null, published from now on.
+     *
+     * @return false if the session was already subscribed.
+     * @throws IllegalArgumentException if the session is at its subscription limit.
+     */
+    public boolean subscribe(PriceGatewaySession session, String instrumentId, String vendorId) {
+        String name = subscriptionName(instrumentId, vendorId);
+        if (session.subscriptionNames.contains(name)) {
+            return false;
+        }
+        if (session.subscriptionNames.size() >= maxSubscriptionsPerSession) {
+            throw new IllegalArgumentException("Session is at its limit of " + maxSubscriptionsPerSession
+                    + " subscriptions");
+        }
+        if (session.isClosed() || !session.subscriptionNames.add(name)) {
+            return false;
+        }
+        commands.add(() -> {
+            // a closed session's subscriptions have been removed from the index already
+            if (session.isClosed()) {
+                return;
+            }
+            int instrumentSymbol = SymbolTable.INSTRUMENTS.find(instrumentId);
+            int vendorSymbol = vendorId == null ? SymbolTable.NOT_FOUND : SymbolTable.VENDORS.find(vendorId);
+            if (instrumentSymbol == SymbolTable.NOT_FOUND
+                    || (vendorId != null && vendorSymbol == SymbolTable.NOT_FOUND)) {
+                pendingSessions(instrumentId, vendorId, true).add(session);
+            } else if (vendorId == null) {
+                subscribeInstrument(session, instrumentSymbol);
+            } else {
+                subscribeKey(session, PriceKey.of(instrumentSymbol, vendorSymbol));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @return false if the session was not subscribed.
+     */
+    public boolean unsubscribe(PriceGatewaySession session, String instrumentId, String vendorId) {
+        if (!session.subscriptionNames.remove(subscriptionName(instrumentId, vendorId))) {
+            return false;
+        }
+        commands.add(() -> {
+            List<PriceGatewaySession> pending = pendingSessions(instrumentId, vendorId, false);
+            if (pending != null && pending.remove(session)) {
+                removePendingIfEmpty(instrumentId, vendorId);
+                return;
+            }
+            int instrumentSymbol = SymbolTable.INSTRUMENTS.find(instrumentId);
+            if (vendorId == null) {
+                if (session.instruments.remove(instrumentSymbol)) {
+                    removeByInstrument(instrumentSymbol, session);
+                    session.forget(instrumentSymbol);
+                }
+            } else {
+                long key = PriceKey.of(instrumentSymbol, SymbolTable.VENDORS.find(vendorId));
+                if (session.keys.remove(key)) {
+                    removeByKey(key, session);
+                    session.forget(instrumentSymbol);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Ends the session, e.g. once its client went away, without touching the client connection.
+     */
+    public void close(PriceGatewaySession session) {
+        if (!sessions.remove(session)) {
+            return;
+        }
+        session.outbound.close();
+        session.subscriptionNames.clear();
+        commands.add(() -> {
+            session.keys.forEachLong(key -> removeByKey(key, session));
+            session.instruments.forEachInt(instrumentSymbol -> removeByInstrument(instrumentSymbol, session));
+            session.keys.clear();
+            session.instruments.clear();
+            pendingByInstrument.values().removeIf(sessions -> sessions.remove(session) && sessions.isEmpty());
+            pendingByKey.values().removeIf(byVendor -> {
+                byVendor.values().removeIf(sessions -> sessions.remove(session) && sessions.isEmpty());
+                return byVendor.isEmpty();
+            });
+        });
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    public DistributionStats getStats() {
+        return stats;
+    }
+
+    /**
+     * One duty cycle of the fan-out thread: subscription changes first, so a price published after a subscribe
+     * returned reaches the session, then held back prices now due, then queued prices.
+     */
+    int doWork() {
+        int work = 0;
+        Runnable command;
+        while ((command = commands.poll()) != null) {
+            command.run();
+            work++;
+        }
+        long now = clock.nanoTime();
+        HeldKey due;
+        while ((due = heldKeys.peek()) != null && now - due.dueNanos() >= 0) {
+            heldKeys.poll();
+            due.session().release(due.key(), now);
+            work++;
+        }
+        Price price;
+        for (int i = 0; i < FAN_OUT_LIMIT && (price = inbound.poll()) != null; i++) {
+            fanOut(price, now);
+            work++;
+        }
+        return work;
+    }
+
+    private void fanOut(Price price, long now) {
+        if (!pendingByInstrument.isEmpty() || !pendingByKey.isEmpty()) {
+            resolvePending(price);
+        }
+        List<PriceGatewaySession> byInstrument = sessionsByInstrument.get(price.instrumentSymbol());
+        if (byInstrument != null) {
+            for (PriceGatewaySession session : byInstrument) {
+                offer(session, price, now);
+            }
+        }
+        List<PriceGatewaySession> byKey = sessionsByKey.get(price.key());
+        if (byKey != null) {
+            for (PriceGatewaySession session : byKey) {
+                // already offered through its subscription to every vendor
+                if (!session.instruments.contains(price.instrumentSymbol())) {
+                    offer(session, price, now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the subscriptions waiting for the symbols of the price into the index.
+     */
+    private void resolvePending(Price price) {
+        List<PriceGatewaySession> byInstrument = pendingByInstrument.remove(price.getInstrumentId());
+        if (byInstrument != null) {
+            for (PriceGatewaySession session : byInstrument) {
+                subscribeInstrument(session, price.instrumentSymbol());
+            }
+        }
+        Map<String, List<PriceGatewaySession>> byVendor = pendingByKey.get(price.getInstrumentId());
+        List<PriceGatewaySession> byKey = byVendor == null ? null : byVendor.remove(price.getVendorId());
+        if (byKey != null) {
+            removePendingIfEmpty(price.getInstrumentId(), price.getVendorId());
+            for (PriceGatewaySession session : byKey) {
+                subscribeKey(session, price.key());
+            }
+        }
+    }
+
+    private void subscribeInstrument(PriceGatewaySession session, int instrumentSymbol) {
+        if (session.instruments.add(instrumentSymbol)) {
+            sessionsByInstrument.computeIfAbsent(instrumentSymbol, i -> new ArrayList<>()).add(session);
+        }
+    }
+
+    private void subscribeKey(PriceGatewaySession session, long key) {
+        if (session.keys.add(key)) {
+            sessionsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(session);
+        }
+    }
+
+    private List<PriceGatewaySession> pendingSessions(String instrumentId, String vendorId, boolean create) {
+        if (vendorId == null) {
+            return create ? pendingByInstrument.computeIfAbsent(instrumentId, i -> new ArrayList<>())
+                    : pendingByInstrument.get(instrumentId);
+        }
+        Map<String, List<PriceGatewaySession>> byVendor = create
+                ? pendingByKey.computeIfAbsent(instrumentId, i -> new HashMap<>()) : pendingByKey.get(instrumentId);
+        if (byVendor == null) {
+            return null;
+        }
+        return create ? byVendor.computeIfAbsent(vendorId, v -> new ArrayList<>()) : byVendor.get(vendorId);
+    }
+
+    private void removePendingIfEmpty(String instrumentId, String vendorId) {
+        if (vendorId == null) {
+            pendingByInstrument.computeIfPresent(instrumentId, (i, sessions) -> sessions.isEmpty() ? null : sessions);
+            return;
+        }
+        pendingByKey.computeIfPresent(instrumentId, (i, byVendor) -> {
+            byVendor.computeIfPresent(vendorId, (v, sessions) -> sessions.isEmpty() ? null : sessions);
+            return byVendor.isEmpty() ? null : byVendor;
+        });
+    }
+
+    private void offer(PriceGatewaySession session, Price price, long now) {
+        if (session.offer(price, now)) {
+            long key = price.key();
+            heldKeys.add(new HeldKey(session.nextSendNanos(key), session, key));
+        }
+    }
+
+    private void removeByKey(long key, PriceGatewaySession session) {
+        List<PriceGatewaySession> subscribed = sessionsByKey.get(key);
+        if (subscribed != null && subscribed.remove(session) && subscribed.isEmpty()) {
+            sessionsByKey.remove(key);
+        }
+    }
+
+    private void removeByInstrument(int instrumentSymbol, PriceGatewaySession session) {
+        List<PriceGatewaySession> subscribed = sessionsByInstrument.get(instrumentSymbol);
+        if (subscribed != null && subscribed.remove(session) && subscribed.isEmpty()) {
+            sessionsByInstrument.remove(instrumentSymbol);
+        }
+    }
+
+    private static String subscriptionName(String instrumentId, String vendorId) {
+        return instrumentId + "/" + (vendorId != null ? vendorId : ALL_VENDORS);
+    }
+
+    private record HeldKey(long dueNanos, PriceGatewaySession session, long key) {
+    }
+
+    private final class FanOutAgent implements Agent {
+
+        @Override
+        public int doWork() {
+            return PriceSubscriptionRegistry.this.doWork();
+        }
+
+        @Override
+        public String roleName() {
+            return "price-subscription-fan-out";
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.matsuri.pricecache.codec;
+
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.domain.Price;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BarCodecTest {
+
+    private final UnsafeBuffer buffer = new UnsafeBuffer(new byte[256]);
+
+    @Test
+    void testRoundTrip() {
+        Bar bar = new Bar("AAPL", "VENDOR1", Duration.ofMinutes(1).toNanos(), 1_700_000_040_000_000_000L,
+                100550, 100800, 100400, 100700, 3, 42);
+
+        int length = BarCodec.encode(bar, buffer, 8);
+
+        assertEquals(BarCodec.encodedLength(bar), length);
+        assertTrue(BarCodec.isBarMessage(buffer, 8, length));
+        Bar decoded = BarCodec.decode(buffer, 8);
+        assertEquals("AAPL", decoded.getInstrumentId());
+        assertEquals("VENDOR1", decoded.getVendorId());
+        assertEquals(Duration.ofMinutes(1), decoded.getInterval());
+        assertEquals(bar.getStartTime(), decoded.getStartTime());
+        assertEquals(new BigDecimal("100.550"), decoded.getOpen());
+        assertEquals(new BigDecimal("100.800"), decoded.getHigh());
+        assertEquals(new BigDecimal("100.400"), decoded.getLow());
+        assertEquals(new BigDecimal("100.700"), decoded.getClose());
+        assertEquals(42, decoded.getTickCount());
+    }
+
+    @Test
+    void testRejectsPriceAndTruncatedMessages() {
+        Price price = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"), new BigDecimal("100.60"),
+                LocalDateTime.now(), "USD");
+        int length = new PriceCodec().encode(price, buffer, 0);
+        assertFalse(BarCodec.isBarMessage(buffer, 0, length));
+
+        length = BarCodec.encode(new Bar("AAPL", "VENDOR1", 1, 0, 1, 1, 1, 1, 0, 1), buffer, 0);
+        assertFalse(BarCodec.isBarMessage(buffer, 0, length - 1));
+    }
+}
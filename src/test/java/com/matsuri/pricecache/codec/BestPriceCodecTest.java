@@ -0,0 +1,63 @@
+package com.matsuri.pricecache.codec;
+
+import com.matsuri.pricecache.domain.BestPrice;
+import com.matsuri.pricecache.domain.EpochNanos;
+import com.matsuri.pricecache.domain.Price;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BestPriceCodecTest {
+
+    private final UnsafeBuffer buffer = new UnsafeBuffer(new byte[256]);
+
+    @Test
+    void testRoundTrip() {
+        LocalDateTime now = LocalDateTime.now();
+        Price bid = new Price("AAPL", "VENDOR1", new BigDecimal("100.5"), new BigDecimal("100.7"), now, "USD");
+        Price ask = new Price("AAPL", "VENDOR2", new BigDecimal("100.40"), new BigDecimal("100.55"),
+                now.minusSeconds(1), "USD");
+        BestPrice bestPrice = new BestPrice(bid, ask);
+
+        int length = BestPriceCodec.encode(bestPrice, buffer, 8);
+
+        assertEquals(BestPriceCodec.encodedLength(bestPrice), length);
+        assertTrue(BestPriceCodec.isBestPriceMessage(buffer, 8, length));
+        assertEquals(1005, BestPriceCodec.bidMantissa(buffer, 8));
+        assertEquals(1, BestPriceCodec.bidScale(buffer, 8));
+        assertEquals(10055, BestPriceCodec.askMantissa(buffer, 8));
+        assertEquals(2, BestPriceCodec.askScale(buffer, 8));
+        assertEquals(EpochNanos.of(now), BestPriceCodec.timestampNanos(buffer, 8));
+        assertEquals("AAPL", BestPriceCodec.instrumentId(buffer, 8));
+        assertEquals("VENDOR1", BestPriceCodec.bidVendorId(buffer, 8));
+        assertEquals("VENDOR2", BestPriceCodec.askVendorId(buffer, 8));
+        assertFalse(BestPriceCodec.isCleared(buffer, 8));
+    }
+
+    @Test
+    void testClearedRoundTrip() {
+        int length = BestPriceCodec.encodeCleared("AAPL", buffer, 8);
+
+        assertTrue(BestPriceCodec.isBestPriceMessage(buffer, 8, length));
+        assertTrue(BestPriceCodec.isCleared(buffer, 8));
+        assertEquals("AAPL", BestPriceCodec.instrumentId(buffer, 8));
+        assertEquals("", BestPriceCodec.askVendorId(buffer, 8));
+        assertEquals(0, BestPriceCodec.bidMantissa(buffer, 8));
+    }
+
+    @Test
+    void testRejectsPriceAndTruncatedMessages() {
+        Price price = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"), new BigDecimal("100.60"),
+                LocalDateTime.now(), "USD");
+        int length = new PriceCodec().encode(price, buffer, 0);
+        assertFalse(BestPriceCodec.isBestPriceMessage(buffer, 0, length));
+
+        length = BestPriceCodec.encode(new BestPrice(price, price), buffer, 0);
+        assertFalse(BestPriceCodec.isBestPriceMessage(buffer, 0, length - 1));
+        assertFalse(BestPriceCodec.isBestPriceMessage(buffer, 0, length - "VENDOR1".length() - 1));
+    }
+}
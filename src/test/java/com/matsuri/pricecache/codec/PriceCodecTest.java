@@ -0,0 +1,83 @@
+package com.matsuri.pricecache.codec;
+
+import com.matsuri.pricecache.domain.EpochNanos;
+import com.matsuri.pricecache.domain.Price;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceCodecTest {
+
+    private final PriceCodec codec = new PriceCodec();
+
+    @Test
+    void testEncodeDecodeRoundTrip() {
+        Price price = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
+                new BigDecimal("100.605"), LocalDateTime.of(2024, 1, 2, 10, 15, 30, 123456789), "USD");
+        ExpandableArrayBuffer buffer = new ExpandableArrayBuffer(128);
+
+        int length = codec.encode(price, buffer, 16);
+
+        assertEquals(PriceCodec.encodedLength(price), length);
+        assertTrue(codec.isPriceMessage(buffer, 16, length));
+        Price decoded = codec.decode(buffer, 16);
+        assertEquals("AAPL", decoded.getInstrumentId());
+        assertEquals("VENDOR1", decoded.getVendorId());
+        assertEquals(new BigDecimal("100.500"), decoded.getBidPrice());
+        assertEquals(new BigDecimal("100.605"), decoded.getAskPrice());
+        assertEquals(price.getTimestamp(), decoded.getTimestamp());
+        assertEquals("USD", decoded.getCurrency());
+    }
+
+    @Test
+    void testFlyweightDecoderReadsFixedFieldsAndHeader() {
+        Price price = new Price("GOOGL", "VENDORé", new BigDecimal("2500.00"),
+                new BigDecimal("2500.50"), LocalDateTime.of(1969, 12, 31, 23, 59, 59, 1), "EUR");
+        UnsafeBuffer buffer = new UnsafeBuffer(new byte[PriceCodec.encodedLength(price)]);
+        codec.encode(price, buffer, 0);
+
+        MessageHeaderDecoder header = new MessageHeaderDecoder();
+        PriceDecoder decoder = new PriceDecoder().wrapAndCheckHeader(buffer, 0, header);
+
+        assertEquals(PriceEncoder.SCHEMA_VERSION, header.version());
+        assertEquals(PriceEncoder.BLOCK_LENGTH, header.blockLength());
+        assertEquals(250000, decoder.bidMantissa());
+        assertEquals(250050, decoder.askMantissa());
+        assertEquals(2, decoder.scale());
+        assertEquals(price.getTimestamp(), EpochNanos.toLocalDateTime(decoder.timestampNanos()));
+        assertEquals("GOOGL", decoder.instrumentId());
+        assertEquals("VENDORé", decoder.vendorId());
+        assertEquals("EUR", decoder.currency());
+    }
+
+    @Test
+    void testCheckedDecodeReusesCachedStringsAndRejectsTruncation() {
+        Price price = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
+                new BigDecimal("100.60"), LocalDateTime.now(), "USD");
+        UnsafeBuffer buffer = new UnsafeBuffer(new byte[64]);
+        int length = codec.encode(price, buffer, 0);
+        StringCache strings = new StringCache(16);
+
+        Price first = codec.decode(buffer, 0, length, strings);
+        Price second = codec.decode(buffer, 0, length, strings);
+
+        assertEquals(price, first);
+        assertSame(first.getInstrumentId(), second.getInstrumentId());
+        assertSame(first.getVendorId(), second.getVendorId());
+        assertThrows(IllegalStateException.class, () -> codec.decode(buffer, 0, length - 1, strings));
+        assertThrows(IllegalStateException.class, () -> codec.decode(buffer, 0, 12, strings));
+    }
+
+    @Test
+    void testJsonMessageIsNotMistakenForBinary() {
+        byte[] json = "{\"instrumentId\":\"AAPL\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertFalse(codec.isPriceMessage(new UnsafeBuffer(json), 0, json.length));
+    }
+}
@@ -0,0 +1,45 @@
+package com.matsuri.pricecache.codec;
+
+import com.matsuri.pricecache.domain.Price;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotCodecTest {
+
+    private final UnsafeBuffer buffer = new UnsafeBuffer(new byte[128]);
+
+    @Test
+    void testControlMessagesRoundTrip() {
+        int length = SnapshotCodec.encodeBegin(buffer, 16, 7L, 4096L, 42L);
+
+        assertEquals(SnapshotCodec.BEGIN_TEMPLATE_ID, SnapshotCodec.templateId(buffer, 16, length));
+        assertEquals(7L, SnapshotCodec.correlationId(buffer, 16));
+        assertEquals(4096L, SnapshotCodec.livePosition(buffer, 16));
+        assertEquals(42L, SnapshotCodec.sequence(buffer, 16));
+
+        length = SnapshotCodec.encodeEnd(buffer, 0, 7L, 3L);
+        assertEquals(SnapshotCodec.END_TEMPLATE_ID, SnapshotCodec.templateId(buffer, 0, length));
+        assertEquals(3L, SnapshotCodec.count(buffer, 0));
+
+        length = SnapshotCodec.encodeRequest(buffer, 0, 9L, 2);
+        assertEquals(SnapshotCodec.REQUEST_TEMPLATE_ID, SnapshotCodec.templateId(buffer, 0, length));
+        assertEquals(9L, SnapshotCodec.correlationId(buffer, 0));
+        assertEquals(2, SnapshotCodec.partition(buffer, 0));
+    }
+
+    @Test
+    void testPriceAndTruncatedMessagesAreNotControlMessages() {
+        Price price = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
+                new BigDecimal("100.60"), LocalDateTime.now(), "USD");
+        int length = new PriceCodec().encode(price, buffer, 0);
+        assertEquals(SnapshotCodec.NOT_A_SNAPSHOT_MESSAGE, SnapshotCodec.templateId(buffer, 0, length));
+
+        length = SnapshotCodec.encodeBegin(buffer, 0, 7L, 4096L, 42L);
+        assertEquals(SnapshotCodec.NOT_A_SNAPSHOT_MESSAGE, SnapshotCodec.templateId(buffer, 0, length - 1));
+    }
+}
@@ -0,0 +1,105 @@
+package com.matsuri.pricecache.collections;
+
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.domain.CurrencyCodes;
+import com.matsuri.pricecache.domain.Price;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BarSeriesTest {
+
+    private static final short USD = CurrencyCodes.codeOf("USD");
+
+    private final BarSeries series = new BarSeries("AAPL", "BARS1", 10, 2);
+
+    @Test
+    void testTickOfLaterIntervalClosesBar() {
+        assertNull(series.onTick(tick(100, 1)));
+        assertNull(series.onTick(tick(104, 3)));
+        assertNull(series.onTick(tick(98, 5)));
+        assertNull(series.onTick(tick(102, 9)));
+
+        Bar bar = series.onTick(tick(110, 12));
+
+        assertNotNull(bar);
+        assertEquals(0, bar.startNanos());
+        assertEquals(10, bar.intervalNanos());
+        // mids of bid and bid + 2 at scale 2, kept at scale 3
+        assertEquals(List.of(1010L, 1050L, 990L, 1030L),
+                List.of(bar.openMantissa(), bar.highMantissa(), bar.lowMantissa(), bar.closeMantissa()));
+        assertEquals(3, bar.scale());
+        assertEquals(4, bar.getTickCount());
+        assertEquals(1, series.find(Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testIgnoresTicksOfClosedIntervals() {
+        series.onTick(tick(100, 1));
+        series.onTick(tick(110, 12));
+
+        assertNull(series.onTick(tick(90, 8)));
+        assertNull(series.closeIfEnded(19));
+        Bar bar = series.closeIfEnded(20);
+
+        assertEquals(10, bar.startNanos());
+        assertEquals(1, bar.getTickCount());
+        assertNull(series.onTick(tick(120, 15)));
+        assertNull(series.closeIfEnded(100));
+        assertEquals(List.of(0L, 10L), series.find(Long.MIN_VALUE, Long.MAX_VALUE).stream()
+                .map(Bar::startNanos).toList());
+        assertEquals(1010, series.find(0, 9).get(0).lowMantissa());
+    }
+
+    @Test
+    void testKeepsLastClosedBars() {
+        for (int i = 0; i < 5; i++) {
+            series.onTick(tick(100 + i, i * 10L));
+        }
+
+        assertEquals(List.of(20L, 30L), series.find(Long.MIN_VALUE, Long.MAX_VALUE).stream()
+                .map(Bar::startNanos).toList());
+    }
+
+    @Test
+    void testMidIsExactAtOneMoreDigit() {
+        assertEquals(100550, BarSeries.mid(10050, 10060, 2, 3));
+        assertEquals(100550, BarSeries.mid(1005, 1006, 1, 3));
+        assertEquals(100557, BarSeries.mid(100555, 100560, 3, 3));
+        assertEquals(-1, BarSeries.mid(Long.MAX_VALUE, Long.MAX_VALUE, 2, 3));
+        assertEquals(-1, BarSeries.mid(Long.MAX_VALUE / 4, Long.MAX_VALUE / 4, 2, 3));
+    }
+
+    @Test
+    void testFinerTickRescalesOpenBar() {
+        // 150.5/150.6, then 150.251/150.262 whose mid 150.2565 needs four digits
+        series.onTick(new Price("AAPL", "BARS1", 1505, 1506, 1, 1, USD));
+        series.onTick(new Price("AAPL", "BARS1", 150251, 150262, 3, 2, USD));
+        series.onTick(new Price("AAPL", "BARS1", 1507, 1508, 1, 3, USD));
+
+        Bar bar = series.closeIfEnded(10);
+
+        assertEquals(4, bar.scale());
+        assertEquals(List.of(new BigDecimal("150.5500"), new BigDecimal("150.7500"), new BigDecimal("150.2565"),
+                new BigDecimal("150.7500")), List.of(bar.getOpen(), bar.getHigh(), bar.getLow(), bar.getClose()));
+    }
+
+    @Test
+    void testBarsKeepTheScaleOfTheirTicks() {
+        series.onTick(new Price("AAPL", "BARS1", 150251, 150262, 3, 1, USD));
+        series.onTick(new Price("AAPL", "BARS1", 1505, 1506, 1, 11, USD));
+        series.closeIfEnded(20);
+
+        List<Bar> bars = series.find(Long.MIN_VALUE, Long.MAX_VALUE);
+
+        assertEquals(new BigDecimal("150.2565"), bars.get(0).getOpen());
+        assertEquals(new BigDecimal("150.55"), bars.get(1).getOpen());
+    }
+
+    private static Price tick(long bid, long timestampNanos) {
+        return new Price("AAPL", "BARS1", bid, bid + 2, 2, timestampNanos, USD);
+    }
+}
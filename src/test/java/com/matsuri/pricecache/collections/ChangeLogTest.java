@@ -0,0 +1,54 @@
+package com.matsuri.pricecache.collections;
+
+import org.agrona.collections.LongArrayList;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeLogTest {
+
+    private final ChangeLog changeLog = new ChangeLog(4);
+    private final LongArrayList keys = new LongArrayList();
+
+    @Test
+    void testReadsKeysAfterSequenceInOrder() {
+        assertEquals(1, changeLog.append(10));
+        assertEquals(2, changeLog.append(20));
+        assertEquals(3, changeLog.append(10));
+
+        assertEquals(3, changeLog.read(1, 10, keys::addLong));
+        assertEquals(2, keys.size());
+        assertEquals(20, keys.getLong(0));
+        assertEquals(10, keys.getLong(1));
+
+        keys.clear();
+        assertEquals(2, changeLog.read(0, 2, keys::addLong));
+        assertEquals(2, keys.size());
+        assertEquals(3, changeLog.read(3, 10, keys::addLong));
+        assertEquals(3, changeLog.lastSequence());
+    }
+
+    @Test
+    void testOverwrittenChangesRequireResync() {
+        for (long key = 0; key < 6; key++) {
+            changeLog.append(key);
+        }
+
+        assertEquals(ChangeLog.RESYNC_REQUIRED, changeLog.read(1, 10, keys::addLong));
+        assertEquals(6, changeLog.read(2, 10, keys::addLong));
+        assertEquals(4, keys.size());
+        assertEquals(ChangeLog.RESYNC_REQUIRED, changeLog.read(7, 10, keys::addLong));
+    }
+
+    @Test
+    void testResetRequiresResyncButKeepsSequence() {
+        changeLog.append(1);
+        changeLog.reset();
+        changeLog.append(2);
+
+        assertEquals(ChangeLog.RESYNC_REQUIRED, changeLog.read(1, 10, keys::addLong));
+        assertEquals(3, changeLog.read(2, 10, keys::addLong));
+        assertEquals(1, keys.size());
+        assertEquals(2, keys.getLong(0));
+    }
+}
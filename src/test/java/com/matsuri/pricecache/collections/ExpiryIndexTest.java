@@ -0,0 +1,118 @@
+package com.matsuri.pricecache.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiryIndexTest {
+
+    private final ExpiryIndex index = new ExpiryIndex(10);
+
+    @Test
+    void testHandsOnlyExpiredKeysToHandlerOldestFirst() {
+        index.add(3, 35);
+        index.add(1, 5);
+        index.add(2, 24);
+        index.add(4, 26);
+        List<Long> expired = new ArrayList<>();
+
+        assertTrue(index.expire(25, Long.MAX_VALUE, (key, cutoff) -> {
+            expired.add(key);
+            return ExpiryIndex.REMOVED;
+        }));
+
+        assertEquals(List.of(1L, 2L), expired);
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testRetainedKeyIsIndexedAgainAtItsCurrentTimestamp() {
+        index.add(1, 5);
+
+        index.expire(20, Long.MAX_VALUE, (key, cutoff) -> 42);
+        List<Long> expired = new ArrayList<>();
+        index.expire(43, Long.MAX_VALUE, (key, cutoff) -> {
+            expired.add(key);
+            return ExpiryIndex.REMOVED;
+        });
+
+        assertEquals(List.of(1L), expired);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testExhaustedBudgetKeepsUnprocessedEntries() {
+        for (int i = 0; i < 100; i++) {
+            index.add(i, i);
+        }
+
+        assertFalse(index.expire(1000, 0, (key, cutoff) -> ExpiryIndex.REMOVED));
+
+        assertTrue(index.size() > 0);
+        assertTrue(index.expire(1000, Long.MAX_VALUE, (key, cutoff) -> ExpiryIndex.REMOVED));
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testKeyKeepsOneEntryUnlessItMovesToAnEarlierBucket() {
+        index.add(1, 25);
+        index.add(1, 21);
+        index.add(1, 29);
+        index.add(1, 40);
+        assertEquals(1, index.size());
+
+        index.add(1, 15);
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testRetainedKeysAreNotIndexedTwice() {
+        index.add(1, 5);
+        index.add(1, 3);
+        index.add(1, 42);
+
+        for (int i = 0; i < 10; i++) {
+            index.expire(20, Long.MAX_VALUE, (key, cutoff) -> 42);
+        }
+
+        assertEquals(1, index.size());
+        List<Long> expired = new ArrayList<>();
+        index.expire(43, Long.MAX_VALUE, (key, cutoff) -> {
+            expired.add(key);
+            return ExpiryIndex.REMOVED;
+        });
+        assertEquals(List.of(1L), expired);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testKeyAddedWhileTheHandlerRemovesItIsKept() {
+        index.add(1, 5);
+
+        // the owner removes the key, then a concurrent save adds it back before the handler returns
+        index.expire(20, Long.MAX_VALUE, (key, cutoff) -> {
+            index.add(key, 30);
+            return ExpiryIndex.REMOVED;
+        });
+
+        List<Long> expired = new ArrayList<>();
+        index.expire(31, Long.MAX_VALUE, (key, cutoff) -> {
+            expired.add(key);
+            return ExpiryIndex.REMOVED;
+        });
+        assertEquals(List.of(1L), expired);
+    }
+
+    @Test
+    void testRemovedKeyIsIndexedAgainWhenAdded() {
+        index.add(1, 5);
+        index.expire(20, Long.MAX_VALUE, (key, cutoff) -> ExpiryIndex.REMOVED);
+
+        index.add(1, 30);
+
+        assertEquals(1, index.size());
+    }
+}
@@ -0,0 +1,29 @@
+package com.matsuri.pricecache.collections;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntHashIndexTest {
+
+    @Test
+    void testPutIfAbsentKeepsFirstValueAcrossResizes() {
+        LongIntHashIndex index = new LongIntHashIndex(4);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(LongIntHashIndex.MISSING, index.putIfAbsent(((long) i << 32) | 7, i));
+        }
+
+        assertEquals(1000, index.size());
+        assertEquals(42, index.putIfAbsent((42L << 32) | 7, -5));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, index.get(((long) i << 32) | 7));
+        }
+        assertEquals(LongIntHashIndex.MISSING, index.get(8));
+    }
+
+    @Test
+    void testNegativeKeyIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new LongIntHashIndex(16).putIfAbsent(-1L, 0));
+    }
+}
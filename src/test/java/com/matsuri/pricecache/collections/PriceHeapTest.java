@@ -0,0 +1,96 @@
+package com.matsuri.pricecache.collections;
+
+import com.matsuri.pricecache.domain.CurrencyCodes;
+import com.matsuri.pricecache.domain.EpochNanos;
+import com.matsuri.pricecache.domain.Price;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceHeapTest {
+
+    private final PriceHeap bids = new PriceHeap(PriceHeap.Side.BID);
+    private final PriceHeap asks = new PriceHeap(PriceHeap.Side.ASK);
+
+    @Test
+    void testKeepsBestQuotesOnTop() {
+        put(quote("V1", "100.10", "100.50"));
+        put(quote("V2", "100.20", "100.70"));
+        put(quote("V3", "100.00", "100.40"));
+
+        assertEquals("V2", bids.top().getVendorId());
+        assertEquals("V3", asks.top().getVendorId());
+        assertEquals(3, bids.size());
+    }
+
+    @Test
+    void testReplacesVendorQuoteInPlace() {
+        put(quote("V1", "100.10", "100.50"));
+        put(quote("V2", "100.20", "100.70"));
+        put(quote("V2", "100.05", "100.45"));
+
+        assertEquals(2, bids.size());
+        assertEquals("V1", bids.top().getVendorId());
+        assertEquals("V2", asks.top().getVendorId());
+    }
+
+    @Test
+    void testRemovesVendorsAndExpiredQuotes() {
+        LocalDateTime now = LocalDateTime.now();
+        put(new Price("IBM", "V1", new BigDecimal("10"), new BigDecimal("11"), now.minusDays(2), "USD"));
+        put(new Price("IBM", "V2", new BigDecimal("9"), new BigDecimal("12"), now, "USD"));
+        put(new Price("IBM", "V3", new BigDecimal("8"), new BigDecimal("13"), now, "USD"));
+
+        assertEquals(1, bids.removeOlderThan(EpochNanos.of(now.minusDays(1))));
+        assertEquals("V2", bids.top().getVendorId());
+
+        assertTrue(bids.remove(bids.top().vendorSymbol()));
+        assertEquals("V3", bids.top().getVendorId());
+        assertFalse(bids.remove(bids.top().vendorSymbol() + 1000));
+    }
+
+    @Test
+    void testComparesQuotesOfDifferentScales() {
+        put(quote("V1", "100.1", "101.0"));
+        put(quote("V2", "100.09", "100.995"));
+
+        assertEquals("V1", bids.top().getVendorId());
+        assertEquals("V2", asks.top().getVendorId());
+        assertTrue(PriceHeap.compare(Long.MAX_VALUE, 0, 1, 18) > 0);
+        assertTrue(PriceHeap.compare(1, 18, Long.MAX_VALUE, 0) < 0);
+    }
+
+    @Test
+    void testMatchesLinearScanUnderRandomUpdates() {
+        Random random = new Random(42);
+        Price[] latest = new Price[20];
+        for (int i = 0; i < 2000; i++) {
+            int vendor = random.nextInt(latest.length);
+            long bid = random.nextInt(1000);
+            latest[vendor] = new Price("RND", "V" + vendor, bid, bid + random.nextInt(100), 2, i,
+                    CurrencyCodes.codeOf("USD"));
+            bids.put(latest[vendor]);
+
+            long best = -1;
+            for (Price price : latest) {
+                if (price != null) {
+                    best = Math.max(best, price.bidMantissa());
+                }
+            }
+            assertEquals(best, bids.top().bidMantissa());
+        }
+    }
+
+    private void put(Price price) {
+        bids.put(price);
+        asks.put(price);
+    }
+
+    private static Price quote(String vendorId, String bid, String ask) {
+        return new Price("AAPL", vendorId, new BigDecimal(bid), new BigDecimal(ask), LocalDateTime.now(), "USD");
+    }
+}
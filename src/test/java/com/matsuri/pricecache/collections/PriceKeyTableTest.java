@@ -0,0 +1,87 @@
+package com.matsuri.pricecache.collections;
+
+import com.matsuri.pricecache.domain.PriceKey;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceKeyTableTest {
+
+    private final PriceKeyTable<String> table = new PriceKeyTable<>();
+
+    @Test
+    void testSlotIsCreatedOnceAndSurvivesGrowth() {
+        AtomicReference<String> slot = table.getOrCreateSlot(1, 2);
+        slot.set("a");
+
+        table.getOrCreateSlot(1, 100).set("b");
+        table.getOrCreateSlot(500, 2).set("c");
+
+        assertSame(slot, table.getOrCreateSlot(1, 2));
+        assertEquals("a", table.get(1, 2));
+        assertEquals("b", table.get(1, 100));
+        assertEquals("c", table.get(500, 2));
+        assertNull(table.get(2, 1));
+        assertNull(table.slot(-1, 0));
+    }
+
+    @Test
+    void testIteratesByInstrumentAndVendorInSymbolOrder() {
+        table.getOrCreateSlot(3, 1).set("3/1");
+        table.getOrCreateSlot(0, 1).set("0/1");
+        table.getOrCreateSlot(0, 0).set("0/0");
+        table.getOrCreateSlot(2, 1);
+
+        assertEquals(List.of("0/0", "0/1"), collectInstrument(0));
+        assertEquals(List.of("0/1", "3/1"), collectVendor(1));
+        List<String> all = new ArrayList<>();
+        table.forEach(all::add);
+        assertEquals(List.of("0/0", "0/1", "3/1"), all);
+    }
+
+    @Test
+    void testClear() {
+        table.getOrCreateSlot(0, 0).set("x");
+
+        table.clear();
+
+        assertNull(table.get(0, 0));
+        assertTrue(collectVendor(0).isEmpty());
+    }
+
+    private List<String> collectInstrument(int instrument) {
+        List<String> values = new ArrayList<>();
+        table.forEachInInstrument(instrument, values::add);
+        return values;
+    }
+
+    private List<String> collectVendor(int vendor) {
+        List<String> values = new ArrayList<>();
+        table.forEachInVendor(vendor, values::add);
+        return values;
+    }
+
+    @Test
+    void testForEachAfterResumesInKeyOrderAndStops() {
+        table.getOrCreateSlot(0, 0).set("0/0");
+        table.getOrCreateSlot(0, 2).set("0/2");
+        table.getOrCreateSlot(1, 0).set("1/0");
+        table.getOrCreateSlot(2, 2).set("2/2");
+        List<String> values = new ArrayList<>();
+
+        table.forEachAfter(PriceKey.of(0, 0), value -> values.add(value) && values.size() < 2);
+        assertEquals(List.of("0/2", "1/0"), values);
+
+        values.clear();
+        table.forEachInVendorAfter(2, 0, values::add);
+        assertEquals(List.of("2/2"), values);
+
+        values.clear();
+        table.forEachInInstrumentAfter(0, -1, values::add);
+        assertEquals(List.of("0/0", "0/2"), values);
+    }
+}
@@ -0,0 +1,87 @@
+package com.matsuri.pricecache.collections;
+
+import com.matsuri.pricecache.domain.CurrencyCodes;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.domain.SymbolTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TickHistoryTest {
+
+    private static final short USD = CurrencyCodes.codeOf("USD");
+
+    private final TickHistory history = new TickHistory(4);
+
+    @Test
+    void testKeepsLastTicksPerKeyOldestFirst() {
+        for (int i = 1; i <= 6; i++) {
+            history.record(tick("AAPL", "HIST1", i, i * 10L));
+        }
+        history.record(tick("AAPL", "HIST2", 99, 15L));
+
+        List<Price> ticks = history.find(instrument("AAPL"), vendor("HIST1"), Long.MIN_VALUE, Long.MAX_VALUE);
+
+        assertEquals(List.of(30L, 40L, 50L, 60L), ticks.stream().map(Price::timestampNanos).toList());
+        assertEquals(List.of(3L, 4L, 5L, 6L), ticks.stream().map(Price::bidMantissa).toList());
+        assertEquals("HIST1", ticks.get(0).getVendorId());
+        assertEquals(1, history.find(instrument("AAPL"), vendor("HIST2"), Long.MIN_VALUE, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    void testFiltersByInclusiveTimeRange() {
+        for (int i = 1; i <= 4; i++) {
+            history.record(tick("MSFT", "HIST1", i, i * 10L));
+        }
+
+        List<Price> ticks = history.find(instrument("MSFT"), vendor("HIST1"), 20, 30);
+
+        assertEquals(List.of(20L, 30L), ticks.stream().map(Price::timestampNanos).toList());
+        assertTrue(history.find(instrument("MSFT"), vendor("NOBODY"), Long.MIN_VALUE, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void testDisabledHistoryKeepsNothing() {
+        TickHistory disabled = new TickHistory(0);
+        disabled.record(tick("AAPL", "HIST1", 1, 10L));
+
+        assertTrue(disabled.find(instrument("AAPL"), vendor("HIST1"), Long.MIN_VALUE, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void testReadersNeverSeeTornTicks() throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (long i = 1; running.get(); i++) {
+                // bid equals the timestamp, a torn read would mix ticks
+                history.record(new Price("TORN", "HIST1", i, i, 0, i, USD));
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 10_000; i++) {
+                for (Price tick : history.find(instrument("TORN"), vendor("HIST1"), Long.MIN_VALUE, Long.MAX_VALUE)) {
+                    assertEquals(tick.timestampNanos(), tick.bidMantissa());
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    private static Price tick(String instrumentId, String vendorId, long bid, long timestampNanos) {
+        return new Price(instrumentId, vendorId, bid, bid + 1, 2, timestampNanos, USD);
+    }
+
+    private static int instrument(String instrumentId) {
+        return SymbolTable.INSTRUMENTS.idOf(instrumentId);
+    }
+
+    private static int vendor(String vendorId) {
+        return SymbolTable.VENDORS.idOf(vendorId);
+    }
+}
@@ -1,8 +1,14 @@
 package com.matsuri.pricecache.controller;
 
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.domain.BestPrice;
+import com.matsuri.pricecache.domain.EpochNanos;
 import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.PriceChanges;
+import com.matsuri.pricecache.repository.PricePage;
 import com.matsuri.pricecache.service.PriceCacheService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,19 +16,25 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.mockito.stubbing.Answer;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@WebMvcTest(PriceController.class)
+@WebMvcTest(value = PriceController.class, properties = "api.batch.maxSize=3")
 class PriceControllerTest {
 
     @Autowired
@@ -71,6 +83,19 @@ class PriceControllerTest {
         verify(priceCacheService).getPrice("AAPL", "VENDOR1");
     }
 
+    @Test
+    void testGetPrice_JsonRepresentation() throws Exception {
+        Price price = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"), new BigDecimal("100.60"),
+                LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123000000), "USD");
+        when(priceCacheService.getPrice("AAPL", "VENDOR1")).thenReturn(Optional.of(price));
+
+        mockMvc.perform(get("/api/prices/AAPL/VENDOR1"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"instrumentId\":\"AAPL\",\"vendorId\":\"VENDOR1\",\"bidPrice\":100.50,"
+                        + "\"askPrice\":100.60,\"timestamp\":\"2024-01-02T03:04:05.123\",\"currency\":\"USD\","
+                        + "\"compositeKey\":\"AAPL_VENDOR1\"}", true));
+    }
+
     @Test
     void testGetPrice_NotFound() throws Exception {
         when(priceCacheService.getPrice("AAPL", "VENDOR1"))
@@ -82,17 +107,126 @@ class PriceControllerTest {
         verify(priceCacheService).getPrice("AAPL", "VENDOR1");
     }
 
+    @Test
+    void testGetBestPrice() throws Exception {
+        Price ask = new Price("AAPL", "VENDOR2", new BigDecimal("100.40"), new BigDecimal("100.55"),
+                LocalDateTime.now(), "USD");
+        when(priceCacheService.getBestPrice("AAPL")).thenReturn(Optional.of(new BestPrice(testPrice, ask)));
+
+        mockMvc.perform(get("/api/prices/instrument/AAPL/best"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.bidPrice").value(100.50))
+                .andExpect(jsonPath("$.bidVendorId").value("VENDOR1"))
+                .andExpect(jsonPath("$.askPrice").value(100.55))
+                .andExpect(jsonPath("$.askVendorId").value("VENDOR2"));
+
+        mockMvc.perform(get("/api/prices/instrument/MSFT/best"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testPublishPriceWithTimestampOutOfRange() throws Exception {
+        mockMvc.perform(post("/api/prices")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"instrumentId\":\"AAPL\",\"vendorId\":\"VENDOR1\",\"bidPrice\":100.50,"
+                        + "\"askPrice\":100.60,\"timestamp\":\"9999-01-02T03:04:05\",\"currency\":\"USD\"}"))
+                .andExpect(status().isBadRequest());
+
+        verify(priceCacheService, never()).publishPrice(any(Price.class));
+    }
+
+    @Test
+    void testGetPriceHistory() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2024, 1, 15, 10, 0);
+        when(priceCacheService.getPriceHistory("AAPL", "VENDOR1", from, null)).thenReturn(List.of(testPrice));
+
+        mockMvc.perform(get("/api/prices/AAPL/VENDOR1/history").param("from", "2024-01-15T10:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].instrumentId").value("AAPL"));
+
+        mockMvc.perform(get("/api/prices/AAPL/VENDOR1/history")
+                        .param("from", "2024-01-15T10:00:00").param("to", "2024-01-15T09:00:00"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetBars() throws Exception {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 15, 10, 0);
+        Bar bar = new Bar("AAPL", "VENDOR1", Duration.ofMinutes(1).toNanos(),
+                EpochNanos.of(start), 100550, 100800, 100400, 100700, 3, 42);
+        when(priceCacheService.getBars("AAPL", "VENDOR1", Duration.ofMinutes(1), start, null)).thenReturn(List.of(bar));
+        when(priceCacheService.getBars("AAPL", "VENDOR1", Duration.ofMinutes(5), null, null))
+                .thenThrow(new IllegalArgumentException("No bars kept for interval PT5M"));
+
+        mockMvc.perform(get("/api/prices/AAPL/VENDOR1/bars").param("interval", "1m")
+                        .param("from", "2024-01-15T10:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].interval").value("PT1M"))
+                .andExpect(jsonPath("$[0].startTime").value("2024-01-15T10:00:00"))
+                .andExpect(jsonPath("$[0].high").value(100.8))
+                .andExpect(jsonPath("$[0].tickCount").value(42));
+
+        mockMvc.perform(get("/api/prices/AAPL/VENDOR1/bars").param("interval", "5m"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/prices/AAPL/VENDOR1/bars").param("interval", "often"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     void testGetPricesByVendor() throws Exception {
-        when(priceCacheService.getPricesByVendor("VENDOR1"))
-            .thenReturn(Arrays.asList(testPrice));
+        doAnswer(streamPrices(1, testPrice)).when(priceCacheService).forEachPriceByVendor(eq("VENDOR1"), any());
 
-        mockMvc.perform(get("/api/prices/vendor/VENDOR1"))
+        MvcResult result = mockMvc.perform(get("/api/prices/vendor/VENDOR1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").isArray())
                 .andExpect(jsonPath("$[0].vendorId").value("VENDOR1"));
 
-        verify(priceCacheService).getPricesByVendor("VENDOR1");
+        verify(priceCacheService).forEachPriceByVendor(eq("VENDOR1"), any());
+    }
+
+    @Test
+    void testGetAllPrices_StreamsJsonArray() throws Exception {
+        Price otherPrice = new Price("GOOGL", "VENDOR1", new BigDecimal("2500.00"),
+                                    new BigDecimal("2500.50"), LocalDateTime.now(), "USD");
+        doAnswer(streamPrices(0, testPrice, otherPrice)).when(priceCacheService).forEachPrice(any());
+
+        MvcResult result = mockMvc.perform(get("/api/prices").accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[1].instrumentId").value("GOOGL"));
+    }
+
+    @Test
+    void testGetPricesByInstrument_StreamsNdjson() throws Exception {
+        doAnswer(streamPrices(1, testPrice, testPrice)).when(priceCacheService).forEachPriceByInstrument(eq("AAPL"), any());
+
+        MvcResult result = mockMvc.perform(get("/api/prices/instrument/AAPL").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String expectedLine = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .writeValueAsString(testPrice);
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(expectedLine + "\n" + expectedLine + "\n"));
+    }
+
+    private static Answer<Void> streamPrices(int consumerArgument, Price... prices) {
+        return invocation -> {
+            Consumer<Price> consumer = invocation.getArgument(consumerArgument);
+            for (Price price : prices) {
+                consumer.accept(price);
+            }
+            return null;
+        };
     }
 
     @Test
@@ -103,4 +237,129 @@ class PriceControllerTest {
 
         verify(priceCacheService).cleanupOldPrices();
     }
-}
\ No newline at end of file
+
+    @Test
+    void testPublishPricesBatch() throws Exception {
+        mockMvc.perform(post("/api/prices/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(testRequest, testRequest))))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.published").value(2))
+                .andExpect(jsonPath("$.rejected").value(0));
+
+        verify(priceCacheService).publishPrices(argThat(prices -> prices.size() == 2));
+    }
+
+    @Test
+    void testPublishPricesBatch_ReportsItemErrors() throws Exception {
+        PriceRequest blankVendor = new PriceRequest("AAPL", "", new BigDecimal("1"), new BigDecimal("2"), null, "USD");
+        PriceRequest crossed = new PriceRequest("AAPL", "VENDOR2", new BigDecimal("3"), new BigDecimal("2"), null, "USD");
+
+        mockMvc.perform(post("/api/prices/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(blankVendor, testRequest, crossed))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.published").value(1))
+                .andExpect(jsonPath("$.errors[0].index").value(0))
+                .andExpect(jsonPath("$.errors[0].messages[0]").value("Vendor ID cannot be blank"))
+                .andExpect(jsonPath("$.errors[1].index").value(2))
+                .andExpect(jsonPath("$.errors[1].messages[0]").value("Bid price cannot be higher than ask price"));
+
+        verify(priceCacheService).publishPrices(argThat(prices -> prices.size() == 1));
+    }
+
+    @Test
+    void testPublishPricesBatch_RejectsOversizedBatchWhileParsing() throws Exception {
+        String item = objectMapper.writeValueAsString(testRequest);
+        // the limit is hit before the malformed rest of the body is read
+        String body = "[" + item + "," + item + "," + item + "," + item + ", {not json";
+
+        mockMvc.perform(post("/api/prices/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body))
+                .andExpect(status().isPayloadTooLarge());
+
+        verify(priceCacheService, never()).publishPrices(any());
+    }
+
+    @Test
+    void testPublishPricesBatch_RejectsMissingOrMalformedBody() throws Exception {
+        for (String body : List.of("", "null", "{}", "[{not json}]")) {
+            mockMvc.perform(post("/api/prices/batch")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(body))
+                    .andExpect(status().isBadRequest());
+        }
+
+        verify(priceCacheService, never()).publishPrices(any());
+    }
+
+    @Test
+    void testPublishPricesBatch_ReportsNullItems() throws Exception {
+        mockMvc.perform(post("/api/prices/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[null," + objectMapper.writeValueAsString(testRequest) + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.published").value(1))
+                .andExpect(jsonPath("$.errors[0].messages[0]").value("Price cannot be null"));
+    }
+
+    @Test
+    void testPublishPricesBatch_Ndjson() throws Exception {
+        String body = objectMapper.writeValueAsString(testRequest) + "\n{not json}\n\n"
+                + objectMapper.writeValueAsString(testRequest) + "\n";
+
+        mockMvc.perform(post("/api/prices/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.published").value(2))
+                .andExpect(jsonPath("$.errors[0].index").value(1));
+    }
+
+    @Test
+    void testGetPricesByVendorPage_ReturnsOpaqueCursor() throws Exception {
+        when(priceCacheService.getPricesByVendorPage("VENDOR1", PricePage.START, 1))
+                .thenReturn(new PricePage(List.of(testPrice), 42L, true));
+        when(priceCacheService.getPricesByVendorPage("VENDOR1", 42L, 1))
+                .thenReturn(new PricePage(List.of(), 42L, false));
+
+        String response = mockMvc.perform(get("/api/prices/vendor/VENDOR1/page").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.prices[0].instrumentId").value("AAPL"))
+                .andExpect(jsonPath("$.nextCursor").isString())
+                .andReturn().getResponse().getContentAsString();
+        String cursor = objectMapper.readTree(response).get("nextCursor").asText();
+
+        mockMvc.perform(get("/api/prices/vendor/VENDOR1/page").param("limit", "1").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    void testGetPricesPage_RejectsInvalidCursorAndCapsLimit() throws Exception {
+        when(priceCacheService.getPricesPage(PricePage.START, 1000)).thenReturn(new PricePage(List.of(), PricePage.START, false));
+
+        mockMvc.perform(get("/api/prices/page").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/prices/page").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/prices/page").param("limit", "100000"))
+                .andExpect(status().isOk());
+
+        verify(priceCacheService).getPricesPage(PricePage.START, 1000);
+    }
+
+    @Test
+    void testGetChangesSince() throws Exception {
+        when(priceCacheService.getChangesSince(5L, 1000)).thenReturn(new PriceChanges(7L, false, false,
+                List.of(testPrice), List.of(new PriceChanges.Removal("GOOGL", "VENDOR1"))));
+
+        mockMvc.perform(get("/api/prices/changes").param("since", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.sequence").value(7))
+                .andExpect(jsonPath("$.resyncRequired").value(false))
+                .andExpect(jsonPath("$.updated[0].instrumentId").value("AAPL"))
+                .andExpect(jsonPath("$.removed[0].instrumentId").value("GOOGL"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.matsuri.pricecache.controller;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.PriceFilter;
+import com.matsuri.pricecache.service.PriceSink;
+import com.matsuri.pricecache.service.impl.PriceStreamService;
+import com.matsuri.pricecache.service.impl.PriceSubscription;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+@WebMvcTest(PriceStreamController.class)
+class PriceStreamControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private PriceStreamService priceStreamService;
+
+    @Test
+    void testStreamsSubscribedPricesAsEvents() throws Exception {
+        PriceSubscription subscription = mock(PriceSubscription.class);
+        when(priceStreamService.subscribe(any(), any())).thenReturn(subscription);
+
+        MvcResult result = mockMvc.perform(get("/api/prices/stream")
+                        .param("instrumentId", "AAPL,GOOGL")
+                        .param("currency", "USD"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        ArgumentCaptor<PriceFilter> filter = ArgumentCaptor.forClass(PriceFilter.class);
+        ArgumentCaptor<PriceSink> sink = ArgumentCaptor.forClass(PriceSink.class);
+        verify(priceStreamService).subscribe(filter.capture(), sink.capture());
+        assertEquals(new PriceFilter(Set.of("AAPL", "GOOGL"), Set.of(), Set.of("USD")), filter.getValue());
+
+        sink.getValue().send(new Price("AAPL", "VENDOR1", new BigDecimal("100.50"), new BigDecimal("100.60"),
+                LocalDateTime.now(), "USD"));
+        sink.getValue().close("Client fell behind");
+
+        String body = result.getResponse().getContentAsString();
+        assertTrue(body.startsWith("event:price\ndata:{"), body);
+        assertTrue(body.contains("\"instrumentId\":\"AAPL\""), body);
+        assertEquals("text/event-stream", result.getResponse().getContentType());
+    }
+}
@@ -0,0 +1,106 @@
+package com.matsuri.pricecache.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.PriceSink;
+import com.matsuri.pricecache.service.impl.PriceGatewaySession;
+import com.matsuri.pricecache.service.impl.PriceSubscriptionRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PriceWebSocketHandlerTest {
+
+    @Mock
+    private PriceSubscriptionRegistry registry;
+
+    @Mock
+    private WebSocketSession session;
+
+    @Mock
+    private PriceGatewaySession gatewaySession;
+
+    private final Map<String, Object> attributes = new HashMap<>();
+    private PriceWebSocketHandler handler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        handler = new PriceWebSocketHandler(registry, new ObjectMapper().registerModule(new JavaTimeModule()));
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/api/prices/ws?maxUpdatesPerSecond=10"));
+        when(registry.open(any(), anyInt())).thenReturn(gatewaySession);
+        handler.afterConnectionEstablished(session);
+    }
+
+    @Test
+    void testSubscribesAndConfirms() throws Exception {
+        verify(registry).open(any(), eq(10));
+
+        handler.handleTextMessage(session, new TextMessage("{\"action\":\"subscribe\",\"instrumentId\":\"AAPL\"}"));
+
+        verify(registry).subscribe(eq(gatewaySession), eq("AAPL"), isNull());
+        assertEquals("{\"type\":\"subscribed\",\"instrumentId\":\"AAPL\"}", lastMessageSent());
+    }
+
+    @Test
+    void testUnsubscribesFromVendor() throws Exception {
+        handler.handleTextMessage(session,
+                new TextMessage("{\"action\":\"unsubscribe\",\"instrumentId\":\"AAPL\",\"vendorId\":\"VENDOR1\"}"));
+
+        verify(registry).unsubscribe(gatewaySession, "AAPL", "VENDOR1");
+        assertEquals("{\"type\":\"unsubscribed\",\"instrumentId\":\"AAPL\",\"vendorId\":\"VENDOR1\"}",
+                lastMessageSent());
+    }
+
+    @Test
+    void testAnswersInvalidMessagesWithError() throws Exception {
+        handler.handleTextMessage(session, new TextMessage("{\"action\":\"subscribe\"}"));
+        assertEquals("{\"type\":\"error\",\"message\":\"instrumentId is required\"}", lastMessageSent());
+
+        handler.handleTextMessage(session, new TextMessage("{\"action\":\"refresh\",\"instrumentId\":\"AAPL\"}"));
+        assertEquals("{\"type\":\"error\",\"message\":\"Unknown action: refresh\"}", lastMessageSent());
+
+        handler.handleTextMessage(session, new TextMessage("not json"));
+        assertTrue(lastMessageSent().startsWith("{\"type\":\"error\",\"message\":\"Malformed message"));
+        verify(registry, never()).subscribe(any(), any(), any());
+    }
+
+    @Test
+    void testSendsPricesAndClosesSession() throws Exception {
+        ArgumentCaptor<PriceSink> sink = ArgumentCaptor.forClass(PriceSink.class);
+        verify(registry).open(sink.capture(), anyInt());
+
+        sink.getValue().send(new Price("AAPL", "VENDOR1", new BigDecimal("100.50"), new BigDecimal("100.60"),
+                LocalDateTime.now(), "USD"));
+        assertTrue(lastMessageSent().startsWith("{\"type\":\"price\",\"price\":{\"instrumentId\":\"AAPL\""));
+
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+        verify(registry).close(gatewaySession);
+    }
+
+    private String lastMessageSent() throws Exception {
+        ArgumentCaptor<TextMessage> message = ArgumentCaptor.forClass(TextMessage.class);
+        verify(session, atLeastOnce()).sendMessage(message.capture());
+        return message.getValue().getPayload();
+    }
+}
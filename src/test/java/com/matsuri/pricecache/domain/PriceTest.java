@@ -54,6 +54,35 @@ class PriceTest {
                       new BigDecimal("100.60"), now, "USD"));
     }
 
+    @Test
+    void testInvalidPriceCreation_TimestampOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () ->
+            new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
+                      new BigDecimal("100.60"), LocalDateTime.of(2263, 1, 1, 0, 0), "USD"));
+        assertThrows(IllegalArgumentException.class, () ->
+            new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
+                      new BigDecimal("100.60"), LocalDateTime.of(1600, 1, 1, 0, 0), "USD"));
+    }
+
+    @Test
+    void testRejectedPriceDoesNotRegisterSymbols() {
+        assertThrows(IllegalArgumentException.class, () ->
+            new Price("REJECTED_INSTR", "REJECTED_VENDOR", new BigDecimal("100.70"),
+                      new BigDecimal("100.60"), LocalDateTime.now(), "USD"));
+
+        assertEquals(SymbolTable.NOT_FOUND, SymbolTable.INSTRUMENTS.find("REJECTED_INSTR"));
+        assertEquals(SymbolTable.NOT_FOUND, SymbolTable.VENDORS.find("REJECTED_VENDOR"));
+    }
+
+    @Test
+    void testUnknownCurrencyIsRejected() {
+        assertThrows(IllegalArgumentException.class, () ->
+            new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
+                      new BigDecimal("100.60"), LocalDateTime.now(), "NOT_A_CURRENCY"));
+        assertThrows(IllegalArgumentException.class, () -> CurrencyCodes.codeOf("usd"));
+        assertEquals("USD", CurrencyCodes.nameOf(CurrencyCodes.codeOf("USD")));
+    }
+
     @Test
     void testPriceEquality() {
         LocalDateTime now = LocalDateTime.now();
@@ -65,4 +94,52 @@ class PriceTest {
         assertEquals(price1, price2);
         assertEquals(price1.hashCode(), price2.hashCode());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testCompactRepresentation() {
+        LocalDateTime time = LocalDateTime.of(2024, 1, 2, 3, 4, 5, 6);
+        Price price = new Price("AAPL", "VENDOR1", new BigDecimal("100.5"),
+                               new BigDecimal("100.625"), time, "USD");
+
+        assertEquals(100500, price.bidMantissa());
+        assertEquals(100625, price.askMantissa());
+        assertEquals(3, price.scale());
+        assertEquals(time, EpochNanos.toLocalDateTime(price.timestampNanos()));
+        assertEquals("USD", CurrencyCodes.nameOf(price.currencyCode()));
+        assertEquals(0, new BigDecimal("100.5").compareTo(price.getBidPrice()));
+        // both sides convert back at the price's scale
+        assertEquals(new BigDecimal("100.500"), price.getBidPrice());
+        assertEquals(new BigDecimal("100.625"), price.getAskPrice());
+
+        Price compact = new Price("AAPL", "VENDOR1", 100500, 100625, 3,
+                                  EpochNanos.of(time), CurrencyCodes.codeOf("USD"));
+        assertEquals(price, compact);
+    }
+
+    @Test
+    void testInvalidCompactPriceCreation() {
+        short usd = CurrencyCodes.codeOf("USD");
+
+        assertThrows(IllegalArgumentException.class, () ->
+            new Price("AAPL", "VENDOR1", 10070, 10060, 2, 0, usd));
+        assertThrows(IllegalArgumentException.class, () ->
+            new Price("AAPL", "VENDOR1", -1, 10060, 2, 0, usd));
+        assertThrows(IllegalArgumentException.class, () ->
+            new Price("AAPL", "VENDOR1", new BigDecimal("1E+30"),
+                      new BigDecimal("1E+30"), LocalDateTime.now(), "USD"));
+    }
+
+    @Test
+    void testSymbolIdsAndPackedKey() {
+        LocalDateTime now = LocalDateTime.now();
+        Price price1 = new Price("A_B", "C", new BigDecimal("1.00"), new BigDecimal("1.10"), now, "USD");
+        Price price2 = new Price("A", "B_C", new BigDecimal("1.00"), new BigDecimal("1.10"), now, "USD");
+
+        assertEquals(price1.getCompositeKey(), price2.getCompositeKey());
+        assertNotEquals(price1.key(), price2.key());
+        assertEquals(price1.key(), PriceKey.find("A_B", "C"));
+        assertEquals("A_B", SymbolTable.INSTRUMENTS.symbol(PriceKey.instrumentSymbol(price1.key())));
+        assertEquals("B_C", SymbolTable.VENDORS.symbol(PriceKey.vendorSymbol(price2.key())));
+        assertEquals(PriceKey.NOT_FOUND, PriceKey.find("A_B", "NEVER_SEEN_VENDOR"));
+    }
+}
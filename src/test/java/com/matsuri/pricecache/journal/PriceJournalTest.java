@@ -0,0 +1,154 @@
+package com.matsuri.pricecache.journal;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.impl.InMemoryPriceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private PriceJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void testReplayRebuildsRepository() {
+        journal = start(new InMemoryPriceRepository(), 4096, JournalSyncPolicy.PERIODIC);
+        journal.append(price("AAPL", "VENDOR1", "100.50"));
+        journal.appendAll(List.of(price("AAPL", "VENDOR2", "100.45"), price("GOOGL", "VENDOR1", "2500.00")));
+        journal.append(price("AAPL", "VENDOR1", "101.00"));
+        journal.close();
+
+        InMemoryPriceRepository recovered = new InMemoryPriceRepository();
+        journal = start(recovered, 4096, JournalSyncPolicy.PERIODIC);
+
+        assertEquals(3, recovered.count());
+        Optional<Price> latest = recovered.findByInstrumentAndVendor("AAPL", "VENDOR1");
+        assertTrue(latest.isPresent());
+        assertEquals(0, new BigDecimal("101.00").compareTo(latest.get().getBidPrice()));
+    }
+
+    @Test
+    void testRollsSegmentsAndReplaysAll() {
+        journal = start(new InMemoryPriceRepository(), 256, JournalSyncPolicy.NONE);
+        List<Price> prices = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            prices.add(price("INSTR" + i, "VENDOR1", "1." + i));
+        }
+        prices.forEach(journal::append);
+        journal.close();
+
+        assertTrue(segmentCount() > 1);
+        InMemoryPriceRepository recovered = new InMemoryPriceRepository();
+        journal = start(recovered, 256, JournalSyncPolicy.NONE);
+        assertEquals(20, recovered.count());
+
+        // appending continues after the recovered records
+        journal.append(price("INSTR20", "VENDOR1", "2"));
+        journal.close();
+        recovered = new InMemoryPriceRepository();
+        journal = start(recovered, 256, JournalSyncPolicy.NONE);
+        assertEquals(21, recovered.count());
+    }
+
+    @Test
+    void testAllocatesNextSegmentAhead() throws Exception {
+        journal = start(new InMemoryPriceRepository(), 256, JournalSyncPolicy.NONE);
+        File next = PriceJournal.segmentFile(directory.toFile(), 1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!next.exists() && System.nanoTime() - deadline < 0) {
+            Thread.sleep(1);
+        }
+        assertTrue(next.exists());
+
+        for (int i = 0; i < 20; i++) {
+            journal.append(price("INSTR" + i, "VENDOR1", "1." + i));
+        }
+        journal.close();
+
+        // the allocated segment left empty does not hide the records before it
+        InMemoryPriceRepository recovered = new InMemoryPriceRepository();
+        journal = start(recovered, 256, JournalSyncPolicy.NONE);
+        assertEquals(20, recovered.count());
+    }
+
+    @Test
+    void testGroupCommitWaitsForSync() {
+        journal = start(new InMemoryPriceRepository(), 4096, JournalSyncPolicy.GROUP_COMMIT);
+        journal.append(price("AAPL", "VENDOR1", "100.50"));
+
+        assertTrue(journal.syncedPosition() > 0);
+    }
+
+    @Test
+    void testTornTailIsDiscarded() throws Exception {
+        journal = start(new InMemoryPriceRepository(), 4096, JournalSyncPolicy.PERIODIC);
+        journal.append(price("AAPL", "VENDOR1", "100.50"));
+        journal.append(price("AAPL", "VENDOR2", "100.45"));
+        journal.close();
+
+        // corrupt a message byte of the second record
+        File segment = PriceJournal.segmentFile(directory.toFile(), 0);
+        int firstFrame;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            firstFrame = Integer.reverseBytes(file.readInt()) + PriceJournal.FRAME_HEADER_LENGTH;
+            firstFrame = (firstFrame + PriceJournal.FRAME_ALIGNMENT - 1) & -PriceJournal.FRAME_ALIGNMENT;
+            file.seek(firstFrame + PriceJournal.FRAME_HEADER_LENGTH + 10);
+            file.writeByte(0x7f);
+        }
+
+        InMemoryPriceRepository recovered = new InMemoryPriceRepository();
+        journal = start(recovered, 4096, JournalSyncPolicy.PERIODIC);
+        assertEquals(1, recovered.count());
+        assertTrue(recovered.findByInstrumentAndVendor("AAPL", "VENDOR1").isPresent());
+
+        journal.append(price("GOOGL", "VENDOR1", "2500.00"));
+        journal.close();
+        recovered = new InMemoryPriceRepository();
+        journal = start(recovered, 4096, JournalSyncPolicy.PERIODIC);
+        assertEquals(2, recovered.count());
+        assertTrue(recovered.findByInstrumentAndVendor("GOOGL", "VENDOR1").isPresent());
+    }
+
+    private PriceJournal start(InMemoryPriceRepository repository, int segmentSize, JournalSyncPolicy policy) {
+        PriceJournal started = new PriceJournal(repository);
+        ReflectionTestUtils.setField(started, "directory", directory.toString());
+        ReflectionTestUtils.setField(started, "segmentSize", segmentSize);
+        ReflectionTestUtils.setField(started, "syncPolicy", policy);
+        ReflectionTestUtils.setField(started, "syncIntervalMillis", 1L);
+        started.start();
+        return started;
+    }
+
+    private int segmentCount() {
+        File[] files = directory.toFile().listFiles((d, name) -> name.endsWith(PriceJournal.SEGMENT_SUFFIX));
+        return files == null ? 0 : files.length;
+    }
+
+    private static Price price(String instrument, String vendor, String bid) {
+        BigDecimal bidPrice = new BigDecimal(bid);
+        return new Price(instrument, vendor, bidPrice, bidPrice.add(BigDecimal.ONE), LocalDateTime.now(), "USD");
+    }
+}
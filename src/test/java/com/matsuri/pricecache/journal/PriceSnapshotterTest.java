@@ -0,0 +1,122 @@
+package com.matsuri.pricecache.journal;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.impl.InMemoryPriceRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceSnapshotterTest {
+
+    @TempDir
+    Path directory;
+
+    private PriceJournal journal;
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void testRecoversFromSnapshotAndJournalTail() throws Exception {
+        InMemoryPriceRepository repository = new InMemoryPriceRepository();
+        journal = start(repository);
+        publish(repository, price("AAPL", "VENDOR1", "100.50"));
+        publish(repository, price("GOOGL", "VENDOR1", "2500.00"));
+        long position = snapshotter(repository).snapshot();
+        publish(repository, price("AAPL", "VENDOR1", "101.00"));
+        publish(repository, price("MSFT", "VENDOR2", "300.00"));
+        journal.close();
+
+        assertTrue(SnapshotFile.file(directory.toFile(), position).exists());
+        InMemoryPriceRepository recovered = new InMemoryPriceRepository();
+        journal = start(recovered);
+
+        assertEquals(3, recovered.count());
+        Optional<Price> latest = recovered.findByInstrumentAndVendor("AAPL", "VENDOR1");
+        assertTrue(latest.isPresent());
+        assertEquals(0, new BigDecimal("101.00").compareTo(latest.get().getBidPrice()));
+        assertTrue(recovered.findByInstrumentAndVendor("GOOGL", "VENDOR1").isPresent());
+    }
+
+    @Test
+    void testDeletesSegmentsBeforeOldestRetainedSnapshot() throws Exception {
+        InMemoryPriceRepository repository = new InMemoryPriceRepository();
+        journal = start(repository);
+        PriceSnapshotter snapshotter = snapshotter(repository);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 10; i++) {
+                publish(repository, price("INSTR" + i, "VENDOR" + round, "1." + i));
+            }
+            snapshotter.snapshot();
+        }
+        journal.close();
+
+        File[] snapshots = SnapshotFile.list(directory.toFile());
+        assertEquals(2, snapshots.length);
+        long oldestSegment = PriceJournal.segmentOf(SnapshotFile.positionOf(snapshots[0]));
+        assertFalse(PriceJournal.segmentFile(directory.toFile(), oldestSegment - 1).exists());
+
+        InMemoryPriceRepository recovered = new InMemoryPriceRepository();
+        journal = start(recovered);
+        assertEquals(30, recovered.count());
+    }
+
+    @Test
+    void testFallsBackToOlderSnapshotWhenNewestIsCorrupt() throws Exception {
+        InMemoryPriceRepository repository = new InMemoryPriceRepository();
+        journal = start(repository);
+        PriceSnapshotter snapshotter = snapshotter(repository);
+        publish(repository, price("AAPL", "VENDOR1", "100.50"));
+        snapshotter.snapshot();
+        publish(repository, price("GOOGL", "VENDOR1", "2500.00"));
+        long newest = snapshotter.snapshot();
+        journal.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(SnapshotFile.file(directory.toFile(), newest), "rw")) {
+            file.seek(SnapshotFile.HEADER_LENGTH + 20);
+            file.writeByte(0x7f);
+        }
+
+        InMemoryPriceRepository recovered = new InMemoryPriceRepository();
+        journal = start(recovered);
+        assertEquals(2, recovered.count());
+    }
+
+    private void publish(InMemoryPriceRepository repository, Price price) {
+        repository.save(price);
+        journal.append(price);
+    }
+
+    private PriceJournal start(InMemoryPriceRepository repository) {
+        PriceJournal started = new PriceJournal(repository);
+        ReflectionTestUtils.setField(started, "directory", directory.toString());
+        // a few records per segment so snapshots span several segments
+        ReflectionTestUtils.setField(started, "segmentSize", 256);
+        ReflectionTestUtils.setField(started, "syncPolicy", JournalSyncPolicy.NONE);
+        started.start();
+        return started;
+    }
+
+    private PriceSnapshotter snapshotter(InMemoryPriceRepository repository) {
+        return new PriceSnapshotter(journal, repository);
+    }
+
+    private static Price price(String instrument, String vendor, String bid) {
+        BigDecimal bidPrice = new BigDecimal(bid);
+        return new Price(instrument, vendor, bidPrice, bidPrice.add(BigDecimal.ONE), LocalDateTime.now(), "USD");
+    }
+}
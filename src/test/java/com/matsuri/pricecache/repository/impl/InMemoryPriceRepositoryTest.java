@@ -1,12 +1,17 @@
 package com.matsuri.pricecache.repository.impl;
 
 import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.PriceChanges;
+import com.matsuri.pricecache.repository.PricePage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import static org.junit.jupiter.api.Assertions.*;
 
 class InMemoryPriceRepositoryTest {
@@ -38,6 +43,22 @@ class InMemoryPriceRepositoryTest {
         assertEquals(testPrice1, found.get());
     }
 
+    @Test
+    void testFindHistoryWithinTimeRange() {
+        LocalDateTime start = testPrice1.getTimestamp();
+        for (int i = 0; i < 3; i++) {
+            repository.save(new Price("AAPL", "VENDOR1", new BigDecimal("100." + i), new BigDecimal("101.00"),
+                    start.plusSeconds(i), "USD"));
+        }
+
+        List<Price> history = repository.findHistory("AAPL", "VENDOR1", start.plusSeconds(1), null);
+
+        assertEquals(2, history.size());
+        assertEquals(new BigDecimal("100.10"), history.get(0).getBidPrice());
+        assertEquals(new BigDecimal("100.20"), history.get(1).getBidPrice());
+        assertTrue(repository.findHistory("AAPL", "VENDOR2", null, null).isEmpty());
+    }
+
     @Test
     void testFindByVendor() {
         repository.save(testPrice1);
@@ -82,6 +103,17 @@ class InMemoryPriceRepositoryTest {
         assertFalse(repository.findByInstrumentAndVendor("OLD", "VENDOR1").isPresent());
     }
 
+    @Test
+    void testSaveAll() {
+        Price newerPrice1 = new Price("AAPL", "VENDOR1", new BigDecimal("100.70"),
+                                     new BigDecimal("100.80"), LocalDateTime.now(), "USD");
+
+        repository.saveAll(List.of(testPrice1, testPrice2, newerPrice1));
+
+        assertEquals(2, repository.count());
+        assertEquals(newerPrice1, repository.findByInstrumentAndVendor("AAPL", "VENDOR1").orElseThrow());
+    }
+
     @Test
     void testClear() {
         repository.save(testPrice1);
@@ -91,4 +123,133 @@ class InMemoryPriceRepositoryTest {
         repository.clear();
         assertEquals(0, repository.count());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testKeysWithUnderscoresAreNotAmbiguous() {
+        LocalDateTime now = LocalDateTime.now();
+        Price price1 = new Price("A_B", "C", new BigDecimal("1.00"), new BigDecimal("1.10"), now, "USD");
+        Price price2 = new Price("A", "B_C", new BigDecimal("2.00"), new BigDecimal("2.10"), now, "USD");
+
+        repository.save(price1);
+        repository.save(price2);
+
+        assertEquals(2, repository.count());
+        assertEquals(price1, repository.findByInstrumentAndVendor("A_B", "C").orElseThrow());
+        assertEquals(price2, repository.findByInstrumentAndVendor("A", "B_C").orElseThrow());
+        assertFalse(repository.findByInstrumentAndVendor("UNKNOWN", "C").isPresent());
+    }
+
+    @Test
+    void testDeleteOlderThanFollowsUpdatesToOlderAndNewerTimestamps() {
+        LocalDateTime now = LocalDateTime.now();
+        repository.save(new Price("AAPL", "VENDOR1", new BigDecimal("1"), new BigDecimal("2"), now.minusDays(40), "USD"));
+        // newer update stays covered by the older entry, out of order update gets its own entry
+        repository.save(new Price("AAPL", "VENDOR1", new BigDecimal("1"), new BigDecimal("2"), now.minusDays(1), "USD"));
+        repository.save(new Price("MSFT", "VENDOR1", new BigDecimal("1"), new BigDecimal("2"), now.minusDays(1), "USD"));
+        repository.save(new Price("MSFT", "VENDOR1", new BigDecimal("1"), new BigDecimal("2"), now.minusDays(50), "USD"));
+
+        repository.deleteOlderThan(now.minusDays(30));
+
+        assertTrue(repository.findByInstrumentAndVendor("AAPL", "VENDOR1").isPresent());
+        assertFalse(repository.findByInstrumentAndVendor("MSFT", "VENDOR1").isPresent());
+
+        repository.deleteOlderThan(now);
+
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    void testDeleteOlderThanInBoundedSlices() {
+        LocalDateTime old = LocalDateTime.now().minusDays(40);
+        for (int i = 0; i < 100; i++) {
+            repository.save(new Price("OLD" + i, "VENDOR1", new BigDecimal("1"), new BigDecimal("2"), old.plusMinutes(i), "USD"));
+        }
+
+        assertFalse(repository.deleteOlderThan(LocalDateTime.now().minusDays(30), 0));
+        assertTrue(repository.count() < 100);
+
+        while (!repository.deleteOlderThan(LocalDateTime.now().minusDays(30), 0)) {
+            // next slice
+        }
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    void testPriceSavedAgainWhileExpiringStillExpires() throws Exception {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(30);
+        Price expired = new Price("RACE", "VENDOR1", new BigDecimal("1"), new BigDecimal("2"),
+                cutoff.minusDays(10), "USD");
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread saver = new Thread(() -> {
+            while (running.get()) {
+                repository.save(expired);
+            }
+        });
+        saver.start();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+            while (System.nanoTime() - deadline < 0) {
+                repository.deleteOlderThan(cutoff);
+            }
+        } finally {
+            running.set(false);
+            saver.join();
+        }
+
+        repository.deleteOlderThan(cutoff);
+        assertTrue(repository.findByInstrumentAndVendor("RACE", "VENDOR1").isEmpty());
+    }
+
+    @Test
+    void testPagesNeitherSkipNorRepeatUnderConcurrentWrites() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 5; i++) {
+            repository.save(new Price("PAGE" + i, "PAGER", new BigDecimal("1"), new BigDecimal("2"), now, "USD"));
+        }
+
+        PricePage first = repository.findByVendor("PAGER", PricePage.START, 2);
+        assertEquals(2, first.getPrices().size());
+        assertTrue(first.hasMore());
+
+        // an update of a price on the first page and a new key must not shift the following pages
+        repository.save(new Price("PAGE0", "PAGER", new BigDecimal("1.5"), new BigDecimal("2"), now, "USD"));
+        repository.save(new Price("PAGE5", "PAGER", new BigDecimal("1"), new BigDecimal("2"), now, "USD"));
+
+        List<String> instruments = new ArrayList<>();
+        first.getPrices().forEach(price -> instruments.add(price.getInstrumentId()));
+        PricePage page = first;
+        while (page.hasMore()) {
+            page = repository.findByVendor("PAGER", page.getCursor(), 2);
+            page.getPrices().forEach(price -> instruments.add(price.getInstrumentId()));
+        }
+
+        assertEquals(List.of("PAGE0", "PAGE1", "PAGE2", "PAGE3", "PAGE4", "PAGE5"), instruments);
+        assertEquals(6, repository.findAll(PricePage.START, 100).getPrices().size());
+        assertEquals(1, repository.findByInstrument("PAGE3", PricePage.START, 100).getPrices().size());
+        assertTrue(repository.findByVendor("UNKNOWN", PricePage.START, 100).getPrices().isEmpty());
+    }
+
+    @Test
+    void testChangesSinceReturnsUpdatedAndRemovedKeysOnce() {
+        repository.save(testPrice1);
+        long since = repository.lastSequence();
+        Price oldPrice = new Price("OLD", "VENDOR1", new BigDecimal("1"), new BigDecimal("2"),
+                LocalDateTime.now().minusDays(40), "USD");
+        repository.save(testPrice2);
+        repository.save(testPrice2);
+        repository.save(oldPrice);
+        repository.deleteOlderThan(LocalDateTime.now().minusDays(30));
+
+        PriceChanges changes = repository.findChangesSince(since, 100);
+
+        assertFalse(changes.isResyncRequired());
+        assertEquals(since + 4, changes.getSequence());
+        assertEquals(List.of(testPrice2), changes.getUpdated());
+        assertEquals(1, changes.getRemoved().size());
+        assertEquals("OLD", changes.getRemoved().get(0).getInstrumentId());
+        assertTrue(repository.findChangesSince(changes.getSequence(), 100).getUpdated().isEmpty());
+
+        repository.clear();
+        assertTrue(repository.findChangesSince(changes.getSequence(), 100).isResyncRequired());
+    }
+}
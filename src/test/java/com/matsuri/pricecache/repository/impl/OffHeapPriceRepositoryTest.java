@@ -0,0 +1,154 @@
+package com.matsuri.pricecache.repository.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.PricePage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapPriceRepositoryTest {
+
+    private OffHeapPriceRepository repository;
+    private Price testPrice1;
+    private Price testPrice2;
+    private Price testPrice3;
+
+    @BeforeEach
+    void setUp() {
+        repository = new OffHeapPriceRepository();
+        // small slabs so the tests cross slab boundaries
+        ReflectionTestUtils.setField(repository, "slabRecords", 2);
+        LocalDateTime now = LocalDateTime.now();
+
+        testPrice1 = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
+                              new BigDecimal("100.60"), now, "USD");
+        testPrice2 = new Price("AAPL", "VENDOR2", new BigDecimal("100.45"),
+                              new BigDecimal("100.55"), now, "USD");
+        testPrice3 = new Price("GOOGL", "VENDOR1", new BigDecimal("2500.00"),
+                              new BigDecimal("2500.50"), now, "EUR");
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    @Test
+    void testSaveAndFind() {
+        repository.save(testPrice1);
+        repository.save(testPrice2);
+        repository.save(testPrice3);
+
+        Optional<Price> found = repository.findByInstrumentAndVendor("GOOGL", "VENDOR1");
+        assertTrue(found.isPresent());
+        assertEquals(testPrice3, found.get());
+        assertFalse(repository.findByInstrumentAndVendor("GOOGL", "VENDOR2").isPresent());
+        assertEquals(3, repository.count());
+    }
+
+    @Test
+    void testSaveOverwritesInPlace() {
+        Price newer = new Price("AAPL", "VENDOR1", new BigDecimal("101"), new BigDecimal("102"),
+                LocalDateTime.now(), "USD");
+
+        repository.save(testPrice1);
+        repository.save(newer);
+
+        assertEquals(1, repository.count());
+        assertEquals(newer, repository.findByInstrumentAndVendor("AAPL", "VENDOR1").orElseThrow());
+    }
+
+    @Test
+    void testFindHistoryKeepsOverwrittenTicks() {
+        Price newer = new Price("AAPL", "VENDOR1", new BigDecimal("101"), new BigDecimal("102"),
+                testPrice1.getTimestamp().plusSeconds(1), "USD");
+
+        repository.save(testPrice1);
+        repository.save(newer);
+
+        assertEquals(List.of(testPrice1, newer), repository.findHistory("AAPL", "VENDOR1", null, null));
+        assertEquals(List.of(newer), repository.findHistory("AAPL", "VENDOR1", newer.getTimestamp(), null));
+    }
+
+    @Test
+    void testSaveAllAllocatesNewKeysAndOverwritesExisting() {
+        repository.save(testPrice1);
+        Price newerPrice1 = new Price("AAPL", "VENDOR1", new BigDecimal("101"), new BigDecimal("102"),
+                LocalDateTime.now(), "USD");
+
+        repository.saveAll(List.of(testPrice2, testPrice3, newerPrice1));
+
+        assertEquals(3, repository.count());
+        assertEquals(newerPrice1, repository.findByInstrumentAndVendor("AAPL", "VENDOR1").orElseThrow());
+        assertEquals(testPrice3, repository.findByInstrumentAndVendor("GOOGL", "VENDOR1").orElseThrow());
+    }
+
+    @Test
+    void testFindByVendorAndInstrument() {
+        repository.save(testPrice1);
+        repository.save(testPrice2);
+        repository.save(testPrice3);
+
+        assertEquals(List.of(testPrice1, testPrice3), repository.findByVendor("VENDOR1"));
+        assertEquals(List.of(testPrice1, testPrice2), repository.findByInstrument("AAPL"));
+        assertEquals(3, repository.findAll().size());
+    }
+
+    @Test
+    void testDeleteOlderThanAndSaveAgain() {
+        Price oldPrice = new Price("MSFT", "VENDOR1", new BigDecimal("300.00"),
+                new BigDecimal("300.50"), LocalDateTime.now().minusDays(40), "USD");
+        repository.save(testPrice1);
+        repository.save(oldPrice);
+
+        repository.deleteOlderThan(LocalDateTime.now().minusDays(30));
+
+        assertEquals(1, repository.count());
+        assertFalse(repository.findByInstrumentAndVendor("MSFT", "VENDOR1").isPresent());
+        assertEquals(List.of(testPrice1), repository.findAll());
+
+        repository.save(oldPrice);
+        assertEquals(oldPrice, repository.findByInstrumentAndVendor("MSFT", "VENDOR1").orElseThrow());
+        repository.clear();
+        assertEquals(0, repository.count());
+        assertTrue(repository.findAll().isEmpty());
+    }
+
+    @Test
+    void testPagesNeitherSkipNorRepeatUnderConcurrentWrites() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 5; i++) {
+            repository.save(new Price("PAGE" + i, "PAGER", new BigDecimal("1"), new BigDecimal("2"), now, "USD"));
+        }
+
+        PricePage first = repository.findByVendor("PAGER", PricePage.START, 2);
+        assertEquals(2, first.getPrices().size());
+        assertTrue(first.hasMore());
+
+        // an update of a price on the first page and a new key must not shift the following pages
+        repository.save(new Price("PAGE0", "PAGER", new BigDecimal("1.5"), new BigDecimal("2"), now, "USD"));
+        repository.save(new Price("PAGE5", "PAGER", new BigDecimal("1"), new BigDecimal("2"), now, "USD"));
+
+        List<String> instruments = new ArrayList<>();
+        first.getPrices().forEach(price -> instruments.add(price.getInstrumentId()));
+        PricePage page = first;
+        while (page.hasMore()) {
+            page = repository.findByVendor("PAGER", page.getCursor(), 2);
+            page.getPrices().forEach(price -> instruments.add(price.getInstrumentId()));
+        }
+
+        assertEquals(List.of("PAGE0", "PAGE1", "PAGE2", "PAGE3", "PAGE4", "PAGE5"), instruments);
+        assertEquals(6, repository.findAll(PricePage.START, 100).getPrices().size());
+        assertEquals(1, repository.findByInstrument("PAGE3", PricePage.START, 100).getPrices().size());
+        assertTrue(repository.findByVendor("UNKNOWN", PricePage.START, 100).getPrices().isEmpty());
+    }
+}
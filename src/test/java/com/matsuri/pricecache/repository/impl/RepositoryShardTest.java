@@ -0,0 +1,41 @@
+package com.matsuri.pricecache.repository.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepositoryShardTest {
+
+    private final RepositoryShard shard = new RepositoryShard(0, new InMemoryPriceRepository() {
+        @Override
+        public void save(Price price) {
+            if (price.getVendorId().equals("BROKEN")) {
+                throw new IllegalStateException("Save failed");
+            }
+            super.save(price);
+        }
+    }, 4);
+
+    @Test
+    void testFailedSaveIsRethrownToItsProducerOnly() {
+        long failed = shard.submit(price("SHARDT", "BROKEN"));
+        long saved = shard.submit(price("SHARDT", "VENDOR1"));
+
+        assertEquals(2, shard.doWork());
+
+        IllegalStateException failure = assertThrows(IllegalStateException.class, () -> shard.awaitApplied(failed));
+        assertEquals("Save failed", failure.getMessage());
+        assertDoesNotThrow(() -> shard.awaitApplied(saved));
+        assertNull(shard.takeFailure(failed));
+        assertEquals(1, shard.store.count());
+    }
+
+    private static Price price(String instrumentId, String vendorId) {
+        return new Price(instrumentId, vendorId, new BigDecimal("10.00"), new BigDecimal("10.10"),
+                LocalDateTime.now(), "USD");
+    }
+}
@@ -0,0 +1,115 @@
+package com.matsuri.pricecache.repository.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.PriceChanges;
+import com.matsuri.pricecache.repository.PricePage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedPriceRepositoryTest {
+
+    private ShardedPriceRepository repository;
+    private LocalDateTime now;
+
+    @BeforeEach
+    void setUp() {
+        repository = new ShardedPriceRepository(3);
+        repository.start();
+        now = LocalDateTime.now();
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.stop();
+    }
+
+    @Test
+    void testSavesAreVisibleOnReturnAcrossShards() {
+        for (int i = 0; i < 6; i++) {
+            repository.save(price("SHARD" + i, "SVENDOR1", now));
+        }
+        repository.save(price("SHARD0", "SVENDOR2", now));
+
+        assertEquals(7, repository.count());
+        assertTrue(repository.findByInstrumentAndVendor("SHARD4", "SVENDOR1").isPresent());
+        assertTrue(repository.findByInstrumentAndVendor("UNKNOWN", "SVENDOR1").isEmpty());
+        assertEquals(2, repository.findByInstrument("SHARD0").size());
+        assertEquals(6, repository.findByVendor("SVENDOR1").size());
+        assertEquals(7, repository.findAll().size());
+        assertEquals(1, repository.findHistory("SHARD4", "SVENDOR1", null, null).size());
+    }
+
+    @Test
+    void testMergedPagesAreInKeyOrderWithoutGapsOrRepeats() {
+        List<Price> saved = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            saved.add(price("MERGE" + i, "MVENDOR", now));
+        }
+        repository.saveAll(saved);
+
+        List<String> paged = new ArrayList<>();
+        PricePage page = repository.findByVendor("MVENDOR", PricePage.START, 3);
+        paged.addAll(page.getPrices().stream().map(Price::getInstrumentId).toList());
+        while (page.hasMore()) {
+            page = repository.findByVendor("MVENDOR", page.getCursor(), 3);
+            paged.addAll(page.getPrices().stream().map(Price::getInstrumentId).toList());
+        }
+
+        assertEquals(saved.stream().map(Price::getInstrumentId).toList(), paged);
+        assertEquals(3, repository.findAll(PricePage.START, 3).getPrices().size());
+    }
+
+    @Test
+    void testConcurrentPublishersKeepTheLatestPricePerKey() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            String vendorId = "CVENDOR" + thread;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    repository.save(price("CONC" + (i % 10), vendorId, now.plusNanos(i)));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(40, repository.count());
+        assertEquals(now.plusNanos(999), repository.findByInstrumentAndVendor("CONC9", "CVENDOR2").orElseThrow()
+                .getTimestamp());
+    }
+
+    @Test
+    void testChangesAndCleanupSpanShards() {
+        long since = repository.lastSequence();
+        repository.save(price("CLEAN1", "XVENDOR", now.minusDays(2)));
+        repository.save(price("CLEAN2", "XVENDOR", now));
+
+        PriceChanges changes = repository.findChangesSince(since, 100);
+        assertEquals(2, changes.getUpdated().size());
+
+        assertTrue(repository.deleteOlderThan(now.minusDays(1), Long.MAX_VALUE));
+        assertEquals(1, repository.count());
+        changes = repository.findChangesSince(changes.getSequence(), 100);
+        assertEquals(1, changes.getRemoved().size());
+        assertEquals("CLEAN1", changes.getRemoved().get(0).getInstrumentId());
+    }
+
+    private static Price price(String instrumentId, String vendorId, LocalDateTime timestamp) {
+        return new Price(instrumentId, vendorId, new BigDecimal("100.50"), new BigDecimal("100.60"), timestamp,
+                "USD");
+    }
+}
@@ -0,0 +1,92 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.codec.PriceCodec;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.PriceCacheService;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+
+import static com.matsuri.pricecache.service.impl.IngestionStats.Counter.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AeronIngestAgentTest {
+
+    @Mock
+    private PriceCacheService priceCacheService;
+
+    private final IngestionStats stats = new IngestionStats();
+    private final UnsafeBuffer buffer = new UnsafeBuffer(new byte[256]);
+    private AeronIngestAgent agent;
+    private Price testPrice;
+
+    @BeforeEach
+    void setUp() {
+        agent = new AeronIngestAgent(null, priceCacheService, stats, 64);
+        testPrice = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
+                new BigDecimal("100.60"), LocalDateTime.now(), "USD");
+    }
+
+    @Test
+    void testPublishesDecodedPrice() {
+        int length = new PriceCodec().encode(testPrice, buffer, 8);
+
+        agent.onFragment(buffer, 8, length, null);
+
+        ArgumentCaptor<Price> published = ArgumentCaptor.forClass(Price.class);
+        verify(priceCacheService).publishPrice(published.capture());
+        assertEquals(testPrice, published.getValue());
+        assertEquals(1, stats.get(PUBLISHED));
+    }
+
+    @Test
+    void testReusesSymbolsOfKnownInstruments() {
+        int length = new PriceCodec().encode(testPrice, buffer, 0);
+
+        agent.onFragment(buffer, 0, length, null);
+        agent.onFragment(buffer, 0, length, null);
+
+        ArgumentCaptor<Price> published = ArgumentCaptor.forClass(Price.class);
+        verify(priceCacheService, times(2)).publishPrice(published.capture());
+        assertSame(published.getAllValues().get(0).getInstrumentId(), published.getAllValues().get(1).getInstrumentId());
+        assertSame(published.getAllValues().get(0).getVendorId(), published.getAllValues().get(1).getVendorId());
+    }
+
+    @Test
+    void testRejectsMalformedMessagesIndividually() {
+        int length = new PriceCodec().encode(testPrice, buffer, 0);
+
+        agent.onFragment(new UnsafeBuffer("{\"price\":1}".getBytes()), 0, 11, null);
+        agent.onFragment(buffer, 0, length - 3, null); // truncated
+        agent.onFragment(buffer, 0, length, null);
+
+        assertEquals(2, stats.get(MALFORMED));
+        assertEquals(1, stats.get(PUBLISHED));
+        verify(priceCacheService, times(1)).publishPrice(any());
+    }
+
+    @Test
+    void testCountsInvalidPriceAndPublishFailure() {
+        int length = new PriceCodec().encode(testPrice, buffer, 0);
+        // ask mantissa, second field after the 8 byte header, below the bid
+        buffer.putLong(16, 1L, ByteOrder.LITTLE_ENDIAN);
+        agent.onFragment(buffer, 0, length, null);
+        assertEquals(1, stats.get(INVALID));
+
+        new PriceCodec().encode(testPrice, buffer, 0);
+        doThrow(new IllegalStateException("store unavailable")).when(priceCacheService).publishPrice(any());
+        agent.onFragment(buffer, 0, length, null);
+        assertEquals(1, stats.get(FAILED));
+    }
+}
@@ -1,6 +1,8 @@
 package com.matsuri.pricecache.service.impl;
 
+import com.matsuri.pricecache.codec.PriceCodec;
 import com.matsuri.pricecache.domain.Price;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -9,13 +11,16 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
 class AeronPriceDistributionServiceTest {
 
     private AeronPriceDistributionService service;
+    private Price testPrice;
 
     @BeforeEach
     void setUp() {
@@ -23,7 +28,7 @@ class AeronPriceDistributionServiceTest {
         ReflectionTestUtils.setField(service, "channel", "aeron:udp?endpoint=localhost:40123");
         ReflectionTestUtils.setField(service, "streamId", 1001);
 
-        Price testPrice = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
+        testPrice = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
                 new BigDecimal("100.60"), LocalDateTime.now(), "USD");
     }
 
@@ -31,4 +36,110 @@ class AeronPriceDistributionServiceTest {
     void testDistributePriceWithoutConnection() {
         assertDoesNotThrow(() -> service.distributePrice(null));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testDistributeAllWithoutConnectionCountsBatch() {
+        service.distributeAll(List.of(testPrice, testPrice));
+
+        assertEquals(2, service.getStats().get(NOT_CONNECTED));
+    }
+
+    @Test
+    void testEnqueueEncodesIntoRingBuffer() throws Exception {
+        RingBuffer ringBuffer = AeronPriceDistributionService.newRingBuffer(1024);
+
+        assertTrue(service.enqueue(ringBuffer, testPrice));
+
+        ringBuffer.read((msgTypeId, buffer, index, length) -> {
+            assertEquals(AeronPriceDistributionService.PRICE_MSG_TYPE_ID, msgTypeId);
+            assertEquals(PriceCodec.encodedLength(testPrice), length);
+            assertEquals(testPrice.getCompositeKey(), new PriceCodec().decode(buffer, index).getCompositeKey());
+        });
+    }
+
+    @Test
+    void testEnqueueReportsFullRingBuffer() throws Exception {
+        RingBuffer ringBuffer = AeronPriceDistributionService.newRingBuffer(1024);
+        int accepted = 0;
+        while (service.enqueue(ringBuffer, testPrice)) {
+            accepted++;
+        }
+
+        assertEquals(1024 / 64, accepted);
+        assertFalse(service.enqueue(ringBuffer, testPrice));
+    }
+
+    @Test
+    void testEnqueueBatchWritesOneRecordOfLengthPrefixedPrices() {
+        RingBuffer ringBuffer = AeronPriceDistributionService.newRingBuffer(1024);
+        Price other = new Price("MSFT", "VENDOR1", new BigDecimal("300.10"), new BigDecimal("300.20"),
+                LocalDateTime.now(), "USD");
+        int length = 2 * Integer.BYTES + PriceCodec.encodedLength(testPrice) + PriceCodec.encodedLength(other);
+
+        assertTrue(service.enqueueBatch(ringBuffer, List.of(testPrice, other), length));
+
+        assertEquals(1, ringBuffer.read((msgTypeId, buffer, index, recordLength) -> {
+            assertEquals(AeronPriceDistributionService.PRICE_BATCH_MSG_TYPE_ID, msgTypeId);
+            assertEquals(length, recordLength);
+            int first = buffer.getInt(index);
+            assertEquals("AAPL", new PriceCodec().decode(buffer, index + Integer.BYTES).getInstrumentId());
+            assertEquals("MSFT", new PriceCodec().decode(buffer, index + 2 * Integer.BYTES + first)
+                    .getInstrumentId());
+        }));
+    }
+
+    @Test
+    void testEnqueueBatchReportsFullRingBuffer() throws Exception {
+        RingBuffer ringBuffer = AeronPriceDistributionService.newRingBuffer(1024);
+        while (service.enqueue(ringBuffer, testPrice)) {
+            // fill
+        }
+        int size = ringBuffer.size();
+
+        assertFalse(service.enqueueBatch(ringBuffer, List.of(testPrice, testPrice),
+                2 * (Integer.BYTES + PriceCodec.encodedLength(testPrice))));
+        assertEquals(size, ringBuffer.size());
+    }
+
+    @Test
+    void testQueueFullDropNewestCountsDrop() throws Exception {
+        fillRingBuffer(OverflowPolicy.DROP_NEWEST);
+
+        assertFalse(service.offer(testPrice));
+        assertEquals(1, service.getStats().get(QUEUE_FULL_DROPPED_NEWEST));
+    }
+
+    @Test
+    void testQueueFullRetryTimesOut() throws Exception {
+        fillRingBuffer(OverflowPolicy.RETRY_WITH_DEADLINE);
+        ReflectionTestUtils.setField(service, "queueFullTimeoutMicros", 100L);
+
+        assertFalse(service.offer(testPrice));
+        assertEquals(1, service.getStats().get(QUEUE_FULL_TIMED_OUT));
+    }
+
+    @Test
+    void testOfferEnqueuesOnPartitionOfInstrument() throws Exception {
+        RingBuffer first = AeronPriceDistributionService.newRingBuffer(1024);
+        RingBuffer second = AeronPriceDistributionService.newRingBuffer(1024);
+        ReflectionTestUtils.setField(service, "partitioner", new InstrumentPartitioner(2, "GOOGL;AAPL"));
+        ReflectionTestUtils.setField(service, "partitions", new DistributionPartition[]{
+                new DistributionPartition(0, null, first, null), new DistributionPartition(1, null, second, null)});
+
+        assertTrue(service.offer(testPrice));
+
+        assertEquals(0, first.size());
+        assertEquals(1, second.read((msgTypeId, buffer, index, length) ->
+                assertEquals("AAPL", new PriceCodec().decode(buffer, index).getInstrumentId())));
+    }
+
+    private void fillRingBuffer(OverflowPolicy policy) throws Exception {
+        RingBuffer ringBuffer = AeronPriceDistributionService.newRingBuffer(1024);
+        ReflectionTestUtils.setField(service, "partitions",
+                new DistributionPartition[]{new DistributionPartition(0, null, ringBuffer, null)});
+        ReflectionTestUtils.setField(service, "queueFullPolicy", policy);
+        while (service.enqueue(ringBuffer, testPrice)) {
+            // fill
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.codec.PriceCodec;
+import com.matsuri.pricecache.domain.Price;
+import io.aeron.Publication;
+import io.aeron.logbuffer.BufferClaim;
+import io.aeron.protocol.DataHeaderFlyweight;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AeronSendAgentTest {
+
+    @Mock
+    private Publication publication;
+
+    private final UnsafeBuffer termBuffer = new UnsafeBuffer(new byte[1024]);
+    private final DistributionStats stats = new DistributionStats();
+    private final AtomicLong discardRequests = new AtomicLong();
+    private RingBuffer ringBuffer;
+    private Price testPrice;
+
+    @BeforeEach
+    void setUp() {
+        ringBuffer = AeronPriceDistributionService.newRingBuffer(4096);
+        testPrice = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"),
+                new BigDecimal("100.60"), LocalDateTime.now(), "USD");
+    }
+
+    @Test
+    void testDrainsRingBufferIntoClaimedTermBuffer() {
+        int length = writeMessage(testPrice);
+        when(publication.maxPayloadLength()).thenReturn(1376);
+        when(publication.tryClaim(eq(length), any(BufferClaim.class))).thenAnswer(invocation -> {
+            BufferClaim claim = invocation.getArgument(1);
+            claim.wrap(termBuffer, 0, length + DataHeaderFlyweight.HEADER_LENGTH);
+            return 64L;
+        });
+
+        assertEquals(1, newAgent(OverflowPolicy.DROP_OLDEST).doWork());
+
+        Price sent = new PriceCodec().decode(termBuffer, DataHeaderFlyweight.HEADER_LENGTH);
+        assertEquals(testPrice.getCompositeKey(), sent.getCompositeKey());
+        assertEquals(testPrice.getTimestamp(), sent.getTimestamp());
+        assertEquals(0, ringBuffer.size());
+        assertEquals(1, stats.get(PUBLISHED));
+    }
+
+    @Test
+    void testNoWorkWhenRingBufferEmpty() {
+        assertEquals(0, newAgent(OverflowPolicy.DROP_OLDEST).doWork());
+        verifyNoInteractions(publication);
+    }
+
+    @Test
+    void testDropsAndCountsMessageWhenNotConnected() {
+        writeMessage(testPrice);
+        backPressure(Publication.NOT_CONNECTED);
+
+        assertEquals(1, newAgent(OverflowPolicy.DROP_NEWEST).doWork());
+        assertEquals(0, ringBuffer.size());
+        assertEquals(1, stats.get(NOT_CONNECTED));
+    }
+
+    @Test
+    void testDropNewestKeepsHeadMessageWhenBackPressured() {
+        writeMessage(testPrice);
+        backPressure(Publication.BACK_PRESSURED);
+        AeronSendAgent agent = newAgent(OverflowPolicy.DROP_NEWEST);
+
+        assertEquals(0, agent.doWork());
+        assertEquals(0, agent.doWork());
+        assertTrue(ringBuffer.size() > 0);
+        assertEquals(2, stats.get(BACK_PRESSURED));
+    }
+
+    @Test
+    void testDropOldestDiscardsHeadMessageWhenBackPressured() {
+        writeMessage(testPrice);
+        writeMessage(testPrice);
+        backPressure(Publication.BACK_PRESSURED);
+
+        assertEquals(2, newAgent(OverflowPolicy.DROP_OLDEST).doWork());
+        assertEquals(0, ringBuffer.size());
+        assertEquals(2, stats.get(PUBLICATION_DROPPED));
+    }
+
+    @Test
+    void testRetryWithDeadlineKeepsMessageUntilDeadline() {
+        writeMessage(testPrice);
+        backPressure(Publication.ADMIN_ACTION);
+        AeronSendAgent retrying = newAgent(OverflowPolicy.RETRY_WITH_DEADLINE, TimeUnit.SECONDS.toNanos(60));
+
+        assertEquals(0, retrying.doWork());
+        assertTrue(ringBuffer.size() > 0);
+
+        assertEquals(1, newAgent(OverflowPolicy.RETRY_WITH_DEADLINE, 0).doWork());
+        assertEquals(0, ringBuffer.size());
+        assertEquals(1, stats.get(PUBLICATION_TIMED_OUT));
+        assertEquals(2, stats.get(ADMIN_ACTION));
+    }
+
+    @Test
+    void testServesDiscardRequestsBeforePublishing() {
+        writeMessage(testPrice);
+        discardRequests.set(1);
+
+        assertEquals(1, newAgent(OverflowPolicy.DROP_NEWEST).doWork());
+        assertEquals(0, discardRequests.get());
+        assertEquals(1, stats.get(QUEUE_FULL_DROPPED_OLDEST));
+        verifyNoInteractions(publication);
+    }
+
+    @Test
+    void testPublishesEachPriceOfBatchRecord() {
+        writeBatch(testPrice, testPrice, testPrice);
+        int length = PriceCodec.encodedLength(testPrice);
+        when(publication.maxPayloadLength()).thenReturn(1376);
+        when(publication.tryClaim(eq(length), any(BufferClaim.class))).thenAnswer(invocation -> {
+            BufferClaim claim = invocation.getArgument(1);
+            claim.wrap(termBuffer, 0, length + DataHeaderFlyweight.HEADER_LENGTH);
+            return 64L;
+        });
+
+        assertEquals(1, newAgent(OverflowPolicy.DROP_NEWEST).doWork());
+
+        assertEquals(testPrice.getCompositeKey(),
+                new PriceCodec().decode(termBuffer, DataHeaderFlyweight.HEADER_LENGTH).getCompositeKey());
+        assertEquals(0, ringBuffer.size());
+        assertEquals(3, stats.get(PUBLISHED));
+    }
+
+    @Test
+    void testRetriedBatchResumesAtUnpublishedPrice() {
+        writeBatch(testPrice, testPrice, testPrice);
+        int length = PriceCodec.encodedLength(testPrice);
+        when(publication.maxPayloadLength()).thenReturn(1376);
+        long[] results = {64L, Publication.BACK_PRESSURED, 128L, 192L};
+        int[] offers = {0};
+        when(publication.tryClaim(eq(length), any(BufferClaim.class))).thenAnswer(invocation -> {
+            long result = results[offers[0]++];
+            if (result > 0) {
+                BufferClaim claim = invocation.getArgument(1);
+                claim.wrap(termBuffer, 0, length + DataHeaderFlyweight.HEADER_LENGTH);
+            }
+            return result;
+        });
+        AeronSendAgent agent = newAgent(OverflowPolicy.DROP_NEWEST);
+
+        assertEquals(0, agent.doWork());
+        assertTrue(ringBuffer.size() > 0);
+        assertEquals(1, agent.doWork());
+
+        assertEquals(4, offers[0]);
+        assertEquals(3, stats.get(PUBLISHED));
+        assertEquals(0, ringBuffer.size());
+    }
+
+    private AeronSendAgent newAgent(OverflowPolicy policy) {
+        return newAgent(policy, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private AeronSendAgent newAgent(OverflowPolicy policy, long timeoutNs) {
+        return new AeronSendAgent(new PricePublisher(publication, policy, timeoutNs, stats, discardRequests), ringBuffer);
+    }
+
+    private void backPressure(long result) {
+        when(publication.maxPayloadLength()).thenReturn(1376);
+        when(publication.tryClaim(anyInt(), any(BufferClaim.class))).thenReturn(result);
+    }
+
+    private void writeBatch(Price... prices) {
+        int length = 0;
+        for (Price price : prices) {
+            length += Integer.BYTES + PriceCodec.encodedLength(price);
+        }
+        assertTrue(new AeronPriceDistributionService().enqueueBatch(ringBuffer, List.of(prices), length));
+    }
+
+    private int writeMessage(Price price) {
+        int length = PriceCodec.encodedLength(price);
+        int index = ringBuffer.tryClaim(AeronPriceDistributionService.PRICE_MSG_TYPE_ID, length);
+        new PriceCodec().encode(price, ringBuffer.buffer(), index);
+        ringBuffer.commit(index);
+        return length;
+    }
+}
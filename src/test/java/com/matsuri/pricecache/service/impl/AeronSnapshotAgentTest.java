@@ -0,0 +1,140 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.codec.PriceCodec;
+import com.matsuri.pricecache.codec.SnapshotCodec;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.PriceCacheService;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.NoOpIdleStrategy;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AeronSnapshotAgentTest {
+
+    @Mock
+    private Subscription requests;
+
+    @Mock
+    private Publication snapshots;
+
+    @Mock
+    private PriceCacheService priceCacheService;
+
+    private final List<String> sent = new ArrayList<>();
+    private AeronSnapshotAgent agent;
+    private Price testPrice1;
+    private Price testPrice2;
+
+    @BeforeEach
+    void setUp() {
+        agent = new AeronSnapshotAgent(requests, snapshots, priceCacheService, new InstrumentPartitioner(1, ""),
+                partition -> 4096L, new NoOpIdleStrategy(), TimeUnit.MILLISECONDS.toNanos(10));
+        LocalDateTime now = LocalDateTime.now();
+        testPrice1 = new Price("AAPL", "VENDOR1", new BigDecimal("100.50"), new BigDecimal("100.60"), now, "USD");
+        testPrice2 = new Price("GOOGL", "VENDOR1", new BigDecimal("2500.00"), new BigDecimal("2500.50"), now, "EUR");
+    }
+
+    @Test
+    void testAnswersRequestWithFramedSnapshot() {
+        when(priceCacheService.getLastSequence()).thenReturn(42L);
+        stubPrices();
+        when(snapshots.offer(any(DirectBuffer.class), eq(0), anyInt())).thenAnswer(invocation -> {
+            sent.add(describe(invocation.getArgument(0), invocation.getArgument(2)));
+            return 64L;
+        });
+        UnsafeBuffer request = new UnsafeBuffer(new byte[64]);
+        agent.onFragment(request, 0, SnapshotCodec.encodeRequest(request, 0, 7L, 0), null);
+
+        agent.doWork();
+
+        assertEquals(List.of("begin 7 4096 42", "price AAPL", "price GOOGL", "end 7 2"), sent);
+    }
+
+    @Test
+    void testSendsOnlyPricesOfRequestedPartition() {
+        agent = new AeronSnapshotAgent(requests, snapshots, priceCacheService,
+                new InstrumentPartitioner(2, "AAPL;GOOGL"), partition -> 1000L * partition, new NoOpIdleStrategy(), TimeUnit.MILLISECONDS.toNanos(10));
+        when(priceCacheService.getLastSequence()).thenReturn(42L);
+        stubPrices();
+        when(snapshots.offer(any(DirectBuffer.class), eq(0), anyInt())).thenAnswer(invocation -> {
+            sent.add(describe(invocation.getArgument(0), invocation.getArgument(2)));
+            return 64L;
+        });
+
+        assertTrue(agent.sendSnapshot(7L, 1));
+        assertEquals(List.of("begin 7 1000 42", "price GOOGL", "end 7 1"), sent);
+    }
+
+    @Test
+    void testIgnoresRequestForUnknownPartition() {
+        UnsafeBuffer request = new UnsafeBuffer(new byte[64]);
+        agent.onFragment(request, 0, SnapshotCodec.encodeRequest(request, 0, 7L, 1), null);
+
+        agent.doWork();
+
+        verifyNoInteractions(snapshots);
+    }
+
+    @Test
+    void testAbandonsSnapshotWhenPublicationStaysBackPressured() {
+        stubPrices();
+        when(snapshots.offer(any(DirectBuffer.class), eq(0), anyInt()))
+                .thenReturn(64L)
+                .thenReturn(Publication.BACK_PRESSURED);
+
+        assertFalse(agent.sendSnapshot(7L, 0));
+    }
+
+    @Test
+    void testIgnoresUnexpectedRequestMessages() {
+        UnsafeBuffer buffer = new UnsafeBuffer(new byte[64]);
+        int length = new PriceCodec().encode(testPrice1, buffer, 0);
+
+        agent.onFragment(buffer, 0, length, null);
+        agent.doWork();
+
+        verifyNoInteractions(snapshots);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubPrices() {
+        doAnswer(invocation -> {
+            Consumer<Price> consumer = invocation.getArgument(0);
+            consumer.accept(testPrice1);
+            consumer.accept(testPrice2);
+            return null;
+        }).when(priceCacheService).forEachPrice(any());
+    }
+
+    private static String describe(DirectBuffer buffer, int length) {
+        int templateId = SnapshotCodec.templateId(buffer, 0, length);
+        if (templateId == SnapshotCodec.BEGIN_TEMPLATE_ID) {
+            return "begin " + SnapshotCodec.correlationId(buffer, 0) + " " + SnapshotCodec.livePosition(buffer, 0)
+                    + " " + SnapshotCodec.sequence(buffer, 0);
+        }
+        if (templateId == SnapshotCodec.END_TEMPLATE_ID) {
+            return "end " + SnapshotCodec.correlationId(buffer, 0) + " " + SnapshotCodec.count(buffer, 0);
+        }
+        return "price " + new PriceCodec().decode(buffer, 0).getInstrumentId();
+    }
+}
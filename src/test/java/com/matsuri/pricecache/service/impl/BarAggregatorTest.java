@@ -0,0 +1,83 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.domain.CurrencyCodes;
+import com.matsuri.pricecache.domain.EpochNanos;
+import com.matsuri.pricecache.domain.Price;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BarAggregatorTest {
+
+    private static final short USD = CurrencyCodes.codeOf("USD");
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final List<Bar> closed = new ArrayList<>();
+    private final BarAggregator aggregator =
+            new BarAggregator(List.of(Duration.ofSeconds(1), Duration.ofSeconds(2)), 10, closed::add);
+
+    @Test
+    void testAggregatesEveryIntervalAndNotifiesClosedBars() {
+        aggregator.onTick(tick("AAPL", 100, 0));
+        aggregator.onTick(tick("AAPL", 104, SECOND / 2));
+        aggregator.onTick(tick("AAPL", 102, SECOND));
+
+        assertEquals(1, closed.size());
+        assertEquals(SECOND, closed.get(0).intervalNanos());
+        assertEquals(1050, closed.get(0).highMantissa());
+
+        aggregator.closeBarsEndedBefore(2 * SECOND);
+
+        assertEquals(List.of(SECOND, SECOND, 2 * SECOND), closed.stream().map(Bar::intervalNanos).toList());
+        List<Bar> bars = aggregator.find("AAPL", "AGG1", Duration.ofSeconds(2), Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(1, bars.size());
+        assertEquals(3, bars.get(0).getTickCount());
+        assertEquals(1030, bars.get(0).closeMantissa());
+    }
+
+    @Test
+    void testFindsNothingForUnknownKeysAndRejectsUnknownIntervals() {
+        aggregator.onTick(tick("MSFT", 100, 0));
+
+        assertTrue(aggregator.find("MSFT", "NOBODY", Duration.ofSeconds(1), 0, Long.MAX_VALUE).isEmpty());
+        assertTrue(aggregator.find("MSFT", "AGG1", Duration.ofSeconds(1), 0, Long.MAX_VALUE).isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> aggregator.find("MSFT", "AGG1", Duration.ofMinutes(5), 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void testSweepUsesLocalTimeOutsideUtc() {
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        try {
+            long now = EpochNanos.of(LocalDateTime.now());
+            aggregator.onTick(tick("IBM", 100, now));
+            aggregator.onTick(tick("ORCL", 100, now - 10 * SECOND));
+
+            aggregator.closeEndedBars();
+
+            assertEquals(List.of("ORCL", "ORCL"), closed.stream().map(Bar::getInstrumentId).toList());
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    @Test
+    void testParsesIntervals() {
+        assertEquals(List.of(Duration.ofSeconds(1), Duration.ofMinutes(1), Duration.ofMillis(500)),
+                BarAggregator.parseIntervals("1s, 1m,500ms"));
+        assertEquals(List.of(), BarAggregator.parseIntervals(""));
+        assertThrows(IllegalArgumentException.class, () -> BarAggregator.parseIntervals("often"));
+    }
+
+    private static Price tick(String instrumentId, long bid, long timestampNanos) {
+        return new Price(instrumentId, "AGG1", bid, bid + 2, 2, timestampNanos, USD);
+    }
+}
@@ -0,0 +1,126 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.BestPrice;
+import com.matsuri.pricecache.domain.EpochNanos;
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.BestPriceListener;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BestPriceBookTest {
+
+    private final List<String> changes = new ArrayList<>();
+    private final BestPriceBook book = new BestPriceBook(new BestPriceListener() {
+        @Override
+        public void onBestPriceChange(BestPrice bestPrice) {
+            changes.add(bestPrice.getBidVendorId() + " " + bestPrice.getBidPrice() + " / "
+                    + bestPrice.getAskVendorId() + " " + bestPrice.getAskPrice());
+        }
+
+        @Override
+        public void onBestPriceCleared(String instrumentId) {
+            changes.add(instrumentId + " cleared");
+        }
+    });
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @Test
+    void testConsolidatesBestBidAndAskAcrossVendors() {
+        book.update(quote("V1", "100.10", "100.50", now));
+        book.update(quote("V2", "100.20", "100.60", now));
+
+        BestPrice best = book.get("AAPL").orElseThrow();
+        assertEquals("V2", best.getBidVendorId());
+        assertEquals(new BigDecimal("100.20"), best.getBidPrice());
+        assertEquals("V1", best.getAskVendorId());
+        assertEquals(new BigDecimal("100.50"), best.getAskPrice());
+        assertTrue(book.get("MSFT").isEmpty());
+    }
+
+    @Test
+    void testNotifiesOnlyChangesOfBestQuotes() {
+        book.update(quote("V1", "100.10", "100.50", now));
+        book.update(quote("V2", "100.00", "100.60", now));
+        book.update(quote("V1", "100.10", "100.50", now.plusSeconds(1)));
+        book.update(quote("V1", "99.90", "100.70", now.plusSeconds(2)));
+
+        assertEquals(List.of("V1 100.10 / V1 100.50", "V2 100.00 / V2 100.60"), changes);
+    }
+
+    @Test
+    void testDropsExpiredQuotes() {
+        book.update(quote("V1", "100.10", "100.50", now.minusDays(2)));
+        book.update(quote("V2", "100.00", "100.60", now));
+
+        assertEquals(1, book.removeOlderThan(EpochNanos.of(now.minusDays(1))));
+
+        assertEquals("V2", book.get("AAPL").orElseThrow().getBidVendorId());
+        assertEquals("V2 100.00 / V2 100.60", changes.get(changes.size() - 1));
+    }
+
+    @Test
+    void testEmptiedBookIsClearedAndDropped() {
+        book.update(quote("V1", "100.10", "100.50", now.minusDays(2)));
+
+        assertEquals(1, book.removeOlderThan(EpochNanos.of(now.minusDays(1))));
+
+        assertEquals(List.of("V1 100.10 / V1 100.50", "AAPL cleared"), changes);
+        assertTrue(book.get("AAPL").isEmpty());
+        assertEquals(0, book.removeOlderThan(EpochNanos.of(now.minusDays(1))));
+
+        book.update(quote("V2", "100.00", "100.60", now));
+        assertEquals("V2", book.get("AAPL").orElseThrow().getBidVendorId());
+        assertEquals("V2 100.00 / V2 100.60", changes.get(changes.size() - 1));
+    }
+
+    @Test
+    void testQuotesInAnotherCurrencyAreNotRanked() {
+        book.update(quote("V1", "100.10", "100.50", now));
+        book.update(new Price("AAPL", "V2", new BigDecimal("200.00"), new BigDecimal("200.10"), now, "EUR"));
+
+        BestPrice best = book.get("AAPL").orElseThrow();
+        assertEquals("V1", best.getBidVendorId());
+        assertEquals("V1", best.getAskVendorId());
+        assertEquals(List.of("V1 100.10 / V1 100.50"), changes);
+    }
+
+    @Test
+    void testVendorSwitchingCurrencyLeavesTheBook() {
+        book.update(quote("V1", "100.10", "100.50", now));
+        book.update(quote("V2", "100.20", "100.60", now));
+        book.update(new Price("AAPL", "V2", new BigDecimal("90.00"), new BigDecimal("90.10"), now, "EUR"));
+
+        assertEquals("V1 100.10 / V1 100.50", changes.get(changes.size() - 1));
+
+        book.update(new Price("AAPL", "V1", new BigDecimal("91.00"), new BigDecimal("91.10"), now, "EUR"));
+
+        BestPrice best = book.get("AAPL").orElseThrow();
+        assertEquals("EUR", best.bid().getCurrency());
+        assertEquals(new BigDecimal("91.00"), best.getBidPrice());
+        assertEquals(List.of("AAPL cleared", "V1 91.00 / V1 91.10"), changes.subList(changes.size() - 2, changes.size()));
+    }
+
+    @Test
+    void testClearDropsAllBooks() {
+        book.update(quote("V1", "100.10", "100.50", now));
+        book.update(new Price("MSFT", "V1", new BigDecimal("300.00"), new BigDecimal("300.10"), now, "USD"));
+
+        book.clear();
+
+        assertTrue(book.get("AAPL").isEmpty());
+        assertTrue(book.get("MSFT").isEmpty());
+        assertTrue(changes.containsAll(List.of("AAPL cleared", "MSFT cleared")));
+        book.update(quote("V2", "100.00", "100.60", now));
+        assertEquals("V2", book.get("AAPL").orElseThrow().getBidVendorId());
+    }
+
+    private static Price quote(String vendorId, String bid, String ask, LocalDateTime timestamp) {
+        return new Price("AAPL", vendorId, new BigDecimal(bid), new BigDecimal(ask), timestamp, "USD");
+    }
+}
@@ -0,0 +1,92 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static com.matsuri.pricecache.service.impl.ConflatingPriceQueue.OfferResult.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConflatingPriceQueueTest {
+
+    private final ConflatingPriceQueue queue = new ConflatingPriceQueue(4);
+
+    @Test
+    void testNewerPriceReplacesPendingOneInPlace() {
+        Price aapl1 = price("AAPL", "VENDOR1", "100.50");
+        Price googl = price("GOOGL", "VENDOR1", "2500.00");
+        Price aapl2 = price("AAPL", "VENDOR1", "100.70");
+
+        assertEquals(QUEUED, queue.offer(aapl1));
+        assertEquals(QUEUED, queue.offer(googl));
+        assertEquals(CONFLATED, queue.offer(aapl2));
+
+        assertEquals(2, queue.size());
+        assertSame(aapl2, queue.poll());
+        assertSame(googl, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void testKeyIsQueuedAgainAfterBeingDrained() {
+        Price first = price("AAPL", "VENDOR1", "100.50");
+        Price second = price("AAPL", "VENDOR1", "100.70");
+
+        queue.offer(first);
+        assertSame(first, queue.poll());
+
+        assertEquals(QUEUED, queue.offer(second));
+        assertSame(second, queue.poll());
+    }
+
+    @Test
+    void testDepthIsBoundedByDistinctKeys() {
+        for (int i = 0; i < 4; i++) {
+            assertEquals(QUEUED, queue.offer(price("INSTR" + i, "VENDOR1", "1.00")));
+        }
+        for (int tick = 0; tick < 100; tick++) {
+            assertEquals(CONFLATED, queue.offer(price("INSTR" + (tick % 4), "VENDOR1", "2.00")));
+        }
+
+        assertEquals(FULL, queue.offer(price("OTHER", "VENDOR1", "1.00")));
+        assertEquals(4, queue.size());
+    }
+
+    @Test
+    void testKeyRefusedWhileFullIsNeverLeftPendingUnqueued() throws InterruptedException {
+        ConflatingPriceQueue small = new ConflatingPriceQueue(2);
+        Thread[] producers = new Thread[4];
+        for (int p = 0; p < producers.length; p++) {
+            int producer = p;
+            producers[p] = new Thread(() -> {
+                for (int tick = 0; tick < 20_000; tick++) {
+                    small.offer(price("INSTR" + (tick + producer) % 8, "VENDOR1", "1.00"));
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            while (producer.isAlive()) {
+                small.poll();
+            }
+        }
+        while (small.poll() != null) {
+            // drained
+        }
+
+        // a price stranded in an unqueued slot would turn every later offer of its key into a conflation
+        for (int i = 0; i < 8; i += 2) {
+            assertEquals(QUEUED, small.offer(price("INSTR" + i, "VENDOR1", "2.00")));
+            assertEquals(QUEUED, small.offer(price("INSTR" + (i + 1), "VENDOR1", "2.00")));
+            small.poll();
+            small.poll();
+        }
+    }
+
+    private static Price price(String instrument, String vendor, String bid) {
+        return new Price(instrument, vendor, new BigDecimal(bid), new BigDecimal(bid).add(BigDecimal.ONE),
+                LocalDateTime.now(), "USD");
+    }
+}
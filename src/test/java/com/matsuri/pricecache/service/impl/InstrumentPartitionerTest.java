@@ -0,0 +1,46 @@
+package com.matsuri.pricecache.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstrumentPartitionerTest {
+
+    @Test
+    void testSinglePartitionTakesEverything() {
+        InstrumentPartitioner partitioner = new InstrumentPartitioner(1, "");
+
+        assertEquals(0, partitioner.partitionOf("AAPL"));
+        assertEquals(0, partitioner.partitionOf("GOOGL"));
+    }
+
+    @Test
+    void testHashesInstrumentsConsistentlyOverPartitions() {
+        InstrumentPartitioner partitioner = new InstrumentPartitioner(4, null);
+        boolean[] used = new boolean[4];
+        for (int i = 0; i < 100; i++) {
+            String instrumentId = "INSTR" + i;
+            int partition = partitioner.partitionOf(instrumentId);
+            assertEquals(partition, partitioner.partitionOf(instrumentId));
+            used[partition] = true;
+        }
+
+        assertArrayEquals(new boolean[]{true, true, true, true}, used);
+    }
+
+    @Test
+    void testConfiguredGroupsPinInstruments() {
+        InstrumentPartitioner partitioner = new InstrumentPartitioner(3, "AAPL, MSFT;GOOGL");
+
+        assertEquals(0, partitioner.partitionOf("AAPL"));
+        assertEquals(0, partitioner.partitionOf("MSFT"));
+        assertEquals(1, partitioner.partitionOf("GOOGL"));
+    }
+
+    @Test
+    void testRejectsInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new InstrumentPartitioner(0, ""));
+        assertThrows(IllegalArgumentException.class, () -> new InstrumentPartitioner(1, "AAPL;GOOGL"));
+        assertThrows(IllegalArgumentException.class, () -> new InstrumentPartitioner(2, "AAPL;AAPL"));
+    }
+}
@@ -1,20 +1,37 @@
 
 package com.matsuri.pricecache.service.impl;
 
+import com.matsuri.pricecache.domain.Bar;
+import com.matsuri.pricecache.domain.BestPrice;
 import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.journal.JournalSyncPolicy;
+import com.matsuri.pricecache.journal.PriceJournal;
 import com.matsuri.pricecache.repository.PriceRepository;
+import com.matsuri.pricecache.repository.impl.InMemoryPriceRepository;
+import com.matsuri.pricecache.service.BestPriceListener;
 import com.matsuri.pricecache.service.PriceDistributionService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -46,6 +63,97 @@ class PriceCacheServiceImplTest {
         verify(distributionService).distributePrice(testPrice);
     }
 
+    @Test
+    void testPublishPriceJournalsOnceStored() {
+        PriceJournal journal = mock(PriceJournal.class);
+        service = new PriceCacheServiceImpl(priceRepository, distributionService, Optional.of(journal),
+                Optional.empty(), Optional.empty(), List.of());
+
+        service.publishPrice(testPrice);
+
+        InOrder inOrder = inOrder(journal, priceRepository, distributionService);
+        inOrder.verify(priceRepository).save(testPrice);
+        inOrder.verify(journal).appendUnsynced(testPrice);
+        inOrder.verify(journal).awaitSync(anyLong());
+        inOrder.verify(distributionService).distributePrice(testPrice);
+    }
+
+    @Test
+    void testJournalRecoversLivePricesOfConcurrentPublishers(@TempDir Path directory) throws Exception {
+        InMemoryPriceRepository live = new InMemoryPriceRepository();
+        PriceJournal journal = startJournal(live, directory);
+        service = new PriceCacheServiceImpl(live, distributionService, Optional.of(journal),
+                Optional.empty(), Optional.empty(), List.of());
+        int keys = 500;
+        CyclicBarrier start = new CyclicBarrier(4);
+        ExecutorService publishers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> published = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int publisher = t;
+                published.add(publishers.submit(() -> {
+                    start.await();
+                    // the publishers walk the keys in step, so each key's last prices are published concurrently
+                    for (int i = 0; i < 4 * keys; i++) {
+                        BigDecimal bid = BigDecimal.valueOf(publisher * 10000 + i);
+                        service.publishPrice(new Price("RACE" + (i % keys), "VENDOR1", bid,
+                                bid.add(BigDecimal.ONE), LocalDateTime.now(), "USD"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : published) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            publishers.shutdownNow();
+        }
+        journal.close();
+
+        InMemoryPriceRepository recovered = new InMemoryPriceRepository();
+        startJournal(recovered, directory).close();
+
+        assertEquals(keys, recovered.count());
+        for (int i = 0; i < keys; i++) {
+            assertEquals(live.findByInstrumentAndVendor("RACE" + i, "VENDOR1"),
+                    recovered.findByInstrumentAndVendor("RACE" + i, "VENDOR1"), "RACE" + i);
+        }
+    }
+
+    @Test
+    void testPublishPriceUpdatesBestPrice() {
+        BestPriceListener listener = mock(BestPriceListener.class);
+        service = new PriceCacheServiceImpl(priceRepository, distributionService, Optional.empty(),
+                Optional.of(listener), Optional.empty(), List.of());
+
+        service.publishPrice(testPrice);
+
+        BestPrice bestPrice = service.getBestPrice("AAPL").orElseThrow();
+        assertEquals("VENDOR1", bestPrice.getBidVendorId());
+        verify(listener).onBestPriceChange(bestPrice);
+        assertTrue(service.getBestPrice("MSFT").isEmpty());
+    }
+
+    @Test
+    void testPublishPriceAggregatesBars() {
+        service = new PriceCacheServiceImpl(priceRepository, distributionService, Optional.empty(),
+                Optional.empty(), Optional.of(new BarAggregator(List.of(Duration.ofMinutes(1)), 10, null)),
+                List.of());
+        LocalDateTime minute = LocalDateTime.of(2024, 1, 2, 10, 0);
+
+        service.publishPrice(new Price("AAPL", "VENDOR1", new BigDecimal("100.50"), new BigDecimal("100.60"),
+                minute.plusSeconds(5), "USD"));
+        service.publishPrices(List.of(new Price("AAPL", "VENDOR1", new BigDecimal("100.70"),
+                new BigDecimal("100.80"), minute.plusMinutes(1), "USD")));
+
+        List<Bar> bars = service.getBars("AAPL", "VENDOR1", Duration.ofMinutes(1), null, null);
+        assertEquals(1, bars.size());
+        assertEquals(minute, bars.get(0).getStartTime());
+        assertEquals(new BigDecimal("100.550"), bars.get(0).getClose());
+        assertThrows(IllegalArgumentException.class,
+                () -> service.getBars("AAPL", "VENDOR1", Duration.ofSeconds(1), null, null));
+    }
+
     @Test
     void testGetPrice() {
         when(priceRepository.findByInstrumentAndVendor("AAPL", "VENDOR1"))
@@ -90,6 +198,26 @@ class PriceCacheServiceImplTest {
         verify(priceRepository).deleteOlderThan(any(LocalDateTime.class));
     }
 
+    @Test
+    void testPublishPrices() {
+        List<Price> prices = List.of(testPrice);
+
+        service.publishPrices(prices);
+
+        verify(priceRepository).saveAll(prices);
+        verify(distributionService).distributeAll(prices);
+    }
+
+    @Test
+    void testCleanupSlicePassesBudget() {
+        when(priceRepository.count()).thenReturn(10, 9);
+        when(priceRepository.deleteOlderThan(any(LocalDateTime.class), eq(500_000L))).thenReturn(false);
+
+        assertFalse(service.cleanupOldPrices(500_000L));
+
+        verify(priceRepository).deleteOlderThan(any(LocalDateTime.class), eq(500_000L));
+    }
+
     @Test
     void testGetPriceCount() {
         when(priceRepository.count()).thenReturn(5);
@@ -99,4 +227,57 @@ class PriceCacheServiceImplTest {
         assertEquals(5, result);
         verify(priceRepository).count();
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBestPriceHoldsTheStoredQuoteOfConcurrentPublishers() throws Exception {
+        InMemoryPriceRepository live = new InMemoryPriceRepository();
+        service = new PriceCacheServiceImpl(live, distributionService);
+        int instruments = 500;
+        CyclicBarrier start = new CyclicBarrier(4);
+        ExecutorService publishers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> published = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int publisher = t;
+                published.add(publishers.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 4 * instruments; i++) {
+                        BigDecimal bid = BigDecimal.valueOf(publisher * 10000 + i);
+                        service.publishPrice(new Price("BOOK" + (i % instruments), "VENDOR1", bid,
+                                bid.add(BigDecimal.ONE), LocalDateTime.now(), "USD"));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : published) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            publishers.shutdownNow();
+        }
+
+        for (int i = 0; i < instruments; i++) {
+            assertEquals(live.findByInstrumentAndVendor("BOOK" + i, "VENDOR1").orElseThrow(),
+                    service.getBestPrice("BOOK" + i).orElseThrow().bid(), "BOOK" + i);
+        }
+    }
+
+    @Test
+    void testClearPricesClearsBestPrices() {
+        service.publishPrice(testPrice);
+
+        service.clearPrices();
+
+        verify(priceRepository).clear();
+        assertTrue(service.getBestPrice("AAPL").isEmpty());
+    }
+
+    private static PriceJournal startJournal(InMemoryPriceRepository repository, Path directory) {
+        PriceJournal journal = new PriceJournal(repository);
+        ReflectionTestUtils.setField(journal, "directory", directory.toString());
+        ReflectionTestUtils.setField(journal, "segmentSize", 4 << 20);
+        ReflectionTestUtils.setField(journal, "syncPolicy", JournalSyncPolicy.NONE);
+        journal.start();
+        return journal;
+    }
+}
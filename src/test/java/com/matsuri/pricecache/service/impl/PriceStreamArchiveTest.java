@@ -0,0 +1,179 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.codec.PriceCodec;
+import com.matsuri.pricecache.domain.CurrencyCodes;
+import com.matsuri.pricecache.domain.Price;
+import io.aeron.Aeron;
+import io.aeron.ChannelUri;
+import io.aeron.Publication;
+import io.aeron.Subscription;
+import io.aeron.archive.client.AeronArchive;
+import io.aeron.driver.MediaDriver;
+import io.aeron.driver.ThreadingMode;
+import org.agrona.collections.LongArrayList;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceStreamArchiveTest {
+
+    private static final int TERM_LENGTH = 64 * 1024;
+    private static final int SEGMENT_LENGTH = 4 * TERM_LENGTH;
+    private static final String CHANNEL = "aeron:ipc?term-length=64k";
+    private static final int STREAM_ID = 1001;
+    private static final String CONTROL_CHANNEL = "aeron:udp?endpoint=localhost:18010";
+    private static final String REPLICATION_CHANNEL = "aeron:udp?endpoint=localhost:0";
+    private static final int REPLAY_STREAM_ID = 2001;
+    private static final short USD = CurrencyCodes.codeOf("USD");
+
+    @TempDir
+    Path directory;
+
+    private MediaDriver driver;
+    private Aeron aeron;
+
+    @BeforeEach
+    void setUp() {
+        driver = MediaDriver.launchEmbedded(new MediaDriver.Context()
+                .threadingMode(ThreadingMode.SHARED)
+                .spiesSimulateConnection(true)
+                .dirDeleteOnStart(true)
+                .dirDeleteOnShutdown(true));
+        aeron = Aeron.connect(new Aeron.Context().aeronDirectoryName(driver.aeronDirectoryName()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        aeron.close();
+        driver.close();
+    }
+
+    @Test
+    void testKeepsRecordingWithinRetention() {
+        assertEquals(0, PriceStreamArchive.retainedStartPosition(0, 3 * SEGMENT_LENGTH, 3L * SEGMENT_LENGTH,
+                TERM_LENGTH, SEGMENT_LENGTH));
+    }
+
+    @Test
+    void testPurgesWholeSegmentsBeyondRetention() {
+        long recorded = 5L * SEGMENT_LENGTH + 100;
+
+        assertEquals(2L * SEGMENT_LENGTH, PriceStreamArchive.retainedStartPosition(0, recorded,
+                3L * SEGMENT_LENGTH, TERM_LENGTH, SEGMENT_LENGTH));
+        assertEquals(2L * SEGMENT_LENGTH, PriceStreamArchive.retainedStartPosition(2L * SEGMENT_LENGTH, recorded,
+                3L * SEGMENT_LENGTH, TERM_LENGTH, SEGMENT_LENGTH));
+    }
+
+    @Test
+    void testRecordsPurgesBeyondRetentionAndReplaysFromPosition() {
+        try (PriceStreamArchive archive = startArchive();
+             AeronArchive client = connectClient()) {
+            Publication publication = aeron.addPublication(CHANNEL, STREAM_ID);
+            long[] positions = publish(publication, 10_000);
+            long recordingId = awaitRecorded(client, publication);
+
+            assertTrue(archive.enforceRetention(publication) > 0);
+            long startPosition = client.getStartPosition(recordingId);
+            assertEquals(0, startPosition % SEGMENT_LENGTH);
+            assertTrue(publication.position() - startPosition >= SEGMENT_LENGTH);
+            assertEquals(0, archive.enforceRetention(publication));
+
+            // a subscriber that applied price 8000 replays from the position after it
+            int from = 8001;
+            assertTrue(positions[from] >= startPosition);
+            long replaySessionId = client.startReplay(recordingId, positions[from],
+                    publication.position() - positions[from], "aeron:ipc", REPLAY_STREAM_ID);
+            LongArrayList replayedBids = new LongArrayList();
+            PriceCodec codec = new PriceCodec();
+            try (Subscription replay = aeron.addSubscription(
+                    ChannelUri.addSessionId("aeron:ipc", (int) replaySessionId), REPLAY_STREAM_ID)) {
+                await(() -> {
+                    replay.poll((buffer, offset, length, header) ->
+                            replayedBids.addLong(codec.decode(buffer, offset).bidMantissa()), 100);
+                    return replayedBids.size() == positions.length - from;
+                });
+            }
+            assertEquals(from, replayedBids.getLong(0));
+            assertEquals(positions.length - 1, replayedBids.getLong(replayedBids.size() - 1));
+        }
+    }
+
+    @Test
+    void testPurgesRecordingsOfEarlierRuns() {
+        try (PriceStreamArchive archive = startArchive();
+             AeronArchive client = connectClient()) {
+            Publication publication = aeron.addPublication(CHANNEL, STREAM_ID);
+            publish(publication, 10);
+            awaitRecorded(client, publication);
+            publication.close();
+        }
+
+        try (PriceStreamArchive archive = startArchive();
+             AeronArchive client = connectClient()) {
+            assertEquals(0, client.listRecordingsForUri(0, Integer.MAX_VALUE, CHANNEL, STREAM_ID,
+                    (controlSessionId, correlationId, id, startTimestamp, stopTimestamp, startPosition,
+                     stopPosition, initialTermId, segmentLength, termLength, mtuLength, sessionId, streamId,
+                     strippedChannel, originalChannel, sourceIdentity) -> {
+                    }));
+        }
+    }
+
+    private PriceStreamArchive startArchive() {
+        PriceStreamArchive archive = new PriceStreamArchive(CHANNEL, SEGMENT_LENGTH);
+        archive.start(aeron, directory.resolve("archive").toString(), CONTROL_CHANNEL, REPLICATION_CHANNEL,
+                SEGMENT_LENGTH);
+        archive.record(STREAM_ID);
+        return archive;
+    }
+
+    private AeronArchive connectClient() {
+        return AeronArchive.connect(new AeronArchive.Context()
+                .aeron(aeron)
+                .controlRequestChannel(CONTROL_CHANNEL)
+                .controlResponseChannel("aeron:udp?endpoint=localhost:0"));
+    }
+
+    /**
+     * Publishes prices with the bid mantissa set to their index.
+     *
+     * @return the stream position each price starts at.
+     */
+    private static long[] publish(Publication publication, int count) {
+        await(publication::isConnected);
+        UnsafeBuffer buffer = new UnsafeBuffer(ByteBuffer.allocateDirect(256));
+        PriceCodec codec = new PriceCodec();
+        long[] positions = new long[count];
+        for (int i = 0; i < count; i++) {
+            int length = codec.encode(new Price("ARCH", "VENDOR1", i, i + 1, 2, i, USD), buffer, 0);
+            positions[i] = publication.position();
+            while (publication.offer(buffer, 0, length) < 0) {
+                Thread.onSpinWait();
+            }
+        }
+        return positions;
+    }
+
+    private static long awaitRecorded(AeronArchive client, Publication publication) {
+        long[] recordingId = {Aeron.NULL_VALUE};
+        await(() -> (recordingId[0] = client.findLastMatchingRecording(0, CHANNEL, STREAM_ID,
+                publication.sessionId())) != Aeron.NULL_VALUE);
+        await(() -> client.getRecordingPosition(recordingId[0]) >= publication.position());
+        return recordingId[0];
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() - deadline < 0, "timed out");
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.service.PriceFilter;
+import com.matsuri.pricecache.service.PriceSink;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceStreamServiceTest {
+
+    private final PriceStreamService service = new PriceStreamService(64, 16);
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void testPushesMatchingPricesOffThePublishingThread() throws InterruptedException {
+        service.start();
+        BlockingQueue<Price> received = new LinkedBlockingQueue<>();
+        List<Thread> senders = new ArrayList<>();
+        service.subscribe(new PriceFilter(Set.of("AAPL"), Set.of(), Set.of("USD")), new PriceSink() {
+            @Override
+            public void send(Price price) {
+                senders.add(Thread.currentThread());
+                received.add(price);
+            }
+
+            @Override
+            public void close(String reason) {
+            }
+        });
+
+        Price googl = price("GOOGL", "VENDOR1", "2500.00", "USD");
+        Price aaplEur = price("AAPL", "VENDOR1", "92.00", "EUR");
+        Price aapl = price("AAPL", "VENDOR1", "100.50", "USD");
+        service.onPrice(googl);
+        service.onPrice(aaplEur);
+        service.onPrice(aapl);
+
+        assertSame(aapl, received.poll(5, TimeUnit.SECONDS));
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        assertNotSame(Thread.currentThread(), senders.get(0));
+    }
+
+    @Test
+    void testNothingIsQueuedWithoutSubscribers() {
+        service.onPrice(price("AAPL", "VENDOR1", "100.50", "USD"));
+
+        assertEquals(0, service.getStats().get(ENQUEUED));
+    }
+
+    @Test
+    void testConflatesPricesOfKeyNotSentYet() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        RecordingSink sink = new RecordingSink();
+        PriceSubscription subscription = new PriceSubscription(PriceFilter.ALL, sink, 4, tasks::add,
+                new DistributionStats(), s -> { });
+        Price first = price("AAPL", "VENDOR1", "100.50", "USD");
+        Price second = price("AAPL", "VENDOR1", "100.70", "USD");
+        Price googl = price("GOOGL", "VENDOR1", "2500.00", "USD");
+
+        subscription.offer(first);
+        subscription.offer(second);
+        subscription.offer(googl);
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+
+        assertEquals(List.of(second, googl), sink.sent);
+    }
+
+    @Test
+    void testDropsClientFallingBehind() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        RecordingSink sink = new RecordingSink();
+        DistributionStats stats = new DistributionStats();
+        List<PriceSubscription> removed = new ArrayList<>();
+        PriceSubscription subscription = new PriceSubscription(PriceFilter.ALL, sink, 2, tasks::add, stats,
+                removed::add);
+
+        subscription.offer(price("AAPL", "VENDOR1", "100.50", "USD"));
+        subscription.offer(price("GOOGL", "VENDOR1", "2500.00", "USD"));
+        subscription.offer(price("MSFT", "VENDOR1", "400.00", "USD"));
+        tasks.forEach(Runnable::run);
+
+        assertTrue(subscription.isClosed());
+        assertEquals(List.of(subscription), removed);
+        assertEquals(1, stats.get(SUBSCRIBER_DROPPED));
+        assertTrue(sink.sent.isEmpty());
+        assertNotNull(sink.closeReason);
+    }
+
+    @Test
+    void testDropsClientWhoseSendFails() {
+        Queue<Runnable> tasks = new ArrayDeque<>();
+        DistributionStats stats = new DistributionStats();
+        List<String> closeReasons = new ArrayList<>();
+        PriceSubscription subscription = new PriceSubscription(PriceFilter.ALL, new PriceSink() {
+            @Override
+            public void send(Price price) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void close(String reason) {
+                closeReasons.add(reason);
+            }
+        }, 4, tasks::add, stats, s -> { });
+
+        subscription.offer(price("AAPL", "VENDOR1", "100.50", "USD"));
+        while (!tasks.isEmpty()) {
+            tasks.poll().run();
+        }
+
+        assertTrue(subscription.isClosed());
+        assertEquals(1, stats.get(PUBLICATION_FAILED));
+        assertEquals(List.of("Send failed: Broken pipe"), closeReasons);
+    }
+
+    private static Price price(String instrumentId, String vendorId, String bid, String currency) {
+        BigDecimal bidPrice = new BigDecimal(bid);
+        return new Price(instrumentId, vendorId, bidPrice, bidPrice.add(new BigDecimal("0.10")),
+                LocalDateTime.now(), currency);
+    }
+
+    private static final class RecordingSink implements PriceSink {
+
+        private final List<Price> sent = new ArrayList<>();
+        private String closeReason;
+
+        @Override
+        public void send(Price price) {
+            sent.add(price);
+        }
+
+        @Override
+        public void close(String reason) {
+            closeReason = reason;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.domain.SymbolTable;
+import com.matsuri.pricecache.service.PriceSink;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.matsuri.pricecache.service.impl.DistributionStats.Counter.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PriceSubscriptionRegistryTest {
+
+    private long nowNanos = TimeUnit.SECONDS.toNanos(1);
+    // sends run on the fan-out thread here, a direct executor
+    private final PriceSubscriptionRegistry registry =
+            new PriceSubscriptionRegistry(64, 16, 3, Runnable::run, () -> nowNanos);
+
+    @Test
+    void testSendsPricesOnlyToSubscribedSessions() {
+        RecordingSink aaplSink = new RecordingSink();
+        RecordingSink allVendorsSink = new RecordingSink();
+        PriceGatewaySession aapl = registry.open(aaplSink, 0);
+        PriceGatewaySession allVendors = registry.open(allVendorsSink, 0);
+        registry.subscribe(aapl, "AAPL", "VENDOR1");
+        registry.subscribe(allVendors, "AAPL", null);
+        // covered by the subscription to every vendor, sent once
+        registry.subscribe(allVendors, "AAPL", "VENDOR1");
+
+        Price vendor1 = price("AAPL", "VENDOR1", "100.50");
+        Price vendor2 = price("AAPL", "VENDOR2", "100.55");
+        Price googl = price("GOOGL", "VENDOR1", "2500.00");
+        publish(vendor1, vendor2, googl);
+
+        assertEquals(List.of(vendor1), aaplSink.sent);
+        assertEquals(List.of(vendor1, vendor2), allVendorsSink.sent);
+        assertEquals(Set.of("AAPL/VENDOR1", "AAPL/*"), allVendors.subscriptions());
+    }
+
+    @Test
+    void testUnsubscribedKeyIsNoLongerSent() {
+        RecordingSink sink = new RecordingSink();
+        PriceGatewaySession session = registry.open(sink, 0);
+        registry.subscribe(session, "AAPL", "VENDOR1");
+        publish(price("AAPL", "VENDOR1", "100.50"));
+
+        assertTrue(registry.unsubscribe(session, "AAPL", "VENDOR1"));
+        assertFalse(registry.unsubscribe(session, "AAPL", "VENDOR1"));
+        publish(price("AAPL", "VENDOR1", "100.70"));
+
+        assertEquals(1, sink.sent.size());
+    }
+
+    @Test
+    void testThrottlesUpdatesPerKeyAndSendsTheLatestOnceDue() {
+        RecordingSink sink = new RecordingSink();
+        PriceGatewaySession session = registry.open(sink, 4);
+        registry.subscribe(session, "AAPL", null);
+        Price first = price("AAPL", "VENDOR1", "100.50");
+        Price second = price("AAPL", "VENDOR1", "100.60");
+        Price third = price("AAPL", "VENDOR1", "100.70");
+        Price otherVendor = price("AAPL", "VENDOR2", "100.55");
+
+        publish(first);
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(100);
+        publish(second);
+        publish(third);
+        publish(otherVendor);
+        assertEquals(List.of(first, otherVendor), sink.sent);
+
+        nowNanos += TimeUnit.MILLISECONDS.toNanos(150);
+        registry.doWork();
+
+        assertEquals(List.of(first, otherVendor, third), sink.sent);
+        assertEquals(2, registry.getStats().get(THROTTLED));
+    }
+
+    @Test
+    void testLimitsSubscriptionsPerSession() {
+        PriceGatewaySession session = registry.open(new RecordingSink(), 0);
+        registry.subscribe(session, "AAPL", null);
+        registry.subscribe(session, "GOOGL", null);
+        registry.subscribe(session, "MSFT", null);
+
+        assertFalse(registry.subscribe(session, "AAPL", null));
+        assertThrows(IllegalArgumentException.class, () -> registry.subscribe(session, "AMZN", null));
+    }
+
+    @Test
+    void testClosedSessionIsRemovedFromIndex() {
+        RecordingSink sink = new RecordingSink();
+        PriceGatewaySession session = registry.open(sink, 0);
+        registry.subscribe(session, "AAPL", null);
+        registry.doWork();
+
+        registry.close(session);
+        RecordingSink otherSink = new RecordingSink();
+        registry.subscribe(registry.open(otherSink, 0), "GOOGL", null);
+        publish(price("AAPL", "VENDOR1", "100.50"), price("GOOGL", "VENDOR1", "2500.00"));
+
+        assertTrue(session.isClosed());
+        assertTrue(sink.sent.isEmpty());
+        assertEquals(1, otherSink.sent.size());
+        assertEquals(1, registry.sessionCount());
+    }
+
+    @Test
+    void testSubscriptionsToUnpublishedSymbolsDoNotRegisterThem() {
+        RecordingSink sink = new RecordingSink();
+        PriceGatewaySession session = registry.open(sink, 0);
+        registry.subscribe(session, "REGISTRY-NEW-1", null);
+        registry.subscribe(session, "REGISTRY-NEW-2", "REGISTRY-VENDOR");
+        registry.subscribe(session, "AAPL", "REGISTRY-VENDOR");
+        registry.doWork();
+
+        assertEquals(SymbolTable.NOT_FOUND, SymbolTable.INSTRUMENTS.find("REGISTRY-NEW-1"));
+        assertEquals(SymbolTable.NOT_FOUND, SymbolTable.INSTRUMENTS.find("REGISTRY-NEW-2"));
+        assertEquals(SymbolTable.NOT_FOUND, SymbolTable.VENDORS.find("REGISTRY-VENDOR"));
+
+        Price first = price("REGISTRY-NEW-1", "VENDOR1", "10.00");
+        Price second = price("REGISTRY-NEW-2", "REGISTRY-VENDOR", "20.00");
+        Price third = price("AAPL", "REGISTRY-VENDOR", "100.50");
+        Price otherVendor = price("REGISTRY-NEW-2", "VENDOR1", "20.10");
+        publish(first, second, third, otherVendor);
+        Price later = price("REGISTRY-NEW-1", "VENDOR2", "10.10");
+        publish(later);
+
+        assertEquals(List.of(first, second, third, later), sink.sent);
+    }
+
+    @Test
+    void testUnsubscribedOrClosedPendingSubscriptionIsNotSent() {
+        RecordingSink sink = new RecordingSink();
+        PriceGatewaySession session = registry.open(sink, 0);
+        registry.subscribe(session, "REGISTRY-NEW-3", null);
+        registry.doWork();
+        assertTrue(registry.unsubscribe(session, "REGISTRY-NEW-3", null));
+        RecordingSink closedSink = new RecordingSink();
+        PriceGatewaySession closed = registry.open(closedSink, 0);
+        registry.subscribe(closed, "REGISTRY-NEW-3", "VENDOR1");
+        registry.doWork();
+        registry.close(closed);
+        registry.subscribe(registry.open(new RecordingSink(), 0), "GOOGL", null);
+
+        publish(price("REGISTRY-NEW-3", "VENDOR1", "30.00"));
+
+        assertTrue(sink.sent.isEmpty());
+        assertTrue(closedSink.sent.isEmpty());
+    }
+
+    @Test
+    void testNothingIsQueuedWithoutSessions() {
+        registry.onPrice(price("AAPL", "VENDOR1", "100.50"));
+
+        assertEquals(0, registry.getStats().get(ENQUEUED));
+    }
+
+    private void publish(Price... prices) {
+        registry.doWork();
+        for (Price price : prices) {
+            registry.onPrice(price);
+        }
+        registry.doWork();
+    }
+
+    private static Price price(String instrumentId, String vendorId, String bid) {
+        BigDecimal bidPrice = new BigDecimal(bid);
+        return new Price(instrumentId, vendorId, bidPrice, bidPrice.add(new BigDecimal("0.10")),
+                LocalDateTime.now(), "USD");
+    }
+
+    private static final class RecordingSink implements PriceSink {
+
+        private final List<Price> sent = new ArrayList<>();
+
+        @Override
+        public void send(Price price) {
+            sent.add(price);
+        }
+
+        @Override
+        public void close(String reason) {
+        }
+    }
+}
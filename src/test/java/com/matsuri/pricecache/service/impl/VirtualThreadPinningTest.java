@@ -0,0 +1,93 @@
+package com.matsuri.pricecache.service.impl;
+
+import com.matsuri.pricecache.domain.Price;
+import com.matsuri.pricecache.repository.impl.ShardedPriceRepository;
+import com.matsuri.pricecache.service.BestPriceListener;
+import com.matsuri.pricecache.service.PriceDistributionService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Publishes from many virtual threads under a JFR recording of {@code jdk.VirtualThreadPinned}: a virtual thread
+ * blocking while it holds a monitor on the publish path would pin its carrier thread and show up here.
+ */
+class VirtualThreadPinningTest {
+
+    private final ShardedPriceRepository repository = new ShardedPriceRepository(2);
+
+    @AfterEach
+    void tearDown() {
+        repository.stop();
+    }
+
+    @Test
+    void testPublishingOnVirtualThreadsDoesNotPinCarriers() throws Exception {
+        repository.start();
+        // a listener blocking inside the book's lock, as a slow subscriber would
+        BestPriceListener slowListener = bestPrice -> LockSupport.parkNanos(50_000);
+        PriceCacheServiceImpl service = new PriceCacheServiceImpl(repository, new NoOpDistributionService(),
+                Optional.empty(), Optional.of(slowListener),
+                Optional.of(new BarAggregator(List.of(Duration.ofSeconds(1)), 10, null)), List.of());
+        Path file = Files.createTempFile("pinning", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int client = 0; client < 200; client++) {
+                    String vendorId = "PINVENDOR" + client % 20;
+                    executor.submit(() -> {
+                        for (int i = 0; i < 50; i++) {
+                            service.publishPrice(new Price("PIN" + i % 5, vendorId, new BigDecimal("100.50"),
+                                    new BigDecimal("100.60"), LocalDateTime.now(), "USD"));
+                        }
+                    });
+                }
+            }
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> pinned = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        assertEquals(List.of(), pinned.stream().map(VirtualThreadPinningTest::topFrames).toList());
+        assertEquals(5 * 20, repository.count());
+    }
+
+    private static String topFrames(RecordedEvent event) {
+        return event.getStackTrace() == null ? event.toString() : event.getStackTrace().getFrames().stream()
+                .limit(8)
+                .map(frame -> frame.getMethod().getType().getName() + "." + frame.getMethod().getName())
+                .toList()
+                .toString();
+    }
+
+    private static final class NoOpDistributionService implements PriceDistributionService {
+        @Override
+        public void distributePrice(Price price) {
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+}